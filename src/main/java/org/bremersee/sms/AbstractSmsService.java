@@ -17,7 +17,14 @@
 package org.bremersee.sms;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.bremersee.sms.model.SmsSendRequestDto;
@@ -43,26 +50,91 @@ public abstract class AbstractSmsService implements SmsService {
    */
   public static final int DEFAULT_MAX_LENGTH_OF_ONE_SMS = 153;
 
+  private static final SmsInterceptor[] NO_INTERCEPTORS = new SmsInterceptor[0];
+
   /**
    * The Log.
    */
   protected final Logger log = LoggerFactory.getLogger(getClass());
 
-  private String defaultSender;
-
-  private String defaultReceiver;
+  private final AtomicReference<SmsServiceConfiguration> configuration;
 
-  private String defaultMessage;
+  private volatile CreditLedger creditLedger;
 
-  private String charset = DEFAULT_CHARSET.name();
+  private volatile ReceiverThrottle receiverThrottle;
 
-  private int maxLengthOfOneSms = DEFAULT_MAX_LENGTH_OF_ONE_SMS;
+  private volatile SmsInterceptor[] interceptors = NO_INTERCEPTORS;
 
   /**
    * Default constructor.
    */
   public AbstractSmsService() {
     super();
+    this.configuration = new AtomicReference<>(createDefaultConfiguration());
+  }
+
+  /**
+   * Creates the configuration with the default values. Sub classes with additional configuration
+   * values return a sub class of {@link SmsServiceConfiguration}.
+   *
+   * @return the default configuration
+   */
+  protected SmsServiceConfiguration createDefaultConfiguration() {
+    return new SmsServiceConfiguration();
+  }
+
+  /**
+   * Gets the current configuration snapshot.
+   *
+   * @return the configuration
+   */
+  public SmsServiceConfiguration getConfiguration() {
+    return configuration.get();
+  }
+
+  /**
+   * Replaces the configuration atomically. Sends that are already running keep the configuration
+   * they have started with.
+   *
+   * @param configuration the new configuration (must be of the same type as the default
+   *                      configuration)
+   */
+  public void setConfiguration(final SmsServiceConfiguration configuration) {
+    Validate.notNull(configuration, "Configuration must not be null.");
+    final Class<?> type = this.configuration.get().getClass();
+    Validate.isInstanceOf(type, configuration, "Configuration must be of type " + type.getName());
+    this.configuration.set(configuration);
+  }
+
+  /**
+   * Changes the configuration atomically.
+   *
+   * @param changes the function that returns the changed copy of the current configuration
+   * @return the new configuration
+   */
+  public SmsServiceConfiguration updateConfiguration(
+      final UnaryOperator<SmsServiceConfiguration> changes) {
+    Validate.notNull(changes, "Changes must not be null.");
+    return configuration.updateAndGet(changes);
+  }
+
+  /**
+   * Changes the configuration atomically with the values of the properties (see the property keys
+   * of {@link SmsServiceConfiguration} and its sub classes). Properties that are not present do
+   * not change the configuration. If a value is not valid, the configuration is not changed at
+   * all.
+   *
+   * @param properties the properties
+   * @param prefix     the prefix of the property keys (can be {@code null})
+   * @return the new configuration
+   * @throws IllegalArgumentException if a value is not valid
+   */
+  public SmsServiceConfiguration configure(final Properties properties, final String prefix) {
+    Validate.notNull(properties, "Properties must not be null.");
+    final SmsServiceConfiguration newConfiguration = updateConfiguration(
+        c -> c.withProperties(properties, prefix));
+    log.info("Configuration changed: {}", newConfiguration);
+    return newConfiguration;
   }
 
   /**
@@ -71,7 +143,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @return the default name or number of the sender
    */
   public String getDefaultSender() {
-    return defaultSender;
+    return getConfiguration().getDefaultSender();
   }
 
   /**
@@ -81,7 +153,7 @@ public abstract class AbstractSmsService implements SmsService {
    *                      and 0-9)
    */
   public void setDefaultSender(String defaultSender) {
-    this.defaultSender = defaultSender;
+    updateConfiguration(c -> c.withDefaultSender(defaultSender));
   }
 
   /**
@@ -90,7 +162,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @return the default name or number of the receiver
    */
   public String getDefaultReceiver() {
-    return defaultReceiver;
+    return getConfiguration().getDefaultReceiver();
   }
 
   /**
@@ -100,7 +172,7 @@ public abstract class AbstractSmsService implements SmsService {
    *                        A-Z and 0-9)
    */
   public void setDefaultReceiver(String defaultReceiver) {
-    this.defaultReceiver = defaultReceiver;
+    updateConfiguration(c -> c.withDefaultReceiver(defaultReceiver));
   }
 
   /**
@@ -109,7 +181,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @return the default message
    */
   public String getDefaultMessage() {
-    return defaultMessage;
+    return getConfiguration().getDefaultMessage();
   }
 
   /**
@@ -118,7 +190,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @param defaultMessage the default message
    */
   public void setDefaultMessage(String defaultMessage) {
-    this.defaultMessage = defaultMessage;
+    updateConfiguration(c -> c.withDefaultMessage(defaultMessage));
   }
 
   /**
@@ -127,7 +199,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @return the used charset
    */
   public String getCharset() {
-    return charset;
+    return getConfiguration().getCharsetName();
   }
 
   /**
@@ -136,7 +208,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @param charset the charset to use
    */
   public void setCharset(String charset) {
-    this.charset = charset;
+    updateConfiguration(c -> c.withCharset(charset));
   }
 
   /**
@@ -145,7 +217,7 @@ public abstract class AbstractSmsService implements SmsService {
    * @return the maximum length of one SMS
    */
   public int getMaxLengthOfOneSms() {
-    return maxLengthOfOneSms;
+    return getConfiguration().getMaxLengthOfOneSms();
   }
 
   /**
@@ -154,7 +226,100 @@ public abstract class AbstractSmsService implements SmsService {
    * @param maxLengthOfOneSms the maximum length of one SMS
    */
   public void setMaxLengthOfOneSms(int maxLengthOfOneSms) {
-    this.maxLengthOfOneSms = maxLengthOfOneSms;
+    updateConfiguration(c -> c.withMaxLengthOfOneSms(maxLengthOfOneSms));
+  }
+
+  /**
+   * Gets the credit ledger.
+   *
+   * @return the credit ledger (can be {@code null})
+   */
+  public CreditLedger getCreditLedger() {
+    return creditLedger;
+  }
+
+  /**
+   * Sets the credit ledger. If a credit ledger is set, the number of parts of a SMS is reserved
+   * before it is sent.
+   *
+   * @param creditLedger the credit ledger (can be {@code null})
+   */
+  public void setCreditLedger(CreditLedger creditLedger) {
+    this.creditLedger = creditLedger;
+  }
+
+  /**
+   * Gets the receiver throttle.
+   *
+   * @return the receiver throttle (can be {@code null})
+   */
+  public ReceiverThrottle getReceiverThrottle() {
+    return receiverThrottle;
+  }
+
+  /**
+   * Sets the receiver throttle. If a receiver throttle is set, a SMS to a receiver that has got
+   * too many SMS recently is rejected with a {@link ReceiverThrottledException} before it is
+   * sent. A message is counted after its credit was reserved; it is given back, if sending fails
+   * with an exception.
+   *
+   * @param receiverThrottle the receiver throttle (can be {@code null})
+   */
+  public void setReceiverThrottle(ReceiverThrottle receiverThrottle) {
+    this.receiverThrottle = receiverThrottle;
+  }
+
+  /**
+   * Gets the interceptors.
+   *
+   * @return the interceptors in the order they are called before sending
+   */
+  public List<SmsInterceptor> getInterceptors() {
+    return Collections.unmodifiableList(Arrays.asList(interceptors));
+  }
+
+  /**
+   * Replaces the interceptors. They are copied into an array that every send walks over (see
+   * {@link SmsInterceptor}).
+   *
+   * @param interceptors the interceptors in the order they are called before sending
+   */
+  public synchronized void setInterceptors(final List<? extends SmsInterceptor> interceptors) {
+    Validate.notNull(interceptors, "Interceptors must not be null.");
+    Validate.noNullElements(interceptors, "Interceptors must not contain null.");
+    this.interceptors = interceptors.toArray(new SmsInterceptor[0]);
+  }
+
+  /**
+   * Adds an interceptor at the end of the chain.
+   *
+   * @param interceptor the interceptor
+   */
+  public synchronized void addInterceptor(final SmsInterceptor interceptor) {
+    Validate.notNull(interceptor, "Interceptor must not be null.");
+    final SmsInterceptor[] current = interceptors;
+    final SmsInterceptor[] changed = Arrays.copyOf(current, current.length + 1);
+    changed[current.length] = interceptor;
+    this.interceptors = changed;
+  }
+
+  /**
+   * Gets the time in milliseconds a send waits for credit before it is rejected.
+   *
+   * @return the time in milliseconds a send waits for credit
+   */
+  public long getCreditWaitMillis() {
+    return getConfiguration().getCreditWaitMillis();
+  }
+
+  /**
+   * Sets the time in milliseconds a send waits for credit before it is rejected (default is
+   * {@code 0}, a send without sufficient credit is rejected immediately).
+   *
+   * @param creditWaitMillis the time in milliseconds a send waits for credit
+   */
+  public void setCreditWaitMillis(long creditWaitMillis) {
+    updateConfiguration(c -> c.withCreditWaitMillis(creditWaitMillis));
   }
 
   @Override
@@ -193,11 +358,138 @@ public abstract class AbstractSmsService implements SmsService {
     return sendSms(new SmsSendRequestDto(sender, receiver, message, sendTime));
   }
 
+  /**
+   * Sends the SMS through the chain of interceptors. If the Java Flight Recorder is available,
+   * the send and its admission are recorded as events (see {@code org.bremersee.sms.Send} and
+   * {@code org.bremersee.sms.SendPhase}).
+   *
+   * @param smsSendRequest the request
+   * @return the response
+   */
   @Override
   public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
     Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    final SmsServiceConfiguration config = getConfiguration();
+    final SmsFlightRecorder recorder = SmsFlightRecorder.get();
+    final Object event = recorder.beginSend();
+    if (event == null) {
+      return intercept(smsSendRequest, config, recorder);
+    }
+    String outcome = "FAILED";
+    try {
+      final SmsSendResponseDto response = intercept(smsSendRequest, config, recorder);
+      outcome = response.isSuccessfullySent() ? "SENT" : "NOT_SENT";
+      return response;
+
+    } catch (SmsTimeoutException e) {
+      outcome = "TIMEOUT";
+      throw e;
+
+    } catch (SmsRejectedException e) {
+      outcome = "REJECTED";
+      throw e;
+
+    } finally {
+      recorder.endSend(event, smsSendRequest.getRequestId(), getGatewayName(), outcome,
+          getNumberOfParts(smsSendRequest, config));
+    }
+  }
+
+  private SmsSendResponseDto intercept(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration config, final SmsFlightRecorder recorder) {
+
+    final SmsInterceptor[] chain = interceptors;
+    if (chain.length == 0) {
+      return send(smsSendRequest, config, recorder);
+    }
+    int called = 0;
+    SmsSendResponseDto response = null;
+    try {
+      while (response == null && called < chain.length) {
+        response = chain[called].beforeSend(smsSendRequest);
+        called++;
+      }
+      if (response == null) {
+        response = send(smsSendRequest, config, recorder);
+      } else {
+        log.info("SMS specified by " + smsSendRequest + " was answered by interceptor "
+            + chain[called - 1] + ":\n" + response);
+      }
+
+    } catch (RuntimeException e) {
+      afterSend(chain, called, smsSendRequest, null, e);
+      throw e;
+    }
+    afterSend(chain, called, smsSendRequest, response, null);
+    return response;
+  }
+
+  private void afterSend(final SmsInterceptor[] chain, final int called,
+      final SmsSendRequestDto smsSendRequest, final SmsSendResponseDto smsSendResponse,
+      final RuntimeException exception) {
+
+    for (int i = called - 1; i >= 0; i--) {
+      try {
+        chain[i].afterSend(smsSendRequest, smsSendResponse, exception);
+
+      } catch (RuntimeException e) {
+        log.warn("Interceptor " + chain[i] + " failed after SMS specified by " + smsSendRequest
+            + " was handled.", e);
+      }
+    }
+  }
+
+  private SmsSendResponseDto send(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration config, final SmsFlightRecorder recorder) {
+
     log.info("Sending SMS specified by " + smsSendRequest);
-    SmsSendResponseDto response = doSendSms(smsSendRequest);
+    final Object admission = recorder.beginPhase();
+    checkDeadline(smsSendRequest);
+    final CreditLedger ledger = creditLedger;
+    final CreditLedger.Reservation reservation = reserveCredit(ledger, smsSendRequest, config);
+    ReceiverThrottle throttle = null;
+    final SmsSendResponseDto response;
+    boolean sent = false;
+    boolean committed = false;
+    try {
+      // the permit of the receiver is taken after the credit and given back if nothing is sent
+      throttle = throttle(smsSendRequest, config);
+      if (admission != null) {
+        recorder.endPhase(admission, SmsFlightRecorder.Phase.ADMISSION,
+            smsSendRequest.getRequestId(), getGatewayName(), null);
+      }
+      response = doSendSms(smsSendRequest, config);
+      sent = true;
+      if (reservation != null) {
+        ledger.commit(reservation, getChargedParts(response, reservation.getUnits()));
+        committed = true;
+        final Long balance = getReportedBalance(response);
+        if (balance != null) {
+          ledger.updateBalance(balance);
+        }
+      }
+
+    } catch (SmsTimeoutException e) {
+      if (e.isRequestSent()) {
+        // the gateway may have sent the SMS, so it counts for the receiver and its credit is
+        // charged until the next reported balance corrects it
+        sent = true;
+        if (reservation != null) {
+          ledger.commit(reservation, reservation.getUnits());
+          committed = true;
+        }
+      }
+      throw e;
+
+    } finally {
+      // other errors must not leak the reserved credit either
+      if (reservation != null && !committed) {
+        ledger.release(reservation);
+      }
+      if (throttle != null && !sent) {
+        throttle.release(getReceiver(smsSendRequest, config));
+      }
+    }
     if (response.isSuccessfullySent()) {
       log.info("SMS specified by " + smsSendRequest + " was successfully sent:\n" + response);
     } else {
@@ -206,6 +498,81 @@ public abstract class AbstractSmsService implements SmsService {
     return response;
   }
 
+  private void checkDeadline(final SmsSendRequestDto smsSendRequest) {
+    if (getRemainingMillis(smsSendRequest) <= 0L) {
+      SmsTimeoutException e = new SmsTimeoutException(
+          "Deadline of SMS specified by " + smsSendRequest + " has passed.");
+      log.error("SMS specified by " + smsSendRequest + " was not sent.", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the milliseconds until the deadline of the request.
+   *
+   * @param smsSendRequest the request
+   * @return the remaining milliseconds ({@link Long#MAX_VALUE} if the request has no deadline)
+   */
+  protected static long getRemainingMillis(final SmsSendRequestDto smsSendRequest) {
+    final Date deadline = smsSendRequest.getDeadline();
+    return deadline != null ? deadline.getTime() - System.currentTimeMillis() : Long.MAX_VALUE;
+  }
+
+  /*
+   * Returns the throttle that has counted the message or null, if there is no throttle.
+   */
+  private ReceiverThrottle throttle(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration config) {
+
+    final ReceiverThrottle throttle = receiverThrottle;
+    if (throttle == null) {
+      return null;
+    }
+    final String receiver = getReceiver(smsSendRequest, config);
+    if (!throttle.tryAcquire(receiver)) {
+      ReceiverThrottledException e = new ReceiverThrottledException(
+          "Too many SMS to receiver [" + receiver + "].");
+      log.error("SMS specified by " + smsSendRequest + " was rejected.", e);
+      throw e;
+    }
+    return throttle;
+  }
+
+  private CreditLedger.Reservation reserveCredit(final CreditLedger ledger,
+      final SmsSendRequestDto smsSendRequest, final SmsServiceConfiguration config) {
+
+    if (ledger == null) {
+      return null;
+    }
+    final int parts = getNumberOfParts(smsSendRequest, config);
+    final CreditLedger.Reservation reservation;
+    try {
+      reservation = ledger.reserve(parts,
+          Math.max(0L, Math.min(config.getCreditWaitMillis(), getRemainingMillis(smsSendRequest))),
+          TimeUnit.MILLISECONDS);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InsufficientCreditException("Interrupted while waiting for credit.", e);
+    }
+    if (reservation == null) {
+      InsufficientCreditException e = new InsufficientCreditException(
+          "Credit is not sufficient to send " + parts + " part(s): " + ledger);
+      log.error("SMS specified by " + smsSendRequest + " was rejected.", e);
+      throw e;
+    }
+    return reservation;
+  }
+
+  /**
+   * Gets the name of the gateway, that is used in the flight recorder events.
+   *
+   * @return the name of the gateway (by default the simple name of the class)
+   */
+  protected String getGatewayName() {
+    return getClass().getSimpleName();
+  }
+
   /**
    * Sends a SMS specified by the request.
    *
@@ -215,6 +582,24 @@ public abstract class AbstractSmsService implements SmsService {
    */
   protected abstract SmsSendResponseDto doSendSms(final SmsSendRequestDto smsSendRequest);
 
+  /**
+   * Sends a SMS specified by the request with the configuration snapshot that was captured when
+   * the send has started. The default implementation calls {@link
+   * #doSendSms(SmsSendRequestDto)}; implementations that read the configuration override this
+   * method and use the given snapshot, so that a concurrent change of the configuration does not
+   * affect a running send.
+   *
+   * @param smsSendRequest the request
+   * @param config         the configuration snapshot
+   * @return response information of the implementation
+   * @throws SmsException if sending of the message fails
+   */
+  protected SmsSendResponseDto doSendSms(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration config) {
+
+    return doSendSms(smsSendRequest);
+  }
+
   /**
    * Returns the sender of the request. If no sender is specified the default sender will be
    * returned.
@@ -224,9 +609,25 @@ public abstract class AbstractSmsService implements SmsService {
    * @throws IllegalArgumentException if no sender is specified at all
    */
   protected String getSender(final SmsSendRequestDto smsSendRequestDto) {
+    return getSender(smsSendRequestDto, getConfiguration());
+  }
+
+  /**
+   * Returns the sender of the request. If no sender is specified the default sender of the given
+   * configuration snapshot will be returned.
+   *
+   * @param smsSendRequestDto the sms request
+   * @param config            the configuration snapshot
+   * @return the sender
+   * @throws IllegalArgumentException if no sender is specified at all
+   */
+  protected String getSender(final SmsSendRequestDto smsSendRequestDto,
+      final SmsServiceConfiguration config) {
+
     if (StringUtils.isNotBlank(smsSendRequestDto.getSender())) {
       return smsSendRequestDto.getSender();
     }
+    final String defaultSender = config.getDefaultSender();
     Validate.notEmpty(defaultSender, "defaultSender must not be null or blank");
     return defaultSender;
   }
@@ -240,9 +641,25 @@ public abstract class AbstractSmsService implements SmsService {
    * @throws IllegalArgumentException if no receiver is specified at all
    */
   protected String getReceiver(final SmsSendRequestDto smsSendRequestDto) {
+    return getReceiver(smsSendRequestDto, getConfiguration());
+  }
+
+  /**
+   * Returns the receiver of the request. If no receiver is specified the default receiver of the
+   * given configuration snapshot will be returned.
+   *
+   * @param smsSendRequestDto the sms request
+   * @param config            the configuration snapshot
+   * @return the receiver
+   * @throws IllegalArgumentException if no receiver is specified at all
+   */
+  protected String getReceiver(final SmsSendRequestDto smsSendRequestDto,
+      final SmsServiceConfiguration config) {
+
     if (StringUtils.isNotBlank(smsSendRequestDto.getReceiver())) {
       return smsSendRequestDto.getReceiver();
     }
+    final String defaultReceiver = config.getDefaultReceiver();
     Validate.notEmpty(defaultReceiver, "defaultReceiver must not be null or blank");
     return defaultReceiver;
   }
@@ -256,23 +673,90 @@ public abstract class AbstractSmsService implements SmsService {
    * @throws IllegalArgumentException if no message is specified at all
    */
   protected String getMessage(final SmsSendRequestDto smsSendRequestDto) {
+    return getMessage(smsSendRequestDto, getConfiguration());
+  }
+
+  /**
+   * Returns the message of the request. If no message is specified the default message of the given
+   * configuration snapshot will be returned.
+   *
+   * @param smsSendRequestDto the sms request
+   * @param config            the configuration snapshot
+   * @return the message
+   * @throws IllegalArgumentException if no message is specified at all
+   */
+  protected String getMessage(final SmsSendRequestDto smsSendRequestDto,
+      final SmsServiceConfiguration config) {
+
     if (StringUtils.isNotBlank(smsSendRequestDto.getMessage())) {
       return smsSendRequestDto.getMessage();
     }
+    final String defaultMessage = config.getDefaultMessage();
     Validate.notEmpty(defaultMessage, "defaultMessage must not be null or blank");
     return defaultMessage;
   }
 
   /**
-   * Returns the {@link Charset}.
+   * Returns the number of parts that are needed to send the message. The message is encoded with
+   * the GSM 7-bit alphabet or, if that is not possible, with UCS-2 (see {@link SmsEncoding}).
+   *
+   * @param message the message
+   * @return the number of parts
+   */
+  protected int getNumberOfParts(final String message) {
+    return getNumberOfParts(message, getConfiguration());
+  }
+
+  /**
+   * Returns the number of parts that are needed to send the message with the maximum length of
+   * one SMS of the given configuration snapshot.
+   *
+   * @param message the message
+   * @param config  the configuration snapshot
+   * @return the number of parts
+   */
+  protected int getNumberOfParts(final String message, final SmsServiceConfiguration config) {
+    return SmsEncoding.countParts(message, config.getMaxLengthOfOneSms());
+  }
+
+  private int getNumberOfParts(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration config) {
+
+    return getNumberOfParts(StringUtils.isNotBlank(smsSendRequest.getMessage())
+        ? smsSendRequest.getMessage() : config.getDefaultMessage(), config);
+  }
+
+  /**
+   * Returns the number of parts the gateway has charged for sending the SMS. The default
+   * implementation returns the reserved parts if the SMS was sent successfully, otherwise
+   * {@code 0}.
+   *
+   * @param response      the response
+   * @param reservedParts the reserved parts
+   * @return the charged parts
+   */
+  protected long getChargedParts(final SmsSendResponseDto response, final long reservedParts) {
+    return response != null && response.isSuccessfullySent() ? reservedParts : 0L;
+  }
+
+  /**
+   * Returns the balance of the account that was reported by the gateway with the response. The
+   * default implementation returns {@code null}.
+   *
+   * @param response the response
+   * @return the reported balance or {@code null} if there is none
+   */
+  protected Long getReportedBalance(final SmsSendResponseDto response) {
+    return null;
+  }
+
+  /**
+   * Returns the {@link Charset} of the current configuration.
    *
    * @return the charset
    */
   protected Charset createCharset() {
-    if (StringUtils.isNotBlank(charset)) {
-      return Charset.forName(charset);
-    }
-    return DEFAULT_CHARSET;
+    return getConfiguration().getCharset();
   }
 
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A timeout that adapts to the latencies of recent calls: it is a percentile of the recorded
+ * latencies multiplied by a factor and bounded by a floor and a ceiling. As long as there are
+ * too few samples, the ceiling is used.
+ *
+ * <p>The latencies are recorded in two {@link LatencyHistogram}s that take turns: when the
+ * current one has got {@code windowSize} samples, the older one is cleared and becomes the
+ * current one. The percentile is the greater one of both histograms, so the timeout follows
+ * the latencies of the last one or two windows and reacts to a slower gateway within one
+ * window.
+ *
+ * <p>A call that times out has no latency, so it adds no sample. If the gateway gets slower than
+ * the adapted timeout, every call would time out and the windows would never change. Therefore
+ * {@link #recordTimeout()} counts the timed out calls: after {@code maxConsecutiveTimeouts} of
+ * them without a successful call in between, both windows are cleared and the ceiling is used
+ * again until there are enough new samples.
+ *
+ * <p>Instances are thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class AdaptiveTimeout {
+
+  /**
+   * The default percentile.
+   */
+  public static final double DEFAULT_PERCENTILE = 99.0;
+
+  /**
+   * The default factor.
+   */
+  public static final double DEFAULT_MULTIPLIER = 3.0;
+
+  /**
+   * The default number of samples of one window.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 256;
+
+  /**
+   * The default number of samples that are needed to adapt the timeout.
+   */
+  public static final int DEFAULT_MIN_SAMPLES = 20;
+
+  /**
+   * The default number of consecutive timeouts that reset the timeout to the ceiling.
+   */
+  public static final int DEFAULT_MAX_CONSECUTIVE_TIMEOUTS = 3;
+
+  private final double percentile;
+
+  private final double multiplier;
+
+  private final int windowSize;
+
+  private final int minSamples;
+
+  private final int maxConsecutiveTimeouts;
+
+  private final LatencyHistogram[] windows = {new LatencyHistogram(), new LatencyHistogram()};
+
+  private final AtomicLong samples = new AtomicLong();
+
+  private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+
+  private volatile int current;
+
+  /**
+   * Instantiates a new adaptive timeout with default values.
+   */
+  public AdaptiveTimeout() {
+    this(DEFAULT_PERCENTILE, DEFAULT_MULTIPLIER, DEFAULT_WINDOW_SIZE, DEFAULT_MIN_SAMPLES);
+  }
+
+  /**
+   * Instantiates a new adaptive timeout, that is reset after {@link
+   * #DEFAULT_MAX_CONSECUTIVE_TIMEOUTS} consecutive timeouts.
+   *
+   * @param percentile the percentile of the latencies (between 0 and 100)
+   * @param multiplier the factor that is applied to the percentile (at least 1)
+   * @param windowSize the number of samples of one window
+   * @param minSamples the number of samples that are needed to adapt the timeout
+   */
+  public AdaptiveTimeout(double percentile, double multiplier, int windowSize, int minSamples) {
+    this(percentile, multiplier, windowSize, minSamples, DEFAULT_MAX_CONSECUTIVE_TIMEOUTS);
+  }
+
+  /**
+   * Instantiates a new adaptive timeout.
+   *
+   * @param percentile the percentile of the latencies (between 0 and 100)
+   * @param multiplier the factor that is applied to the percentile (at least 1)
+   * @param windowSize the number of samples of one window
+   * @param minSamples the number of samples that are needed to adapt the timeout
+   * @param maxConsecutiveTimeouts the number of consecutive timeouts that reset the timeout to
+   *                               the ceiling
+   */
+  public AdaptiveTimeout(double percentile, double multiplier, int windowSize, int minSamples,
+      int maxConsecutiveTimeouts) {
+    Validate.isTrue(percentile > 0.0 && percentile <= 100.0,
+        "percentile must be greater than 0 and not greater than 100");
+    Validate.isTrue(multiplier >= 1.0, "multiplier must be at least 1");
+    Validate.isTrue(windowSize > 0, "windowSize must be greater than 0");
+    Validate.isTrue(minSamples >= 0 && minSamples <= windowSize,
+        "minSamples must not be negative and not greater than windowSize");
+    Validate.isTrue(maxConsecutiveTimeouts > 0, "maxConsecutiveTimeouts must be greater than 0");
+    this.percentile = percentile;
+    this.multiplier = multiplier;
+    this.windowSize = windowSize;
+    this.minSamples = minSamples;
+    this.maxConsecutiveTimeouts = maxConsecutiveTimeouts;
+  }
+
+  /**
+   * Records the latency of a call.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(final long nanos) {
+    consecutiveTimeouts.set(0);
+    windows[current].record(nanos);
+    if (samples.incrementAndGet() % windowSize == 0L) {
+      rotate();
+    }
+  }
+
+  /**
+   * Records a call that has timed out. After {@code maxConsecutiveTimeouts} consecutive timeouts
+   * the recorded latencies are cleared, so that the ceiling is used again.
+   */
+  public void recordTimeout() {
+    if (consecutiveTimeouts.incrementAndGet() >= maxConsecutiveTimeouts) {
+      consecutiveTimeouts.set(0);
+      reset();
+    }
+  }
+
+  private synchronized void reset() {
+    windows[0].reset();
+    windows[1].reset();
+  }
+
+  /**
+   * Gets the number of calls that have timed out since the last successful call or reset.
+   *
+   * @return the number of consecutive timeouts
+   */
+  public int getConsecutiveTimeouts() {
+    return consecutiveTimeouts.get();
+  }
+
+  private synchronized void rotate() {
+    final int next = 1 - current;
+    windows[next].reset();
+    current = next;
+  }
+
+  /**
+   * Gets the number of samples in the current windows.
+   *
+   * @return the number of samples
+   */
+  public long getSampleCount() {
+    return windows[0].getCount() + windows[1].getCount();
+  }
+
+  /**
+   * Gets the percentile of the recent latencies in nanoseconds.
+   *
+   * @return the percentile (0 if nothing was recorded)
+   */
+  public long getPercentileNanos() {
+    return Math.max(windows[0].getPercentile(percentile), windows[1].getPercentile(percentile));
+  }
+
+  /**
+   * Gets the timeout in milliseconds.
+   *
+   * @param floorMillis   the minimum timeout in milliseconds
+   * @param ceilingMillis the maximum timeout in milliseconds
+   * @return the timeout
+   */
+  public long getTimeoutMillis(final long floorMillis, final long ceilingMillis) {
+    if (getSampleCount() < minSamples) {
+      return ceilingMillis;
+    }
+    final long millis = (long) Math.ceil(
+        getPercentileNanos() * multiplier / TimeUnit.MILLISECONDS.toNanos(1L));
+    return Math.max(floorMillis, Math.min(ceilingMillis, millis));
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptiveTimeout {"
+        + "percentile=" + percentile
+        + ", multiplier=" + multiplier
+        + ", samples=" + getSampleCount()
+        + ", percentileNanos=" + getPercentileNanos()
+        + '}';
+  }
+
+}
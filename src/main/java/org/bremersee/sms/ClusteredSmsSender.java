@@ -0,0 +1,493 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A node of a cluster that sends the SMS of a {@link JdbcSmsOutbox} with a local {@link
+ * SmsService}.
+ *
+ * <p>Every node announces itself with a heartbeat and holds the leases of its fair share of the
+ * partitions (the number of partitions divided by the number of living nodes). Surplus leases are
+ * released, so a new node gets partitions within one poll interval; the leases of a dead node
+ * expire and are taken over by the others. The clocks of the nodes should be synchronized.
+ *
+ * <p>The pending requests of the own partitions are claimed in batches and then sent. A request
+ * is sent at least once: if a node dies after sending but before writing the outcome, the
+ * request is sent again by the next owner of the partition after the lease duration. A batch is
+ * sent for at most half of the lease duration; the requests that are not sent by then are
+ * released, so that the outcomes are written before the claim expires. The outcomes are written
+ * in small batches while the batch is sent (see {@link #setCompletionBatchSize(int)}), so a dying
+ * node leaves only a few sent requests that are sent again.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ClusteredSmsSender implements Closeable {
+
+  /**
+   * The default batch size.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  /**
+   * The default number of sent requests whose outcomes are written together.
+   */
+  public static final int DEFAULT_COMPLETION_BATCH_SIZE = 10;
+
+  /**
+   * The default poll interval in milliseconds.
+   */
+  public static final long DEFAULT_INTERVAL_MILLIS = 1000L;
+
+  /**
+   * The default duration of a lease in milliseconds.
+   */
+  public static final long DEFAULT_LEASE_MILLIS = 30000L;
+
+  /**
+   * The default maximum number of attempts to send a SMS.
+   */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /**
+   * The default delay in milliseconds before the first retry (it is doubled with every retry).
+   */
+  public static final long DEFAULT_RETRY_DELAY_MILLIS = 10000L;
+
+  private static final long SHUTDOWN_MILLIS = 10000L;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final JdbcSmsOutbox outbox;
+
+  private final SmsService smsService;
+
+  private final String nodeId;
+
+  private final Set<Integer> ownedPartitions = Collections.synchronizedSet(new TreeSet<>());
+
+  private final LongAdder sent = new LongAdder();
+
+  private final LongAdder retried = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private int completionBatchSize = DEFAULT_COMPLETION_BATCH_SIZE;
+
+  private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+  private long leaseMillis = DEFAULT_LEASE_MILLIS;
+
+  private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+  private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * Instantiates a new clustered sms sender with a random node id.
+   *
+   * @param outbox     the outbox
+   * @param smsService the sms service that sends the SMS
+   */
+  public ClusteredSmsSender(JdbcSmsOutbox outbox, SmsService smsService) {
+    this(outbox, smsService, UUID.randomUUID().toString());
+  }
+
+  /**
+   * Instantiates a new clustered sms sender.
+   *
+   * @param outbox     the outbox
+   * @param smsService the sms service that sends the SMS
+   * @param nodeId     the id of the node (must be unique in the cluster)
+   */
+  public ClusteredSmsSender(JdbcSmsOutbox outbox, SmsService smsService, String nodeId) {
+    Validate.notNull(outbox, "outbox must not be null");
+    Validate.notNull(smsService, "smsService must not be null");
+    Validate.notBlank(nodeId, "nodeId must not be blank");
+    Validate.isTrue(nodeId.length() <= 128, "nodeId must not be longer than 128 characters");
+    this.outbox = outbox;
+    this.smsService = smsService;
+    this.nodeId = nodeId;
+  }
+
+  /**
+   * Gets the id of the node.
+   *
+   * @return the id of the node
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * Gets the partitions whose leases are held by this node.
+   *
+   * @return the owned partitions
+   */
+  public Set<Integer> getOwnedPartitions() {
+    synchronized (ownedPartitions) {
+      return Collections.unmodifiableSet(new TreeSet<>(ownedPartitions));
+    }
+  }
+
+  /**
+   * Gets the maximum number of requests that are claimed at once.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of requests that are claimed at once.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets the number of sent requests whose outcomes are written together.
+   *
+   * @return the completion batch size
+   */
+  public int getCompletionBatchSize() {
+    return completionBatchSize;
+  }
+
+  /**
+   * Sets the number of sent requests whose outcomes are written together. With 1 the outcome of
+   * each request is written right after it is sent.
+   *
+   * @param completionBatchSize the completion batch size
+   */
+  public void setCompletionBatchSize(int completionBatchSize) {
+    Validate.isTrue(completionBatchSize > 0, "completionBatchSize must be greater than 0");
+    this.completionBatchSize = completionBatchSize;
+  }
+
+  /**
+   * Gets the poll interval in milliseconds.
+   *
+   * @return the poll interval in milliseconds
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /**
+   * Sets the poll interval in milliseconds.
+   *
+   * @param intervalMillis the poll interval in milliseconds
+   */
+  public void setIntervalMillis(long intervalMillis) {
+    Validate.isTrue(intervalMillis > 0L, "intervalMillis must be greater than 0");
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Gets the duration of a lease in milliseconds.
+   *
+   * @return the duration of a lease in milliseconds
+   */
+  public long getLeaseMillis() {
+    return leaseMillis;
+  }
+
+  /**
+   * Sets the duration of a lease in milliseconds. It must be much longer than the poll interval
+   * and than sending one SMS; claimed requests are reserved for the same duration.
+   *
+   * @param leaseMillis the duration of a lease in milliseconds
+   */
+  public void setLeaseMillis(long leaseMillis) {
+    Validate.isTrue(leaseMillis > 0L, "leaseMillis must be greater than 0");
+    this.leaseMillis = leaseMillis;
+  }
+
+  /**
+   * Gets the maximum number of attempts to send a SMS.
+   *
+   * @return the maximum number of attempts
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sets the maximum number of attempts to send a SMS.
+   *
+   * @param maxAttempts the maximum number of attempts
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    Validate.isTrue(maxAttempts > 0, "maxAttempts must be greater than 0");
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Gets the delay in milliseconds before the first retry.
+   *
+   * @return the delay in milliseconds before the first retry
+   */
+  public long getRetryDelayMillis() {
+    return retryDelayMillis;
+  }
+
+  /**
+   * Sets the delay in milliseconds before the first retry (it is doubled with every retry).
+   *
+   * @param retryDelayMillis the delay in milliseconds before the first retry
+   */
+  public void setRetryDelayMillis(long retryDelayMillis) {
+    Validate.isTrue(retryDelayMillis >= 0L, "retryDelayMillis must not be negative");
+    this.retryDelayMillis = retryDelayMillis;
+  }
+
+  /**
+   * Gets the number of sent SMS.
+   *
+   * @return the number of sent SMS
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  /**
+   * Gets the number of attempts that have failed and will be retried.
+   *
+   * @return the number of retried attempts
+   */
+  public long getRetried() {
+    return retried.sum();
+  }
+
+  /**
+   * Gets the number of SMS that could not be sent finally.
+   *
+   * @return the number of failed SMS
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /**
+   * Starts polling in the background.
+   */
+  public synchronized void start() {
+    Validate.validState(executor == null, "Sender is already started.");
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sms-outbox-sender");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        pollOnce();
+      } catch (RuntimeException e) {
+        log.error("Polling sms outbox failed.", e);
+      }
+    }, 0L, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Renews the leases and sends the due requests of the owned partitions. Sending stops after
+   * half of the lease duration, so that the leases are renewed and the claimed requests are
+   * completed in time; claimed requests that are not sent by then are released.
+   *
+   * @return the number of sent SMS
+   * @throws SmsException if the database access fails
+   */
+  public int pollOnce() {
+    final long start = System.currentTimeMillis();
+    try {
+      balanceLeases(start);
+      int count = 0;
+      List<JdbcSmsOutbox.Entry> entries;
+      int handled;
+      do {
+        final List<Integer> partitions = new ArrayList<>(getOwnedPartitions());
+        final long now = System.currentTimeMillis();
+        entries = outbox.claim(partitions, batchSize, nodeId, now, now + leaseMillis);
+        // another node claims the entries again after the lease, so stop in time
+        final long sendUntil = now + leaseMillis / 2L;
+        handled = 0;
+        int completed = 0;
+        while (handled < entries.size() && System.currentTimeMillis() < sendUntil) {
+          if (send(entries.get(handled++))) {
+            count++;
+          }
+          // the outcomes are written soon, so that a dying node leaves few duplicates
+          if (handled - completed >= completionBatchSize) {
+            outbox.complete(entries.subList(completed, handled), nodeId,
+                System.currentTimeMillis());
+            completed = handled;
+          }
+        }
+        if (handled > completed) {
+          outbox.complete(entries.subList(completed, handled), nodeId,
+              System.currentTimeMillis());
+        }
+        if (handled < entries.size()) {
+          outbox.release(entries.subList(handled, entries.size()), nodeId,
+              System.currentTimeMillis());
+          log.debug("Node {} has released {} unsent SMS.", nodeId, entries.size() - handled);
+        }
+      } while (handled == batchSize
+          && System.currentTimeMillis() - start < leaseMillis / 2L
+          && !Thread.currentThread().isInterrupted());
+      log.debug("Node {} has sent {} SMS of partitions {}.", nodeId, count, ownedPartitions);
+      return count;
+
+    } catch (SQLException e) {
+      throw new SmsException("Polling sms outbox failed.", e);
+    }
+  }
+
+  private void balanceLeases(final long now) throws SQLException {
+    final int nodes = outbox.heartbeat(nodeId, now, leaseMillis);
+    final int partitions = outbox.getPartitions();
+    final int share = (partitions + nodes - 1) / nodes;
+    final long expires = now + leaseMillis;
+    synchronized (ownedPartitions) {
+      final int size = ownedPartitions.size();
+      final List<Integer> owned = new ArrayList<>(ownedPartitions);
+      for (int i = owned.size() - 1; i >= 0; i--) {
+        final Integer partition = owned.get(i);
+        if (i >= share) {
+          outbox.releaseLease(partition, nodeId);
+          ownedPartitions.remove(partition);
+        } else if (!outbox.renewLease(partition, nodeId, now, expires)) {
+          ownedPartitions.remove(partition);
+          log.warn("Node {} has lost partition {}.", nodeId, partition);
+        }
+      }
+      if (ownedPartitions.size() < share) {
+        final List<Integer> free = outbox.findFreePartitions(now);
+        // nodes start at different partitions, so that they rarely compete for the same
+        Collections.rotate(free, -Math.floorMod(nodeId.hashCode(), Math.max(1, free.size())));
+        final Iterator<Integer> iterator = free.iterator();
+        while (ownedPartitions.size() < share && iterator.hasNext()) {
+          final Integer partition = iterator.next();
+          if (outbox.claimLease(partition, nodeId, now, expires)) {
+            ownedPartitions.add(partition);
+          }
+        }
+      }
+      if (ownedPartitions.size() != size) {
+        log.info("Node {} owns {} of {} partitions now: {}", nodeId, ownedPartitions.size(),
+            partitions, ownedPartitions);
+      }
+    }
+  }
+
+  private boolean send(final JdbcSmsOutbox.Entry entry) {
+    final SmsSendRequestDto request;
+    try {
+      request = outbox.readRequest(entry);
+
+    } catch (IOException e) {
+      log.error("Request of outbox entry " + entry.getId() + " can't be read.", e);
+      entry.failed(e.toString());
+      failed.increment();
+      return false;
+    }
+    String error;
+    try {
+      final SmsSendResponseDto response = smsService.sendSms(request);
+      if (response != null && response.isSuccessfullySent()) {
+        entry.sent();
+        sent.increment();
+        return true;
+      }
+      error = "SMS was not sent: " + response;
+
+    } catch (RuntimeException e) {
+      error = e.toString();
+    }
+    if (entry.getAttempts() + 1 >= maxAttempts) {
+      log.error("Sending outbox entry {} has failed finally: {}", entry.getId(), error);
+      entry.failed(error);
+      failed.increment();
+    } else {
+      final long delay = retryDelayMillis << Math.min(entry.getAttempts(), 20);
+      log.warn("Sending outbox entry {} has failed, retrying in {} ms: {}", entry.getId(), delay,
+          error);
+      entry.retry(System.currentTimeMillis() + delay, error);
+      retried.increment();
+    }
+    return false;
+  }
+
+  /**
+   * Stops polling, waits for the current batch and releases the leases, so that the other nodes
+   * can take over immediately.
+   */
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      final ExecutorService current = executor;
+      executor = null;
+      current.shutdown();
+      try {
+        if (!current.awaitTermination(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS)) {
+          current.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        current.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      outbox.removeNode(nodeId);
+      ownedPartitions.clear();
+
+    } catch (SQLException e) {
+      log.warn("Releasing the leases of node " + nodeId + " failed.", e);
+    }
+  }
+
+}
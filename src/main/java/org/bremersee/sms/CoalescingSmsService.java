@@ -0,0 +1,525 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SMS service that coalesces the messages to the same receiver within a short window into one
+ * SMS.
+ *
+ * <p>The first message to a receiver (and sender) opens a batch, which is sent by the delegate
+ * when the window is over. Further messages to the same receiver are appended to the batch, as
+ * long as the combined text (joined by the separator) does not exceed the maximum length;
+ * otherwise the batch is sent at once and the message opens a new one. A text that is already in
+ * the batch is not appended again. Receivers are compared in normalized form (see {@link
+ * ReceiverThrottle#key(String, String)}). Requests with a send time, a deadline or an extension
+ * and requests without receiver are not coalesced, they are sent directly.
+ *
+ * <p>The combined request gets a new request id and the highest priority of its messages. Every
+ * caller gets a response with its original request and the success and extension of the combined
+ * response, so the original request ids map to the response of the gateway. A {@link Listener}
+ * can be registered to record the mapping of the original request ids to the combined request.
+ *
+ * <p>A caller of {@code sendSms} waits until the batch of its message was sent, {@link
+ * #submit(SmsSendRequestDto)} returns immediately. The combined requests are sent by a fixed
+ * number of sender threads.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class CoalescingSmsService implements SmsService, Closeable {
+
+  /**
+   * The default window in milliseconds.
+   */
+  public static final long DEFAULT_WINDOW_MILLIS = 2000L;
+
+  /**
+   * The default separator of the combined messages.
+   */
+  public static final String DEFAULT_SEPARATOR = "\n";
+
+  /**
+   * The default number of threads that send the combined requests.
+   */
+  public static final int DEFAULT_SENDER_THREADS = 4;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final SmsService smsService;
+
+  private final Map<String, Batch> batches = new HashMap<>();
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ExecutorService sender;
+
+  private final LongAdder received = new LongAdder();
+
+  private final LongAdder sent = new LongAdder();
+
+  private volatile long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+  private volatile int maxMessageLength = AbstractSmsService.DEFAULT_MAX_LENGTH_OF_ONE_SMS;
+
+  private volatile String separator = DEFAULT_SEPARATOR;
+
+  private volatile String defaultCountryCode = ReceiverThrottle.DEFAULT_COUNTRY_CODE;
+
+  private volatile Listener listener;
+
+  private boolean closed;
+
+  /**
+   * Instantiates a new coalescing sms service with {@link #DEFAULT_SENDER_THREADS} sender
+   * threads.
+   *
+   * @param smsService the sms service that sends the combined requests
+   */
+  public CoalescingSmsService(SmsService smsService) {
+    this(smsService, DEFAULT_SENDER_THREADS);
+  }
+
+  /**
+   * Instantiates a new coalescing sms service.
+   *
+   * @param smsService    the sms service that sends the combined requests
+   * @param senderThreads the number of threads that send the combined requests (batches that
+   *                      are due, while all of them are busy, wait)
+   */
+  public CoalescingSmsService(SmsService smsService, int senderThreads) {
+    Validate.notNull(smsService, "smsService must not be null");
+    Validate.isTrue(senderThreads > 0, "senderThreads must be greater than 0");
+    this.smsService = smsService;
+    final int id = THREAD_COUNTER.incrementAndGet();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sms-coalescing-timer-" + id);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+      Thread thread = new Thread(runnable, "sms-coalescing-sender-" + id);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Gets the window in milliseconds.
+   *
+   * @return the window in milliseconds
+   */
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  /**
+   * Sets the window in milliseconds, that a batch waits for more messages.
+   *
+   * @param windowMillis the window in milliseconds
+   */
+  public void setWindowMillis(long windowMillis) {
+    Validate.isTrue(windowMillis >= 0L, "windowMillis must not be negative");
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Gets the maximum length of a combined message.
+   *
+   * @return the maximum length of a combined message
+   */
+  public int getMaxMessageLength() {
+    return maxMessageLength;
+  }
+
+  /**
+   * Sets the maximum length of a combined message (default is the length of one SMS, {@link
+   * AbstractSmsService#DEFAULT_MAX_LENGTH_OF_ONE_SMS}).
+   *
+   * @param maxMessageLength the maximum length of a combined message
+   */
+  public void setMaxMessageLength(int maxMessageLength) {
+    Validate.isTrue(maxMessageLength > 0, "maxMessageLength must be greater than 0");
+    this.maxMessageLength = maxMessageLength;
+  }
+
+  /**
+   * Gets the separator of the combined messages.
+   *
+   * @return the separator
+   */
+  public String getSeparator() {
+    return separator;
+  }
+
+  /**
+   * Sets the separator of the combined messages.
+   *
+   * @param separator the separator
+   */
+  public void setSeparator(String separator) {
+    Validate.notNull(separator, "separator must not be null");
+    this.separator = separator;
+  }
+
+  /**
+   * Sets the country code that replaces the leading zero of a national number, when receivers
+   * are compared.
+   *
+   * @param defaultCountryCode the default country code
+   */
+  public void setDefaultCountryCode(String defaultCountryCode) {
+    Validate.isTrue(defaultCountryCode != null && defaultCountryCode.matches("[0-9]{1,3}"),
+        "defaultCountryCode must consist of one to three digits");
+    this.defaultCountryCode = defaultCountryCode;
+  }
+
+  /**
+   * Sets the listener, that is called after a combined request was sent and before the callers
+   * get their responses.
+   *
+   * @param listener the listener (can be {@code null})
+   */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Gets the number of received requests.
+   *
+   * @return the number of received requests
+   */
+  public long getReceived() {
+    return received.sum();
+  }
+
+  /**
+   * Gets the number of requests that were sent by the delegate.
+   *
+   * @return the number of sent requests
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms() {
+    return sendSms(null, null, null, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String message) {
+    return sendSms(null, null, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message) {
+    return sendSms(null, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message,
+      final Date sendTime) {
+
+    return sendSms(null, receiver, message, sendTime);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message) {
+
+    return sendSms(sender, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message, final Date sendTime) {
+
+    return sendSms(new SmsSendRequestDto(sender, receiver, message, sendTime));
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
+    final CompletableFuture<SmsSendResponseDto> future = submit(smsSendRequest);
+    try {
+      return future.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SmsException("Waiting for sending the sms was interrupted.", e);
+
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SmsException(cause);
+    }
+  }
+
+  /**
+   * Adds the request to the batch of its receiver and returns immediately.
+   *
+   * @param smsSendRequest the request
+   * @return the future response
+   * @throws SmsRejectedException if the service is closed
+   */
+  public CompletableFuture<SmsSendResponseDto> submit(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    received.increment();
+    final Pending pending = new Pending(smsSendRequest);
+    final String message = smsSendRequest.getMessage();
+    final int maxLength = maxMessageLength;
+    if (smsSendRequest.getReceiver() == null || message == null
+        || smsSendRequest.getSendTime() != null || smsSendRequest.getDeadline() != null
+        || smsSendRequest.getExtension() != null
+        || message.length() >= maxLength) {
+      final Batch single = new Batch(null, smsSendRequest, separator);
+      single.add(pending, message);
+      synchronized (batches) {
+        checkOpen();
+      }
+      send(single);
+      return pending.future;
+    }
+
+    final String key = smsSendRequest.getSender() + '\u0000'
+        + ReceiverThrottle.key(smsSendRequest.getReceiver(), defaultCountryCode);
+    Batch full = null;
+    synchronized (batches) {
+      checkOpen();
+      Batch batch = batches.get(key);
+      if (batch != null && !batch.fits(message, maxLength)) {
+        batches.remove(key);
+        full = batch;
+        batch = null;
+      }
+      if (batch == null) {
+        final Batch newBatch = new Batch(key, smsSendRequest, separator);
+        batches.put(key, newBatch);
+        scheduler.schedule(() -> flush(newBatch), windowMillis, TimeUnit.MILLISECONDS);
+        batch = newBatch;
+      }
+      batch.add(pending, message);
+    }
+    if (full != null) {
+      send(full);
+    }
+    return pending.future;
+  }
+
+  /**
+   * Sends all batches at once.
+   */
+  public void flush() {
+    final List<Batch> all;
+    synchronized (batches) {
+      all = new ArrayList<>(batches.values());
+      batches.clear();
+    }
+    for (Batch batch : all) {
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends all batches and stops accepting requests.
+   */
+  @Override
+  public void close() {
+    synchronized (batches) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    flush();
+    scheduler.shutdownNow();
+    sender.shutdown();
+    try {
+      sender.awaitTermination(30L, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new SmsRejectedException("Coalescing sms service is closed.");
+    }
+  }
+
+  private void flush(final Batch batch) {
+    synchronized (batches) {
+      if (batches.get(batch.key) != batch) {
+        return;
+      }
+      batches.remove(batch.key);
+    }
+    send(batch);
+  }
+
+  private void send(final Batch batch) {
+    try {
+      sender.execute(() -> doSend(batch));
+    } catch (RuntimeException e) {
+      // the sender is shut down, the batch is sent by the calling thread
+      doSend(batch);
+    }
+  }
+
+  /**
+   * Sends the combined request of the batch by the delegate and completes the responses of the
+   * original requests.
+   *
+   * @param batch the batch
+   */
+  private void doSend(final Batch batch) {
+    final SmsSendRequestDto request = batch.createRequest();
+    final SmsSendResponseDto response;
+    try {
+      response = smsService.sendSms(request);
+      sent.increment();
+
+    } catch (RuntimeException e) {
+      for (Pending pending : batch.pending) {
+        pending.future.completeExceptionally(e);
+      }
+      return;
+    }
+    final Listener l = listener;
+    if (l != null) {
+      final List<SmsSendRequestDto> originals = new ArrayList<>(batch.pending.size());
+      for (Pending pending : batch.pending) {
+        originals.add(pending.request);
+      }
+      try {
+        l.onSent(request, originals, response);
+      } catch (RuntimeException e) {
+        log.error("Listener of coalesced request " + request.getRequestId() + " failed.", e);
+      }
+    }
+    for (Pending pending : batch.pending) {
+      pending.future.complete(new SmsSendResponseDto(pending.request,
+          response.isSuccessfullySent(), response.getExtension()));
+    }
+  }
+
+  /**
+   * A listener that is called after a combined request was sent.
+   */
+  public interface Listener {
+
+    /**
+     * Called after a combined request was sent.
+     *
+     * @param combinedRequest  the combined request
+     * @param originalRequests the original requests
+     * @param response         the response of the combined request
+     */
+    void onSent(SmsSendRequestDto combinedRequest, List<SmsSendRequestDto> originalRequests,
+        SmsSendResponseDto response);
+  }
+
+  private static class Pending {
+
+    private final SmsSendRequestDto request;
+
+    private final CompletableFuture<SmsSendResponseDto> future = new CompletableFuture<>();
+
+    private Pending(SmsSendRequestDto request) {
+      this.request = request;
+    }
+  }
+
+  private static class Batch {
+
+    private final String key;
+
+    private final SmsSendRequestDto first;
+
+    private final String separator;
+
+    private final List<Pending> pending = new ArrayList<>(4);
+
+    private final List<String> messages = new ArrayList<>(4);
+
+    private int length;
+
+    private Batch(String key, SmsSendRequestDto first, String separator) {
+      this.key = key;
+      this.first = first;
+      this.separator = separator;
+    }
+
+    private boolean fits(final String message, final int maxLength) {
+      return messages.contains(message)
+          || length + separator.length() + message.length() <= maxLength;
+    }
+
+    private void add(final Pending p, final String message) {
+      pending.add(p);
+      if (message != null && !messages.contains(message)) {
+        length += messages.isEmpty() ? message.length() : separator.length() + message.length();
+        messages.add(message);
+      }
+    }
+
+    private SmsSendRequestDto createRequest() {
+      if (pending.size() == 1) {
+        return first;
+      }
+      final SmsSendRequestDto request = new SmsSendRequestDto(first.getSender(),
+          first.getReceiver(), String.join(separator, messages), null);
+      SmsPriority priority = null;
+      for (Pending p : pending) {
+        final SmsPriority other = p.request.getPriority();
+        if (other != null && (priority == null || other.ordinal() < priority.ordinal())) {
+          priority = other;
+        }
+      }
+      request.setPriority(priority);
+      return request;
+    }
+  }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a local properties file and passes its content to a listener whenever the file is
+ * created or modified, for example to {@link AbstractSmsService#configure(Properties, String)}.
+ *
+ * <p>The file is loaded once when the watcher is started and afterwards by a daemon thread that
+ * waits on a {@link WatchService} of the parent directory. Editors often write a file in several
+ * steps, so the listener is called only if the content of the file has changed since the last
+ * load. If the file can't be read or the listener rejects the content, the error is logged and
+ * the listener keeps its previous state.
+ *
+ * <p>A watcher of a sms service applies each load to the configuration that the service had when
+ * the watcher was started, so a key that is removed from the file gets its previous value again.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ConfigurationFileWatcher implements Closeable {
+
+  /**
+   * The default time to wait for more events before the file is loaded.
+   */
+  public static final long DEFAULT_SETTLE_MILLIS = 100L;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Path file;
+
+  private final Consumer<Properties> listener;
+
+  private final LongAdder reloads = new LongAdder();
+
+  private final LongAdder failures = new LongAdder();
+
+  private long settleMillis = DEFAULT_SETTLE_MILLIS;
+
+  private byte[] lastContent;
+
+  private WatchService watchService;
+
+  private Thread watcher;
+
+  private volatile boolean running;
+
+  /**
+   * Instantiates a new configuration file watcher that configures the given sms service. The
+   * properties of the file are applied to the configuration that the service has when the watcher
+   * is started.
+   *
+   * @param file       the properties file
+   * @param smsService the sms service
+   * @param prefix     the prefix of the property keys (can be {@code null})
+   */
+  public ConfigurationFileWatcher(Path file, AbstractSmsService smsService, String prefix) {
+    this(file, new ServiceConfigurer(
+        Validate.notNull(smsService, "smsService must not be null"), prefix));
+  }
+
+  /**
+   * Instantiates a new configuration file watcher.
+   *
+   * @param file     the properties file
+   * @param listener the listener that receives the loaded properties
+   */
+  public ConfigurationFileWatcher(Path file, Consumer<Properties> listener) {
+    Validate.notNull(file, "file must not be null");
+    Validate.notNull(listener, "listener must not be null");
+    this.file = file.toAbsolutePath().normalize();
+    Validate.notNull(this.file.getParent(), "file must have a parent directory");
+    this.listener = listener;
+  }
+
+  /**
+   * Sets the time to wait for more events before the file is loaded.
+   *
+   * @param settleMillis the time in milliseconds
+   */
+  public void setSettleMillis(long settleMillis) {
+    Validate.isTrue(settleMillis >= 0L, "settleMillis must not be negative");
+    this.settleMillis = settleMillis;
+  }
+
+  /**
+   * Gets the watched file.
+   *
+   * @return the watched file
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the number of successful loads.
+   *
+   * @return the number of successful loads
+   */
+  public long getReloadCount() {
+    return reloads.sum();
+  }
+
+  /**
+   * Gets the number of failed loads.
+   *
+   * @return the number of failed loads
+   */
+  public long getFailureCount() {
+    return failures.sum();
+  }
+
+  /**
+   * Determines whether the watcher is running.
+   *
+   * @return {@code true} if the watcher is running, otherwise {@code false}
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Loads the file (if it exists) and starts watching it.
+   *
+   * @throws IOException if the directory of the file can't be watched
+   */
+  public synchronized void start() throws IOException {
+    if (running) {
+      return;
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    try {
+      file.getParent().register(watchService,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException e) {
+      watchService.close();
+      watchService = null;
+      throw e;
+    }
+    running = true;
+    lastContent = null;
+    if (listener instanceof ServiceConfigurer) {
+      ((ServiceConfigurer) listener).captureBase();
+    }
+    reload();
+    watcher = new Thread(this::watch,
+        "sms-configuration-watcher-" + THREAD_COUNTER.incrementAndGet());
+    watcher.setDaemon(true);
+    watcher.start();
+    log.info("Watching configuration file {}", file);
+  }
+
+  /**
+   * Stops watching the file.
+   */
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.warn("Closing watch service failed.", e);
+      }
+      thread = watcher;
+      thread.interrupt();
+      watcher = null;
+      watchService = null;
+    }
+    // the watcher thread may wait for the lock in reload(), so it is joined without the lock
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(5L));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void watch() {
+    final Path fileName = file.getFileName();
+    final WatchService watchService = this.watchService;
+    while (running) {
+      final WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      boolean changed = false;
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+            || fileName.equals(event.context())) {
+          changed = true;
+        }
+      }
+      key.reset();
+      if (changed) {
+        try {
+          Thread.sleep(settleMillis);
+        } catch (InterruptedException e) {
+          return;
+        }
+        reload();
+      }
+    }
+  }
+
+  /**
+   * Loads the file and passes its content to the listener, if the file has been changed since
+   * the last load. Nothing is loaded, if the watcher is not running.
+   *
+   * @return {@code true} if the listener has accepted new properties, otherwise {@code false}
+   */
+  public synchronized boolean reload() {
+    if (!running) {
+      return false;
+    }
+    try {
+      if (!Files.isRegularFile(file)) {
+        return false;
+      }
+      final byte[] content = Files.readAllBytes(file);
+      if (Arrays.equals(content, lastContent)) {
+        return false;
+      }
+      final Properties properties = new Properties();
+      try (InputStream in = new ByteArrayInputStream(content)) {
+        properties.load(in);
+      }
+      listener.accept(properties);
+      lastContent = content;
+      reloads.increment();
+      return true;
+
+    } catch (IOException | RuntimeException e) {
+      failures.increment();
+      log.error("Loading configuration file " + file + " failed; keeping current configuration.",
+          e);
+      return false;
+    }
+  }
+
+  /**
+   * Applies the properties to the configuration that the sms service had when the watcher was
+   * started.
+   */
+  private static final class ServiceConfigurer implements Consumer<Properties> {
+
+    private final AbstractSmsService smsService;
+
+    private final String prefix;
+
+    private volatile SmsServiceConfiguration base;
+
+    private ServiceConfigurer(AbstractSmsService smsService, String prefix) {
+      this.smsService = smsService;
+      this.prefix = prefix;
+    }
+
+    private void captureBase() {
+      base = smsService.getConfiguration();
+    }
+
+    @Override
+    public void accept(final Properties properties) {
+      smsService.setConfiguration(base.withProperties(properties, prefix));
+    }
+  }
+
+}
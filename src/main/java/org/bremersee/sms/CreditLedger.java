@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A lock-free ledger of the credit (the number of message parts that can be sent) of a gateway
+ * account.
+ *
+ * <p>Before a SMS is sent, the expected number of parts is reserved. After sending, the
+ * reservation is committed with the number of parts the gateway has actually charged or released
+ * if sending failed. Balances reported by the gateway replace the locally calculated balance.
+ *
+ * <p>The available and the reserved credit are kept in one immutable state, that is replaced by
+ * compare and set, so that a reported balance never misses a reservation in flight.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class CreditLedger {
+
+  private final AtomicReference<State> state;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final Object monitor = new Object();
+
+  /**
+   * Instantiates a new credit ledger.
+   *
+   * @param balance the initial balance
+   */
+  public CreditLedger(long balance) {
+    this.state = new AtomicReference<>(new State(balance, 0L));
+  }
+
+  /**
+   * Returns the credit that is available for new reservations.
+   *
+   * @return the available credit
+   */
+  public long getAvailable() {
+    return state.get().available;
+  }
+
+  /**
+   * Returns the credit that is reserved by sends in flight.
+   *
+   * @return the reserved credit
+   */
+  public long getReserved() {
+    return state.get().reserved;
+  }
+
+  /**
+   * Tries to reserve the specified credit.
+   *
+   * @param units the credit to reserve
+   * @return the reservation or {@code null} if the available credit is not sufficient
+   */
+  public Reservation tryReserve(final long units) {
+    Validate.isTrue(units >= 0L, "units must not be negative");
+    State current;
+    do {
+      current = state.get();
+      if (current.available < units) {
+        return null;
+      }
+    } while (!state.compareAndSet(current,
+        new State(current.available - units, current.reserved + units)));
+    return new Reservation(units);
+  }
+
+  /**
+   * Reserves the specified credit. If the available credit is not sufficient, the current thread
+   * waits until other reservations are released or the balance is increased.
+   *
+   * @param units   the credit to reserve
+   * @param timeout the maximum time to wait
+   * @param unit    the time unit of the timeout
+   * @return the reservation or {@code null} if the credit is still not sufficient after the
+   *     timeout
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  public Reservation reserve(final long units, final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+
+    Reservation reservation = tryReserve(units);
+    if (reservation != null || timeout <= 0L) {
+      return reservation;
+    }
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    waiting.incrementAndGet();
+    try {
+      synchronized (monitor) {
+        while ((reservation = tryReserve(units)) == null) {
+          final long remaining = deadline - System.nanoTime();
+          if (remaining <= 0L) {
+            return null;
+          }
+          TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+        }
+        return reservation;
+      }
+    } finally {
+      waiting.decrementAndGet();
+    }
+  }
+
+  /**
+   * Commits the reservation with the credit that was actually charged. The difference to the
+   * reserved credit is returned to or taken from the available credit.
+   *
+   * @param reservation  the reservation
+   * @param chargedUnits the charged credit
+   */
+  public void commit(final Reservation reservation, final long chargedUnits) {
+    if (reservation != null && reservation.settled.compareAndSet(false, true)) {
+      final long difference = reservation.units - chargedUnits;
+      State current;
+      do {
+        current = state.get();
+      } while (!state.compareAndSet(current,
+          new State(current.available + difference, current.reserved - reservation.units)));
+      if (difference > 0L) {
+        signalWaiting();
+      }
+    }
+  }
+
+  /**
+   * Releases the reservation without charging anything.
+   *
+   * @param reservation the reservation
+   */
+  public void release(final Reservation reservation) {
+    commit(reservation, 0L);
+  }
+
+  /**
+   * Adds credit to the available credit.
+   *
+   * @param units the credit to add
+   */
+  public void deposit(final long units) {
+    Validate.isTrue(units >= 0L, "units must not be negative");
+    State current;
+    do {
+      current = state.get();
+    } while (!state.compareAndSet(current,
+        new State(current.available + units, current.reserved)));
+    signalWaiting();
+  }
+
+  /**
+   * Replaces the balance with the balance that was reported by the gateway. The credit that is
+   * currently reserved by sends in flight is subtracted from the reported balance.
+   *
+   * @param reportedBalance the balance that was reported by the gateway
+   */
+  public void updateBalance(final long reportedBalance) {
+    State current;
+    State next;
+    do {
+      current = state.get();
+      next = new State(reportedBalance - current.reserved, current.reserved);
+    } while (!state.compareAndSet(current, next));
+    if (next.available > current.available) {
+      signalWaiting();
+    }
+  }
+
+  private void signalWaiting() {
+    if (waiting.get() > 0) {
+      synchronized (monitor) {
+        monitor.notifyAll();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    final State current = state.get();
+    return "CreditLedger {"
+        + "available=" + current.available
+        + ", reserved=" + current.reserved
+        + '}';
+  }
+
+  /**
+   * The available and the reserved credit.
+   */
+  private static final class State {
+
+    private final long available;
+
+    private final long reserved;
+
+    private State(long available, long reserved) {
+      this.available = available;
+      this.reserved = reserved;
+    }
+  }
+
+  /**
+   * A reservation of credit.
+   */
+  public static final class Reservation {
+
+    private final long units;
+
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    private Reservation(long units) {
+      this.units = units;
+    }
+
+    /**
+     * Returns the reserved credit.
+     *
+     * @return the reserved credit
+     */
+    public long getUnits() {
+      return units;
+    }
+
+    /**
+     * Returns {@code true} if the reservation was committed or released, otherwise {@code
+     * false}.
+     *
+     * @return {@code true} if the reservation was committed or released, otherwise {@code false}
+     */
+    public boolean isSettled() {
+      return settled.get();
+    }
+  }
+
+}
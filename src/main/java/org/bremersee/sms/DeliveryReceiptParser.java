@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Parses delivery receipts in the {@code application/x-www-form-urlencoded} format directly from
+ * a byte array.
+ *
+ * <p>One receipt consists of the message id parameter and the status parameter, for example
+ * {@code msgid=4711&status=DELIVERED}. Several receipts may be separated by line breaks. The
+ * parser does not create intermediate strings: parameter names and status values are matched on
+ * the bytes, only the message id is turned into a string.
+ *
+ * <p>A receipt whose status is not recognized (or is {@link DeliveryStatus#UNKNOWN}) is skipped,
+ * so that it never overwrites a known status; it is reported to {@link
+ * DeliveryReceiptConsumer#skip(String)}.
+ *
+ * <p>Instances are immutable and thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DeliveryReceiptParser {
+
+  /**
+   * The default name of the message id parameter.
+   */
+  public static final String DEFAULT_MESSAGE_ID_PARAMETER = "msgid";
+
+  /**
+   * The default name of the status parameter.
+   */
+  public static final String DEFAULT_STATUS_PARAMETER = "status";
+
+  private static final DeliveryStatus[] STATUS_VALUES = DeliveryStatus.values();
+
+  private static final byte[][] STATUS_NAMES = new byte[STATUS_VALUES.length][];
+
+  static {
+    for (int i = 0; i < STATUS_VALUES.length; i++) {
+      STATUS_NAMES[i] = STATUS_VALUES[i].name().getBytes(StandardCharsets.US_ASCII);
+    }
+  }
+
+  private final byte[] messageIdParameter;
+
+  private final byte[] statusParameter;
+
+  /**
+   * Instantiates a new delivery receipt parser with the default parameter names.
+   */
+  public DeliveryReceiptParser() {
+    this(DEFAULT_MESSAGE_ID_PARAMETER, DEFAULT_STATUS_PARAMETER);
+  }
+
+  /**
+   * Instantiates a new delivery receipt parser.
+   *
+   * @param messageIdParameter the name of the message id parameter
+   * @param statusParameter    the name of the status parameter
+   */
+  public DeliveryReceiptParser(String messageIdParameter, String statusParameter) {
+    Validate.notBlank(messageIdParameter, "messageIdParameter must not be null or blank");
+    Validate.notBlank(statusParameter, "statusParameter must not be null or blank");
+    this.messageIdParameter = messageIdParameter.getBytes(StandardCharsets.US_ASCII);
+    this.statusParameter = statusParameter.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Parses the receipts of the specified bytes.
+   *
+   * @param bytes    the bytes
+   * @param offset   the offset
+   * @param length   the length
+   * @param consumer the consumer of the parsed receipts
+   * @return the number of parsed receipts (without the skipped ones)
+   */
+  public int parse(final byte[] bytes, final int offset, final int length,
+      final DeliveryReceiptConsumer consumer) {
+
+    final int end = offset + length;
+    int count = 0;
+    int lineStart = offset;
+    while (lineStart < end) {
+      int lineEnd = lineStart;
+      while (lineEnd < end && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') {
+        lineEnd++;
+      }
+      if (parseReceipt(bytes, lineStart, lineEnd, consumer)) {
+        count++;
+      }
+      lineStart = lineEnd + 1;
+    }
+    return count;
+  }
+
+  private boolean parseReceipt(final byte[] bytes, final int start, final int end,
+      final DeliveryReceiptConsumer consumer) {
+
+    String messageId = null;
+    DeliveryStatus status = null;
+    boolean hasStatus = false;
+    int pairStart = start;
+    while (pairStart < end) {
+      int pairEnd = pairStart;
+      int separator = -1;
+      while (pairEnd < end && bytes[pairEnd] != '&') {
+        if (separator < 0 && bytes[pairEnd] == '=') {
+          separator = pairEnd;
+        }
+        pairEnd++;
+      }
+      if (separator > pairStart) {
+        if (equalsAscii(bytes, pairStart, separator, messageIdParameter)) {
+          messageId = decode(bytes, separator + 1, pairEnd);
+        } else if (equalsAscii(bytes, pairStart, separator, statusParameter)) {
+          status = parseStatus(bytes, separator + 1, pairEnd);
+          hasStatus = true;
+        }
+      }
+      pairStart = pairEnd + 1;
+    }
+    if (messageId == null || messageId.isEmpty()) {
+      return false;
+    }
+    if (status != null) {
+      consumer.accept(messageId, status);
+      return true;
+    }
+    if (hasStatus) {
+      consumer.skip(messageId);
+    }
+    return false;
+  }
+
+  private static boolean equalsAscii(final byte[] bytes, final int start, final int end,
+      final byte[] expected) {
+
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (bytes[start + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean equalsIgnoreCaseAscii(final byte[] bytes, final int start,
+      final int end, final byte[] expected) {
+
+    if (end - start != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      int b = bytes[start + i];
+      if (b >= 'a' && b <= 'z') {
+        b -= 32;
+      } else if (b == '+' || b == '-' || b == ' ') {
+        b = '_';
+      }
+      if (b != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the status from its numeric code or from its name (case insensitive, blanks and
+   * dashes may be used instead of underscores, blanks may be encoded as {@code +} or {@code %20}).
+   * Returns null, if the status is not recognized or unknown.
+   */
+  private static DeliveryStatus parseStatus(final byte[] bytes, final int start, final int end) {
+    if (start == end) {
+      return null;
+    }
+    for (int i = start; i < end; i++) {
+      if (bytes[i] == '%') {
+        final byte[] decoded = decode(bytes, start, end).getBytes(StandardCharsets.UTF_8);
+        return parseDecodedStatus(decoded, 0, decoded.length);
+      }
+    }
+    return parseDecodedStatus(bytes, start, end);
+  }
+
+  private static DeliveryStatus parseDecodedStatus(final byte[] bytes, final int start,
+      final int end) {
+
+    int code = 0;
+    boolean numeric = end - start <= 2;
+    for (int i = start; numeric && i < end; i++) {
+      if (bytes[i] < '0' || bytes[i] > '9') {
+        numeric = false;
+      } else {
+        code = code * 10 + (bytes[i] - '0');
+      }
+    }
+    if (numeric) {
+      return code > 0 && code < STATUS_VALUES.length ? STATUS_VALUES[code] : null;
+    }
+    // the first value is UNKNOWN
+    for (int i = 1; i < STATUS_NAMES.length; i++) {
+      if (equalsIgnoreCaseAscii(bytes, start, end, STATUS_NAMES[i])) {
+        return STATUS_VALUES[i];
+      }
+    }
+    return null;
+  }
+
+  private static String decode(final byte[] bytes, final int start, final int end) {
+    boolean plain = true;
+    for (int i = start; plain && i < end; i++) {
+      plain = bytes[i] != '%' && bytes[i] != '+';
+    }
+    if (plain) {
+      return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+    final byte[] decoded = new byte[end - start];
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = bytes[i];
+      if (b == '+') {
+        decoded[length++] = ' ';
+      } else if (b == '%' && i + 2 < end) {
+        final int high = Character.digit(bytes[i + 1], 16);
+        final int low = Character.digit(bytes[i + 2], 16);
+        if (high < 0 || low < 0) {
+          decoded[length++] = b;
+        } else {
+          decoded[length++] = (byte) ((high << 4) | low);
+          i += 2;
+        }
+      } else {
+        decoded[length++] = b;
+      }
+    }
+    return new String(decoded, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Consumer of parsed delivery receipts.
+   */
+  @FunctionalInterface
+  public interface DeliveryReceiptConsumer {
+
+    /**
+     * Accepts a parsed delivery receipt.
+     *
+     * @param messageId the message id of the gateway
+     * @param status    the delivery status
+     */
+    void accept(String messageId, DeliveryStatus status);
+
+    /**
+     * Is called for a receipt whose status is not recognized. The default implementation does
+     * nothing.
+     *
+     * @param messageId the message id of the gateway
+     */
+    default void skip(String messageId) {
+    }
+  }
+
+}
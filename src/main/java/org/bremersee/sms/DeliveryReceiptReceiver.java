@@ -0,0 +1,436 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An embedded HTTP endpoint (based on the HTTP server of the JDK) that receives delivery receipt
+ * callbacks of the gateway and applies them in batches to a {@link DeliveryStatusStore}.
+ *
+ * <p>The receipts can be sent as query parameters of a GET request or in the body of a POST
+ * request, see {@link DeliveryReceiptParser}. Received receipts are put into a bounded queue, so
+ * the callback is answered without waiting for the store. A single applier thread drains the
+ * queue and applies everything it finds with one write operation. If the queue is full, the
+ * callback is answered with status code 503 and the gateway is expected to retry it.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DeliveryReceiptReceiver implements Closeable {
+
+  /**
+   * The default context path of the endpoint.
+   */
+  public static final String DEFAULT_PATH = "/sms/delivery-receipts";
+
+  /**
+   * The default capacity of the queue.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+  /**
+   * The default maximum number of receipts that are applied at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  /**
+   * The default number of threads that handle the HTTP requests.
+   */
+  public static final int DEFAULT_HANDLER_THREADS = 4;
+
+  /**
+   * The default maximum size of a request body in bytes.
+   */
+  public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final DeliveryStatusStore store;
+
+  private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+  private final LongAdder received = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder applied = new LongAdder();
+
+  private final LongAdder skipped = new LongAdder();
+
+  private InetSocketAddress address = new InetSocketAddress(0);
+
+  private String path = DEFAULT_PATH;
+
+  private DeliveryReceiptParser parser = new DeliveryReceiptParser();
+
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private int handlerThreads = DEFAULT_HANDLER_THREADS;
+
+  private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+  private BlockingQueue<Receipt> queue;
+
+  private HttpServer server;
+
+  private ExecutorService handlerExecutor;
+
+  private Thread applier;
+
+  private volatile boolean running;
+
+  /**
+   * Instantiates a new delivery receipt receiver.
+   *
+   * @param store the store the receipts are applied to
+   */
+  public DeliveryReceiptReceiver(DeliveryStatusStore store) {
+    Validate.notNull(store, "store must not be null");
+    this.store = store;
+  }
+
+  /**
+   * Sets the address the server is bound to (default is a random port on all interfaces).
+   *
+   * @param address the address
+   */
+  public void setAddress(InetSocketAddress address) {
+    Validate.notNull(address, "address must not be null");
+    this.address = address;
+  }
+
+  /**
+   * Sets the context path of the endpoint.
+   *
+   * @param path the context path
+   */
+  public void setPath(String path) {
+    Validate.notBlank(path, "path must not be null or blank");
+    this.path = path;
+  }
+
+  /**
+   * Sets the parser.
+   *
+   * @param parser the parser
+   */
+  public void setParser(DeliveryReceiptParser parser) {
+    Validate.notNull(parser, "parser must not be null");
+    this.parser = parser;
+  }
+
+  /**
+   * Sets the capacity of the queue.
+   *
+   * @param queueCapacity the capacity of the queue
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    Validate.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Sets the maximum number of receipts that are applied at once.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Sets the number of threads that handle the HTTP requests.
+   *
+   * @param handlerThreads the number of threads
+   */
+  public void setHandlerThreads(int handlerThreads) {
+    Validate.isTrue(handlerThreads > 0, "handlerThreads must be greater than 0");
+    this.handlerThreads = handlerThreads;
+  }
+
+  /**
+   * Sets the maximum size of a request body in bytes.
+   *
+   * @param maxBodySize the maximum size of a request body
+   */
+  public void setMaxBodySize(int maxBodySize) {
+    Validate.isTrue(maxBodySize > 0, "maxBodySize must be greater than 0");
+    this.maxBodySize = maxBodySize;
+  }
+
+  /**
+   * Returns the port the server is bound to.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    Validate.validState(server != null, "Receiver is not started.");
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Returns the number of received receipts.
+   *
+   * @return the number of received receipts
+   */
+  public long getReceivedCount() {
+    return received.sum();
+  }
+
+  /**
+   * Returns the number of receipts that were rejected because the queue was full.
+   *
+   * @return the number of rejected receipts
+   */
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * Returns the number of receipts that were skipped because their status was not recognized.
+   *
+   * @return the number of skipped receipts
+   */
+  public long getSkippedCount() {
+    return skipped.sum();
+  }
+
+  /**
+   * Returns the number of receipts that were applied to the store.
+   *
+   * @return the number of applied receipts
+   */
+  public long getAppliedCount() {
+    return applied.sum();
+  }
+
+  /**
+   * Returns the number of receipts that wait to be applied.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    final BlockingQueue<Receipt> q = queue;
+    return q != null ? q.size() : 0;
+  }
+
+  /**
+   * Starts the server and the applier thread.
+   *
+   * @throws IOException if the server cannot be started
+   */
+  public synchronized void start() throws IOException {
+    Validate.validState(server == null, "Receiver is already started.");
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    running = true;
+    applier = new Thread(this::applyReceipts,
+        "sms-delivery-receipt-applier-" + THREAD_COUNTER.incrementAndGet());
+    applier.setDaemon(true);
+    applier.start();
+    handlerExecutor = Executors.newFixedThreadPool(handlerThreads, runnable -> {
+      Thread thread = new Thread(runnable,
+          "sms-delivery-receipt-handler-" + THREAD_COUNTER.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    server = HttpServer.create(address, 0);
+    server.createContext(path, this::handle);
+    server.setExecutor(handlerExecutor);
+    server.start();
+    log.info("Delivery receipt receiver is listening on port {} with path {}", getPort(), path);
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    try {
+      final String method = exchange.getRequestMethod();
+      if (!"GET".equalsIgnoreCase(method) && !"POST".equalsIgnoreCase(method)) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      final Enqueuer enqueuer = new Enqueuer();
+      final String query = exchange.getRequestURI().getRawQuery();
+      if (query != null) {
+        final byte[] queryBytes = query.getBytes(StandardCharsets.US_ASCII);
+        parser.parse(queryBytes, 0, queryBytes.length, enqueuer);
+      }
+      final int length = readBody(exchange.getRequestBody());
+      if (length < 0) {
+        exchange.sendResponseHeaders(413, -1);
+        return;
+      }
+      if (length > 0) {
+        parser.parse(buffers.get(), 0, length, enqueuer);
+      }
+      if (enqueuer.full) {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, -1);
+      } else {
+        exchange.sendResponseHeaders(enqueuer.count > 0 || enqueuer.skipped > 0 ? 200 : 400, -1);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /*
+   * Reads the body into the buffer of the current thread and returns its length or -1 if it is
+   * too large.
+   */
+  private int readBody(final InputStream in) throws IOException {
+    byte[] buffer = buffers.get();
+    if (buffer == null) {
+      buffer = new byte[Math.min(4096, maxBodySize)];
+      buffers.set(buffer);
+    }
+    int length = 0;
+    int read;
+    while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+      length += read;
+      if (length == buffer.length) {
+        if (buffer.length >= maxBodySize) {
+          return in.read() < 0 ? length : -1;
+        }
+        final byte[] larger = new byte[Math.min(buffer.length * 2, maxBodySize)];
+        System.arraycopy(buffer, 0, larger, 0, length);
+        buffer = larger;
+        buffers.set(buffer);
+      }
+    }
+    return length;
+  }
+
+  private void applyReceipts() {
+    final List<Receipt> batch = new ArrayList<>(batchSize);
+    final String[] messageIds = new String[batchSize];
+    final DeliveryStatus[] status = new DeliveryStatus[batchSize];
+    while (running || !queue.isEmpty()) {
+      try {
+        final Receipt first = queue.poll(100L, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        final int size = batch.size();
+        for (int i = 0; i < size; i++) {
+          final Receipt receipt = batch.get(i);
+          messageIds[i] = receipt.messageId;
+          status[i] = receipt.status;
+        }
+        store.updateAll(messageIds, status, size);
+        applied.add(size);
+        batch.clear();
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+
+      } catch (RuntimeException e) {
+        log.error("Applying delivery receipts failed.", e);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Stops the server and applies the remaining receipts.
+   */
+  @Override
+  public synchronized void close() {
+    if (server == null) {
+      return;
+    }
+    server.stop(0);
+    handlerExecutor.shutdown();
+    running = false;
+    try {
+      applier.join(10000L);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server = null;
+    handlerExecutor = null;
+    applier = null;
+  }
+
+  private class Enqueuer implements DeliveryReceiptParser.DeliveryReceiptConsumer {
+
+    private int count;
+
+    private int skipped;
+
+    private boolean full;
+
+    @Override
+    public void accept(final String messageId, final DeliveryStatus status) {
+      received.increment();
+      if (full || !queue.offer(new Receipt(messageId, status))) {
+        full = true;
+        rejected.increment();
+      } else {
+        count++;
+      }
+    }
+
+    @Override
+    public void skip(final String messageId) {
+      skipped++;
+      DeliveryReceiptReceiver.this.skipped.increment();
+      log.debug("Status of delivery receipt of message {} is not recognized.", messageId);
+    }
+  }
+
+  private static final class Receipt {
+
+    private final String messageId;
+
+    private final DeliveryStatus status;
+
+    private Receipt(String messageId, DeliveryStatus status) {
+      this.messageId = messageId;
+      this.status = status;
+    }
+  }
+
+}
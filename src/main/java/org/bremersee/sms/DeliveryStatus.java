@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The delivery status of a SMS.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings("unused")
+public enum DeliveryStatus {
+
+  /**
+   * The status is not known.
+   */
+  UNKNOWN(false),
+
+  /**
+   * The SMS was accepted by the gateway.
+   */
+  ACCEPTED(false),
+
+  /**
+   * The SMS is buffered by the gateway or the network.
+   */
+  BUFFERED(false),
+
+  /**
+   * The SMS was delivered to the receiver.
+   */
+  DELIVERED(true),
+
+  /**
+   * The SMS could not be delivered to the receiver.
+   */
+  NOT_DELIVERED(true),
+
+  /**
+   * The SMS expired before it could be delivered.
+   */
+  EXPIRED(true),
+
+  /**
+   * The SMS was rejected by the gateway.
+   */
+  REJECTED(true);
+
+  private static final DeliveryStatus[] VALUES = values();
+
+  private final boolean finalStatus;
+
+  DeliveryStatus(boolean finalStatus) {
+    this.finalStatus = finalStatus;
+  }
+
+  /**
+   * Returns {@code true} if this status will not change anymore, otherwise {@code false}.
+   *
+   * @return {@code true} if this status will not change anymore, otherwise {@code false}
+   */
+  public boolean isFinal() {
+    return finalStatus;
+  }
+
+  /**
+   * Returns the compact code of this status.
+   *
+   * @return the code
+   */
+  public byte toCode() {
+    return (byte) ordinal();
+  }
+
+  /**
+   * Returns the status of the compact code.
+   *
+   * @param code the code
+   * @return the status ({@link #UNKNOWN} if the code is not valid)
+   */
+  public static DeliveryStatus fromCode(int code) {
+    return code >= 0 && code < VALUES.length ? VALUES[code] : UNKNOWN;
+  }
+
+  /**
+   * Parses the status from its name or from its numeric code.
+   *
+   * @param value the name (case insensitive) or numeric code
+   * @return the status ({@link #UNKNOWN} if the value cannot be parsed)
+   */
+  public static DeliveryStatus fromValue(final String value) {
+    if (StringUtils.isBlank(value)) {
+      return UNKNOWN;
+    }
+    final String trimmed = value.trim();
+    if (StringUtils.isNumeric(trimmed) && trimmed.length() < 3) {
+      return fromCode(Integer.parseInt(trimmed));
+    }
+    for (DeliveryStatus status : VALUES) {
+      if (status.name().equalsIgnoreCase(trimmed)) {
+        return status;
+      }
+    }
+    return UNKNOWN;
+  }
+
+}
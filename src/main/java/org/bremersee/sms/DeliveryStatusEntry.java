@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Objects;
+
+/**
+ * A snapshot of an entry of the {@link DeliveryStatusStore}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class DeliveryStatusEntry {
+
+  private final String requestId;
+
+  private final String messageId;
+
+  private final DeliveryStatus status;
+
+  private final long lastModified;
+
+  /**
+   * Instantiates a new delivery status entry.
+   *
+   * @param requestId    the request id
+   * @param messageId    the message id of the gateway (can be {@code null})
+   * @param status       the status
+   * @param lastModified the time of the last modification in milliseconds since epoch
+   */
+  public DeliveryStatusEntry(String requestId, String messageId, DeliveryStatus status,
+      long lastModified) {
+    this.requestId = requestId;
+    this.messageId = messageId;
+    this.status = status;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Gets the request id.
+   *
+   * @return the request id
+   */
+  public String getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * Gets the message id of the gateway.
+   *
+   * @return the message id (can be {@code null})
+   */
+  public String getMessageId() {
+    return messageId;
+  }
+
+  /**
+   * Gets the status.
+   *
+   * @return the status
+   */
+  public DeliveryStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * Gets the time of the last modification in milliseconds since epoch.
+   *
+   * @return the time of the last modification
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public String toString() {
+    return "DeliveryStatusEntry {"
+        + "requestId='" + requestId + '\''
+        + ", messageId='" + messageId + '\''
+        + ", status=" + status
+        + ", lastModified=" + lastModified
+        + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DeliveryStatusEntry)) {
+      return false;
+    }
+    DeliveryStatusEntry that = (DeliveryStatusEntry) o;
+    return lastModified == that.lastModified &&
+        Objects.equals(requestId, that.requestId) &&
+        Objects.equals(messageId, that.messageId) &&
+        status == that.status;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(requestId, messageId, status, lastModified);
+  }
+}
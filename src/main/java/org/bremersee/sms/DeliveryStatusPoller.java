@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the delivery status of all pending SMS of a {@link DeliveryStatusStore} in batches from a
+ * {@link DeliveryStatusSource}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DeliveryStatusPoller implements Closeable {
+
+  /**
+   * The default batch size.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  /**
+   * The default poll interval in milliseconds.
+   */
+  public static final long DEFAULT_INTERVAL_MILLIS = 60000L;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final DeliveryStatusStore store;
+
+  private final DeliveryStatusSource source;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * Instantiates a new delivery status poller.
+   *
+   * @param store  the store
+   * @param source the source
+   */
+  public DeliveryStatusPoller(DeliveryStatusStore store, DeliveryStatusSource source) {
+    Validate.notNull(store, "store must not be null");
+    Validate.notNull(source, "source must not be null");
+    this.store = store;
+    this.source = source;
+  }
+
+  /**
+   * Gets the maximum number of message ids that are fetched with one call of the source.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of message ids that are fetched with one call of the source.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets the poll interval in milliseconds.
+   *
+   * @return the poll interval in milliseconds
+   */
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  /**
+   * Sets the poll interval in milliseconds.
+   *
+   * @param intervalMillis the poll interval in milliseconds
+   */
+  public void setIntervalMillis(long intervalMillis) {
+    Validate.isTrue(intervalMillis > 0L, "intervalMillis must be greater than 0");
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Starts polling in the background.
+   */
+  public synchronized void start() {
+    Validate.validState(executor == null, "Poller is already started.");
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "sms-delivery-status-poller");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(() -> {
+      try {
+        pollOnce();
+      } catch (RuntimeException e) {
+        log.error("Polling delivery status failed.", e);
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Polls the status of all pending SMS once.
+   *
+   * @return the number of updated entries
+   */
+  public int pollOnce() {
+    final List<String> messageIds = new ArrayList<>(batchSize);
+    int updated = 0;
+    int position = 0;
+    do {
+      messageIds.clear();
+      position = store.collectPending(position, batchSize, messageIds);
+      if (!messageIds.isEmpty()) {
+        final Map<String, DeliveryStatus> result = source.fetchDeliveryStatus(messageIds);
+        updated += store.updateAll(result);
+      }
+    } while (!messageIds.isEmpty());
+    log.debug("Polling delivery status updated {} entries.", updated);
+    return updated;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A source (normally the gateway) that can be asked for the delivery status of many SMS at once.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+public interface DeliveryStatusSource {
+
+  /**
+   * Fetches the delivery status of the SMS with the specified message ids.
+   *
+   * @param messageIds the message ids of the gateway
+   * @return the delivery status by message id; message ids without a known status may be missing
+   * @throws SmsException if fetching of the status fails
+   */
+  Map<String, DeliveryStatus> fetchDeliveryStatus(Collection<String> messageIds);
+
+}
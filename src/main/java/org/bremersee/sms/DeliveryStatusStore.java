@@ -0,0 +1,626 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.RequestIdFormat;
+
+/**
+ * An in-memory store of the delivery status of sent SMS, indexed by the request id and by the
+ * message id of the gateway.
+ *
+ * <p>The entries are kept in column arrays instead of objects. Request ids in the canonical UUID
+ * format are stored as two longs and numeric message ids as one long, so that a typical entry
+ * occupies about 60 bytes including both open addressing indexes.
+ *
+ * <p>A final status is never replaced by a status that is not final. Updates of message ids that
+ * are not registered yet (a fast delivery receipt can arrive before the send has registered its
+ * message id) are buffered for a short time and applied when the message id is registered.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DeliveryStatusStore {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+  private static final int MAX_CAPACITY = 1 << 29;
+
+  private static final long NO_NUMBER = -1L;
+
+  private static final int NOT_FOUND = -1;
+
+  private static final int MAX_EARLY_UPDATES = 1024;
+
+  private static final long EARLY_UPDATE_MILLIS = 60000L;
+
+  private final StampedLock lock = new StampedLock();
+
+  private long[] requestHigh;
+
+  private long[] requestLow;
+
+  private String[] requestText;
+
+  private long[] messageNumber;
+
+  private String[] messageText;
+
+  private byte[] statuses;
+
+  private long[] lastModified;
+
+  private int size;
+
+  /*
+   * The indexes contain the entry position plus one, zero marks an empty slot.
+   */
+  private int[] requestIndex;
+
+  private int[] messageIndex;
+
+  /*
+   * Updates of message ids that are not registered yet, the oldest first.
+   */
+  private final LinkedHashMap<String, EarlyUpdate> earlyUpdates = new LinkedHashMap<>();
+
+  /**
+   * Default constructor.
+   */
+  public DeliveryStatusStore() {
+    this(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * Instantiates a new delivery status store with the specified initial capacity.
+   *
+   * @param initialCapacity the initial capacity
+   */
+  public DeliveryStatusStore(int initialCapacity) {
+    Validate.isTrue(initialCapacity > 0, "initialCapacity must be greater than 0");
+    final int capacity = Math.min(initialCapacity, MAX_CAPACITY);
+    allocateEntries(capacity);
+    allocateIndexes(capacity);
+  }
+
+  private void allocateEntries(final int capacity) {
+    requestHigh = new long[capacity];
+    requestLow = new long[capacity];
+    requestText = new String[capacity];
+    messageNumber = new long[capacity];
+    messageText = new String[capacity];
+    statuses = new byte[capacity];
+    lastModified = new long[capacity];
+  }
+
+  private void allocateIndexes(final int entryCapacity) {
+    final int tableSize = Integer.highestOneBit(Math.max(entryCapacity, 8) * 2 - 1) << 1;
+    requestIndex = new int[tableSize];
+    messageIndex = new int[tableSize];
+  }
+
+  /**
+   * Returns the number of entries.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    final long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Registers a sent SMS or updates an already registered one. A final status is never replaced
+   * by a status that is not final; a buffered update of the message id is applied.
+   *
+   * @param requestId the request id
+   * @param messageId the message id of the gateway (can be {@code null})
+   * @param status    the status
+   */
+  public void register(final String requestId, final String messageId,
+      final DeliveryStatus status) {
+
+    Validate.notNull(requestId, "requestId must not be null");
+    Validate.notNull(status, "status must not be null");
+    final long now = System.currentTimeMillis();
+    final long stamp = lock.writeLock();
+    try {
+      int entry = findRequest(requestId);
+      if (entry == NOT_FOUND) {
+        entry = append(requestId);
+        statuses[entry] = status.toCode();
+        lastModified[entry] = now;
+      } else {
+        updateEntry(entry, status, now);
+      }
+      if (messageId != null && !hasMessageId(entry)) {
+        setMessageId(entry, messageId);
+        insert(messageIndex, messageHash(messageId), entry);
+        final EarlyUpdate early = earlyUpdates.remove(messageId);
+        if (early != null && now - early.received <= EARLY_UPDATE_MILLIS) {
+          updateEntry(entry, early.status, now);
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Updates the status of the SMS with the specified message id. A final status is never
+   * replaced by a status that is not final. If the message id is not registered yet, the update
+   * is buffered for a short time.
+   *
+   * @param messageId the message id of the gateway
+   * @param status    the new status
+   * @return {@code true} if the status was updated, otherwise {@code false} (also if it was
+   *     buffered)
+   */
+  public boolean update(final String messageId, final DeliveryStatus status) {
+    Validate.notNull(status, "status must not be null");
+    if (messageId == null) {
+      return false;
+    }
+    final long now = System.currentTimeMillis();
+    final long stamp = lock.writeLock();
+    try {
+      return updateMessage(messageId, status, now);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Updates the status of many SMS at once.
+   *
+   * @param statusByMessageId the new status by message id
+   * @return the number of updated entries
+   */
+  public int updateAll(final Map<String, DeliveryStatus> statusByMessageId) {
+    if (statusByMessageId == null || statusByMessageId.isEmpty()) {
+      return 0;
+    }
+    final long now = System.currentTimeMillis();
+    int count = 0;
+    final long stamp = lock.writeLock();
+    try {
+      for (Map.Entry<String, DeliveryStatus> e : statusByMessageId.entrySet()) {
+        if (e.getKey() != null && e.getValue() != null
+            && updateMessage(e.getKey(), e.getValue(), now)) {
+          count++;
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    return count;
+  }
+
+  /**
+   * Updates the status of many SMS at once. The message ids and the status values are taken
+   * pairwise from the arrays.
+   *
+   * @param messageIds the message ids
+   * @param status     the new status values
+   * @param length     the number of pairs to apply
+   * @return the number of updated entries
+   */
+  public int updateAll(final String[] messageIds, final DeliveryStatus[] status,
+      final int length) {
+
+    Validate.isTrue(length <= messageIds.length && length <= status.length,
+        "length must not be greater than the arrays");
+    final long now = System.currentTimeMillis();
+    int count = 0;
+    final long stamp = lock.writeLock();
+    try {
+      for (int i = 0; i < length; i++) {
+        if (messageIds[i] != null && status[i] != null
+            && updateMessage(messageIds[i], status[i], now)) {
+          count++;
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    return count;
+  }
+
+  private boolean updateMessage(final String messageId, final DeliveryStatus status,
+      final long now) {
+
+    final int entry = findMessage(messageId);
+    if (entry == NOT_FOUND) {
+      bufferEarlyUpdate(messageId, status, now);
+      return false;
+    }
+    return updateEntry(entry, status, now);
+  }
+
+  private void bufferEarlyUpdate(final String messageId, final DeliveryStatus status,
+      final long now) {
+
+    final Iterator<EarlyUpdate> iterator = earlyUpdates.values().iterator();
+    while (iterator.hasNext()) {
+      final EarlyUpdate oldest = iterator.next();
+      if (earlyUpdates.size() < MAX_EARLY_UPDATES && now - oldest.received <= EARLY_UPDATE_MILLIS) {
+        break;
+      }
+      iterator.remove();
+    }
+    final EarlyUpdate existing = earlyUpdates.get(messageId);
+    if (existing == null || !existing.status.isFinal() || status.isFinal()) {
+      earlyUpdates.put(messageId, new EarlyUpdate(status, now));
+    }
+  }
+
+  private boolean updateEntry(final int entry, final DeliveryStatus status, final long now) {
+    if (entry == NOT_FOUND) {
+      return false;
+    }
+    if (DeliveryStatus.fromCode(statuses[entry]).isFinal() && !status.isFinal()) {
+      return false;
+    }
+    statuses[entry] = status.toCode();
+    lastModified[entry] = now;
+    return true;
+  }
+
+  /**
+   * Returns the status of the SMS with the specified request id.
+   *
+   * @param requestId the request id
+   * @return the status ({@link DeliveryStatus#UNKNOWN} if there is no such SMS)
+   */
+  public DeliveryStatus getStatusByRequestId(final String requestId) {
+    if (requestId == null) {
+      return DeliveryStatus.UNKNOWN;
+    }
+    final long stamp = lock.readLock();
+    try {
+      final int entry = findRequest(requestId);
+      return entry == NOT_FOUND ? DeliveryStatus.UNKNOWN : DeliveryStatus.fromCode(statuses[entry]);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the status of the SMS with the specified message id of the gateway.
+   *
+   * @param messageId the message id of the gateway
+   * @return the status ({@link DeliveryStatus#UNKNOWN} if there is no such SMS)
+   */
+  public DeliveryStatus getStatusByMessageId(final String messageId) {
+    if (messageId == null) {
+      return DeliveryStatus.UNKNOWN;
+    }
+    final long stamp = lock.readLock();
+    try {
+      final int entry = findMessage(messageId);
+      return entry == NOT_FOUND ? DeliveryStatus.UNKNOWN : DeliveryStatus.fromCode(statuses[entry]);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the entry of the SMS with the specified request id.
+   *
+   * @param requestId the request id
+   * @return the entry or {@code null} if there is no such SMS
+   */
+  public DeliveryStatusEntry findByRequestId(final String requestId) {
+    if (requestId == null) {
+      return null;
+    }
+    final long stamp = lock.readLock();
+    try {
+      return toEntry(findRequest(requestId));
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the entry of the SMS with the specified message id of the gateway.
+   *
+   * @param messageId the message id of the gateway
+   * @return the entry or {@code null} if there is no such SMS
+   */
+  public DeliveryStatusEntry findByMessageId(final String messageId) {
+    if (messageId == null) {
+      return null;
+    }
+    final long stamp = lock.readLock();
+    try {
+      return toEntry(findMessage(messageId));
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Collects the message ids of SMS whose status is not final, starting at the specified position.
+   * The returned position can be used to continue the collection.
+   *
+   * @param fromPosition the position to start with
+   * @param maxSize      the maximum number of message ids to collect
+   * @param target       the collection the message ids are added to
+   * @return the position to continue with; it is equal to or greater than {@link #size()} if all
+   *     entries were visited
+   */
+  public int collectPending(final int fromPosition, final int maxSize,
+      final Collection<String> target) {
+
+    Validate.notNull(target, "target must not be null");
+    final long stamp = lock.readLock();
+    try {
+      int position = Math.max(fromPosition, 0);
+      int collected = 0;
+      while (position < size && collected < maxSize) {
+        if (hasMessageId(position)
+            && !DeliveryStatus.fromCode(statuses[position]).isFinal()) {
+          target.add(getMessageId(position));
+          collected++;
+        }
+        position++;
+      }
+      return position;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Removes all entries with a final status that were not modified since the specified time.
+   *
+   * @param modifiedBefore the time in milliseconds since epoch
+   * @return the number of removed entries
+   */
+  public int removeFinal(final long modifiedBefore) {
+    final long stamp = lock.writeLock();
+    try {
+      int target = 0;
+      for (int source = 0; source < size; source++) {
+        final boolean remove = DeliveryStatus.fromCode(statuses[source]).isFinal()
+            && lastModified[source] < modifiedBefore;
+        if (!remove) {
+          if (target != source) {
+            move(source, target);
+          }
+          target++;
+        }
+      }
+      final int removed = size - target;
+      if (removed > 0) {
+        Arrays.fill(requestText, target, size, null);
+        Arrays.fill(messageText, target, size, null);
+        size = target;
+        reindex(requestHigh.length);
+      }
+      return removed;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void move(final int source, final int target) {
+    requestHigh[target] = requestHigh[source];
+    requestLow[target] = requestLow[source];
+    requestText[target] = requestText[source];
+    messageNumber[target] = messageNumber[source];
+    messageText[target] = messageText[source];
+    statuses[target] = statuses[source];
+    lastModified[target] = lastModified[source];
+  }
+
+  private DeliveryStatusEntry toEntry(final int entry) {
+    if (entry == NOT_FOUND) {
+      return null;
+    }
+    return new DeliveryStatusEntry(
+        getRequestId(entry),
+        hasMessageId(entry) ? getMessageId(entry) : null,
+        DeliveryStatus.fromCode(statuses[entry]),
+        lastModified[entry]);
+  }
+
+  private int append(final String requestId) {
+    if (size == requestHigh.length) {
+      grow();
+    }
+    final int entry = size++;
+    if (RequestIdFormat.isCanonicalUuid(requestId)) {
+      requestHigh[entry] = RequestIdFormat.getMostSignificantBits(requestId);
+      requestLow[entry] = RequestIdFormat.getLeastSignificantBits(requestId);
+      requestText[entry] = null;
+    } else {
+      requestHigh[entry] = 0L;
+      requestLow[entry] = 0L;
+      requestText[entry] = requestId;
+    }
+    messageNumber[entry] = NO_NUMBER;
+    messageText[entry] = null;
+    insert(requestIndex, requestHash(requestId), entry);
+    return entry;
+  }
+
+  private void grow() {
+    final int oldCapacity = requestHigh.length;
+    Validate.validState(oldCapacity < MAX_CAPACITY, "Delivery status store is full.");
+    final int newCapacity = (int) Math.min((long) oldCapacity + (oldCapacity >> 1) + 1,
+        MAX_CAPACITY);
+    requestHigh = Arrays.copyOf(requestHigh, newCapacity);
+    requestLow = Arrays.copyOf(requestLow, newCapacity);
+    requestText = Arrays.copyOf(requestText, newCapacity);
+    messageNumber = Arrays.copyOf(messageNumber, newCapacity);
+    messageText = Arrays.copyOf(messageText, newCapacity);
+    statuses = Arrays.copyOf(statuses, newCapacity);
+    lastModified = Arrays.copyOf(lastModified, newCapacity);
+    if (newCapacity * 2 > requestIndex.length) {
+      reindex(newCapacity);
+    }
+  }
+
+  private void reindex(final int entryCapacity) {
+    allocateIndexes(entryCapacity);
+    for (int entry = 0; entry < size; entry++) {
+      insert(requestIndex, requestHash(getRequestId(entry)), entry);
+      if (hasMessageId(entry)) {
+        insert(messageIndex, messageHash(getMessageId(entry)), entry);
+      }
+    }
+  }
+
+  private static void insert(final int[] index, final int hash, final int entry) {
+    final int mask = index.length - 1;
+    int slot = hash & mask;
+    while (index[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    index[slot] = entry + 1;
+  }
+
+  private int findRequest(final String requestId) {
+    final boolean uuid = RequestIdFormat.isCanonicalUuid(requestId);
+    final long high = uuid ? RequestIdFormat.getMostSignificantBits(requestId) : 0L;
+    final long low = uuid ? RequestIdFormat.getLeastSignificantBits(requestId) : 0L;
+    final int mask = requestIndex.length - 1;
+    int slot = (uuid ? mix(high * 31L + low) : mix(requestId.hashCode())) & mask;
+    int value;
+    while ((value = requestIndex[slot]) != 0) {
+      final int entry = value - 1;
+      if (uuid) {
+        if (requestText[entry] == null && requestHigh[entry] == high
+            && requestLow[entry] == low) {
+          return entry;
+        }
+      } else if (requestId.equals(requestText[entry])) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NOT_FOUND;
+  }
+
+  private int findMessage(final String messageId) {
+    final long number = parseMessageNumber(messageId);
+    final int mask = messageIndex.length - 1;
+    int slot = (number != NO_NUMBER ? mix(number) : mix(messageId.hashCode())) & mask;
+    int value;
+    while ((value = messageIndex[slot]) != 0) {
+      final int entry = value - 1;
+      if (number != NO_NUMBER) {
+        if (messageNumber[entry] == number) {
+          return entry;
+        }
+      } else if (messageId.equals(messageText[entry])) {
+        return entry;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NOT_FOUND;
+  }
+
+  private static int requestHash(final String requestId) {
+    if (RequestIdFormat.isCanonicalUuid(requestId)) {
+      return mix(RequestIdFormat.getMostSignificantBits(requestId) * 31L
+          + RequestIdFormat.getLeastSignificantBits(requestId));
+    }
+    return mix(requestId.hashCode());
+  }
+
+  private static int messageHash(final String messageId) {
+    final long number = parseMessageNumber(messageId);
+    return number != NO_NUMBER ? mix(number) : mix(messageId.hashCode());
+  }
+
+  private String getRequestId(final int entry) {
+    if (requestText[entry] != null) {
+      return requestText[entry];
+    }
+    return RequestIdFormat.format(requestHigh[entry], requestLow[entry]);
+  }
+
+  private boolean hasMessageId(final int entry) {
+    return messageNumber[entry] != NO_NUMBER || messageText[entry] != null;
+  }
+
+  private String getMessageId(final int entry) {
+    return messageText[entry] != null ? messageText[entry] : Long.toString(messageNumber[entry]);
+  }
+
+  private void setMessageId(final int entry, final String messageId) {
+    final long number = parseMessageNumber(messageId);
+    messageNumber[entry] = number;
+    messageText[entry] = number == NO_NUMBER ? messageId : null;
+  }
+
+  /*
+   * Returns the numeric value of a message id that consists of at most 18 digits without a
+   * leading zero, otherwise NO_NUMBER.
+   */
+  private static long parseMessageNumber(final String messageId) {
+    final int length = messageId.length();
+    if (length == 0 || length > 18 || (length > 1 && messageId.charAt(0) == '0')) {
+      return NO_NUMBER;
+    }
+    long result = 0L;
+    for (int i = 0; i < length; i++) {
+      final char c = messageId.charAt(i);
+      if (c < '0' || c > '9') {
+        return NO_NUMBER;
+      }
+      result = result * 10L + (c - '0');
+    }
+    return result;
+  }
+
+  private static int mix(final long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private static final class EarlyUpdate {
+
+    private final DeliveryStatus status;
+
+    private final long received;
+
+    private EarlyUpdate(DeliveryStatus status, long received) {
+      this.status = status;
+      this.received = received;
+    }
+  }
+
+}
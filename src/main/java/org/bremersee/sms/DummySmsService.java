@@ -16,16 +16,69 @@
 
 package org.bremersee.sms;
 
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
 import org.bremersee.sms.model.SmsSendRequestDto;
 import org.bremersee.sms.model.SmsSendResponseDto;
 
 /**
  * A dummy implementation that does not send any SMS.
  *
+ * <p>It can simulate a gateway for capacity tests of the code that is built on top of a SMS
+ * service: the answer is delayed by a {@link LatencyDistribution}, a part of the calls fail with
+ * a {@link SmsException} or a {@link SmsTimeoutException}, calls above a rate limit are
+ * answered with an error response and the responses can carry a {@link GoyyaSmsSendResponseDto}
+ * like the one of the {@link GoyyaSmsService}. By default there is no latency, no error and no
+ * rate limit.
+ *
  * @author Christian Bremer
  */
+@SuppressWarnings({"WeakerAccess", "unused"})
 public class DummySmsService extends AbstractSmsService implements SmsService {
 
+  /**
+   * The response of the simulated gateway, if the rate limit is exceeded.
+   */
+  public static final String RATE_LIMIT_RESPONSE = "ERROR (rate limit exceeded)";
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+  private final AtomicLong messageIds = new AtomicLong(System.currentTimeMillis());
+
+  private final LongAdder sent = new LongAdder();
+
+  private final LongAdder errors = new LongAdder();
+
+  private final LongAdder timeouts = new LongAdder();
+
+  private final LongAdder rateLimited = new LongAdder();
+
+  private volatile boolean warnEnabled = true;
+
+  private volatile LatencyDistribution latency = LatencyDistribution.none();
+
+  private volatile double errorRate;
+
+  private volatile double timeoutRate;
+
+  private volatile long timeoutMillis = 1000L;
+
+  private volatile int maxMessagesPerSecond;
+
+  private volatile boolean goyyaResponses;
+
+  private volatile Random random;
+
+  private long rateWindowStart = System.nanoTime();
+
+  private int rateWindowCount;
+
   /**
    * Default constructor.
    */
@@ -33,10 +86,266 @@ public class DummySmsService extends AbstractSmsService implements SmsService {
     super();
   }
 
+  /**
+   * Checks whether each call logs a warning, that no SMS was sent.
+   *
+   * @return {@code true} if the warning is logged (the default), otherwise {@code false}
+   */
+  public boolean isWarnEnabled() {
+    return warnEnabled;
+  }
+
+  /**
+   * Sets whether each call logs a warning, that no SMS was sent.
+   *
+   * @param warnEnabled {@code false} to turn the warning off
+   */
+  public void setWarnEnabled(boolean warnEnabled) {
+    this.warnEnabled = warnEnabled;
+  }
+
+  /**
+   * Gets the distribution of the simulated latency.
+   *
+   * @return the latency distribution
+   */
+  public LatencyDistribution getLatency() {
+    return latency;
+  }
+
+  /**
+   * Sets the distribution of the simulated latency.
+   *
+   * @param latency the latency distribution (if it is {@code null}, there is no latency)
+   */
+  public void setLatency(LatencyDistribution latency) {
+    this.latency = latency != null ? latency : LatencyDistribution.none();
+  }
+
+  /**
+   * Gets the part of the calls that fail with a {@link SmsException}.
+   *
+   * @return the error rate
+   */
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  /**
+   * Sets the part of the calls that fail with a {@link SmsException}.
+   *
+   * @param errorRate the error rate (between 0 and 1)
+   */
+  public void setErrorRate(double errorRate) {
+    Validate.isTrue(errorRate >= 0.0 && errorRate <= 1.0, "errorRate must be between 0 and 1");
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Gets the part of the calls that fail with a {@link SmsTimeoutException} after the timeout.
+   *
+   * @return the timeout rate
+   */
+  public double getTimeoutRate() {
+    return timeoutRate;
+  }
+
+  /**
+   * Sets the part of the calls that fail with a {@link SmsTimeoutException} after the timeout.
+   *
+   * @param timeoutRate the timeout rate (between 0 and 1)
+   */
+  public void setTimeoutRate(double timeoutRate) {
+    Validate.isTrue(timeoutRate >= 0.0 && timeoutRate <= 1.0,
+        "timeoutRate must be between 0 and 1");
+    this.timeoutRate = timeoutRate;
+  }
+
+  /**
+   * Gets the time a simulated timeout takes.
+   *
+   * @return the timeout in milliseconds
+   */
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  /**
+   * Sets the time a simulated timeout takes (default is one second).
+   *
+   * @param timeoutMillis the timeout in milliseconds
+   */
+  public void setTimeoutMillis(long timeoutMillis) {
+    Validate.isTrue(timeoutMillis >= 0L, "timeoutMillis must not be negative");
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Gets the maximum number of messages per second; more messages are answered with a not
+   * successful response.
+   *
+   * @return the maximum number of messages per second (0 means unlimited)
+   */
+  public int getMaxMessagesPerSecond() {
+    return maxMessagesPerSecond;
+  }
+
+  /**
+   * Sets the maximum number of messages per second.
+   *
+   * @param maxMessagesPerSecond the maximum number of messages per second (0 means unlimited)
+   */
+  public void setMaxMessagesPerSecond(int maxMessagesPerSecond) {
+    Validate.isTrue(maxMessagesPerSecond >= 0, "maxMessagesPerSecond must not be negative");
+    this.maxMessagesPerSecond = maxMessagesPerSecond;
+  }
+
+  /**
+   * Checks whether the responses carry a {@link GoyyaSmsSendResponseDto}.
+   *
+   * @return {@code true} if the responses carry a goyya response, otherwise {@code false}
+   */
+  public boolean isGoyyaResponses() {
+    return goyyaResponses;
+  }
+
+  /**
+   * Sets whether the responses carry a {@link GoyyaSmsSendResponseDto} with a message id and
+   * the number of parts (and the remaining credit, if there is a {@link CreditLedger}).
+   *
+   * @param goyyaResponses {@code true} to add goyya responses
+   */
+  public void setGoyyaResponses(boolean goyyaResponses) {
+    this.goyyaResponses = goyyaResponses;
+  }
+
+  /**
+   * Sets the seed of the random number generator, so that a simulation can be repeated. A
+   * seeded generator is shared by all threads; without seed each thread has its own.
+   *
+   * @param seed the seed (can be {@code null})
+   */
+  public void setSeed(Long seed) {
+    this.random = seed != null ? new Random(seed) : null;
+  }
+
+  /**
+   * Gets the number of calls that were answered successfully.
+   *
+   * @return the number of sent messages
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  /**
+   * Gets the number of simulated errors.
+   *
+   * @return the number of errors
+   */
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * Gets the number of simulated timeouts.
+   *
+   * @return the number of timeouts
+   */
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  /**
+   * Gets the number of calls that exceeded the rate limit.
+   *
+   * @return the number of rate limited calls
+   */
+  public long getRateLimited() {
+    return rateLimited.sum();
+  }
+
   @Override
   public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
-    log.warn("THIS IS ONLY A DUMMY SMS SERVICE - SMS WAS NOT SENT !!!");
-    return new SmsSendResponseDto(smsSendRequest, true);
+    if (warnEnabled) {
+      log.warn("THIS IS ONLY A DUMMY SMS SERVICE - SMS WAS NOT SENT !!!");
+    }
+    final Random rnd = random != null ? random : ThreadLocalRandom.current();
+    final long remainingMillis = getRemainingMillis(smsSendRequest);
+    final double p = rnd.nextDouble();
+    if (p < timeoutRate) {
+      timeouts.increment();
+      pause(TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, remainingMillis)));
+      throw new SmsTimeoutException("Simulated timeout of SMS specified by " + smsSendRequest,
+          null, true);
+    }
+    final long latencyNanos = latency.nextNanos(rnd);
+    if (TimeUnit.NANOSECONDS.toMillis(latencyNanos) >= remainingMillis) {
+      timeouts.increment();
+      pause(TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+      throw new SmsTimeoutException(
+          "Deadline of SMS specified by " + smsSendRequest + " has passed.", null, true);
+    }
+    pause(latencyNanos);
+    if (p < timeoutRate + errorRate) {
+      errors.increment();
+      throw new SmsException("Simulated error of SMS specified by " + smsSendRequest);
+    }
+    if (!tryAcquireRate()) {
+      rateLimited.increment();
+      return new SmsSendResponseDto(smsSendRequest, false, goyyaResponses
+          ? new GoyyaSmsSendResponseDto(RATE_LIMIT_RESPONSE)
+          : null);
+    }
+    sent.increment();
+    return new SmsSendResponseDto(smsSendRequest, true, goyyaResponses
+        ? createGoyyaResponse(smsSendRequest)
+        : null);
+  }
+
+  private static void pause(final long nanos) {
+    if (nanos <= 0L) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SmsException("Simulated sending was interrupted.", e);
+    }
+  }
+
+  private synchronized boolean tryAcquireRate() {
+    final int max = maxMessagesPerSecond;
+    if (max <= 0) {
+      return true;
+    }
+    final long now = System.nanoTime();
+    if (now - rateWindowStart >= NANOS_PER_SECOND) {
+      rateWindowStart = now;
+      rateWindowCount = 0;
+    }
+    if (rateWindowCount >= max) {
+      return false;
+    }
+    rateWindowCount++;
+    return true;
+  }
+
+  private GoyyaSmsSendResponseDto createGoyyaResponse(final SmsSendRequestDto smsSendRequest) {
+    final int parts = getNumberOfParts(StringUtils.isNotBlank(smsSendRequest.getMessage())
+        ? smsSendRequest.getMessage()
+        : getDefaultMessage());
+    final StringBuilder response = new StringBuilder("OK (")
+        .append(messageIds.incrementAndGet())
+        .append(", ").append(parts).append(" SMS");
+    final CreditLedger ledger = getCreditLedger();
+    if (ledger != null) {
+      // the reservation of this message is still open, so it is already subtracted
+      response.append(", ").append(Math.max(0L, ledger.getAvailable())).append(" SMS");
+    }
+    return new GoyyaSmsSendResponseDto(response.append(')').toString());
   }
 
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the extension of a request or response for the {@link SmsBinaryCodec}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface ExtensionCodec {
+
+  /**
+   * Gets the id of this codec, that is written in front of the encoded extension. The id must be
+   * unique within a {@link SmsBinaryCodec} and must never change, otherwise persisted messages
+   * cannot be decoded any more.
+   *
+   * @return the id (between 1 and 127)
+   */
+  int getId();
+
+  /**
+   * Checks whether this codec can encode the extension.
+   *
+   * @param extension the extension (is never {@code null})
+   * @return {@code true} if this codec can encode the extension, otherwise {@code false}
+   */
+  boolean canEncode(Object extension);
+
+  /**
+   * Gets the number of bytes of the encoded extension.
+   *
+   * @param extension the extension
+   * @return the number of bytes
+   */
+  int getEncodedLength(Object extension);
+
+  /**
+   * Encodes the extension into the buffer. Exactly {@link #getEncodedLength(Object)} bytes must
+   * be written.
+   *
+   * @param extension the extension
+   * @param target    the target buffer
+   */
+  void encode(Object extension, ByteBuffer target);
+
+  /**
+   * Decodes the extension. The limit of the buffer is the end of the encoded extension.
+   *
+   * @param source the source buffer
+   * @return the extension
+   */
+  Object decode(ByteBuffer source);
+
+}
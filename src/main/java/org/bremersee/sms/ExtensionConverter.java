@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import org.w3c.dom.Node;
+
+/**
+ * Converts an extension that was serialized by a {@link JAXBContext} or an {@link ObjectMapper}
+ * into an object of one target class. The converter of a class is created once by {@link
+ * ExtensionUtils#converter(Class)}; it resolves the default {@link JAXBContext} of the class only
+ * once and reuses pooled unmarshallers. JSON maps are deserialized by an {@link ObjectReader}
+ * that is created once per object mapper and that walks directly over the map. If an {@link
+ * ExtensionReader} is registered for the class, it is used instead of JAXB and Jackson whenever
+ * no explicit context or object mapper is given.
+ *
+ * <p>Instances are thread safe.
+ *
+ * @param <T> the type of the target object
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ExtensionConverter<T> {
+
+  private static final int MAX_READERS = 8;
+
+  private final Class<T> valueType;
+
+  private final Map<ObjectMapper, ObjectReader> readers = new ConcurrentHashMap<>();
+
+  private volatile UnmarshallerPool defaultPool;
+
+  private volatile ExtensionReader<T> reader;
+
+  /**
+   * Instantiates a new extension converter.
+   *
+   * @param valueType the class of the target object
+   */
+  ExtensionConverter(Class<T> valueType) {
+    this.valueType = valueType;
+  }
+
+  /**
+   * Gets the class of the target object.
+   *
+   * @return the class of the target object
+   */
+  public Class<T> getValueType() {
+    return valueType;
+  }
+
+  /**
+   * Gets the registered reader.
+   *
+   * @return the registered reader (can be {@code null})
+   */
+  public ExtensionReader<T> getReader() {
+    return reader;
+  }
+
+  /**
+   * Sets the reader.
+   *
+   * @param reader the reader (can be {@code null})
+   */
+  void setReader(ExtensionReader<T> reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Transforms a XML node or a JSON map into an object.
+   *
+   * @param xmlNodeOrJsonMap the XML node or JSON map
+   * @param jaxbContext      the {@link JAXBContext} (can be null)
+   * @param objectMapper     the JSON object mapper (can be null)
+   * @return the target object
+   * @throws Exception if transformation fails
+   */
+  @SuppressWarnings("unchecked")
+  public T transform(final Object xmlNodeOrJsonMap, final JAXBContext jaxbContext,
+      final ObjectMapper objectMapper) throws Exception {
+
+    if (xmlNodeOrJsonMap == null) {
+      return null;
+    }
+    if (valueType.isInstance(xmlNodeOrJsonMap)) {
+      return valueType.cast(xmlNodeOrJsonMap);
+    }
+    if (xmlNodeOrJsonMap instanceof Node) {
+      return fromXmlNode((Node) xmlNodeOrJsonMap, jaxbContext);
+    }
+    if (xmlNodeOrJsonMap instanceof Map) {
+      return fromJsonMap((Map<String, Object>) xmlNodeOrJsonMap, objectMapper);
+    }
+    throw new IllegalArgumentException(
+        "xmlNodeOrJsonMap must be of type " + valueType + ", " + Node.class.getName()
+            + " or of type " + Map.class.getName());
+  }
+
+  /**
+   * Transforms a XML node into an object.
+   *
+   * @param node        the XML node
+   * @param jaxbContext the {@link JAXBContext} (can be null)
+   * @return the target object
+   * @throws JAXBException if transformation fails
+   */
+  public T fromXmlNode(final Node node, final JAXBContext jaxbContext) throws JAXBException {
+    if (node == null) {
+      return null;
+    }
+    final ExtensionReader<T> reader = this.reader;
+    if (reader != null && jaxbContext == null) {
+      try {
+        return reader.fromXmlNode(node);
+      } catch (JAXBException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new JAXBException("Reading xml node failed.", e);
+      }
+    }
+    final UnmarshallerPool pool = jaxbContext == null
+        ? getDefaultPool()
+        : ExtensionUtils.getUnmarshallerPool(jaxbContext);
+    return valueType.cast(pool.unmarshal(node));
+  }
+
+  /**
+   * Transforms a JSON map into an object.
+   *
+   * @param map          the JSON map
+   * @param objectMapper the JSON object mapper (can be null)
+   * @return the target object
+   * @throws IOException if transformation fails
+   */
+  public T fromJsonMap(final Map<String, Object> map, final ObjectMapper objectMapper)
+      throws IOException {
+
+    if (map == null) {
+      return null;
+    }
+    final ExtensionReader<T> extensionReader = this.reader;
+    if (extensionReader != null && objectMapper == null) {
+      try {
+        return extensionReader.fromJsonMap(map);
+      } catch (IOException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Reading json map failed.", e);
+      }
+    }
+    final ObjectReader reader = getObjectReader(
+        objectMapper != null ? objectMapper : ExtensionUtils.objectMapper());
+    return reader.readValue(new JsonMapParser(map, reader));
+  }
+
+  private ObjectReader getObjectReader(final ObjectMapper objectMapper) {
+    final ObjectReader reader = readers.get(objectMapper);
+    if (reader != null) {
+      return reader;
+    }
+    if (readers.size() >= MAX_READERS) {
+      return objectMapper.readerFor(valueType);
+    }
+    return readers.computeIfAbsent(objectMapper, om -> om.readerFor(valueType));
+  }
+
+  private UnmarshallerPool getDefaultPool() throws JAXBException {
+    UnmarshallerPool pool = defaultPool;
+    if (pool == null) {
+      pool = ExtensionUtils.getUnmarshallerPool(ExtensionUtils.getJaxbContext(valueType));
+      defaultPool = pool;
+    }
+    return pool;
+  }
+
+}
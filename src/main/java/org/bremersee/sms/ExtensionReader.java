@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Map;
+import org.w3c.dom.Node;
+
+/**
+ * Creates an extension object from a XML node or a JSON map without reflection. A reader that is
+ * registered with {@link ExtensionUtils#registerReader(Class, ExtensionReader)} is used instead of
+ * JAXB and Jackson whenever no explicit {@link javax.xml.bind.JAXBContext} or object mapper is
+ * given, which keeps the code path free of reflection (for example in a native image).
+ *
+ * <p>Implementations must be thread safe.
+ *
+ * @param <T> the type of the extension object
+ * @author Christian Bremer
+ */
+public interface ExtensionReader<T> {
+
+  /**
+   * Creates the extension object from a XML node.
+   *
+   * @param node the XML node
+   * @return the extension object
+   * @throws Exception if the node can't be read
+   */
+  T fromXmlNode(Node node) throws Exception;
+
+  /**
+   * Creates the extension object from a JSON map.
+   *
+   * @param map the JSON map
+   * @return the extension object
+   * @throws Exception if the map can't be read
+   */
+  T fromJsonMap(Map<String, Object> map) throws Exception;
+
+}
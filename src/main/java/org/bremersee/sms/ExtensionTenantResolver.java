@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Resolves the tenant from the extension of a request. The extension can be a JSON map with an
+ * entry of the tenant, or a XML element with an attribute or child element of the tenant.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ExtensionTenantResolver implements TenantResolver {
+
+  /**
+   * The default name of the entry, attribute or element of the tenant.
+   */
+  public static final String DEFAULT_NAME = "tenant";
+
+  private final String name;
+
+  /**
+   * Instantiates a new extension tenant resolver with the default name.
+   */
+  public ExtensionTenantResolver() {
+    this(DEFAULT_NAME);
+  }
+
+  /**
+   * Instantiates a new extension tenant resolver.
+   *
+   * @param name the name of the entry, attribute or element of the tenant
+   */
+  public ExtensionTenantResolver(String name) {
+    Validate.notBlank(name, "Name must not be blank.");
+    this.name = name;
+  }
+
+  @Override
+  public String resolveTenant(final SmsSendRequestDto smsSendRequest) {
+    final Object extension = smsSendRequest.getExtension();
+    if (extension instanceof Map) {
+      final Object tenant = ((Map<?, ?>) extension).get(name);
+      return tenant != null ? StringUtils.trimToNull(tenant.toString()) : null;
+    }
+    if (extension instanceof Element) {
+      final Element element = (Element) extension;
+      if (element.hasAttribute(name)) {
+        return StringUtils.trimToNull(element.getAttribute(name));
+      }
+      for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+        if (child.getNodeType() == Node.ELEMENT_NODE
+            && name.equals(child.getLocalName() != null
+            ? child.getLocalName()
+            : child.getNodeName())) {
+          return StringUtils.trimToNull(child.getTextContent());
+        }
+      }
+    }
+    return null;
+  }
+
+}
@@ -19,6 +19,7 @@ package org.bremersee.sms;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -29,6 +30,11 @@ import org.w3c.dom.Node;
  * Utility methods to transform an extension that was serialized by a {@link JAXBContext} or an
  * {@link ObjectMapper} into a POJO.
  *
+ * <p>Classes with a registered {@link ExtensionReader} are transformed without reflection, if no
+ * explicit context or object mapper is given. No reader is registered by default, the
+ * {@link GoyyaExtensionReader} must be registered explicitly (like {@link SmsSendCommand} does),
+ * because it only keeps the original response of the gateway.
+ *
  * @author Christian Bremer
  */
 @SuppressWarnings("WeakerAccess")
@@ -36,9 +42,39 @@ public abstract class ExtensionUtils {
 
   private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
 
-  private static final Map<java.lang.reflect.AnnotatedElement, JAXBContext> JAXB_CONTEXTS
+  /*
+   * Contexts that were created for a whole package (by its object factory).
+   */
+  private static final Map<String, JAXBContext> PACKAGE_CONTEXTS = new ConcurrentHashMap<>();
+
+  /*
+   * Packages for which no context could be created.
+   */
+  private static final Set<String> PACKAGES_WITHOUT_CONTEXT = ConcurrentHashMap.newKeySet();
+
+  /*
+   * Contexts that were created for a single class.
+   */
+  private static final Map<Class<?>, JAXBContext> CLASS_CONTEXTS = new ConcurrentHashMap<>();
+
+  /*
+   * The maximum number of contexts that are not created by this class but for which an
+   * unmarshaller pool is kept. Contexts are normally singletons, but if an application creates a
+   * new context for each call, there will be no pooling instead of a memory leak.
+   */
+  private static final int MAX_POOLS = 64;
+
+  private static final Map<JAXBContext, UnmarshallerPool> UNMARSHALLER_POOLS
       = new ConcurrentHashMap<>();
 
+  private static final ClassValue<ExtensionConverter<?>> CONVERTERS
+      = new ClassValue<ExtensionConverter<?>>() {
+        @Override
+        protected ExtensionConverter<?> computeValue(Class<?> type) {
+          return new ExtensionConverter<>(type);
+        }
+      };
+
   /**
    * Never construct.
    */
@@ -46,22 +82,114 @@ public abstract class ExtensionUtils {
     super();
   }
 
-  private static JAXBContext getJaxbContext(final Class<?> valueType) throws JAXBException {
-    JAXBContext jaxbContext = JAXB_CONTEXTS.get(valueType.getPackage());
-    if (jaxbContext == null) {
-      jaxbContext = JAXB_CONTEXTS.get(valueType);
+  /**
+   * Returns the default object mapper.
+   *
+   * @return the default object mapper
+   */
+  static ObjectMapper objectMapper() {
+    return DEFAULT_OBJECT_MAPPER;
+  }
+
+  /**
+   * Returns the {@link JAXBContext} of the specified class. If the package of the class has an
+   * object factory, the context of the whole package is returned, otherwise a context of the
+   * class only. Contexts are created only once.
+   *
+   * @param valueType the class
+   * @return the jaxb context
+   * @throws JAXBException if the context cannot be created
+   */
+  public static JAXBContext getJaxbContext(final Class<?> valueType) throws JAXBException {
+    Validate.notNull(valueType, "valueType must not be null");
+    final Package pkg = valueType.getPackage();
+    final String packageName = pkg != null ? pkg.getName() : "";
+    JAXBContext jaxbContext = PACKAGE_CONTEXTS.get(packageName);
+    if (jaxbContext != null) {
+      return jaxbContext;
     }
-    if (jaxbContext == null) {
+    if (!packageName.isEmpty() && !PACKAGES_WITHOUT_CONTEXT.contains(packageName)) {
       try {
-        jaxbContext = JAXBContext.newInstance(valueType.getPackage().getName());
+        jaxbContext = JAXBContext.newInstance(packageName, valueType.getClassLoader());
+        final JAXBContext existing = PACKAGE_CONTEXTS.putIfAbsent(packageName, jaxbContext);
+        return existing != null ? existing : jaxbContext;
+
       } catch (JAXBException e) {
-        jaxbContext = JAXBContext.newInstance(valueType);
-        JAXB_CONTEXTS.put(valueType, jaxbContext);
+        PACKAGES_WITHOUT_CONTEXT.add(packageName);
       }
     }
+    jaxbContext = CLASS_CONTEXTS.get(valueType);
+    if (jaxbContext == null) {
+      jaxbContext = JAXBContext.newInstance(valueType);
+      final JAXBContext existing = CLASS_CONTEXTS.putIfAbsent(valueType, jaxbContext);
+      return existing != null ? existing : jaxbContext;
+    }
     return jaxbContext;
   }
 
+  /**
+   * Returns the unmarshaller pool of the context.
+   *
+   * @param jaxbContext the jaxb context
+   * @return the unmarshaller pool
+   */
+  static UnmarshallerPool getUnmarshallerPool(final JAXBContext jaxbContext) {
+    final UnmarshallerPool pool = UNMARSHALLER_POOLS.get(jaxbContext);
+    if (pool != null) {
+      return pool;
+    }
+    if (UNMARSHALLER_POOLS.size() >= MAX_POOLS) {
+      return new UnmarshallerPool(jaxbContext);
+    }
+    return UNMARSHALLER_POOLS.computeIfAbsent(jaxbContext, UnmarshallerPool::new);
+  }
+
+  /**
+   * Returns the converter of the specified class. The converter is created only once per class.
+   *
+   * @param <T>       the type parameter
+   * @param valueType the class of the target object
+   * @return the converter
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> ExtensionConverter<T> converter(final Class<T> valueType) {
+    Validate.notNull(valueType, "valueType must not be null");
+    return (ExtensionConverter<T>) CONVERTERS.get(valueType);
+  }
+
+  /**
+   * Registers a reader that transforms XML nodes and JSON maps into objects of the specified class
+   * without reflection. A reader that was registered before is replaced.
+   *
+   * @param <T>       the type parameter
+   * @param valueType the class of the target object
+   * @param reader    the reader
+   */
+  public static <T> void registerReader(final Class<T> valueType,
+      final ExtensionReader<T> reader) {
+    Validate.notNull(reader, "reader must not be null");
+    converter(valueType).setReader(reader);
+  }
+
+  /**
+   * Removes the reader of the specified class, so that its objects are transformed by JAXB and
+   * Jackson again.
+   *
+   * @param valueType the class of the target object
+   */
+  public static void unregisterReader(final Class<?> valueType) {
+    converter(valueType).setReader(null);
+  }
+
+  /**
+   * Removes the reader of the specified class, so that JAXB and Jackson are used again.
+   *
+   * @param valueType the class of the target object
+   */
+  public static void removeReader(final Class<?> valueType) {
+    converter(valueType).setReader(null);
+  }
+
   /**
    * Transforms a XML node or a JSON map into an object.
    *
@@ -73,7 +201,6 @@ public abstract class ExtensionUtils {
    * @return the target object
    * @throws Exception if transformation fails
    */
-  @SuppressWarnings("unchecked")
   public static <T> T transform(final Object xmlNodeOrJsonMap, final Class<T> valueType,
       final JAXBContext jaxbContext, final ObjectMapper objectMapper)
       throws Exception {
@@ -81,19 +208,7 @@ public abstract class ExtensionUtils {
     if (xmlNodeOrJsonMap == null) {
       return null;
     }
-    Validate.notNull(valueType, "valueType must not be null");
-    if (valueType.isAssignableFrom(xmlNodeOrJsonMap.getClass())) {
-      return valueType.cast(xmlNodeOrJsonMap);
-    }
-    if (xmlNodeOrJsonMap instanceof Node) {
-      return xmlNodeToObject((Node) xmlNodeOrJsonMap, valueType, jaxbContext);
-    }
-    if (xmlNodeOrJsonMap instanceof Map) {
-      return jsonMapToObject((Map<String, Object>) xmlNodeOrJsonMap, valueType, objectMapper);
-    }
-    throw new IllegalArgumentException(
-        "xmlNodeOrJsonMap must be of type " + valueType + ", " + Node.class.getName()
-            + " or of type " + Map.class.getName());
+    return converter(valueType).transform(xmlNodeOrJsonMap, jaxbContext, objectMapper);
   }
 
   /**
@@ -113,11 +228,7 @@ public abstract class ExtensionUtils {
     if (node == null) {
       return null;
     }
-    Validate.notNull(valueType, "valueType must not be null");
-    if (jaxbContext == null) {
-      return valueType.cast(getJaxbContext(valueType).createUnmarshaller().unmarshal(node));
-    }
-    return valueType.cast(jaxbContext.createUnmarshaller().unmarshal(node));
+    return converter(valueType).fromXmlNode(node, jaxbContext);
   }
 
   /**
@@ -135,12 +246,7 @@ public abstract class ExtensionUtils {
     if (map == null) {
       return null;
     }
-    Validate.notNull(valueType, "valueType must not be null");
-    if (objectMapper == null) {
-      return DEFAULT_OBJECT_MAPPER
-          .readValue(DEFAULT_OBJECT_MAPPER.writeValueAsBytes(map), valueType);
-    }
-    return objectMapper.readValue(objectMapper.writeValueAsBytes(map), valueType);
+    return converter(valueType).fromJsonMap(map, objectMapper);
   }
 
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.nio.ByteBuffer;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+
+/**
+ * The codec of the {@link GoyyaSmsSendResponseDto} extension. Only the original response of the
+ * gateway is encoded, all other values are parsed from it again when decoding.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GoyyaExtensionCodec implements ExtensionCodec {
+
+  /**
+   * The id of this codec.
+   */
+  public static final int ID = 1;
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public boolean canEncode(final Object extension) {
+    return extension.getClass() == GoyyaSmsSendResponseDto.class;
+  }
+
+  @Override
+  public int getEncodedLength(final Object extension) {
+    return SmsBinaryCodec.getEncodedLength(((GoyyaSmsSendResponseDto) extension).getResponse());
+  }
+
+  @Override
+  public void encode(final Object extension, final ByteBuffer target) {
+    SmsBinaryCodec.writeString(((GoyyaSmsSendResponseDto) extension).getResponse(), target);
+  }
+
+  @Override
+  public Object decode(final ByteBuffer source) {
+    return new GoyyaSmsSendResponseDto(SmsBinaryCodec.readString(source));
+  }
+
+}
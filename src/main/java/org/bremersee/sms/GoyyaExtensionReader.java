@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Map;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.w3c.dom.Node;
+
+/**
+ * The reader of the {@link GoyyaSmsSendResponseDto} extension. Only the original response of the
+ * gateway is read, all other values are parsed from it again (like {@link GoyyaExtensionCodec}
+ * does).
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GoyyaExtensionReader implements ExtensionReader<GoyyaSmsSendResponseDto> {
+
+  private static final String RESPONSE = "response";
+
+  @Override
+  public GoyyaSmsSendResponseDto fromXmlNode(final Node node) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE && RESPONSE.equals(localName(child))) {
+        return new GoyyaSmsSendResponseDto(child.getTextContent());
+      }
+    }
+    return new GoyyaSmsSendResponseDto();
+  }
+
+  @Override
+  public GoyyaSmsSendResponseDto fromJsonMap(final Map<String, Object> map) {
+    final Object response = map.get(RESPONSE);
+    return response != null
+        ? new GoyyaSmsSendResponseDto(response.toString())
+        : new GoyyaSmsSendResponseDto();
+  }
+
+  private static String localName(final Node node) {
+    final String localName = node.getLocalName();
+    if (localName != null) {
+      return localName;
+    }
+    final String name = node.getNodeName();
+    final int index = name.indexOf(':');
+    return index < 0 ? name : name.substring(index + 1);
+  }
+
+}
@@ -18,28 +18,25 @@ package org.bremersee.sms;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
-import java.net.InetSocketAddress;
 import java.net.Proxy;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
@@ -50,6 +47,20 @@ import org.bremersee.sms.model.SmsSendResponseDto;
  * A SMS service implementation that uses the Goyya SMS Services (
  * <a href="https://www.goyya.com/sms-services">https://www.goyya.com/sms-services</a>).
  *
+ * <p>Every request has a connect timeout, a read timeout and a total timeout. If the timeouts
+ * are adaptive (see {@link GoyyaSmsServiceConfiguration#isAdaptiveTimeouts()}), the connect and
+ * read timeouts are derived from the latencies of the recent requests by an {@link
+ * AdaptiveTimeout}; the configured values are their ceilings and {@link
+ * GoyyaSmsServiceConfiguration#getMinTimeoutMillis()} is their floor. No timeout exceeds the
+ * deadline of the request ({@link SmsSendRequestDto#getDeadline()}). If a timeout elapses, a
+ * {@link SmsTimeoutException} is thrown. A response that arrives after the total timeout (a
+ * slowly trickling response can exceed it, because the read timeout applies to each read) is
+ * returned anyway, because the gateway has accepted the SMS.
+ *
+ * <p>The requests are sent over HTTP, unless another {@link SmsTransport} is set, for example
+ * one that records ({@link RecordingSmsTransport}) or replays ({@link ReplaySmsTransport}) the
+ * traffic with the gateway.
+ *
  * @author Christian Bremer
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
@@ -58,7 +69,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
   /**
    * The default URL of the Goyya SMS service.
    */
-  private static final String DEFAULT_URL = "https://gate1.goyyamobile.com/sms/sendsms.asp";
+  public static final String DEFAULT_URL = "https://gate1.goyyamobile.com/sms/sendsms.asp";
 
   /**
    * The default pattern to convert a time.
@@ -85,6 +96,26 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    */
   public static final String MESSAGE_TYPE_FLASH_VALUE = "f";
 
+  /**
+   * The default maximum connect timeout in milliseconds.
+   */
+  public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000L;
+
+  /**
+   * The default maximum read timeout in milliseconds.
+   */
+  public static final long DEFAULT_READ_TIMEOUT_MILLIS = 30000L;
+
+  /**
+   * The default total timeout of a request in milliseconds.
+   */
+  public static final long DEFAULT_TOTAL_TIMEOUT_MILLIS = 60000L;
+
+  /**
+   * The default minimum of the adaptive timeouts in milliseconds.
+   */
+  public static final long DEFAULT_MIN_TIMEOUT_MILLIS = 1000L;
+
   private static final String GATEWAY_USER_ID_KEY = "id";
 
   private static final String GATEWAY_USER_PASSWORD_KEY = "pw";
@@ -111,28 +142,21 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
   private static final String GET_STATUS_KEY = "getStatus";
   private static final String GET_STATUS_VALUE = "1";
 
-  private String url = DEFAULT_URL;
-
-  private String username;
-
-  private String password;
+  private volatile DeliveryStatusStore deliveryStatusStore;
 
-  private String proxyHost;
+  private final AdaptiveTimeout connectTimeout = new AdaptiveTimeout();
 
-  private Integer proxyPort;
+  private final AdaptiveTimeout readTimeout = new AdaptiveTimeout();
 
-  private String proxyUsername;
-
-  private String proxyPassword;
+  /*
+   * The configuration and the request id of the request that is sent by the current thread, so
+   * that the HTTP transport uses them, too, when it is wrapped by another transport.
+   */
+  private final ThreadLocal<Exchange> exchanges = new ThreadLocal<>();
 
-  private String sendTimePattern = DEFAULT_SEND_TIME_PATTERN;
+  private final SmsTransport httpTransport = this::sendHttp;
 
-  /**
-   * The default message type.
-   * <p>
-   * It can be {@code t|f|b|c} (t=Text-SMS, f=Flash-SMS, b=Blink-SMS*, c=long SMS).
-   */
-  private String defaultMessageType = MESSAGE_TYPE_TEXT_VALUE;
+  private volatile SmsTransport transport;
 
   /**
    * Default constructor.
@@ -159,11 +183,37 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param url      the URL to use
    */
   public GoyyaSmsService(String username, String password, String url) {
-    this.username = username;
-    this.password = password;
-    if (StringUtils.isNotBlank(url)) {
-      this.url = url;
-    }
+    updateGoyyaConfiguration(c -> c
+        .withUsername(username)
+        .withPassword(password)
+        .withUrl(url));
+  }
+
+  @Override
+  protected SmsServiceConfiguration createDefaultConfiguration() {
+    return new GoyyaSmsServiceConfiguration();
+  }
+
+  /**
+   * Gets the current configuration snapshot.
+   *
+   * @return the configuration
+   */
+  @Override
+  public GoyyaSmsServiceConfiguration getConfiguration() {
+    return (GoyyaSmsServiceConfiguration) super.getConfiguration();
+  }
+
+  /**
+   * Changes the goyya configuration atomically.
+   *
+   * @param changes the function that returns the changed copy of the current configuration
+   * @return the new configuration
+   */
+  public GoyyaSmsServiceConfiguration updateGoyyaConfiguration(
+      final UnaryOperator<GoyyaSmsServiceConfiguration> changes) {
+    return (GoyyaSmsServiceConfiguration) updateConfiguration(
+        c -> changes.apply((GoyyaSmsServiceConfiguration) c));
   }
 
   /**
@@ -172,7 +222,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param username the user name
    */
   public void setUsername(String username) {
-    this.username = username;
+    updateGoyyaConfiguration(c -> c.withUsername(username));
   }
 
   /**
@@ -181,7 +231,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param password the password
    */
   public void setPassword(String password) {
-    this.password = password;
+    updateGoyyaConfiguration(c -> c.withPassword(password));
   }
 
   /**
@@ -190,7 +240,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the URL
    */
   public String getUrl() {
-    return url;
+    return getConfiguration().getUrl();
   }
 
   /**
@@ -199,7 +249,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param url the URL to use
    */
   public void setUrl(String url) {
-    this.url = url;
+    updateGoyyaConfiguration(c -> c.withUrl(url));
   }
 
   /**
@@ -208,7 +258,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the host name of the proxy
    */
   public String getProxyHost() {
-    return proxyHost;
+    return getConfiguration().getProxyHost();
   }
 
   /**
@@ -217,7 +267,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param proxyHost the host name of the proxy
    */
   public void setProxyHost(String proxyHost) {
-    this.proxyHost = proxyHost;
+    updateGoyyaConfiguration(c -> c.withProxyHost(proxyHost));
   }
 
   /**
@@ -226,7 +276,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the port of the proxy
    */
   public Integer getProxyPort() {
-    return proxyPort;
+    return getConfiguration().getProxyPort();
   }
 
   /**
@@ -235,7 +285,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param proxyPort the port of the proxy
    */
   public void setProxyPort(Integer proxyPort) {
-    this.proxyPort = proxyPort;
+    updateGoyyaConfiguration(c -> c.withProxyPort(proxyPort));
   }
 
   /**
@@ -244,7 +294,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param proxyUsername the user name for proxy authentication
    */
   public void setProxyUsername(String proxyUsername) {
-    this.proxyUsername = proxyUsername;
+    updateGoyyaConfiguration(c -> c.withProxyUsername(proxyUsername));
   }
 
   /**
@@ -253,7 +303,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param proxyPassword the password for proxy authentication
    */
   public void setProxyPassword(String proxyPassword) {
-    this.proxyPassword = proxyPassword;
+    updateGoyyaConfiguration(c -> c.withProxyPassword(proxyPassword));
   }
 
   /**
@@ -262,7 +312,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the pattern to convert the time
    */
   public String getSendTimePattern() {
-    return sendTimePattern;
+    return getConfiguration().getSendTimePattern();
   }
 
   /**
@@ -271,7 +321,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param sendTimePattern the pattern to convert the time
    */
   public void setSendTimePattern(String sendTimePattern) {
-    this.sendTimePattern = sendTimePattern;
+    updateGoyyaConfiguration(c -> c.withSendTimePattern(sendTimePattern));
   }
 
   /**
@@ -280,7 +330,7 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the default message type
    */
   public String getDefaultMessageType() {
-    return defaultMessageType;
+    return getConfiguration().getDefaultMessageType();
   }
 
   /**
@@ -289,27 +339,85 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @param defaultMessageType the default message type
    */
   public void setDefaultMessageType(String defaultMessageType) {
-    this.defaultMessageType = defaultMessageType;
+    updateGoyyaConfiguration(c -> c.withDefaultMessageType(defaultMessageType));
+  }
+
+  /**
+   * Gets the store where the message ids of the sent SMS are registered.
+   *
+   * @return the delivery status store (can be {@code null})
+   */
+  public DeliveryStatusStore getDeliveryStatusStore() {
+    return deliveryStatusStore;
+  }
+
+  /**
+   * Sets the store where the message ids of the sent SMS are registered.
+   *
+   * @param deliveryStatusStore the delivery status store (can be {@code null})
+   */
+  public void setDeliveryStatusStore(DeliveryStatusStore deliveryStatusStore) {
+    this.deliveryStatusStore = deliveryStatusStore;
+  }
+
+  /**
+   * Gets the adaptive connect timeout, that records the time to open a connection.
+   *
+   * @return the adaptive connect timeout
+   */
+  public AdaptiveTimeout getAdaptiveConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * Gets the adaptive read timeout, that records the time from the open connection until the
+   * response is read.
+   *
+   * @return the adaptive read timeout
+   */
+  public AdaptiveTimeout getAdaptiveReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * Gets the transport that sends the requests to the gateway.
+   *
+   * @return the transport (HTTP, if no other transport is set)
+   */
+  public SmsTransport getTransport() {
+    final SmsTransport transport = this.transport;
+    return transport != null ? transport : httpTransport;
+  }
+
+  /**
+   * Sets the transport that sends the requests to the gateway, for example a {@link
+   * RecordingSmsTransport} that wraps {@link #getTransport()} or a {@link ReplaySmsTransport}.
+   *
+   * @param transport the transport (if it is {@code null}, HTTP is used)
+   */
+  public void setTransport(SmsTransport transport) {
+    this.transport = transport == httpTransport ? null : transport;
   }
 
   @Override
   public SmsSendResponseDto doSendSms(final SmsSendRequestDto smsSendRequest) {
+    return doSendSms(smsSendRequest, getConfiguration());
+  }
 
-    final String sender = getSender(smsSendRequest);
-    final String receiver = getReceiver(smsSendRequest);
-    final String message = getMessage(smsSendRequest);
-    final String messageType = getMessageType(message);
-    final String time = createSendTime(smsSendRequest.getSendTime());
-    final Charset charset = createCharset();
-    final StringBuilder uriBuilder = new StringBuilder(url);
-    if (url.contains("?")) {
-      uriBuilder.append('&');
-    } else {
-      uriBuilder.append('?');
-    }
-    uriBuilder.append(GATEWAY_USER_ID_KEY).append('=').append(encode(username, charset));
-    uriBuilder.append('&').append(GATEWAY_USER_PASSWORD_KEY).append('=')
-        .append(encode(password, charset));
+  @Override
+  protected SmsSendResponseDto doSendSms(final SmsSendRequestDto smsSendRequest,
+      final SmsServiceConfiguration configuration) {
+
+    final SmsFlightRecorder recorder = SmsFlightRecorder.get();
+    final Object urlBuild = recorder.beginPhase();
+    final GoyyaSmsServiceConfiguration config = (GoyyaSmsServiceConfiguration) configuration;
+    final String sender = getSender(smsSendRequest, config);
+    final String receiver = getReceiver(smsSendRequest, config);
+    final String message = getMessage(smsSendRequest, config);
+    final String messageType = getMessageType(message, config);
+    final String time = createSendTime(smsSendRequest.getSendTime(), config);
+    final Charset charset = config.getCharset();
+    final StringBuilder uriBuilder = new StringBuilder(config.getRequestPrefix());
     uriBuilder.append('&').append(SENDER_KEY).append('=').append(encode(sender, charset));
     uriBuilder.append('&').append(RECEIVER_KEY).append('=').append(encode(receiver, charset));
     uriBuilder.append('&').append(MESSAGE_KEY).append('=').append(encode(message, charset));
@@ -323,48 +431,282 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
     uriBuilder.append('&').append(GET_COUNT_MSG_KEY).append('=').append(GET_COUNT_MSG_VALUE);
     uriBuilder.append('&').append(GET_LIMIT_KEY).append('=').append(GET_LIMIT_VALUE);
     uriBuilder.append('&').append(GET_STATUS_KEY).append('=').append(GET_STATUS_VALUE);
+    if (urlBuild != null) {
+      recorder.endPhase(urlBuild, SmsFlightRecorder.Phase.URL_BUILD,
+          smsSendRequest.getRequestId(), getGatewayName(config), null);
+    }
+
+    final long start = System.nanoTime();
+    final long deadline = getDeadlineNanos(smsSendRequest, config, start);
+    final String url = uriBuilder.toString();
+    final int connectTimeoutMillis = getTimeoutMillis(connectTimeout, config,
+        config.getConnectTimeoutMillis(), deadline, smsSendRequest);
+    final int readTimeoutMillis = getTimeoutMillis(readTimeout, config,
+        config.getReadTimeoutMillis(), deadline, smsSendRequest);
+    final SmsTransport transport = this.transport;
+    final String response;
+    try {
+      final SmsTransport.Response transportResponse = transport != null
+          ? send(transport, url, config, connectTimeoutMillis, readTimeoutMillis, deadline,
+              smsSendRequest.getRequestId())
+          : exchange(url, config, connectTimeoutMillis, readTimeoutMillis, deadline,
+              smsSendRequest.getRequestId());
+      connectTimeout.record(transportResponse.getConnectNanos());
+      readTimeout.record(transportResponse.getTotalNanos() - transportResponse.getConnectNanos());
+      response = transportResponse.getBody();
+
+    } catch (IOException e) {
+      if (e instanceof SocketTimeoutException) {
+        // it is not known whether connecting or reading has timed out, so both count it
+        connectTimeout.recordTimeout();
+        readTimeout.recordTimeout();
+      }
+      SmsException se = createSmsException(e, smsSendRequest);
+      log.error("Sending SMS specified by " + smsSendRequest + " failed.", se);
+      throw se;
+    }
+    final long finished = System.nanoTime();
+    if (finished - deadline > 0L) {
+      // the read timeout applies to each read, so a slowly trickling response can exceed it;
+      // the gateway has answered, so the response must not be thrown away
+      log.warn("Sending SMS specified by " + smsSendRequest + " took "
+          + TimeUnit.NANOSECONDS.toMillis(finished - start) + " ms and exceeded its deadline.");
+    }
+
+    final Object parse = recorder.beginPhase();
+    final GoyyaSmsSendResponseDto goyyaSmsSendResponse = new GoyyaSmsSendResponseDto(response);
+    if (parse != null) {
+      recorder.endPhase(parse, SmsFlightRecorder.Phase.PARSE, smsSendRequest.getRequestId(),
+          getGatewayName(config), goyyaSmsSendResponse.isOk() ? "OK" : "NOT_OK");
+    }
+    if (deliveryStatusStore != null) {
+      deliveryStatusStore.register(
+          smsSendRequest.getRequestId(),
+          goyyaSmsSendResponse.getID(),
+          goyyaSmsSendResponse.isOk() ? DeliveryStatus.ACCEPTED : DeliveryStatus.REJECTED);
+    }
+    return new SmsSendResponseDto(
+        smsSendRequest,
+        goyyaSmsSendResponse.isOk(),
+        goyyaSmsSendResponse);
+  }
+
+  private SmsTransport.Response send(final SmsTransport transport, final String url,
+      final GoyyaSmsServiceConfiguration config, final int connectTimeoutMillis,
+      final int readTimeoutMillis, final long deadline, final String requestId)
+      throws IOException {
+
+    final Exchange previous = exchanges.get();
+    exchanges.set(new Exchange(config, deadline, requestId));
+    try {
+      return transport.send(url, connectTimeoutMillis, readTimeoutMillis);
+
+    } finally {
+      if (previous != null) {
+        exchanges.set(previous);
+      } else {
+        exchanges.remove();
+      }
+    }
+  }
 
-    String response;
+  private SmsTransport.Response sendHttp(final String url, final int connectTimeoutMillis,
+      final int readTimeoutMillis) throws IOException {
+
+    final Exchange exchange = exchanges.get();
+    if (exchange != null) {
+      return exchange(url, exchange.config, connectTimeoutMillis, readTimeoutMillis,
+          exchange.deadline, exchange.requestId);
+    }
+    final long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos((long) connectTimeoutMillis + readTimeoutMillis);
+    return exchange(url, getConfiguration(), connectTimeoutMillis, readTimeoutMillis, deadline,
+        null);
+  }
+
+  /**
+   * Sends the request over HTTP. Connecting and reading are recorded as flight recorder
+   * events.
+   *
+   * @param url                  the URL with all request parameters
+   * @param config               the configuration
+   * @param connectTimeoutMillis the connect timeout in milliseconds
+   * @param readTimeoutMillis    the read timeout in milliseconds
+   * @param deadline             the point in time (of {@link System#nanoTime()}) when the
+   *                             response must be read; the read timeout is shortened to the time
+   *                             that remains after connecting
+   * @param requestId            the id of the request (can be {@code null})
+   * @return the response
+   * @throws IOException if sending fails
+   */
+  protected SmsTransport.Response exchange(final String url,
+      final GoyyaSmsServiceConfiguration config, final int connectTimeoutMillis,
+      final int readTimeoutMillis, final long deadline, final String requestId)
+      throws IOException {
+
+    final SmsFlightRecorder recorder = SmsFlightRecorder.get();
+    final long start = System.nanoTime();
     HttpURLConnection con = null;
     try {
-      con = createHttpURLConnection(uriBuilder.toString());
+      final Object connect = recorder.beginPhase();
+      con = createHttpURLConnection(url, config);
+      con.setConnectTimeout(connectTimeoutMillis);
+      // the read timeout must be set before connecting, later changes are ignored
+      con.setReadTimeout(readTimeoutMillis);
       con.connect();
-      int statusCode = con.getResponseCode();
-      if (statusCode >= 400) {
-        try (InputStream errorStream = con.getErrorStream()) {
-          response = IOUtils.toString(errorStream, charset);
-
-        } catch (IOException e) {
-          SmsException se = new SmsException(e);
-          log.error("Reading error stream failed.", se);
-          throw se;
+      final long connected = System.nanoTime();
+      if (connect != null) {
+        // the TLS handshake is part of connecting
+        recorder.endPhase(connect, SmsFlightRecorder.Phase.CONNECT, requestId,
+            getGatewayName(config), con instanceof HttpsURLConnection ? "TLS" : "PLAIN");
+      }
+      // the read timeout can't be shortened to the time that remains after connecting, so the
+      // connection is closed when the deadline passes
+      final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - connected);
+      if (remainingMillis <= 0L) {
+        throw new SocketTimeoutException("Deadline has passed while connecting.");
+      }
+      final HttpURLConnection connection = con;
+      final ScheduledFuture<?> watchdog = remainingMillis < readTimeoutMillis
+          ? Watchdog.EXECUTOR.schedule(connection::disconnect, remainingMillis,
+          TimeUnit.MILLISECONDS)
+          : null;
+      final Object read = recorder.beginPhase();
+      final int statusCode;
+      final String body;
+      try {
+        statusCode = con.getResponseCode();
+        try (InputStream inputStream = statusCode >= 400
+            ? con.getErrorStream()
+            : con.getInputStream()) {
+          body = IOUtils.toString(inputStream, config.getCharset());
         }
-      } else {
-        try (InputStream inputStream = con.getInputStream()) {
-          response = IOUtils.toString(inputStream, charset);
 
-        } catch (IOException e) {
-          SmsException se = new SmsException(e);
-          log.error("Reading input stream failed.", se);
-          throw se;
+      } catch (IOException e) {
+        // the request has been written, so the gateway may send the SMS nevertheless
+        // the connection may fail before the watchdog has finished, so only its delay is checked
+        if (watchdog != null && watchdog.getDelay(TimeUnit.NANOSECONDS) <= 0L) {
+          throw responseTimeout("Deadline has passed while reading.", e);
+        }
+        if (e instanceof SocketTimeoutException) {
+          throw responseTimeout(e.getMessage(), e);
+        }
+        throw e;
+
+      } finally {
+        if (watchdog != null) {
+          watchdog.cancel(false);
         }
       }
-    } catch (IOException e) {
-      SmsException se = new SmsException(e);
-      log.error("Sending SMS specified by " + smsSendRequest + " failed.", se);
-      throw se;
+      if (read != null) {
+        recorder.endPhase(read, SmsFlightRecorder.Phase.READ, requestId,
+            getGatewayName(config), String.valueOf(statusCode));
+      }
+      return new SmsTransport.Response(
+          statusCode, body, connected - start, System.nanoTime() - start);
 
     } finally {
       if (con != null) {
         con.disconnect();
       }
     }
+  }
 
-    final GoyyaSmsSendResponseDto goyyaSmsSendResponse = new GoyyaSmsSendResponseDto(response);
-    return new SmsSendResponseDto(
-        smsSendRequest,
-        goyyaSmsSendResponse.isOk(),
-        goyyaSmsSendResponse);
+  private static SmsTransport.ResponseTimeoutException responseTimeout(final String message,
+      final IOException cause) {
+
+    final SmsTransport.ResponseTimeoutException e
+        = new SmsTransport.ResponseTimeoutException(message);
+    e.initCause(cause);
+    return e;
+  }
+
+  @Override
+  protected String getGatewayName() {
+    return getGatewayName(getConfiguration());
+  }
+
+  private static String getGatewayName(final GoyyaSmsServiceConfiguration config) {
+    return config.getParsedUrl().getHost();
+  }
+
+  /**
+   * Returns the point in time (of {@link System#nanoTime()}) when the request must be finished.
+   * That is the total timeout of the configuration or the deadline of the request, whichever
+   * comes first.
+   *
+   * @param smsSendRequest the request
+   * @param config         the configuration
+   * @param start          the start of the request (of {@link System#nanoTime()})
+   * @return the deadline in nanoseconds
+   */
+  protected long getDeadlineNanos(final SmsSendRequestDto smsSendRequest,
+      final GoyyaSmsServiceConfiguration config, final long start) {
+
+    long remaining = TimeUnit.MILLISECONDS.toNanos(config.getTotalTimeoutMillis());
+    final Date requestDeadline = smsSendRequest.getDeadline();
+    if (requestDeadline != null) {
+      remaining = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(
+          requestDeadline.getTime() - System.currentTimeMillis()));
+    }
+    return start + remaining;
+  }
+
+  private static int getTimeoutMillis(final AdaptiveTimeout adaptiveTimeout,
+      final GoyyaSmsServiceConfiguration config, final long maxMillis, final long deadline,
+      final SmsSendRequestDto smsSendRequest) {
+
+    final long timeout = config.isAdaptiveTimeouts()
+        ? adaptiveTimeout.getTimeoutMillis(config.getMinTimeoutMillis(), maxMillis)
+        : maxMillis;
+    final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    if (remaining <= 0L) {
+      throw new SmsTimeoutException(
+          "Deadline of SMS specified by " + smsSendRequest + " has passed.");
+    }
+    // 0 would be an infinite timeout
+    return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, Math.min(timeout, remaining)));
+  }
+
+  private static SmsException createSmsException(final IOException e,
+      final SmsSendRequestDto smsSendRequest) {
+    if (e instanceof SocketTimeoutException) {
+      return new SmsTimeoutException(
+          "Timeout while sending SMS specified by " + smsSendRequest + ".", e,
+          e instanceof SmsTransport.ResponseTimeoutException);
+    }
+    return new SmsException(e);
+  }
+
+  @Override
+  protected long getChargedParts(final SmsSendResponseDto response, final long reservedParts) {
+    final GoyyaSmsSendResponseDto goyyaResponse = getGoyyaResponse(response);
+    if (goyyaResponse != null && goyyaResponse.getCount() != null) {
+      return goyyaResponse.getCount();
+    }
+    return super.getChargedParts(response, reservedParts);
+  }
+
+  /**
+   * Returns the remaining limit of messages that the gateway has reported.
+   *
+   * @param response the response
+   * @return the reported limit or {@code null} if there is none
+   */
+  @Override
+  protected Long getReportedBalance(final SmsSendResponseDto response) {
+    final GoyyaSmsSendResponseDto goyyaResponse = getGoyyaResponse(response);
+    if (goyyaResponse != null && goyyaResponse.getLimit() != null) {
+      return goyyaResponse.getLimit().longValue();
+    }
+    return null;
+  }
+
+  private static GoyyaSmsSendResponseDto getGoyyaResponse(final SmsSendResponseDto response) {
+    if (response != null && response.getExtension() instanceof GoyyaSmsSendResponseDto) {
+      return (GoyyaSmsSendResponseDto) response.getExtension();
+    }
+    return null;
   }
 
   /**
@@ -374,11 +716,37 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the message type
    */
   protected String getMessageType(final String message) {
-    if (StringUtils.isBlank(defaultMessageType) || MESSAGE_TYPE_TEXT_VALUE
-        .equalsIgnoreCase(defaultMessageType)
+    return getMessageType(message, getConfiguration());
+  }
+
+  /**
+   * Returns the message type.
+   *
+   * @param message the message
+   * @param config  the configuration
+   * @return the message type
+   */
+  protected String getMessageType(final String message,
+      final GoyyaSmsServiceConfiguration config) {
+    return getMessageType(config.getDefaultMessageType(),
+        SmsEncoding.countParts(message, config.getMaxLengthOfOneSms()));
+  }
+
+  /**
+   * Returns the message type of a message with the given number of parts. If the default message
+   * type is blank, text or long text, a message with more than one part is sent as long text,
+   * otherwise as text. Any other default message type is used as it is.
+   *
+   * @param defaultMessageType the default message type of the configuration
+   * @param numberOfParts      the number of parts of the message (see {@link
+   *                           SmsEncoding#countParts(CharSequence, int)})
+   * @return the message type
+   */
+  static String getMessageType(final String defaultMessageType, final int numberOfParts) {
+    if (StringUtils.isBlank(defaultMessageType)
+        || MESSAGE_TYPE_TEXT_VALUE.equalsIgnoreCase(defaultMessageType)
         || MESSAGE_TYPE_LONG_TEXT_VALUE.equalsIgnoreCase(defaultMessageType)) {
-      return message.length() > getMaxLengthOfOneSms() ? MESSAGE_TYPE_LONG_TEXT_VALUE
-          : MESSAGE_TYPE_TEXT_VALUE;
+      return numberOfParts > 1 ? MESSAGE_TYPE_LONG_TEXT_VALUE : MESSAGE_TYPE_TEXT_VALUE;
     }
     return defaultMessageType;
   }
@@ -390,15 +758,21 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the send time URL parameter value
    */
   protected String createSendTime(final Date sendTime) {
+    return createSendTime(sendTime, getConfiguration());
+  }
+
+  /**
+   * Creates the send time URL parameter value.
+   *
+   * @param sendTime the send time as {@link Date}
+   * @param config   the configuration
+   * @return the send time URL parameter value
+   */
+  protected String createSendTime(final Date sendTime, final GoyyaSmsServiceConfiguration config) {
     if (sendTime == null || new Date(System.currentTimeMillis() + 1000L * 60L).after(sendTime)) {
       return null;
     }
-    String customSendTimePattern =
-        StringUtils.isBlank(this.sendTimePattern) ? DEFAULT_SEND_TIME_PATTERN
-            : this.sendTimePattern;
-    SimpleDateFormat sdf = new SimpleDateFormat(customSendTimePattern, Locale.GERMANY);
-    sdf.setTimeZone(TimeZone.getTimeZone("Europe/Berlin"));
-    return sdf.format(sendTime);
+    return config.getSendTimeFormatter().format(sendTime.toInstant());
   }
 
   /**
@@ -409,21 +783,30 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @throws IOException if creation of the URL connection fails
    */
   protected HttpURLConnection createHttpURLConnection(final String url) throws IOException {
+    return createHttpURLConnection(url, getConfiguration());
+  }
+
+  /**
+   * Creates the URL connection with the proxy of the configuration.
+   *
+   * @param url    the URL
+   * @param config the configuration
+   * @return the URL connection
+   * @throws IOException if creation of the URL connection fails
+   */
+  protected HttpURLConnection createHttpURLConnection(final String url,
+      final GoyyaSmsServiceConfiguration config) throws IOException {
 
     URL sendUrl = new URL(url);
 
     HttpURLConnection con;
 
-    if (StringUtils.isNotBlank(proxyHost) && proxyPort != null) {
+    final Proxy proxy = config.getProxy();
+    if (proxy != null) {
 
-      Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
       con = (HttpURLConnection) sendUrl.openConnection(proxy);
-      if (StringUtils.isNotBlank(proxyUsername)) {
-        String passwd = proxyPassword != null ? proxyPassword : "";
-        String authValue = proxyUsername + ":" + passwd;
-        String headerValue = Base64.encodeBase64String(authValue.getBytes(
-            StandardCharsets.UTF_8));
-        con.setRequestProperty("Proxy-Authorization", "Basic " + headerValue);
+      if (config.getProxyAuthorization() != null) {
+        con.setRequestProperty("Proxy-Authorization", config.getProxyAuthorization());
       }
 
     } else {
@@ -489,14 +872,47 @@ public class GoyyaSmsService extends AbstractSmsService implements SmsService {
    * @return the encoded parameter value
    */
   private String encode(final String value, final Charset charset) {
-    if (StringUtils.isBlank(value)) {
-      return "";
+    return GoyyaSmsServiceConfiguration.encode(value, charset);
+  }
+
+  /**
+   * The configuration, the deadline and the request id of a request that is sent by another
+   * transport.
+   */
+  private static final class Exchange {
+
+    private final GoyyaSmsServiceConfiguration config;
+
+    private final long deadline;
+
+    private final String requestId;
+
+    private Exchange(GoyyaSmsServiceConfiguration config, long deadline, String requestId) {
+      this.config = config;
+      this.deadline = deadline;
+      this.requestId = requestId;
     }
-    try {
-      return URLEncoder.encode(value, charset.name());
+  }
 
-    } catch (UnsupportedEncodingException e) {
-      return value;
+  /**
+   * Closes connections whose deadline passes while the response is read. The thread ends when
+   * it is idle.
+   */
+  private static final class Watchdog {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+      final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+          runnable -> {
+            final Thread thread = new Thread(runnable, "sms-read-deadline");
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor.setKeepAliveTime(1L, TimeUnit.MINUTES);
+      executor.allowCoreThreadTimeOut(true);
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
     }
   }
 
@@ -0,0 +1,623 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An immutable snapshot of the configuration of a {@link GoyyaSmsService}. Besides the values of
+ * the {@link SmsServiceConfiguration} it holds the gateway URL, the credentials and the proxy
+ * settings. The parsed URL, the URL prefix with the encoded credentials, the {@link Proxy}, the
+ * proxy authorization header and the formatter of the send time are derived once per snapshot.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GoyyaSmsServiceConfiguration extends SmsServiceConfiguration {
+
+  /**
+   * The property key of the URL.
+   */
+  public static final String URL_KEY = "url";
+
+  /**
+   * The property key of the user name.
+   */
+  public static final String USERNAME_KEY = "username";
+
+  /**
+   * The property key of the password.
+   */
+  public static final String PASSWORD_KEY = "password";
+
+  /**
+   * The property key of the proxy host.
+   */
+  public static final String PROXY_HOST_KEY = "proxyHost";
+
+  /**
+   * The property key of the proxy port.
+   */
+  public static final String PROXY_PORT_KEY = "proxyPort";
+
+  /**
+   * The property key of the proxy user name.
+   */
+  public static final String PROXY_USERNAME_KEY = "proxyUsername";
+
+  /**
+   * The property key of the proxy password.
+   */
+  public static final String PROXY_PASSWORD_KEY = "proxyPassword";
+
+  /**
+   * The property key of the send time pattern.
+   */
+  public static final String SEND_TIME_PATTERN_KEY = "sendTimePattern";
+
+  /**
+   * The property key of the default message type.
+   */
+  public static final String DEFAULT_MESSAGE_TYPE_KEY = "defaultMessageType";
+
+  /**
+   * The property key of the maximum connect timeout in milliseconds.
+   */
+  public static final String CONNECT_TIMEOUT_MILLIS_KEY = "connectTimeoutMillis";
+
+  /**
+   * The property key of the maximum read timeout in milliseconds.
+   */
+  public static final String READ_TIMEOUT_MILLIS_KEY = "readTimeoutMillis";
+
+  /**
+   * The property key of the total timeout of a request in milliseconds.
+   */
+  public static final String TOTAL_TIMEOUT_MILLIS_KEY = "totalTimeoutMillis";
+
+  /**
+   * The property key of the minimum connect and read timeout in milliseconds.
+   */
+  public static final String MIN_TIMEOUT_MILLIS_KEY = "minTimeoutMillis";
+
+  /**
+   * The property key of the flag whether the timeouts adapt to the observed latencies.
+   */
+  public static final String ADAPTIVE_TIMEOUTS_KEY = "adaptiveTimeouts";
+
+  private static final ZoneId SEND_TIME_ZONE = ZoneId.of("Europe/Berlin");
+
+  private String url = GoyyaSmsService.DEFAULT_URL;
+
+  private String username;
+
+  private String password;
+
+  private String proxyHost;
+
+  private Integer proxyPort;
+
+  private String proxyUsername;
+
+  private String proxyPassword;
+
+  private String sendTimePattern = GoyyaSmsService.DEFAULT_SEND_TIME_PATTERN;
+
+  private String defaultMessageType = GoyyaSmsService.MESSAGE_TYPE_TEXT_VALUE;
+
+  private long connectTimeoutMillis = GoyyaSmsService.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+  private long readTimeoutMillis = GoyyaSmsService.DEFAULT_READ_TIMEOUT_MILLIS;
+
+  private long totalTimeoutMillis = GoyyaSmsService.DEFAULT_TOTAL_TIMEOUT_MILLIS;
+
+  private long minTimeoutMillis = GoyyaSmsService.DEFAULT_MIN_TIMEOUT_MILLIS;
+
+  private boolean adaptiveTimeouts = true;
+
+  private URL parsedUrl;
+
+  private String requestPrefix;
+
+  private Proxy proxy;
+
+  private String proxyAuthorization;
+
+  private DateTimeFormatter sendTimeFormatter;
+
+  /**
+   * Instantiates a new goyya configuration with default values.
+   */
+  public GoyyaSmsServiceConfiguration() {
+    super();
+    derive();
+  }
+
+  @Override
+  protected void derive() {
+    super.derive();
+    if (minTimeoutMillis < 1L || connectTimeoutMillis < minTimeoutMillis
+        || readTimeoutMillis < minTimeoutMillis || totalTimeoutMillis < minTimeoutMillis) {
+      throw new IllegalArgumentException("Timeouts must not be less than the minimum timeout "
+          + "and the minimum timeout must be greater than 0.");
+    }
+    try {
+      parsedUrl = new URL(url);
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Illegal URL: " + url, e);
+    }
+    final Charset charset = getCharset();
+    requestPrefix = url + (url.contains("?") ? '&' : '?')
+        + "id=" + encode(username, charset)
+        + "&pw=" + encode(password, charset);
+    if (StringUtils.isNotBlank(proxyHost) && proxyPort != null) {
+      proxy = new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxyHost, proxyPort));
+    } else {
+      proxy = null;
+    }
+    if (proxy != null && StringUtils.isNotBlank(proxyUsername)) {
+      final String authValue = proxyUsername + ":" + (proxyPassword != null ? proxyPassword : "");
+      proxyAuthorization = "Basic " + Base64.encodeBase64String(
+          authValue.getBytes(StandardCharsets.UTF_8));
+    } else {
+      proxyAuthorization = null;
+    }
+    sendTimeFormatter = DateTimeFormatter
+        .ofPattern(StringUtils.isBlank(sendTimePattern)
+            ? GoyyaSmsService.DEFAULT_SEND_TIME_PATTERN
+            : sendTimePattern, Locale.GERMANY)
+        .withZone(SEND_TIME_ZONE);
+  }
+
+  /**
+   * Encodes a query parameter.
+   *
+   * @param value   the parameter value
+   * @param charset the charset
+   * @return the encoded parameter value
+   */
+  static String encode(final String value, final Charset charset) {
+    if (StringUtils.isBlank(value)) {
+      return "";
+    }
+    try {
+      return URLEncoder.encode(value, charset.name());
+
+    } catch (UnsupportedEncodingException e) {
+      return value;
+    }
+  }
+
+  @Override
+  public GoyyaSmsServiceConfiguration withProperties(final Properties properties,
+      final String prefix) {
+    return (GoyyaSmsServiceConfiguration) super.withProperties(properties, prefix);
+  }
+
+  @Override
+  protected void applyProperties(final Properties properties, final String prefix) {
+    super.applyProperties(properties, prefix);
+    url = properties.getProperty(prefix + URL_KEY, url);
+    username = properties.getProperty(prefix + USERNAME_KEY, username);
+    password = properties.getProperty(prefix + PASSWORD_KEY, password);
+    proxyHost = properties.getProperty(prefix + PROXY_HOST_KEY, proxyHost);
+    if (properties.containsKey(prefix + PROXY_PORT_KEY)) {
+      final int port = getInt(properties, prefix + PROXY_PORT_KEY, -1);
+      proxyPort = port >= 0 ? port : null;
+    }
+    proxyUsername = properties.getProperty(prefix + PROXY_USERNAME_KEY, proxyUsername);
+    proxyPassword = properties.getProperty(prefix + PROXY_PASSWORD_KEY, proxyPassword);
+    sendTimePattern = properties.getProperty(prefix + SEND_TIME_PATTERN_KEY, sendTimePattern);
+    defaultMessageType = properties.getProperty(
+        prefix + DEFAULT_MESSAGE_TYPE_KEY, defaultMessageType);
+    connectTimeoutMillis = getLong(
+        properties, prefix + CONNECT_TIMEOUT_MILLIS_KEY, connectTimeoutMillis);
+    readTimeoutMillis = getLong(properties, prefix + READ_TIMEOUT_MILLIS_KEY, readTimeoutMillis);
+    totalTimeoutMillis = getLong(
+        properties, prefix + TOTAL_TIMEOUT_MILLIS_KEY, totalTimeoutMillis);
+    minTimeoutMillis = getLong(properties, prefix + MIN_TIMEOUT_MILLIS_KEY, minTimeoutMillis);
+    final String adaptive = StringUtils.trimToNull(
+        properties.getProperty(prefix + ADAPTIVE_TIMEOUTS_KEY));
+    if (adaptive != null) {
+      adaptiveTimeouts = Boolean.parseBoolean(adaptive);
+    }
+  }
+
+  /**
+   * Gets the URL.
+   *
+   * @return the URL
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * Gets the parsed URL.
+   *
+   * @return the parsed URL
+   */
+  public URL getParsedUrl() {
+    return parsedUrl;
+  }
+
+  /**
+   * Gets the URL with the encoded credentials; the parameters of a request are appended to it.
+   *
+   * @return the URL with the encoded credentials
+   */
+  public String getRequestPrefix() {
+    return requestPrefix;
+  }
+
+  /**
+   * Returns a copy with the URL.
+   *
+   * @param url the URL (if it is blank, the default URL is used)
+   * @return the changed copy
+   * @throws IllegalArgumentException if the URL is not valid
+   */
+  public GoyyaSmsServiceConfiguration withUrl(final String url) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.url = StringUtils.isNotBlank(url)
+        ? url
+        : GoyyaSmsService.DEFAULT_URL);
+  }
+
+  /**
+   * Gets the user name.
+   *
+   * @return the user name
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   * Returns a copy with the user name.
+   *
+   * @param username the user name
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withUsername(final String username) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.username = username);
+  }
+
+  /**
+   * Gets the password.
+   *
+   * @return the password
+   */
+  public String getPassword() {
+    return password;
+  }
+
+  /**
+   * Returns a copy with the password.
+   *
+   * @param password the password
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withPassword(final String password) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.password = password);
+  }
+
+  /**
+   * Gets the host name of the proxy.
+   *
+   * @return the host name of the proxy
+   */
+  public String getProxyHost() {
+    return proxyHost;
+  }
+
+  /**
+   * Returns a copy with the host name of the proxy.
+   *
+   * @param proxyHost the host name of the proxy
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withProxyHost(final String proxyHost) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.proxyHost = proxyHost);
+  }
+
+  /**
+   * Gets the port of the proxy.
+   *
+   * @return the port of the proxy
+   */
+  public Integer getProxyPort() {
+    return proxyPort;
+  }
+
+  /**
+   * Returns a copy with the port of the proxy.
+   *
+   * @param proxyPort the port of the proxy
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withProxyPort(final Integer proxyPort) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.proxyPort = proxyPort);
+  }
+
+  /**
+   * Gets the user name for proxy authentication.
+   *
+   * @return the user name for proxy authentication
+   */
+  public String getProxyUsername() {
+    return proxyUsername;
+  }
+
+  /**
+   * Returns a copy with the user name for proxy authentication.
+   *
+   * @param proxyUsername the user name for proxy authentication
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withProxyUsername(final String proxyUsername) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.proxyUsername = proxyUsername);
+  }
+
+  /**
+   * Gets the password for proxy authentication.
+   *
+   * @return the password for proxy authentication
+   */
+  public String getProxyPassword() {
+    return proxyPassword;
+  }
+
+  /**
+   * Returns a copy with the password for proxy authentication.
+   *
+   * @param proxyPassword the password for proxy authentication
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withProxyPassword(final String proxyPassword) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.proxyPassword = proxyPassword);
+  }
+
+  /**
+   * Gets the proxy.
+   *
+   * @return the proxy or {@code null} if no proxy is configured
+   */
+  public Proxy getProxy() {
+    return proxy;
+  }
+
+  /**
+   * Gets the value of the proxy authorization header.
+   *
+   * @return the value of the proxy authorization header or {@code null}
+   */
+  public String getProxyAuthorization() {
+    return proxyAuthorization;
+  }
+
+  /**
+   * Gets the pattern to convert the time.
+   *
+   * @return the pattern to convert the time
+   */
+  public String getSendTimePattern() {
+    return sendTimePattern;
+  }
+
+  /**
+   * Gets the formatter of the send time.
+   *
+   * @return the formatter of the send time
+   */
+  public DateTimeFormatter getSendTimeFormatter() {
+    return sendTimeFormatter;
+  }
+
+  /**
+   * Returns a copy with the pattern to convert the time.
+   *
+   * @param sendTimePattern the pattern to convert the time
+   * @return the changed copy
+   * @throws IllegalArgumentException if the pattern is not valid
+   */
+  public GoyyaSmsServiceConfiguration withSendTimePattern(final String sendTimePattern) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.sendTimePattern = sendTimePattern);
+  }
+
+  /**
+   * Gets the default message type.
+   *
+   * @return the default message type
+   */
+  public String getDefaultMessageType() {
+    return defaultMessageType;
+  }
+
+  /**
+   * Returns a copy with the default message type.
+   *
+   * @param defaultMessageType the default message type
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withDefaultMessageType(final String defaultMessageType) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.defaultMessageType = defaultMessageType);
+  }
+
+  /**
+   * Gets the maximum connect timeout in milliseconds. If the timeouts are adaptive, the
+   * effective connect timeout may be less.
+   *
+   * @return the maximum connect timeout
+   */
+  public long getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  /**
+   * Returns a copy with the maximum connect timeout.
+   *
+   * @param connectTimeoutMillis the maximum connect timeout in milliseconds
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withConnectTimeoutMillis(final long connectTimeoutMillis) {
+    return change(
+        (GoyyaSmsServiceConfiguration c) -> c.connectTimeoutMillis = connectTimeoutMillis);
+  }
+
+  /**
+   * Gets the maximum read timeout in milliseconds. If the timeouts are adaptive, the effective
+   * read timeout may be less.
+   *
+   * @return the maximum read timeout
+   */
+  public long getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  /**
+   * Returns a copy with the maximum read timeout.
+   *
+   * @param readTimeoutMillis the maximum read timeout in milliseconds
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withReadTimeoutMillis(final long readTimeoutMillis) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.readTimeoutMillis = readTimeoutMillis);
+  }
+
+  /**
+   * Gets the total timeout of a request in milliseconds (from opening the connection until the
+   * response is read).
+   *
+   * @return the total timeout
+   */
+  public long getTotalTimeoutMillis() {
+    return totalTimeoutMillis;
+  }
+
+  /**
+   * Returns a copy with the total timeout.
+   *
+   * @param totalTimeoutMillis the total timeout in milliseconds
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withTotalTimeoutMillis(final long totalTimeoutMillis) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.totalTimeoutMillis = totalTimeoutMillis);
+  }
+
+  /**
+   * Gets the minimum of the adaptive connect and read timeouts in milliseconds.
+   *
+   * @return the minimum timeout
+   */
+  public long getMinTimeoutMillis() {
+    return minTimeoutMillis;
+  }
+
+  /**
+   * Returns a copy with the minimum timeout.
+   *
+   * @param minTimeoutMillis the minimum timeout in milliseconds
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withMinTimeoutMillis(final long minTimeoutMillis) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.minTimeoutMillis = minTimeoutMillis);
+  }
+
+  /**
+   * Checks whether the connect and read timeouts adapt to the observed latencies.
+   *
+   * @return {@code true} if the timeouts are adaptive, otherwise {@code false}
+   */
+  public boolean isAdaptiveTimeouts() {
+    return adaptiveTimeouts;
+  }
+
+  /**
+   * Returns a copy with the flag whether the timeouts are adaptive.
+   *
+   * @param adaptiveTimeouts {@code true} if the timeouts adapt to the observed latencies
+   * @return the changed copy
+   */
+  public GoyyaSmsServiceConfiguration withAdaptiveTimeouts(final boolean adaptiveTimeouts) {
+    return change((GoyyaSmsServiceConfiguration c) -> c.adaptiveTimeouts = adaptiveTimeouts);
+  }
+
+  @Override
+  public String toString() {
+    final String base = super.toString();
+    return base.substring(0, base.length() - 1)
+        + ", url='" + url + '\''
+        + ", username='" + username + '\''
+        + ", password=" + (password != null ? "'****'" : "null")
+        + ", proxyHost='" + proxyHost + '\''
+        + ", proxyPort=" + proxyPort
+        + ", proxyUsername='" + proxyUsername + '\''
+        + ", proxyPassword=" + (proxyPassword != null ? "'****'" : "null")
+        + ", sendTimePattern='" + sendTimePattern + '\''
+        + ", defaultMessageType='" + defaultMessageType + '\''
+        + ", connectTimeoutMillis=" + connectTimeoutMillis
+        + ", readTimeoutMillis=" + readTimeoutMillis
+        + ", totalTimeoutMillis=" + totalTimeoutMillis
+        + ", minTimeoutMillis=" + minTimeoutMillis
+        + ", adaptiveTimeouts=" + adaptiveTimeouts
+        + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    GoyyaSmsServiceConfiguration that = (GoyyaSmsServiceConfiguration) o;
+    return Objects.equals(url, that.url) &&
+        Objects.equals(username, that.username) &&
+        Objects.equals(password, that.password) &&
+        Objects.equals(proxyHost, that.proxyHost) &&
+        Objects.equals(proxyPort, that.proxyPort) &&
+        Objects.equals(proxyUsername, that.proxyUsername) &&
+        Objects.equals(proxyPassword, that.proxyPassword) &&
+        Objects.equals(sendTimePattern, that.sendTimePattern) &&
+        Objects.equals(defaultMessageType, that.defaultMessageType) &&
+        connectTimeoutMillis == that.connectTimeoutMillis &&
+        readTimeoutMillis == that.readTimeoutMillis &&
+        totalTimeoutMillis == that.totalTimeoutMillis &&
+        minTimeoutMillis == that.minTimeoutMillis &&
+        adaptiveTimeouts == that.adaptiveTimeouts;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), url, username, proxyHost, proxyPort, proxyUsername,
+        sendTimePattern, defaultMessageType, connectTimeoutMillis, readTimeoutMillis,
+        totalTimeoutMillis, minTimeoutMillis, adaptiveTimeouts);
+  }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A delivery status source that asks a HTTP status endpoint of the gateway for the status of a
+ * batch of messages with one request.
+ *
+ * <p>The request is a GET request with the parameters {@code id} and {@code pw} for the
+ * credentials and the parameter {@code msgid} with the comma separated message ids. The
+ * response is expected to contain one line per message of the form {@code <messageId>;<status>}
+ * (a comma, colon or blank may be used as separator, too). The status may be the name or the code
+ * of a {@link DeliveryStatus}. Other formats can be supported by overriding {@link
+ * #parseLine(String, Map)}.
+ *
+ * <p>The connect and read timeouts and the proxy are taken from a {@link
+ * GoyyaSmsServiceConfiguration}, so that a slow endpoint can't block the poller.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class HttpDeliveryStatusSource implements DeliveryStatusSource {
+
+  private static final String GATEWAY_USER_ID_KEY = "id";
+
+  private static final String GATEWAY_USER_PASSWORD_KEY = "pw";
+
+  private static final String MESSAGE_IDS_KEY = "msgid";
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final String url;
+
+  private final GoyyaSmsServiceConfiguration config;
+
+  /**
+   * Instantiates a new http delivery status source with the default timeouts and without a
+   * proxy.
+   *
+   * @param url      the URL of the status endpoint
+   * @param username the user name
+   * @param password the password
+   */
+  public HttpDeliveryStatusSource(String url, String username, String password) {
+    this(url, new GoyyaSmsServiceConfiguration()
+        .withUsername(username)
+        .withPassword(password));
+  }
+
+  /**
+   * Instantiates a new http delivery status source with the credentials, the timeouts and the
+   * proxy of the configuration.
+   *
+   * @param url    the URL of the status endpoint
+   * @param config the configuration (for example the one of the {@link GoyyaSmsService})
+   */
+  public HttpDeliveryStatusSource(String url, GoyyaSmsServiceConfiguration config) {
+    Validate.notBlank(url, "url must not be null or blank");
+    Validate.notNull(config, "config must not be null");
+    this.url = url;
+    this.config = config;
+  }
+
+  @Override
+  public Map<String, DeliveryStatus> fetchDeliveryStatus(final Collection<String> messageIds) {
+    final Map<String, DeliveryStatus> result = new LinkedHashMap<>();
+    if (messageIds == null || messageIds.isEmpty()) {
+      return result;
+    }
+    final StringBuilder uriBuilder = new StringBuilder(url);
+    uriBuilder.append(url.contains("?") ? '&' : '?');
+    uriBuilder.append(GATEWAY_USER_ID_KEY).append('=').append(encode(config.getUsername()));
+    uriBuilder.append('&').append(GATEWAY_USER_PASSWORD_KEY).append('=')
+        .append(encode(config.getPassword()));
+    uriBuilder.append('&').append(MESSAGE_IDS_KEY).append('=')
+        .append(encode(String.join(",", messageIds)));
+
+    HttpURLConnection con = null;
+    try {
+      con = createHttpURLConnection(uriBuilder.toString());
+      con.connect();
+      if (con.getResponseCode() >= 400) {
+        throw new SmsException("Fetching delivery status failed with status code "
+            + con.getResponseCode());
+      }
+      try (InputStream inputStream = con.getInputStream()) {
+        final List<String> lines = IOUtils.readLines(inputStream, StandardCharsets.UTF_8);
+        for (String line : lines) {
+          parseLine(line, result);
+        }
+      }
+    } catch (IOException e) {
+      SmsException se = e instanceof SocketTimeoutException
+          ? new SmsTimeoutException("Timeout while fetching delivery status.", e)
+          : new SmsException(e);
+      log.error("Fetching delivery status of " + messageIds.size() + " messages failed.", se);
+      throw se;
+
+    } finally {
+      if (con != null) {
+        con.disconnect();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Creates the URL connection with the timeouts and the proxy of the configuration.
+   *
+   * @param url the URL with all request parameters
+   * @return the URL connection
+   * @throws IOException if creation of the URL connection fails
+   */
+  protected HttpURLConnection createHttpURLConnection(final String url) throws IOException {
+    final Proxy proxy = config.getProxy();
+    final HttpURLConnection con;
+    if (proxy != null) {
+      con = (HttpURLConnection) new URL(url).openConnection(proxy);
+      if (config.getProxyAuthorization() != null) {
+        con.setRequestProperty("Proxy-Authorization", config.getProxyAuthorization());
+      }
+    } else {
+      con = (HttpURLConnection) new URL(url).openConnection();
+    }
+    con.setConnectTimeout(toTimeout(config.getConnectTimeoutMillis()));
+    con.setReadTimeout(toTimeout(config.getReadTimeoutMillis()));
+    return con;
+  }
+
+  private static int toTimeout(final long millis) {
+    // 0 would be an infinite timeout
+    return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, millis));
+  }
+
+  /**
+   * Parses one line of the response.
+   *
+   * @param line   the line
+   * @param result the result map where the parsed status is added to
+   */
+  protected void parseLine(final String line, final Map<String, DeliveryStatus> result) {
+    if (StringUtils.isBlank(line)) {
+      return;
+    }
+    final String trimmed = line.trim();
+    final int index = StringUtils.indexOfAny(trimmed, ';', ',', ':', ' ', '\t');
+    if (index > 0) {
+      result.put(trimmed.substring(0, index).trim(),
+          DeliveryStatus.fromValue(trimmed.substring(index + 1)));
+    }
+  }
+
+  private static String encode(final String value) {
+    if (StringUtils.isBlank(value)) {
+      return "";
+    }
+    try {
+      return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+
+    } catch (UnsupportedEncodingException e) {
+      return value;
+    }
+  }
+
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An outbox of SMS in a database table. Requests are written into the table and are sent later
+ * by one or more {@link ClusteredSmsSender}s.
+ *
+ * <p>Every request belongs to a partition that is computed from its receiver, so all SMS to one
+ * receiver are sent by the same node in the order they were written (a retry is sent later). A
+ * node sends the requests of a partition only while it holds the lease of the partition.
+ *
+ * <p>The tables are created by {@link #createSchema()} (see {@code
+ * org/bremersee/sms/sms-outbox.sql}). The statements use standard SQL with {@code FETCH FIRST n
+ * ROWS ONLY FOR UPDATE SKIP LOCKED}, which is supported by PostgreSQL, Oracle 12c, DB2 and H2 2.x.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class JdbcSmsOutbox {
+
+  /**
+   * The default number of partitions.
+   */
+  public static final int DEFAULT_PARTITIONS = 16;
+
+  /**
+   * The resource with the schema.
+   */
+  public static final String SCHEMA_RESOURCE = "/org/bremersee/sms/sms-outbox.sql";
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  /**
+   * The status of a request in the outbox.
+   */
+  public enum Status {
+
+    /**
+     * The request waits to be sent.
+     */
+    PENDING,
+
+    /**
+     * The request was claimed by a node and is being sent.
+     */
+    SENDING,
+
+    /**
+     * The request was sent.
+     */
+    SENT,
+
+    /**
+     * Sending the request has failed finally.
+     */
+    FAILED
+  }
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final DataSource dataSource;
+
+  private final int partitions;
+
+  private final ObjectReader reader;
+
+  private final ObjectWriter writer;
+
+  /**
+   * Instantiates a new jdbc sms outbox with the default number of partitions.
+   *
+   * @param dataSource the data source
+   */
+  public JdbcSmsOutbox(DataSource dataSource) {
+    this(dataSource, DEFAULT_PARTITIONS);
+  }
+
+  /**
+   * Instantiates a new jdbc sms outbox.
+   *
+   * @param dataSource the data source
+   * @param partitions the number of partitions (must be the same on all nodes)
+   */
+  public JdbcSmsOutbox(DataSource dataSource, int partitions) {
+    this(dataSource, partitions, null);
+  }
+
+  /**
+   * Instantiates a new jdbc sms outbox.
+   *
+   * @param dataSource   the data source
+   * @param partitions   the number of partitions (must be the same on all nodes)
+   * @param objectMapper the object mapper that serializes the requests (can be {@code null})
+   */
+  public JdbcSmsOutbox(DataSource dataSource, int partitions, ObjectMapper objectMapper) {
+    Validate.notNull(dataSource, "dataSource must not be null");
+    Validate.isTrue(partitions > 0, "partitions must be greater than 0");
+    final ObjectMapper om = objectMapper != null ? objectMapper : ExtensionUtils.objectMapper();
+    this.dataSource = dataSource;
+    this.partitions = partitions;
+    this.reader = om.readerFor(SmsSendRequestDto.class);
+    this.writer = om.writerFor(SmsSendRequestDto.class);
+  }
+
+  /**
+   * Gets the data source.
+   *
+   * @return the data source
+   */
+  public DataSource getDataSource() {
+    return dataSource;
+  }
+
+  /**
+   * Gets the number of partitions.
+   *
+   * @return the number of partitions
+   */
+  public int getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Returns the partition of a receiver.
+   *
+   * @param receiver the receiver (can be {@code null})
+   * @return the partition
+   */
+  public int partitionOf(final String receiver) {
+    return receiver == null ? 0 : Math.floorMod(receiver.hashCode(), partitions);
+  }
+
+  /**
+   * Creates the tables (see {@link #SCHEMA_RESOURCE}) and the leases of the partitions.
+   *
+   * @throws SmsException if the tables can't be created
+   */
+  public void createSchema() {
+    final String schema;
+    try (InputStream in = JdbcSmsOutbox.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+      schema = IOUtils.toString(in, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new SmsException("Reading schema of sms outbox failed.", e);
+    }
+    try (Connection con = dataSource.getConnection();
+        Statement statement = con.createStatement()) {
+      for (String sql : stripComments(schema).split(";")) {
+        final String ddl = sql.trim();
+        if (!ddl.isEmpty()) {
+          statement.execute(ddl);
+        }
+      }
+    } catch (SQLException e) {
+      throw new SmsException("Creating schema of sms outbox failed.", e);
+    }
+    createPartitions();
+  }
+
+  private static String stripComments(final String sql) {
+    final StringBuilder sb = new StringBuilder();
+    for (String line : sql.split("\n")) {
+      if (!line.trim().startsWith("--")) {
+        sb.append(line).append('\n');
+      }
+    }
+    return sb.toString().trim();
+  }
+
+  /**
+   * Creates the leases of the partitions that do not exist yet.
+   *
+   * @throws SmsException if the leases can't be created
+   */
+  public void createPartitions() {
+    try (Connection con = dataSource.getConnection()) {
+      final Set<Integer> existing = new HashSet<>();
+      try (Statement statement = con.createStatement();
+          ResultSet rs = statement.executeQuery("SELECT partition_no FROM sms_outbox_lease")) {
+        while (rs.next()) {
+          existing.add(rs.getInt(1));
+        }
+      }
+      try (PreparedStatement ps = con.prepareStatement(
+          "INSERT INTO sms_outbox_lease (partition_no, owner, expires) VALUES (?, NULL, 0)")) {
+        for (int partition = 0; partition < partitions; partition++) {
+          if (!existing.contains(partition)) {
+            ps.setInt(1, partition);
+            try {
+              ps.executeUpdate();
+            } catch (SQLException e) {
+              // another node has created it in the meantime
+              log.debug("Lease of partition {} was not created: {}", partition, e.getMessage());
+            }
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw new SmsException("Creating partitions of sms outbox failed.", e);
+    }
+  }
+
+  /**
+   * Writes a request into the outbox.
+   *
+   * @param smsSendRequest the request
+   * @return the id of the outbox entry (the request id, if the request has one)
+   * @throws SmsException if the request can't be written
+   */
+  public String enqueue(final SmsSendRequestDto smsSendRequest) {
+    final List<String> ids = enqueueAll(Collections.singletonList(smsSendRequest));
+    return ids.get(0);
+  }
+
+  /**
+   * Writes all requests into the outbox with one batch in one transaction. If the id of a
+   * request is already in the outbox, no request is written.
+   *
+   * @param smsSendRequests the requests
+   * @return the ids of the outbox entries in the order of the requests
+   * @throws SmsException if the requests can't be written
+   */
+  public List<String> enqueueAll(final Collection<? extends SmsSendRequestDto> smsSendRequests) {
+    Validate.notNull(smsSendRequests, "Requests must not be null.");
+    Validate.noNullElements(smsSendRequests, "Requests must not contain null.");
+    final List<String> ids = new ArrayList<>(smsSendRequests.size());
+    final long now = System.currentTimeMillis();
+    try (Connection con = dataSource.getConnection()) {
+      final boolean autoCommit = con.getAutoCommit();
+      con.setAutoCommit(false);
+      try (PreparedStatement ps = con.prepareStatement("INSERT INTO sms_outbox "
+          + "(id, partition_no, status, payload, attempts, next_attempt, created_at, updated_at) "
+          + "VALUES (?, ?, ?, ?, 0, ?, ?, ?)")) {
+        for (SmsSendRequestDto request : smsSendRequests) {
+          final String id = StringUtils.isNotBlank(request.getRequestId())
+              ? request.getRequestId()
+              : UUID.randomUUID().toString();
+          ps.setString(1, id);
+          ps.setInt(2, partitionOf(request.getReceiver()));
+          ps.setString(3, Status.PENDING.name());
+          ps.setString(4, writer.writeValueAsString(request));
+          ps.setLong(5, now);
+          ps.setLong(6, now);
+          ps.setLong(7, now);
+          ps.addBatch();
+          ids.add(id);
+        }
+        ps.executeBatch();
+        con.commit();
+
+      } catch (SQLException | IOException e) {
+        con.rollback();
+        throw e;
+
+      } finally {
+        con.setAutoCommit(autoCommit);
+      }
+    } catch (SQLException | IOException e) {
+      throw new SmsException("Writing SMS into outbox failed.", e);
+    }
+    return ids;
+  }
+
+  /**
+   * Counts the entries with the specified status.
+   *
+   * @param status the status
+   * @return the number of entries
+   * @throws SmsException if the entries can't be counted
+   */
+  public long count(final Status status) {
+    Validate.notNull(status, "Status must not be null.");
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement(
+            "SELECT COUNT(*) FROM sms_outbox WHERE status = ?")) {
+      ps.setString(1, status.name());
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : 0L;
+      }
+    } catch (SQLException e) {
+      throw new SmsException("Counting SMS of outbox failed.", e);
+    }
+  }
+
+  /**
+   * Announces that a node is alive and removes nodes that are dead for longer than a lease.
+   *
+   * @param nodeId      the node id
+   * @param now         the current time
+   * @param leaseMillis the duration of a lease
+   * @return the number of nodes that are alive
+   * @throws SQLException if the database access fails
+   */
+  int heartbeat(final String nodeId, final long now, final long leaseMillis)
+      throws SQLException {
+
+    try (Connection con = dataSource.getConnection()) {
+      try (PreparedStatement ps = con.prepareStatement(
+          "UPDATE sms_outbox_node SET expires = ? WHERE node_id = ?")) {
+        ps.setLong(1, now + leaseMillis);
+        ps.setString(2, nodeId);
+        if (ps.executeUpdate() == 0) {
+          try (PreparedStatement insert = con.prepareStatement(
+              "INSERT INTO sms_outbox_node (node_id, expires) VALUES (?, ?)")) {
+            insert.setString(1, nodeId);
+            insert.setLong(2, now + leaseMillis);
+            insert.executeUpdate();
+          }
+        }
+      }
+      try (PreparedStatement ps = con.prepareStatement(
+          "DELETE FROM sms_outbox_node WHERE expires < ?")) {
+        ps.setLong(1, now - leaseMillis);
+        ps.executeUpdate();
+      }
+      try (PreparedStatement ps = con.prepareStatement(
+          "SELECT COUNT(*) FROM sms_outbox_node WHERE expires > ?")) {
+        ps.setLong(1, now);
+        try (ResultSet rs = ps.executeQuery()) {
+          return rs.next() ? Math.max(1, rs.getInt(1)) : 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes a node and releases all of its leases.
+   *
+   * @param nodeId the node id
+   * @throws SQLException if the database access fails
+   */
+  void removeNode(final String nodeId) throws SQLException {
+    try (Connection con = dataSource.getConnection()) {
+      try (PreparedStatement ps = con.prepareStatement(
+          "UPDATE sms_outbox_lease SET owner = NULL, expires = 0 WHERE owner = ?")) {
+        ps.setString(1, nodeId);
+        ps.executeUpdate();
+      }
+      try (PreparedStatement ps = con.prepareStatement(
+          "DELETE FROM sms_outbox_node WHERE node_id = ?")) {
+        ps.setString(1, nodeId);
+        ps.executeUpdate();
+      }
+    }
+  }
+
+  /**
+   * Finds the partitions whose leases are free or have expired.
+   *
+   * @param now the current time
+   * @return the free partitions
+   * @throws SQLException if the database access fails
+   */
+  List<Integer> findFreePartitions(final long now) throws SQLException {
+    final List<Integer> free = new ArrayList<>();
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("SELECT partition_no FROM sms_outbox_lease "
+            + "WHERE owner IS NULL OR expires <= ? ORDER BY partition_no")) {
+      ps.setLong(1, now);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          free.add(rs.getInt(1));
+        }
+      }
+    }
+    return free;
+  }
+
+  /**
+   * Claims the lease of a partition, if it is free or has expired.
+   *
+   * @param partition the partition
+   * @param nodeId    the node id
+   * @param now       the current time
+   * @param expires   the expiry of the lease
+   * @return {@code true} if the node holds the lease now
+   * @throws SQLException if the database access fails
+   */
+  boolean claimLease(final int partition, final String nodeId, final long now,
+      final long expires) throws SQLException {
+
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox_lease "
+            + "SET owner = ?, expires = ? "
+            + "WHERE partition_no = ? AND (owner IS NULL OR expires <= ?)")) {
+      ps.setString(1, nodeId);
+      ps.setLong(2, expires);
+      ps.setInt(3, partition);
+      ps.setLong(4, now);
+      return ps.executeUpdate() == 1;
+    }
+  }
+
+  /**
+   * Renews the lease of a partition.
+   *
+   * @param partition the partition
+   * @param nodeId    the node id
+   * @param now       the current time
+   * @param expires   the new expiry of the lease
+   * @return {@code true} if the node still holds the lease
+   * @throws SQLException if the database access fails
+   */
+  boolean renewLease(final int partition, final String nodeId, final long now,
+      final long expires) throws SQLException {
+
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox_lease SET expires = ? "
+            + "WHERE partition_no = ? AND owner = ? AND expires > ?")) {
+      ps.setLong(1, expires);
+      ps.setInt(2, partition);
+      ps.setString(3, nodeId);
+      ps.setLong(4, now);
+      return ps.executeUpdate() == 1;
+    }
+  }
+
+  /**
+   * Releases the lease of a partition.
+   *
+   * @param partition the partition
+   * @param nodeId    the node id
+   * @throws SQLException if the database access fails
+   */
+  void releaseLease(final int partition, final String nodeId) throws SQLException {
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox_lease "
+            + "SET owner = NULL, expires = 0 WHERE partition_no = ? AND owner = ?")) {
+      ps.setInt(1, partition);
+      ps.setString(2, nodeId);
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * Claims a batch of entries of the partitions that are due. The entries are selected with
+   * {@code FOR UPDATE SKIP LOCKED} and marked as {@link Status#SENDING} until {@code claimUntil}
+   * in one short transaction. If the node dies while sending, the entries are claimed again
+   * after that time.
+   *
+   * @param partitions the partitions
+   * @param batchSize  the maximum number of entries
+   * @param nodeId     the node id
+   * @param now        the current time
+   * @param claimUntil the time until the entries are reserved for the node
+   * @return the claimed entries
+   * @throws SQLException if the database access fails
+   */
+  List<Entry> claim(final Collection<Integer> partitions, final int batchSize,
+      final String nodeId, final long now, final long claimUntil) throws SQLException {
+
+    final List<Entry> entries = new ArrayList<>();
+    if (partitions.isEmpty()) {
+      return entries;
+    }
+    final String sql = "SELECT id, payload, attempts FROM sms_outbox "
+        + "WHERE partition_no IN (" + StringUtils.repeat("?", ", ", partitions.size()) + ") "
+        + "AND status IN (?, ?) AND next_attempt <= ? "
+        + "ORDER BY created_at, id FETCH FIRST " + batchSize + " ROWS ONLY "
+        + "FOR UPDATE SKIP LOCKED";
+    try (Connection con = dataSource.getConnection()) {
+      final boolean autoCommit = con.getAutoCommit();
+      con.setAutoCommit(false);
+      try {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+          int index = 1;
+          for (Integer partition : partitions) {
+            ps.setInt(index++, partition);
+          }
+          ps.setString(index++, Status.PENDING.name());
+          ps.setString(index++, Status.SENDING.name());
+          ps.setLong(index, now);
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              entries.add(new Entry(rs.getString(1), rs.getString(2), rs.getInt(3)));
+            }
+          }
+        }
+        if (!entries.isEmpty()) {
+          try (PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox "
+              + "SET status = ?, next_attempt = ?, updated_at = ?, node_id = ? WHERE id = ?")) {
+            for (Entry entry : entries) {
+              ps.setString(1, Status.SENDING.name());
+              ps.setLong(2, claimUntil);
+              ps.setLong(3, now);
+              ps.setString(4, nodeId);
+              ps.setString(5, entry.id);
+              ps.addBatch();
+            }
+            ps.executeBatch();
+          }
+        }
+        con.commit();
+
+      } catch (SQLException | RuntimeException e) {
+        con.rollback();
+        throw e;
+
+      } finally {
+        con.setAutoCommit(autoCommit);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Writes the outcome of the claimed entries with one batch. An entry is only updated, if it is
+   * still claimed by the node.
+   *
+   * @param entries the entries
+   * @param nodeId  the node id
+   * @param now     the current time
+   * @throws SQLException if the database access fails
+   */
+  void complete(final List<Entry> entries, final String nodeId, final long now)
+      throws SQLException {
+
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox "
+            + "SET status = ?, attempts = ?, next_attempt = ?, updated_at = ?, last_error = ? "
+            + "WHERE id = ? AND node_id = ? AND status = ?")) {
+      for (Entry entry : entries) {
+        ps.setString(1, entry.status.name());
+        ps.setInt(2, entry.attempts);
+        ps.setLong(3, entry.nextAttempt);
+        ps.setLong(4, now);
+        ps.setString(5, StringUtils.abbreviate(entry.error, MAX_ERROR_LENGTH));
+        ps.setString(6, entry.id);
+        ps.setString(7, nodeId);
+        ps.setString(8, Status.SENDING.name());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  /**
+   * Releases claimed entries that were not sent, so that they are claimed again with the next
+   * poll. The number of attempts is not changed. An entry is only updated, if it is still claimed
+   * by the node.
+   *
+   * @param entries the entries
+   * @param nodeId  the node id
+   * @param now     the current time
+   * @throws SQLException if the database access fails
+   */
+  void release(final List<Entry> entries, final String nodeId, final long now)
+      throws SQLException {
+
+    try (Connection con = dataSource.getConnection();
+        PreparedStatement ps = con.prepareStatement("UPDATE sms_outbox "
+            + "SET status = ?, next_attempt = ?, updated_at = ? "
+            + "WHERE id = ? AND node_id = ? AND status = ?")) {
+      for (Entry entry : entries) {
+        ps.setString(1, Status.PENDING.name());
+        ps.setLong(2, now);
+        ps.setLong(3, now);
+        ps.setString(4, entry.id);
+        ps.setString(5, nodeId);
+        ps.setString(6, Status.SENDING.name());
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    }
+  }
+
+  /**
+   * Reads the request of an entry.
+   *
+   * @param entry the entry
+   * @return the request
+   * @throws IOException if the payload can't be read
+   */
+  SmsSendRequestDto readRequest(final Entry entry) throws IOException {
+    return reader.readValue(entry.payload);
+  }
+
+  /**
+   * A claimed entry of the outbox and its outcome.
+   */
+  static final class Entry {
+
+    private final String id;
+
+    private final String payload;
+
+    private int attempts;
+
+    private Status status = Status.SENDING;
+
+    private long nextAttempt;
+
+    private String error;
+
+    private Entry(String id, String payload, int attempts) {
+      this.id = id;
+      this.payload = payload;
+      this.attempts = attempts;
+    }
+
+    /**
+     * Gets the id.
+     *
+     * @return the id
+     */
+    String getId() {
+      return id;
+    }
+
+    /**
+     * Gets the number of attempts before this one.
+     *
+     * @return the number of attempts
+     */
+    int getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * Marks the entry as sent.
+     */
+    void sent() {
+      attempts++;
+      status = Status.SENT;
+      error = null;
+    }
+
+    /**
+     * Marks the entry for a retry at the specified time.
+     *
+     * @param nextAttempt the time of the next attempt
+     * @param error       the error
+     */
+    void retry(final long nextAttempt, final String error) {
+      attempts++;
+      status = Status.PENDING;
+      this.nextAttempt = nextAttempt;
+      this.error = error;
+    }
+
+    /**
+     * Marks the entry as failed.
+     *
+     * @param error the error
+     */
+    void failed(final String error) {
+      attempts++;
+      status = Status.FAILED;
+      this.error = error;
+    }
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+/**
+ * The {@link SmsFlightRecorder} that emits {@link SmsSendEvent}s and {@link SmsPhaseEvent}s.
+ * This class is only loaded, if the classes of the flight recorder are available.
+ *
+ * @author Christian Bremer
+ */
+final class JfrSmsFlightRecorder extends SmsFlightRecorder {
+
+  @Override
+  boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  Object beginPhase() {
+    final SmsPhaseEvent event = new SmsPhaseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void endPhase(final Object event, final Phase phase, final String requestId,
+      final String gateway, final String detail) {
+
+    if (event == null) {
+      return;
+    }
+    final SmsPhaseEvent phaseEvent = (SmsPhaseEvent) event;
+    phaseEvent.end();
+    if (phaseEvent.shouldCommit()) {
+      phaseEvent.phase = phase.name();
+      phaseEvent.requestId = requestId;
+      phaseEvent.gateway = gateway;
+      phaseEvent.detail = detail;
+      phaseEvent.commit();
+    }
+  }
+
+  @Override
+  Object beginSend() {
+    final SmsSendEvent event = new SmsSendEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void endSend(final Object event, final String requestId, final String gateway,
+      final String outcome, final int parts) {
+
+    if (event == null) {
+      return;
+    }
+    final SmsSendEvent sendEvent = (SmsSendEvent) event;
+    sendEvent.end();
+    if (sendEvent.shouldCommit()) {
+      sendEvent.requestId = requestId;
+      sendEvent.gateway = gateway;
+      sendEvent.outcome = outcome;
+      sendEvent.parts = parts;
+      sendEvent.commit();
+    }
+  }
+
+}
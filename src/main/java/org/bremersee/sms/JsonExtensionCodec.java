@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The codec of extensions that are JSON maps or collections (as they are produced by
+ * deserializing a request or response with an {@link ObjectMapper}). The extension is encoded as
+ * JSON.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class JsonExtensionCodec implements ExtensionCodec {
+
+  /**
+   * The id of this codec.
+   */
+  public static final int ID = 2;
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Instantiates a new json extension codec with the default object mapper.
+   */
+  public JsonExtensionCodec() {
+    this(null);
+  }
+
+  /**
+   * Instantiates a new json extension codec.
+   *
+   * @param objectMapper the object mapper (can be {@code null})
+   */
+  public JsonExtensionCodec(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper != null ? objectMapper : ExtensionUtils.objectMapper();
+  }
+
+  @Override
+  public int getId() {
+    return ID;
+  }
+
+  @Override
+  public boolean canEncode(final Object extension) {
+    return extension instanceof Map || extension instanceof Collection;
+  }
+
+  @Override
+  public int getEncodedLength(final Object extension) {
+    return toJson(extension).length;
+  }
+
+  @Override
+  public void encode(final Object extension, final ByteBuffer target) {
+    target.put(toJson(extension));
+  }
+
+  private byte[] toJson(final Object extension) {
+    try {
+      return objectMapper.writeValueAsBytes(extension);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public Object decode(final ByteBuffer source) {
+    final int length = source.remaining();
+    try {
+      if (source.hasArray()) {
+        final int offset = source.arrayOffset() + source.position();
+        source.position(source.limit());
+        return objectMapper.readValue(source.array(), offset, length, Object.class);
+      }
+      final byte[] bytes = new byte[length];
+      source.get(bytes);
+      return objectMapper.readValue(bytes, Object.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.base.ParserMinimalBase;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A {@link com.fasterxml.jackson.core.JsonParser} that walks directly over a tree of maps,
+ * collections and scalar values (as they are created by deserializing JSON into a {@link Map}).
+ * Deserializing with this parser does neither produce JSON bytes nor a token buffer.
+ *
+ * @author Christian Bremer
+ */
+final class JsonMapParser extends ParserMinimalBase {
+
+  private ObjectCodec codec;
+
+  private Context context;
+
+  private Object root;
+
+  private boolean started;
+
+  private boolean closed;
+
+  private Object value;
+
+  /**
+   * Instantiates a new json map parser.
+   *
+   * @param root  the root value (normally a map)
+   * @param codec the codec (can be {@code null})
+   */
+  JsonMapParser(Object root, ObjectCodec codec) {
+    super(0);
+    this.root = root;
+    this.codec = codec;
+    this.context = new Context(null, Context.ROOT, null);
+  }
+
+  @Override
+  public JsonToken nextToken() {
+    if (closed) {
+      return _currToken = null;
+    }
+    value = null;
+    if (context.hasPending) {
+      final Object pending = context.pending;
+      context.pending = null;
+      context.hasPending = false;
+      return _currToken = startValue(pending);
+    }
+    if (context.getParent() == null) {
+      if (started) {
+        return _currToken = null;
+      }
+      started = true;
+      final Object rootValue = root;
+      root = null;
+      return _currToken = startValue(rootValue);
+    }
+    final Iterator<?> iterator = context.iterator;
+    if (context.inObject()) {
+      if (iterator.hasNext()) {
+        final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iterator.next();
+        context.name = String.valueOf(entry.getKey());
+        context.pending = entry.getValue();
+        context.hasPending = true;
+        context.next();
+        return _currToken = JsonToken.FIELD_NAME;
+      }
+      context = context.parent;
+      return _currToken = JsonToken.END_OBJECT;
+    }
+    if (iterator.hasNext()) {
+      context.next();
+      return _currToken = startValue(iterator.next());
+    }
+    context = context.parent;
+    return _currToken = JsonToken.END_ARRAY;
+  }
+
+  private JsonToken startValue(final Object v) {
+    if (v == null) {
+      return JsonToken.VALUE_NULL;
+    }
+    if (v instanceof Map) {
+      context = new Context(context, Context.OBJECT,
+          ((Map<?, ?>) v).entrySet().iterator());
+      return JsonToken.START_OBJECT;
+    }
+    if (v instanceof Collection) {
+      context = new Context(context, Context.ARRAY,
+          ((Collection<?>) v).iterator());
+      return JsonToken.START_ARRAY;
+    }
+    if (v instanceof Object[]) {
+      context = new Context(context, Context.ARRAY,
+          Arrays.asList((Object[]) v).iterator());
+      return JsonToken.START_ARRAY;
+    }
+    value = v;
+    if (v instanceof String) {
+      return JsonToken.VALUE_STRING;
+    }
+    if (v instanceof Boolean) {
+      return (Boolean) v ? JsonToken.VALUE_TRUE : JsonToken.VALUE_FALSE;
+    }
+    if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte
+        || v instanceof BigInteger) {
+      return JsonToken.VALUE_NUMBER_INT;
+    }
+    if (v instanceof Number) {
+      return JsonToken.VALUE_NUMBER_FLOAT;
+    }
+    if (v instanceof Character) {
+      value = v.toString();
+      return JsonToken.VALUE_STRING;
+    }
+    return JsonToken.VALUE_EMBEDDED_OBJECT;
+  }
+
+  @Override
+  protected void _handleEOF() {
+    // nothing to do
+  }
+
+  @Override
+  public String getCurrentName() {
+    if (_currToken == JsonToken.START_OBJECT || _currToken == JsonToken.START_ARRAY) {
+      return context.parent != null ? context.parent.name : null;
+    }
+    return context.name;
+  }
+
+  @Override
+  public void overrideCurrentName(final String name) {
+    context.name = name;
+  }
+
+  @Override
+  public ObjectCodec getCodec() {
+    return codec;
+  }
+
+  @Override
+  public void setCodec(final ObjectCodec codec) {
+    this.codec = codec;
+  }
+
+  @Override
+  public Version version() {
+    return Version.unknownVersion();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    context = new Context(null, Context.ROOT, null);
+    value = null;
+    root = null;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public JsonStreamContext getParsingContext() {
+    return context;
+  }
+
+  @Override
+  public JsonLocation getCurrentLocation() {
+    return JsonLocation.NA;
+  }
+
+  @Override
+  public JsonLocation getTokenLocation() {
+    return JsonLocation.NA;
+  }
+
+  @Override
+  public String getText() {
+    if (_currToken == null) {
+      return null;
+    }
+    switch (_currToken) {
+      case FIELD_NAME:
+        return context.name;
+      case VALUE_STRING:
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+      case VALUE_EMBEDDED_OBJECT:
+        return value == null ? null : value.toString();
+      default:
+        return _currToken.asString();
+    }
+  }
+
+  @Override
+  public char[] getTextCharacters() {
+    final String text = getText();
+    return text == null ? null : text.toCharArray();
+  }
+
+  @Override
+  public int getTextLength() {
+    final String text = getText();
+    return text == null ? 0 : text.length();
+  }
+
+  @Override
+  public int getTextOffset() {
+    return 0;
+  }
+
+  @Override
+  public boolean hasTextCharacters() {
+    return false;
+  }
+
+  @Override
+  public Number getNumberValue() throws IOException {
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+    throw _constructError("Current token (" + _currToken + ") is not numeric");
+  }
+
+  @Override
+  public NumberType getNumberType() throws IOException {
+    final Number number = getNumberValue();
+    if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+      return NumberType.INT;
+    }
+    if (number instanceof Long) {
+      return NumberType.LONG;
+    }
+    if (number instanceof BigInteger) {
+      return NumberType.BIG_INTEGER;
+    }
+    if (number instanceof BigDecimal) {
+      return NumberType.BIG_DECIMAL;
+    }
+    if (number instanceof Float) {
+      return NumberType.FLOAT;
+    }
+    return NumberType.DOUBLE;
+  }
+
+  @Override
+  public int getIntValue() throws IOException {
+    return getNumberValue().intValue();
+  }
+
+  @Override
+  public long getLongValue() throws IOException {
+    return getNumberValue().longValue();
+  }
+
+  @Override
+  public BigInteger getBigIntegerValue() throws IOException {
+    final Number number = getNumberValue();
+    if (number instanceof BigInteger) {
+      return (BigInteger) number;
+    }
+    if (number instanceof BigDecimal) {
+      return ((BigDecimal) number).toBigInteger();
+    }
+    return BigInteger.valueOf(number.longValue());
+  }
+
+  @Override
+  public float getFloatValue() throws IOException {
+    return getNumberValue().floatValue();
+  }
+
+  @Override
+  public double getDoubleValue() throws IOException {
+    return getNumberValue().doubleValue();
+  }
+
+  @Override
+  public BigDecimal getDecimalValue() throws IOException {
+    final Number number = getNumberValue();
+    if (number instanceof BigDecimal) {
+      return (BigDecimal) number;
+    }
+    if (number instanceof BigInteger) {
+      return new BigDecimal((BigInteger) number);
+    }
+    if (number instanceof Double || number instanceof Float) {
+      return BigDecimal.valueOf(number.doubleValue());
+    }
+    return BigDecimal.valueOf(number.longValue());
+  }
+
+  @Override
+  public Object getEmbeddedObject() {
+    return _currToken == JsonToken.VALUE_EMBEDDED_OBJECT ? value : null;
+  }
+
+  @Override
+  public byte[] getBinaryValue(final Base64Variant b64variant) throws IOException {
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    }
+    if (value instanceof String) {
+      try {
+        return b64variant.decode((String) value);
+      } catch (IllegalArgumentException e) {
+        throw _constructError(e.getMessage());
+      }
+    }
+    throw _constructError("Current token (" + _currToken + ") is not binary");
+  }
+
+  private static final class Context extends JsonStreamContext {
+
+    private static final int ROOT = TYPE_ROOT;
+
+    private static final int OBJECT = TYPE_OBJECT;
+
+    private static final int ARRAY = TYPE_ARRAY;
+
+    private final Context parent;
+
+    private final Iterator<?> iterator;
+
+    private String name;
+
+    private Object pending;
+
+    private boolean hasPending;
+
+    private Context(Context parent, int type, Iterator<?> iterator) {
+      this.parent = parent;
+      this.iterator = iterator;
+      this._type = type;
+      this._index = -1;
+    }
+
+    @Override
+    public JsonStreamContext getParent() {
+      return parent;
+    }
+
+    @Override
+    public String getCurrentName() {
+      return name;
+    }
+
+    private void next() {
+      _index++;
+    }
+  }
+
+}
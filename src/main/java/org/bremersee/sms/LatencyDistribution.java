@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A distribution of latencies, that is used by the {@link DummySmsService} to simulate the time a
+ * gateway needs to answer.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface LatencyDistribution {
+
+  /**
+   * Returns the next latency.
+   *
+   * @param random the random number generator
+   * @return the latency in nanoseconds (not negative)
+   */
+  long nextNanos(Random random);
+
+  /**
+   * Returns a distribution without latency.
+   *
+   * @return the distribution
+   */
+  static LatencyDistribution none() {
+    return random -> 0L;
+  }
+
+  /**
+   * Returns a distribution that always has the same latency.
+   *
+   * @param millis the latency in milliseconds
+   * @return the distribution
+   */
+  static LatencyDistribution fixed(final long millis) {
+    Validate.isTrue(millis >= 0L, "millis must not be negative");
+    final long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    return random -> nanos;
+  }
+
+  /**
+   * Returns a normal distribution. Negative values are returned as 0.
+   *
+   * @param meanMillis   the mean in milliseconds
+   * @param stdDevMillis the standard deviation in milliseconds
+   * @return the distribution
+   */
+  static LatencyDistribution normal(final double meanMillis, final double stdDevMillis) {
+    Validate.isTrue(stdDevMillis >= 0.0, "stdDevMillis must not be negative");
+    return random -> toNanos(meanMillis + stdDevMillis * random.nextGaussian());
+  }
+
+  /**
+   * Returns a log-normal distribution, which is typical for network latencies: most calls are
+   * close to the median and a few take much longer.
+   *
+   * @param medianMillis the median in milliseconds
+   * @param sigma        the standard deviation of the logarithm (0.5 means that about 16 percent
+   *                     of the calls take more than 1.65 times the median)
+   * @return the distribution
+   */
+  static LatencyDistribution logNormal(final double medianMillis, final double sigma) {
+    Validate.isTrue(medianMillis > 0.0, "medianMillis must be greater than 0");
+    Validate.isTrue(sigma >= 0.0, "sigma must not be negative");
+    final double mu = Math.log(medianMillis);
+    return random -> toNanos(Math.exp(mu + sigma * random.nextGaussian()));
+  }
+
+  /**
+   * Returns a distribution that replays the latencies of a histogram, for example the one that
+   * was recorded in production by a {@link PrioritySmsService} or a {@link QueueingSmsService}.
+   * The percentiles are taken from the histogram when this method is called.
+   *
+   * @param histogram the histogram
+   * @return the distribution
+   */
+  static LatencyDistribution replay(final LatencyHistogram histogram) {
+    Validate.notNull(histogram, "histogram must not be null");
+    Validate.isTrue(histogram.getCount() > 0L, "histogram must not be empty");
+    // one value per tenth of a percent, that is precise enough for a simulation
+    final long[] values = new long[1001];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = histogram.getPercentile(i / 10.0);
+    }
+    return random -> values[random.nextInt(values.length)];
+  }
+
+  /**
+   * Converts milliseconds into nanoseconds; negative values are converted into 0.
+   *
+   * @param millis the milliseconds
+   * @return the nanoseconds
+   */
+  static long toNanos(final double millis) {
+    return millis <= 0.0 ? 0L : (long) (millis * TimeUnit.MILLISECONDS.toNanos(1L));
+  }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies in nanoseconds with logarithmic buckets. Each power of two
+ * is divided into eight linear sub buckets, so a percentile is reported with a relative error of
+ * at most 12.5 percent. Values below 16 ns are counted exactly, values above about 2^40 ns (18
+ * minutes) are counted in the last bucket.
+ *
+ * <p>Instances are thread safe. Recording a value doesn't allocate.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+  private static final int MAX_BIT = 40;
+
+  private static final int BUCKETS = LINEAR_LIMIT + (MAX_BIT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder sum = new LongAdder();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds (negative values are recorded as 0)
+   */
+  public void record(final long nanos) {
+    final long value = Math.max(0L, nanos);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    sum.add(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return the number of recorded latencies
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the maximum latency in nanoseconds.
+   *
+   * @return the maximum latency
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Gets the mean latency in nanoseconds.
+   *
+   * @return the mean latency (0 if nothing was recorded)
+   */
+  public long getMean() {
+    final long n = count.sum();
+    return n == 0L ? 0L : sum.sum() / n;
+  }
+
+  /**
+   * Gets the latency in nanoseconds below which the specified percentage of all latencies lie.
+   * The upper bound of the bucket is returned, so the value is never too optimistic (but it is
+   * not greater than the maximum).
+   *
+   * @param percentile the percentile (between 0 and 100)
+   * @return the latency (0 if nothing was recorded)
+   */
+  public long getPercentile(final double percentile) {
+    final double p = Math.min(100.0, Math.max(0.0, percentile));
+    long total = 0L;
+    final long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    final long rank = Math.max(1L, (long) Math.ceil(p / 100.0 * total));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Removes all recorded latencies. Latencies that are recorded concurrently may be lost.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0L);
+    }
+    count.reset();
+    sum.reset();
+    max.set(0L);
+  }
+
+  static int indexOf(final long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    final int bit = 63 - Long.numberOfLeadingZeros(value);
+    if (bit > MAX_BIT) {
+      return BUCKETS - 1;
+    }
+    final int sub = (int) (value >>> (bit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_LIMIT + (bit - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+  }
+
+  static long upperBoundOf(final int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    final int bit = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+    final int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+    final long width = 1L << (bit - SUB_BUCKET_BITS);
+    return (1L << bit) + (sub + 1) * width - 1L;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram {"
+        + "count=" + getCount()
+        + ", mean=" + millis(getMean())
+        + ", p50=" + millis(getPercentile(50.0))
+        + ", p99=" + millis(getPercentile(99.0))
+        + ", max=" + millis(getMax())
+        + '}';
+  }
+
+  private static String millis(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0 + " ms";
+  }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ring buffer of encoded requests in a memory mapped file, that is shared by the processes of
+ * one host. Many producer processes (and threads) write requests into the buffer with {@link
+ * #offer(SmsSendRequestDto)}; one consumer, normally a {@link MappedSmsSender}, drains them.
+ *
+ * <p>A producer claims space by a compare and swap on the tail counter in the mapped memory,
+ * writes the request with the {@link SmsBinaryCodec} and publishes it by an ordered write of the
+ * record length. There are neither locks nor system calls, so an offer takes microseconds. The
+ * consumer reads published records, clears them and advances the head counter. A record that
+ * does not fit at the end of the buffer is preceded by a padding record.
+ *
+ * <p>The file starts with a header of {@value #HEADER_LENGTH} bytes (magic number, version,
+ * capacity and the tail and head counters on their own cache lines), followed by the data.
+ * Records are aligned to 8 bytes and start with the record length and a type.
+ *
+ * <p>The requests are encoded by the {@link SmsBinaryCodec}, which does not carry the deadline of
+ * a request ({@link SmsSendRequestDto#getDeadline()}); a drained request has no deadline.
+ *
+ * <p>A producer that dies while writing a record (between claiming and publishing) blocks the
+ * consumer; the buffer must be recreated then. Open a file only once per process.
+ *
+ * <p>The memory of the mapped file is accessed by {@link UnsafeAccess}, so the buffer needs a JVM
+ * that provides {@code sun.misc.Unsafe}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MappedSmsRingBuffer implements Closeable {
+
+  /**
+   * The default capacity of the data in bytes.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 22;
+
+  /**
+   * The length of the header in bytes.
+   */
+  public static final int HEADER_LENGTH = 256;
+
+  private static final int MAGIC = 0x534d5242;
+
+  private static final int VERSION = 1;
+
+  private static final int MAGIC_OFFSET = 0;
+
+  private static final int VERSION_OFFSET = 4;
+
+  private static final int CAPACITY_OFFSET = 8;
+
+  private static final int TAIL_OFFSET = 64;
+
+  private static final int HEAD_OFFSET = 128;
+
+  private static final int RECORD_HEADER_LENGTH = 8;
+
+  private static final int TYPE_MESSAGE = 1;
+
+  private static final int TYPE_PADDING = 2;
+
+  private static final int ALIGNMENT = 8;
+
+  private static final long CONSUMER_LOCK_POSITION = Long.MAX_VALUE - 1L;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Path file;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer mapped;
+
+  private final long address;
+
+  private final int capacity;
+
+  private final int mask;
+
+  private final SmsBinaryCodec codec;
+
+  private final ThreadLocal<ByteBuffer> views;
+
+  private FileLock consumerLock;
+
+  private volatile boolean closed;
+
+  private MappedSmsRingBuffer(Path file, FileChannel channel, int capacity, SmsBinaryCodec codec)
+      throws IOException {
+    this.file = file;
+    this.channel = channel;
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.codec = codec;
+    this.mapped = channel.map(MapMode.READ_WRITE, 0L, (long) HEADER_LENGTH + capacity);
+    this.address = UnsafeAccess.getAddress(mapped);
+    this.views = ThreadLocal.withInitial(mapped::duplicate);
+  }
+
+  /**
+   * Opens the ring buffer of the file or creates it with the default capacity.
+   *
+   * @param file the file
+   * @return the ring buffer
+   * @throws IOException if the file can't be opened or is not a ring buffer
+   */
+  public static MappedSmsRingBuffer open(final Path file) throws IOException {
+    return open(file, DEFAULT_CAPACITY, null);
+  }
+
+  /**
+   * Opens the ring buffer of the file or creates it. The capacity of an existing file is kept.
+   *
+   * @param file     the file
+   * @param capacity the capacity of the data in bytes (a power of two of at least 4096)
+   * @param codec    the codec (can be {@code null})
+   * @return the ring buffer
+   * @throws IOException if the file can't be opened or is not a ring buffer
+   */
+  public static MappedSmsRingBuffer open(final Path file, final int capacity,
+      final SmsBinaryCodec codec) throws IOException {
+
+    Validate.notNull(file, "File must not be null.");
+    Validate.isTrue(capacity >= 4096 && Integer.bitCount(capacity) == 1
+            && capacity <= (1 << 30),
+        "Capacity must be a power of two between 4096 and 2^30.");
+    final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      final int actualCapacity;
+      final FileLock headerLock = channel.lock(0L, HEADER_LENGTH, false);
+      try {
+        final ByteBuffer header = ByteBuffer.allocate(CAPACITY_OFFSET + 4);
+        if (channel.size() == 0L) {
+          channel.write(ByteBuffer.wrap(new byte[HEADER_LENGTH]), 0L);
+          channel.write(ByteBuffer.wrap(new byte[1]), (long) HEADER_LENGTH + capacity - 1L);
+          header.putInt(MAGIC_OFFSET, MAGIC);
+          header.putInt(VERSION_OFFSET, VERSION);
+          header.putInt(CAPACITY_OFFSET, capacity);
+          channel.write(header, 0L);
+          channel.force(true);
+          actualCapacity = capacity;
+        } else {
+          channel.read(header, 0L);
+          if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("File " + file + " is not a sms ring buffer.");
+          }
+          if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Unsupported version of sms ring buffer "
+                + header.getInt(VERSION_OFFSET) + " in file " + file);
+          }
+          actualCapacity = header.getInt(CAPACITY_OFFSET);
+        }
+      } finally {
+        headerLock.release();
+      }
+      return new MappedSmsRingBuffer(file, channel, actualCapacity,
+          codec != null ? codec : new SmsBinaryCodec());
+
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the file.
+   *
+   * @return the file
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the capacity of the data in bytes.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the maximum length of one encoded request in bytes (a quarter of the capacity).
+   *
+   * @return the maximum length of one encoded request
+   */
+  public int getMaxMessageLength() {
+    return capacity / 4 - RECORD_HEADER_LENGTH;
+  }
+
+  /**
+   * Gets the number of bytes that are claimed by producers and not yet drained.
+   *
+   * @return the number of used bytes
+   */
+  public long getUsedBytes() {
+    return UnsafeAccess.getLongVolatile(address + TAIL_OFFSET)
+        - UnsafeAccess.getLongVolatile(address + HEAD_OFFSET);
+  }
+
+  /**
+   * Writes the request into the ring buffer. This method may be called by any thread of any
+   * process.
+   *
+   * @param smsSendRequest the request
+   * @return {@code true} if the request was written, {@code false} if the buffer is full
+   * @throws IllegalArgumentException if the encoded request is longer than {@link
+   *                                  #getMaxMessageLength()}
+   */
+  public boolean offer(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    Validate.validState(!closed, "Ring buffer is closed.");
+    final int length = codec.getEncodedLength(smsSendRequest);
+    Validate.isTrue(length <= getMaxMessageLength(),
+        "Encoded request is too long: " + length + " bytes");
+    final int recordLength = align(RECORD_HEADER_LENGTH + length);
+    final long tailAddress = address + TAIL_OFFSET;
+    long tail;
+    int offset;
+    int required;
+    do {
+      final long head = UnsafeAccess.getLongVolatile(address + HEAD_OFFSET);
+      tail = UnsafeAccess.getLongVolatile(tailAddress);
+      offset = (int) (tail & mask);
+      final int toEnd = capacity - offset;
+      required = recordLength <= toEnd ? recordLength : toEnd + recordLength;
+      if (tail + required - head > capacity) {
+        return false;
+      }
+    } while (!UnsafeAccess.compareAndSwapLong(tailAddress, tail, tail + required));
+
+    if (required != recordLength) {
+      final long paddingAddress = address + HEADER_LENGTH + offset;
+      UnsafeAccess.putInt(paddingAddress + 4, TYPE_PADDING);
+      UnsafeAccess.putOrderedInt(paddingAddress, capacity - offset);
+      offset = 0;
+    }
+    final ByteBuffer view = views.get();
+    view.clear().position(HEADER_LENGTH + offset + RECORD_HEADER_LENGTH);
+    codec.encode(smsSendRequest, view);
+    final long recordAddress = address + HEADER_LENGTH + offset;
+    UnsafeAccess.putInt(recordAddress + 4, TYPE_MESSAGE);
+    UnsafeAccess.putOrderedInt(recordAddress, recordLength);
+    return true;
+  }
+
+  /**
+   * Drains the published requests. Only the consumer may call this method (see {@link
+   * #acquireConsumer()}). The head is advanced before a request is passed to the handler, so an
+   * exception of the handler does not block the buffer.
+   *
+   * @param handler  the handler of the requests
+   * @param maxCount the maximum number of requests
+   * @return the number of drained requests
+   */
+  public int drain(final Consumer<? super SmsSendRequestDto> handler, final int maxCount) {
+    Validate.notNull(handler, "Handler must not be null.");
+    Validate.validState(!closed, "Ring buffer is closed.");
+    final long headAddress = address + HEAD_OFFSET;
+    final ByteBuffer view = views.get();
+    long head = UnsafeAccess.getLongVolatile(headAddress);
+    int count = 0;
+    while (count < maxCount) {
+      final int offset = (int) (head & mask);
+      final long recordAddress = address + HEADER_LENGTH + offset;
+      final int recordLength = UnsafeAccess.getIntVolatile(recordAddress);
+      if (recordLength <= 0) {
+        break;
+      }
+      SmsSendRequestDto request = null;
+      if (UnsafeAccess.getInt(recordAddress + 4) == TYPE_MESSAGE) {
+        view.clear().position(HEADER_LENGTH + offset + RECORD_HEADER_LENGTH);
+        try {
+          request = codec.decode(view, SmsSendRequestDto.class);
+        } catch (RuntimeException e) {
+          log.error("Record at position " + head + " of ring buffer " + file
+              + " can't be decoded.", e);
+        }
+      }
+      UnsafeAccess.setMemory(recordAddress, recordLength, (byte) 0);
+      head += recordLength;
+      UnsafeAccess.putOrderedLong(headAddress, head);
+      if (request != null) {
+        count++;
+        handler.accept(request);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Makes this process the only consumer of the ring buffer. The lock is released, when the
+   * ring buffer is closed.
+   *
+   * @throws IllegalStateException if another process or instance is the consumer
+   * @throws IOException           if the lock can't be acquired
+   */
+  public synchronized void acquireConsumer() throws IOException {
+    if (consumerLock != null) {
+      return;
+    }
+    try {
+      consumerLock = channel.tryLock(CONSUMER_LOCK_POSITION, 1L, false);
+    } catch (OverlappingFileLockException e) {
+      consumerLock = null;
+    }
+    Validate.validState(consumerLock != null,
+        "Ring buffer " + file + " is already drained by another consumer.");
+  }
+
+  private static int align(final int length) {
+    return (length + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        if (consumerLock != null) {
+          consumerLock.release();
+          consumerLock = null;
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The sender daemon of a {@link MappedSmsRingBuffer}: it is the only consumer of the ring buffer
+ * and sends the requests of all producer processes with one {@link SmsService}, which owns the
+ * gateway connections.
+ *
+ * <p>The daemon thread drains the buffer in batches. If the buffer is empty, it spins shortly,
+ * then yields and finally parks for up to {@link #getMaxIdleMicros()} microseconds.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MappedSmsSender implements Closeable {
+
+  /**
+   * The default number of requests that are drained at once.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /**
+   * The default maximum time in microseconds the daemon parks, when the buffer is empty.
+   */
+  public static final long DEFAULT_MAX_IDLE_MICROS = 1000L;
+
+  private static final int SPINS = 100;
+
+  private static final int YIELDS = 10;
+
+  private static final long SHUTDOWN_MILLIS = 10000L;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final MappedSmsRingBuffer ringBuffer;
+
+  private final SmsService smsService;
+
+  private final LongAdder sent = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private long maxIdleMicros = DEFAULT_MAX_IDLE_MICROS;
+
+  private Thread thread;
+
+  private volatile boolean running;
+
+  /**
+   * Instantiates a new mapped sms sender.
+   *
+   * @param ringBuffer the ring buffer
+   * @param smsService the sms service
+   */
+  public MappedSmsSender(MappedSmsRingBuffer ringBuffer, SmsService smsService) {
+    Validate.notNull(ringBuffer, "ringBuffer must not be null");
+    Validate.notNull(smsService, "smsService must not be null");
+    this.ringBuffer = ringBuffer;
+    this.smsService = smsService;
+  }
+
+  /**
+   * Gets the number of requests that are drained at once.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the number of requests that are drained at once.
+   *
+   * @param batchSize the batch size
+   */
+  public void setBatchSize(int batchSize) {
+    Validate.isTrue(batchSize > 0, "batchSize must be greater than 0");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Gets the maximum time in microseconds the daemon parks, when the buffer is empty.
+   *
+   * @return the maximum idle time in microseconds
+   */
+  public long getMaxIdleMicros() {
+    return maxIdleMicros;
+  }
+
+  /**
+   * Sets the maximum time in microseconds the daemon parks, when the buffer is empty.
+   *
+   * @param maxIdleMicros the maximum idle time in microseconds
+   */
+  public void setMaxIdleMicros(long maxIdleMicros) {
+    Validate.isTrue(maxIdleMicros > 0L, "maxIdleMicros must be greater than 0");
+    this.maxIdleMicros = maxIdleMicros;
+  }
+
+  /**
+   * Gets the number of sent SMS.
+   *
+   * @return the number of sent SMS
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  /**
+   * Gets the number of SMS that were not sent.
+   *
+   * @return the number of failed SMS
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  /**
+   * Makes this process the consumer of the ring buffer and starts the daemon thread.
+   *
+   * @throws IOException           if the consumer lock can't be acquired
+   * @throws IllegalStateException if another process drains the ring buffer
+   */
+  public synchronized void start() throws IOException {
+    Validate.validState(thread == null, "Sender is already started.");
+    ringBuffer.acquireConsumer();
+    running = true;
+    thread = new Thread(this::run, "sms-mapped-sender");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void run() {
+    int idle = 0;
+    while (running) {
+      final int count = drainOnce();
+      if (count > 0) {
+        idle = 0;
+      } else if (idle < SPINS) {
+        idle++;
+      } else if (idle < SPINS + YIELDS) {
+        idle++;
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(Math.min(maxIdleMicros,
+            1L << Math.min(idle++ - SPINS - YIELDS, 20))));
+      }
+    }
+  }
+
+  /**
+   * Drains one batch of the ring buffer and sends it.
+   *
+   * @return the number of drained requests
+   */
+  public int drainOnce() {
+    return ringBuffer.drain(this::send, batchSize);
+  }
+
+  private void send(final SmsSendRequestDto request) {
+    try {
+      final SmsSendResponseDto response = smsService.sendSms(request);
+      if (response != null && response.isSuccessfullySent()) {
+        sent.increment();
+      } else {
+        failed.increment();
+      }
+    } catch (RuntimeException e) {
+      failed.increment();
+      log.error("Sending SMS specified by " + request + " of ring buffer failed.", e);
+    }
+  }
+
+  /**
+   * Stops the daemon thread after the current batch. The ring buffer is not closed.
+   */
+  @Override
+  public synchronized void close() {
+    if (thread != null) {
+      running = false;
+      LockSupport.unpark(thread);
+      try {
+        thread.join(SHUTDOWN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      thread = null;
+    }
+  }
+
+}
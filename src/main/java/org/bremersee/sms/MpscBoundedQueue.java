@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock free queue for many producers and one consumer, based on the array queue of
+ * Dmitry Vyukov: every slot has a sequence number that tells the producers whether the slot is
+ * free and the consumer whether it is filled. Producers claim a slot by a CAS on the tail, the
+ * consumer only needs volatile reads and ordered writes.
+ *
+ * <p>{@link #offer(Object)} may be called by any thread, {@link #poll()} only by one thread at a
+ * time.
+ *
+ * @param <E> the type of the elements
+ * @author Christian Bremer
+ */
+final class MpscBoundedQueue<E> {
+
+  private final int capacity;
+
+  private final int mask;
+
+  private final AtomicReferenceArray<E> buffer;
+
+  private final AtomicLongArray sequences;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  private volatile long head;
+
+  /**
+   * Instantiates a new queue.
+   *
+   * @param minCapacity the minimum capacity (it is rounded up to a power of two)
+   */
+  MpscBoundedQueue(int minCapacity) {
+    int c = 2;
+    while (c < minCapacity) {
+      c <<= 1;
+    }
+    this.capacity = c;
+    this.mask = c - 1;
+    this.buffer = new AtomicReferenceArray<>(c);
+    this.sequences = new AtomicLongArray(c);
+    for (int i = 0; i < c; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Gets the capacity.
+   *
+   * @return the capacity
+   */
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Inserts the element, if the queue is not full.
+   *
+   * @param element the element
+   * @return {@code true} if the element was inserted, {@code false} if the queue is full
+   */
+  boolean offer(final E element) {
+    long t;
+    int index;
+    while (true) {
+      t = tail.get();
+      index = (int) t & mask;
+      final long difference = sequences.get(index) - t;
+      if (difference == 0L) {
+        if (tail.compareAndSet(t, t + 1L)) {
+          break;
+        }
+      } else if (difference < 0L) {
+        return false;
+      }
+    }
+    buffer.lazySet(index, element);
+    sequences.lazySet(index, t + 1L);
+    return true;
+  }
+
+  /**
+   * Removes the head of the queue (only one thread may call this method at a time).
+   *
+   * @return the head or {@code null} if the queue is empty
+   */
+  E poll() {
+    final long h = head;
+    final int index = (int) h & mask;
+    if (sequences.get(index) - (h + 1L) < 0L) {
+      return null;
+    }
+    final E element = buffer.get(index);
+    buffer.lazySet(index, null);
+    sequences.lazySet(index, h + capacity);
+    head = h + 1L;
+    return element;
+  }
+
+  /**
+   * Returns the number of elements (an estimate while producers or the consumer are active).
+   *
+   * @return the number of elements
+   */
+  int size() {
+    return (int) Math.max(0L, Math.min(capacity, tail.get() - head));
+  }
+
+}
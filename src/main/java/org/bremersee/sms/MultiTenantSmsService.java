@@ -0,0 +1,402 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SMS service that routes every request to the service of its tenant. The tenant of a request
+ * is resolved by a {@link TenantResolver} (by default from the extension, see {@link
+ * ExtensionTenantResolver}); requests without tenant are sent by the default tenant.
+ *
+ * <p>Every tenant has its own service (with its own credentials, default sender, credit ledger and
+ * so on) and its own resources: a bulkhead, that limits the number of concurrent requests and
+ * with it the number of open connections to the gateway, and a rate limiter. A burst of one
+ * tenant exhausts only the resources of this tenant, its requests are rejected with a {@link
+ * SmsRejectedException} while the other tenants are not affected.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class MultiTenantSmsService implements SmsService {
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+  private TenantResolver tenantResolver = new ExtensionTenantResolver();
+
+  private String defaultTenant;
+
+  /**
+   * Default constructor.
+   */
+  public MultiTenantSmsService() {
+    super();
+  }
+
+  /**
+   * Gets the tenant resolver.
+   *
+   * @return the tenant resolver
+   */
+  public TenantResolver getTenantResolver() {
+    return tenantResolver;
+  }
+
+  /**
+   * Sets the tenant resolver.
+   *
+   * @param tenantResolver the tenant resolver
+   */
+  public void setTenantResolver(TenantResolver tenantResolver) {
+    Validate.notNull(tenantResolver, "Tenant resolver must not be null.");
+    this.tenantResolver = tenantResolver;
+  }
+
+  /**
+   * Gets the id of the tenant that sends requests without tenant.
+   *
+   * @return the default tenant (can be {@code null})
+   */
+  public String getDefaultTenant() {
+    return defaultTenant;
+  }
+
+  /**
+   * Sets the id of the tenant that sends requests without tenant.
+   *
+   * @param defaultTenant the default tenant (can be {@code null})
+   */
+  public void setDefaultTenant(String defaultTenant) {
+    this.defaultTenant = defaultTenant;
+  }
+
+  /**
+   * Registers a tenant without limits.
+   *
+   * @param tenantId the id of the tenant
+   * @param service  the service of the tenant
+   * @return the tenant
+   */
+  public Tenant register(final String tenantId, final SmsService service) {
+    return register(tenantId, service, Integer.MAX_VALUE, 0L, null);
+  }
+
+  /**
+   * Registers a tenant. An already registered tenant with the same id is replaced.
+   *
+   * @param tenantId              the id of the tenant
+   * @param service               the service of the tenant
+   * @param maxConcurrentRequests the maximum number of requests that are sent at the same time
+   * @param maxWaitMillis         the time a request waits for the bulkhead before it is rejected
+   * @param rateLimiter           the rate limiter (can be {@code null})
+   * @return the tenant
+   */
+  public Tenant register(final String tenantId, final SmsService service,
+      final int maxConcurrentRequests, final long maxWaitMillis,
+      final TokenBucketRateLimiter rateLimiter) {
+
+    Validate.notBlank(tenantId, "Tenant id must not be blank.");
+    Validate.notNull(service, "Service must not be null.");
+    Validate.isTrue(maxConcurrentRequests > 0, "Max concurrent requests must be greater than 0.");
+    final Tenant tenant = new Tenant(
+        tenantId, service, maxConcurrentRequests, maxWaitMillis, rateLimiter);
+    tenants.put(tenantId, tenant);
+    log.info("Tenant registered: {}", tenant);
+    return tenant;
+  }
+
+  /**
+   * Removes a tenant.
+   *
+   * @param tenantId the id of the tenant
+   * @return the removed tenant or {@code null} if there is no such tenant
+   */
+  public Tenant unregister(final String tenantId) {
+    return tenantId != null ? tenants.remove(tenantId) : null;
+  }
+
+  /**
+   * Gets a tenant.
+   *
+   * @param tenantId the id of the tenant
+   * @return the tenant or {@code null} if there is no such tenant
+   */
+  public Tenant getTenant(final String tenantId) {
+    return tenantId != null ? tenants.get(tenantId) : null;
+  }
+
+  /**
+   * Gets all tenants.
+   *
+   * @return the tenants
+   */
+  public Map<String, Tenant> getTenants() {
+    return Collections.unmodifiableMap(tenants);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms() {
+    return sendSms(null, null, null, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String message) {
+    return sendSms(null, null, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message) {
+    return sendSms(null, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message,
+      final Date sendTime) {
+
+    return sendSms(null, receiver, message, sendTime);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message) {
+
+    return sendSms(sender, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message, final Date sendTime) {
+
+    return sendSms(new SmsSendRequestDto(sender, receiver, message, sendTime));
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    final Tenant tenant = resolveTenant(smsSendRequest);
+    return tenant.sendSms(smsSendRequest);
+  }
+
+  /**
+   * Resolves the tenant of the request.
+   *
+   * @param smsSendRequest the request
+   * @return the tenant
+   * @throws SmsRejectedException if there is no such tenant
+   */
+  protected Tenant resolveTenant(final SmsSendRequestDto smsSendRequest) {
+    String tenantId = tenantResolver.resolveTenant(smsSendRequest);
+    if (StringUtils.isBlank(tenantId)) {
+      tenantId = defaultTenant;
+    }
+    final Tenant tenant = getTenant(tenantId);
+    if (tenant == null) {
+      final SmsRejectedException e = new SmsRejectedException(
+          "There is no tenant [" + tenantId + "].");
+      log.error("SMS specified by " + smsSendRequest + " was rejected.", e);
+      throw e;
+    }
+    return tenant;
+  }
+
+  /**
+   * A registered tenant with its service and resources.
+   */
+  public static class Tenant {
+
+    private static final Logger log = LoggerFactory.getLogger(Tenant.class);
+
+    private final String id;
+
+    private final SmsService service;
+
+    private final int maxConcurrentRequests;
+
+    private final long maxWaitMillis;
+
+    private final Semaphore bulkhead;
+
+    private final TokenBucketRateLimiter rateLimiter;
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+
+    private final LongAdder rejectedByRateLimiter = new LongAdder();
+
+    private Tenant(String id, SmsService service, int maxConcurrentRequests, long maxWaitMillis,
+        TokenBucketRateLimiter rateLimiter) {
+      this.id = id;
+      this.service = service;
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      this.maxWaitMillis = Math.max(0L, maxWaitMillis);
+      this.bulkhead = maxConcurrentRequests < Integer.MAX_VALUE
+          ? new Semaphore(maxConcurrentRequests)
+          : null;
+      this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets the id of the tenant.
+     *
+     * @return the id
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * Gets the service of the tenant.
+     *
+     * @return the service
+     */
+    public SmsService getService() {
+      return service;
+    }
+
+    /**
+     * Gets the maximum number of requests that are sent at the same time.
+     *
+     * @return the maximum number of concurrent requests
+     */
+    public int getMaxConcurrentRequests() {
+      return maxConcurrentRequests;
+    }
+
+    /**
+     * Gets the number of requests that are currently sent.
+     *
+     * @return the number of active requests
+     */
+    public int getActiveRequests() {
+      return bulkhead != null ? maxConcurrentRequests - bulkhead.availablePermits() : 0;
+    }
+
+    /**
+     * Gets the rate limiter.
+     *
+     * @return the rate limiter (can be {@code null})
+     */
+    public TokenBucketRateLimiter getRateLimiter() {
+      return rateLimiter;
+    }
+
+    /**
+     * Gets the number of requests that were passed to the service.
+     *
+     * @return the number of sent requests
+     */
+    public long getSent() {
+      return sent.sum();
+    }
+
+    /**
+     * Gets the number of requests that were rejected because of the bulkhead.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedByBulkhead() {
+      return rejectedByBulkhead.sum();
+    }
+
+    /**
+     * Gets the number of requests that were rejected by the rate limiter.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedByRateLimiter() {
+      return rejectedByRateLimiter.sum();
+    }
+
+    private SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
+      // the bulkhead is entered first, so that a rejected request does not use up a token
+      if (bulkhead != null) {
+        acquireBulkhead(smsSendRequest);
+      }
+      try {
+        if (rateLimiter != null && !rateLimiter.tryAcquire()) {
+          rejectedByRateLimiter.increment();
+          throw reject(smsSendRequest, "Rate limit of tenant [" + id + "] is exceeded.");
+        }
+        sent.increment();
+        return service.sendSms(smsSendRequest);
+
+      } finally {
+        if (bulkhead != null) {
+          bulkhead.release();
+        }
+      }
+    }
+
+    private void acquireBulkhead(final SmsSendRequestDto smsSendRequest) {
+      final boolean acquired;
+      try {
+        acquired = maxWaitMillis > 0L
+            ? bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)
+            : bulkhead.tryAcquire();
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        final SmsRejectedException se = new SmsRejectedException(
+            "Interrupted while waiting for a free slot of tenant [" + id + "].", e);
+        log.warn("SMS specified by " + smsSendRequest + " was rejected: " + se.getMessage());
+        throw se;
+      }
+      if (!acquired) {
+        rejectedByBulkhead.increment();
+        throw reject(smsSendRequest, "Tenant [" + id + "] has already "
+            + maxConcurrentRequests + " active request(s).");
+      }
+    }
+
+    private static SmsRejectedException reject(final SmsSendRequestDto smsSendRequest,
+        final String message) {
+      final SmsRejectedException e = new SmsRejectedException(message);
+      log.warn("SMS specified by " + smsSendRequest + " was rejected: " + message);
+      return e;
+    }
+
+    @Override
+    public String toString() {
+      return "Tenant {"
+          + "id='" + id + '\''
+          + ", service=" + service.getClass().getName()
+          + ", maxConcurrentRequests=" + maxConcurrentRequests
+          + ", maxWaitMillis=" + maxWaitMillis
+          + ", rateLimiter=" + rateLimiter
+          + '}';
+    }
+  }
+
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SMS service that schedules the requests by their priority (see {@link
+ * SmsSendRequestDto#getPriority()}) before they are sent by the delegate.
+ *
+ * <p>Every priority class has its own queue. A fixed number of worker threads takes the requests
+ * from the queues and sends them by the delegate: {@link SmsPriority#HIGH} is always taken first
+ * (strict priority), the queues of {@link SmsPriority#NORMAL} and {@link SmsPriority#LOW} share
+ * the remaining capacity by their weights (smooth weighted round robin), so bulk traffic is
+ * slowed down but never starved by normal traffic. A caller of {@code sendSms} waits until its
+ * request was sent; {@link #submit(SmsSendRequestDto, SmsPriority)} returns immediately.
+ *
+ * <p>The time a request waits in the queue and the total time until it was sent are recorded per
+ * class in a {@link LatencyHistogram}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class PrioritySmsService implements SmsService, Closeable {
+
+  /**
+   * The default weight of {@link SmsPriority#NORMAL}.
+   */
+  public static final int DEFAULT_NORMAL_WEIGHT = 4;
+
+  /**
+   * The default weight of {@link SmsPriority#LOW}.
+   */
+  public static final int DEFAULT_LOW_WEIGHT = 1;
+
+  /**
+   * The default capacity of each queue.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private static final int CLASSES = SmsPriority.values().length;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final SmsService smsService;
+
+  private final int[] weights = new int[CLASSES];
+
+  private final int queueCapacity;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition notEmpty = lock.newCondition();
+
+  private final List<ArrayDeque<Task>> queues = new ArrayList<>(CLASSES);
+
+  private final long[] currentWeights = new long[CLASSES];
+
+  private final LatencyHistogram[] queueLatencies = new LatencyHistogram[CLASSES];
+
+  private final LatencyHistogram[] latencies = new LatencyHistogram[CLASSES];
+
+  private final Thread[] workers;
+
+  private boolean running = true;
+
+  /**
+   * Instantiates a new priority sms service with one worker thread and the default weights.
+   *
+   * @param smsService the sms service that sends the requests
+   */
+  public PrioritySmsService(SmsService smsService) {
+    this(smsService, 1, DEFAULT_NORMAL_WEIGHT, DEFAULT_LOW_WEIGHT, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Instantiates a new priority sms service.
+   *
+   * @param smsService    the sms service that sends the requests
+   * @param workerThreads the number of worker threads (the number of concurrent sends)
+   * @param normalWeight  the weight of {@link SmsPriority#NORMAL}
+   * @param lowWeight     the weight of {@link SmsPriority#LOW}
+   * @param queueCapacity the capacity of each queue
+   */
+  public PrioritySmsService(SmsService smsService, int workerThreads, int normalWeight,
+      int lowWeight, int queueCapacity) {
+    Validate.notNull(smsService, "smsService must not be null");
+    Validate.isTrue(workerThreads > 0, "workerThreads must be greater than 0");
+    Validate.isTrue(normalWeight > 0, "normalWeight must be greater than 0");
+    Validate.isTrue(lowWeight > 0, "lowWeight must be greater than 0");
+    Validate.isTrue(queueCapacity > 0, "queueCapacity must be greater than 0");
+    this.smsService = smsService;
+    this.weights[SmsPriority.NORMAL.ordinal()] = normalWeight;
+    this.weights[SmsPriority.LOW.ordinal()] = lowWeight;
+    this.queueCapacity = queueCapacity;
+    for (int i = 0; i < CLASSES; i++) {
+      queues.add(new ArrayDeque<>());
+      queueLatencies[i] = new LatencyHistogram();
+      latencies[i] = new LatencyHistogram();
+    }
+    this.workers = new Thread[workerThreads];
+    for (int i = 0; i < workerThreads; i++) {
+      workers[i] = new Thread(this::work,
+          "sms-priority-worker-" + THREAD_COUNTER.incrementAndGet());
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Gets the sms service that sends the requests.
+   *
+   * @return the sms service
+   */
+  public SmsService getSmsService() {
+    return smsService;
+  }
+
+  /**
+   * Gets the number of waiting requests of the priority class.
+   *
+   * @param priority the priority
+   * @return the number of waiting requests
+   */
+  public int getQueueSize(final SmsPriority priority) {
+    lock.lock();
+    try {
+      return queues.get(SmsPriority.orDefault(priority).ordinal()).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the times the requests of the priority class have waited in the queue.
+   *
+   * @param priority the priority
+   * @return the histogram of the waiting times
+   */
+  public LatencyHistogram getQueueLatency(final SmsPriority priority) {
+    return queueLatencies[SmsPriority.orDefault(priority).ordinal()];
+  }
+
+  /**
+   * Gets the times from submitting until sending of the requests of the priority class was
+   * completed (successful or not).
+   *
+   * @param priority the priority
+   * @return the histogram of the total times
+   */
+  public LatencyHistogram getLatency(final SmsPriority priority) {
+    return latencies[SmsPriority.orDefault(priority).ordinal()];
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms() {
+    return sendSms(null, null, null, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String message) {
+    return sendSms(null, null, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message) {
+    return sendSms(null, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message,
+      final Date sendTime) {
+
+    return sendSms(null, receiver, message, sendTime);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message) {
+
+    return sendSms(sender, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message, final Date sendTime) {
+
+    return sendSms(new SmsSendRequestDto(sender, receiver, message, sendTime));
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    return sendSms(smsSendRequest, smsSendRequest.getPriority());
+  }
+
+  /**
+   * Sends the sms with the specified priority and waits until it was sent.
+   *
+   * @param smsSendRequest the request
+   * @param priority       the priority (if {@code null}, the priority of the request is used)
+   * @return the response
+   * @throws SmsRejectedException if the queue is full or the service is closed
+   * @throws SmsException         if sending fails or the calling thread is interrupted
+   */
+  public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest,
+      final SmsPriority priority) {
+
+    final CompletableFuture<SmsSendResponseDto> future = submit(smsSendRequest, priority);
+    try {
+      return future.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      throw new SmsException("Waiting for sending the sms was interrupted.", e);
+
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SmsException(cause);
+    }
+  }
+
+  /**
+   * Puts the request into the queue of its priority and returns immediately.
+   *
+   * @param smsSendRequest the request
+   * @param priority       the priority (if {@code null}, the priority of the request is used)
+   * @return the future response
+   * @throws SmsRejectedException if the queue is full or the service is closed
+   */
+  public CompletableFuture<SmsSendResponseDto> submit(final SmsSendRequestDto smsSendRequest,
+      final SmsPriority priority) {
+
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    final SmsPriority p = SmsPriority.orDefault(
+        priority != null ? priority : smsSendRequest.getPriority());
+    final Task task = new Task(smsSendRequest, p);
+    lock.lock();
+    try {
+      if (!running) {
+        throw new SmsRejectedException("Priority sms service is closed.");
+      }
+      final ArrayDeque<Task> queue = queues.get(p.ordinal());
+      if (queue.size() >= queueCapacity) {
+        throw new SmsRejectedException("Queue of priority " + p + " is full.");
+      }
+      queue.addLast(task);
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+    return task.future;
+  }
+
+  /**
+   * Stops accepting requests, sends the requests that are already queued and waits for the
+   * worker threads.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (!running) {
+        return;
+      }
+      running = false;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (Thread worker : workers) {
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(30L));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void work() {
+    while (true) {
+      final Task task;
+      lock.lock();
+      try {
+        Task next = poll();
+        while (next == null) {
+          if (!running) {
+            return;
+          }
+          notEmpty.awaitUninterruptibly();
+          next = poll();
+        }
+        task = next;
+      } finally {
+        lock.unlock();
+      }
+      task.run();
+    }
+  }
+
+  /*
+   * Must be called with the lock held.
+   */
+  private Task poll() {
+    final Task high = queues.get(SmsPriority.HIGH.ordinal()).pollFirst();
+    if (high != null) {
+      return high;
+    }
+    int selected = -1;
+    long total = 0L;
+    for (int i = SmsPriority.NORMAL.ordinal(); i < CLASSES; i++) {
+      if (!queues.get(i).isEmpty()) {
+        currentWeights[i] += weights[i];
+        total += weights[i];
+        if (selected < 0 || currentWeights[i] > currentWeights[selected]) {
+          selected = i;
+        }
+      }
+    }
+    if (selected < 0) {
+      return null;
+    }
+    currentWeights[selected] -= total;
+    return queues.get(selected).pollFirst();
+  }
+
+  private class Task {
+
+    private final SmsSendRequestDto request;
+
+    private final SmsPriority priority;
+
+    private final long submitted = System.nanoTime();
+
+    private final CompletableFuture<SmsSendResponseDto> future = new CompletableFuture<>();
+
+    private Task(SmsSendRequestDto request, SmsPriority priority) {
+      this.request = request;
+      this.priority = priority;
+    }
+
+    private void run() {
+      if (future.isDone()) {
+        return;
+      }
+      final long started = System.nanoTime();
+      queueLatencies[priority.ordinal()].record(started - submitted);
+      try {
+        future.complete(smsService.sendSms(request));
+      } catch (Throwable t) { // NOSONAR
+        future.completeExceptionally(t);
+      } finally {
+        latencies[priority.ordinal()].record(System.nanoTime() - submitted);
+      }
+    }
+  }
+
+}
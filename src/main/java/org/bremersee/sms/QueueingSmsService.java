@@ -0,0 +1,626 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A SMS service that puts the requests into a bounded queue, from which they are sent by the
+ * delegate.
+ *
+ * <p>The queue is a lock free queue for many producers and one consumer. The consumer thread
+ * takes the requests in their order and hands them to a fixed number of sender threads. If the
+ * queue is full, the {@link RejectionPolicy} decides what happens: the producer waits for free
+ * space ({@link RejectionPolicy#BLOCK}), the oldest queued request with priority {@link
+ * SmsPriority#LOW} is dropped ({@link RejectionPolicy#DROP_OLDEST_LOW_PRIORITY}) or the new
+ * request is rejected ({@link RejectionPolicy#FAIL}). Rejected and dropped requests fail with a
+ * {@link SmsQueueFullException}.
+ *
+ * <p>{@link #submit(SmsSendRequestDto)} returns as soon as the request is queued; {@code sendSms}
+ * waits for the response. So the number of threads that can get stuck in {@code sendSms} is
+ * bounded by the capacity of the queue.
+ *
+ * <p>{@link #shutdown(long, TimeUnit)} stops accepting requests and sends the queued ones until
+ * the deadline; the requests that are still queued then fail with a {@link
+ * SmsRejectedException}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class QueueingSmsService implements SmsService, Closeable {
+
+  /**
+   * The default capacity of the queue.
+   */
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  /**
+   * The default time a producer waits for free space with {@link RejectionPolicy#BLOCK}.
+   */
+  public static final long DEFAULT_BLOCK_MILLIS = 10000L;
+
+  /**
+   * The default time {@link #close()} sends the queued requests.
+   */
+  public static final long DEFAULT_SHUTDOWN_MILLIS = 30000L;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private static final int QUEUED = 0;
+
+  private static final int TAKEN = 1;
+
+  private static final int DROPPED = 2;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final SmsService smsService;
+
+  private final int capacity;
+
+  private final RejectionPolicy rejectionPolicy;
+
+  private final MpscBoundedQueue<Task> queue;
+
+  private final Queue<Task> lowPriorityTasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger depth = new AtomicInteger();
+
+  private final Semaphore senderPermits;
+
+  private final ExecutorService senders;
+
+  private final Thread consumer;
+
+  private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+  private final LongAdder accepted = new LongAdder();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  private final LongAdder sent = new LongAdder();
+
+  private final LongAdder failed = new LongAdder();
+
+  private volatile long blockMillis = DEFAULT_BLOCK_MILLIS;
+
+  private volatile boolean accepting = true;
+
+  private volatile long drainDeadline = Long.MAX_VALUE;
+
+  private volatile boolean consumerWaiting;
+
+  /**
+   * Instantiates a new queueing sms service with one sender thread, the default capacity and
+   * the policy {@link RejectionPolicy#FAIL}.
+   *
+   * @param smsService the sms service that sends the requests
+   */
+  public QueueingSmsService(SmsService smsService) {
+    this(smsService, DEFAULT_CAPACITY, RejectionPolicy.FAIL, 1);
+  }
+
+  /**
+   * Instantiates a new queueing sms service.
+   *
+   * @param smsService      the sms service that sends the requests
+   * @param capacity        the capacity of the queue
+   * @param rejectionPolicy the rejection policy
+   * @param senderThreads   the number of threads that send concurrently
+   */
+  public QueueingSmsService(SmsService smsService, int capacity,
+      RejectionPolicy rejectionPolicy, int senderThreads) {
+    Validate.notNull(smsService, "smsService must not be null");
+    Validate.isTrue(capacity > 0, "capacity must be greater than 0");
+    Validate.notNull(rejectionPolicy, "rejectionPolicy must not be null");
+    Validate.isTrue(senderThreads > 0, "senderThreads must be greater than 0");
+    this.smsService = smsService;
+    this.capacity = capacity;
+    this.rejectionPolicy = rejectionPolicy;
+    // dropped requests stay in the queue until the consumer passes them
+    this.queue = new MpscBoundedQueue<>(2 * capacity);
+    this.senderPermits = new Semaphore(senderThreads);
+    final int id = THREAD_COUNTER.incrementAndGet();
+    final AtomicInteger senderCounter = new AtomicInteger();
+    this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+      Thread thread = new Thread(runnable,
+          "sms-queue-sender-" + id + "-" + senderCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.consumer = new Thread(this::consume, "sms-queue-consumer-" + id);
+    this.consumer.setDaemon(true);
+    this.consumer.start();
+  }
+
+  /**
+   * Gets the capacity of the queue.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the rejection policy.
+   *
+   * @return the rejection policy
+   */
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  /**
+   * Sets the time a producer waits for free space with {@link RejectionPolicy#BLOCK}.
+   *
+   * @param blockMillis the time in milliseconds
+   */
+  public void setBlockMillis(long blockMillis) {
+    Validate.isTrue(blockMillis >= 0L, "blockMillis must not be negative");
+    this.blockMillis = blockMillis;
+  }
+
+  /**
+   * Gets the number of queued requests.
+   *
+   * @return the queue depth
+   */
+  public int getQueueDepth() {
+    return depth.get();
+  }
+
+  /**
+   * Gets the times the requests have waited in the queue.
+   *
+   * @return the histogram of the waiting times
+   */
+  public LatencyHistogram getWaitTimes() {
+    return waitTimes;
+  }
+
+  /**
+   * Gets the number of accepted requests.
+   *
+   * @return the number of accepted requests
+   */
+  public long getAccepted() {
+    return accepted.sum();
+  }
+
+  /**
+   * Gets the number of requests that were rejected, because the queue was full or the service
+   * was shut down.
+   *
+   * @return the number of rejected requests
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Gets the number of requests that were dropped from the queue.
+   *
+   * @return the number of dropped requests
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Gets the number of requests that were passed to the delegate without exception.
+   *
+   * @return the number of sent requests
+   */
+  public long getSent() {
+    return sent.sum();
+  }
+
+  /**
+   * Gets the number of requests that the delegate has failed to send with an exception.
+   *
+   * @return the number of failed requests
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms() {
+    return sendSms(null, null, null, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String message) {
+    return sendSms(null, null, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message) {
+    return sendSms(null, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String receiver, final String message,
+      final Date sendTime) {
+
+    return sendSms(null, receiver, message, sendTime);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message) {
+
+    return sendSms(sender, receiver, message, null);
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final String sender, final String receiver,
+      final String message, final Date sendTime) {
+
+    return sendSms(new SmsSendRequestDto(sender, receiver, message, sendTime));
+  }
+
+  @Override
+  public SmsSendResponseDto sendSms(final SmsSendRequestDto smsSendRequest) {
+    final CompletableFuture<SmsSendResponseDto> future = submit(smsSendRequest);
+    try {
+      return future.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SmsException("Waiting for sending the sms was interrupted.", e);
+
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SmsException(cause);
+    }
+  }
+
+  /**
+   * Puts the request into the queue.
+   *
+   * @param smsSendRequest the request
+   * @return the future response (it fails with a {@link SmsQueueFullException}, if the request
+   *     is dropped later)
+   * @throws SmsQueueFullException if the queue is full
+   * @throws SmsRejectedException  if the service is shut down
+   */
+  public CompletableFuture<SmsSendResponseDto> submit(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    if (!accepting) {
+      rejected.increment();
+      throw new SmsRejectedException("Queueing sms service is shut down.");
+    }
+    final Task task = new Task(smsSendRequest);
+    reserve(task);
+    if (!queue.offer(task)) {
+      // too many dropped requests that the consumer has not passed yet
+      depth.decrementAndGet();
+      rejected.increment();
+      throw new SmsQueueFullException("Queue is full.");
+    }
+    if (!accepting && task.state.compareAndSet(QUEUED, DROPPED)) {
+      // shut down after the first check, the shutdown may have drained the queue already
+      depth.decrementAndGet();
+      rejected.increment();
+      throw new SmsRejectedException("Queueing sms service is shut down.");
+    }
+    if (task.low) {
+      lowPriorityTasks.offer(task);
+    }
+    accepted.increment();
+    if (consumerWaiting) {
+      LockSupport.unpark(consumer);
+    }
+    return task.future;
+  }
+
+  private void reserve(final Task task) {
+    final long deadline = rejectionPolicy == RejectionPolicy.BLOCK
+        ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockMillis)
+        : 0L;
+    long parkNanos = 10000L;
+    while (true) {
+      final int d = depth.get();
+      if (d < capacity) {
+        if (depth.compareAndSet(d, d + 1)) {
+          return;
+        }
+        continue;
+      }
+      switch (rejectionPolicy) {
+        case BLOCK:
+          if (System.nanoTime() - deadline >= 0L || !accepting) {
+            rejected.increment();
+            throw new SmsQueueFullException(
+                "Queue is still full after waiting " + blockMillis + " ms.");
+          }
+          LockSupport.parkNanos(parkNanos);
+          parkNanos = Math.min(parkNanos * 2L, TimeUnit.MILLISECONDS.toNanos(1L));
+          if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            throw new SmsQueueFullException("Interrupted while waiting for free space.");
+          }
+          break;
+        case DROP_OLDEST_LOW_PRIORITY:
+          if (!dropOldestLowPriorityTask()) {
+            rejected.increment();
+            throw new SmsQueueFullException(
+                "Queue is full and there is no request with low priority to drop.");
+          }
+          break;
+        default:
+          rejected.increment();
+          throw new SmsQueueFullException("Queue is full.");
+      }
+    }
+  }
+
+  private boolean dropOldestLowPriorityTask() {
+    Task task;
+    while ((task = lowPriorityTasks.poll()) != null) {
+      if (task.state.compareAndSet(QUEUED, DROPPED)) {
+        depth.decrementAndGet();
+        dropped.increment();
+        task.future.completeExceptionally(new SmsQueueFullException(
+            "Request " + task.request.getRequestId()
+                + " was dropped to make room for another request."));
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Stops accepting requests and sends the queued requests until the timeout is over. Requests
+   * that are still queued then fail with a {@link SmsRejectedException}.
+   *
+   * @param timeout the timeout
+   * @param unit    the time unit of the timeout
+   * @return the number of requests that were not sent
+   */
+  public int shutdown(final long timeout, final TimeUnit unit) {
+    accepting = false;
+    drainDeadline = System.nanoTime() + unit.toNanos(timeout);
+    LockSupport.unpark(consumer);
+    try {
+      consumer.join(Math.max(1L, unit.toMillis(timeout)) + 1000L);
+      senders.shutdown();
+      senders.awaitTermination(Math.max(0L, drainDeadline - System.nanoTime()),
+          TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    int unsent = 0;
+    for (final Runnable runnable : senders.shutdownNow()) {
+      // taken by the consumer, but not started by a sender
+      if (runnable instanceof Send) {
+        ((Send) runnable).task.future.completeExceptionally(new SmsRejectedException(
+            "Request " + ((Send) runnable).task.request.getRequestId()
+                + " was not sent before shutdown."));
+        unsent++;
+      }
+    }
+    Task task;
+    while ((task = queue.poll()) != null) {
+      if (task.state.compareAndSet(QUEUED, DROPPED)) {
+        depth.decrementAndGet();
+        task.future.completeExceptionally(new SmsRejectedException(
+            "Request " + task.request.getRequestId() + " was not sent before shutdown."));
+        unsent++;
+      }
+    }
+    if (unsent > 0) {
+      log.warn("{} queued request(s) were not sent before shutdown.", unsent);
+    }
+    return unsent;
+  }
+
+  /**
+   * Shuts down with a timeout of {@link #DEFAULT_SHUTDOWN_MILLIS}.
+   */
+  @Override
+  public void close() {
+    if (consumer.isAlive() || accepting) {
+      shutdown(DEFAULT_SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void consume() {
+    // a request is only taken from the queue, if a sender is free, so that the queue
+    // and not the consumer holds the waiting requests
+    while (acquireSender()) {
+      final Task task = takeTask();
+      if (task == null) {
+        senderPermits.release();
+        return;
+      }
+      waitTimes.record(System.nanoTime() - task.queued);
+      try {
+        senders.execute(new Send(task));
+      } catch (RuntimeException e) {
+        senderPermits.release();
+        task.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private boolean acquireSender() {
+    try {
+      while (!senderPermits.tryAcquire(100L, TimeUnit.MILLISECONDS)) {
+        if (isDrainDeadlineReached()) {
+          return false;
+        }
+      }
+      return true;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private Task takeTask() {
+    while (!isDrainDeadlineReached()) {
+      final Task task = queue.poll();
+      if (task == null) {
+        if (!accepting) {
+          return null;
+        }
+        consumerWaiting = true;
+        if (queue.size() == 0 && accepting) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100L));
+        }
+        consumerWaiting = false;
+        continue;
+      }
+      if (task.state.compareAndSet(QUEUED, TAKEN)) {
+        depth.decrementAndGet();
+        if (task.low) {
+          cleanUpLowPriorityTasks();
+        }
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private boolean isDrainDeadlineReached() {
+    return !accepting && System.nanoTime() - drainDeadline >= 0L;
+  }
+
+  private void cleanUpLowPriorityTasks() {
+    Task head;
+    while ((head = lowPriorityTasks.peek()) != null && head.state.get() != QUEUED) {
+      lowPriorityTasks.remove(head);
+    }
+  }
+
+  private void send(final Task task) {
+    try {
+      final SmsSendResponseDto response = smsService.sendSms(task.request);
+      sent.increment();
+      task.future.complete(response);
+
+    } catch (RuntimeException e) {
+      failed.increment();
+      task.future.completeExceptionally(e);
+
+    } finally {
+      senderPermits.release();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QueueingSmsService {"
+        + "capacity=" + capacity
+        + ", rejectionPolicy=" + rejectionPolicy
+        + ", depth=" + getQueueDepth()
+        + ", accepted=" + getAccepted()
+        + ", rejected=" + getRejected()
+        + ", dropped=" + getDropped()
+        + ", sent=" + getSent()
+        + ", failed=" + getFailed()
+        + ", waitTimes=" + waitTimes
+        + '}';
+  }
+
+  /**
+   * What happens, if the queue is full.
+   */
+  public enum RejectionPolicy {
+
+    /**
+     * The producer waits for free space (up to the block time, see {@link
+     * #setBlockMillis(long)}).
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued request with priority {@link SmsPriority#LOW} is dropped. If there is
+     * none, the new request is rejected.
+     */
+    DROP_OLDEST_LOW_PRIORITY,
+
+    /**
+     * The new request is rejected.
+     */
+    FAIL
+  }
+
+  private class Send implements Runnable {
+
+    private final Task task;
+
+    private Send(Task task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      send(task);
+    }
+  }
+
+  private static class Task {
+
+    private final SmsSendRequestDto request;
+
+    private final boolean low;
+
+    private final long queued = System.nanoTime();
+
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+    private final CompletableFuture<SmsSendResponseDto> future = new CompletableFuture<>();
+
+    private Task(SmsSendRequestDto request) {
+      this.request = request;
+      this.low = request.getPriority() == SmsPriority.LOW;
+    }
+  }
+
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Limits the number of SMS per receiver within one or more sliding windows (for example 5 per
+ * minute and 20 per day).
+ *
+ * <p>Receivers are normalized before they are counted, so that {@code +49 171 1234567}, {@code
+ * 0049171/1234567} and {@code 0171-1234567} (with the default country code 49) are the same
+ * receiver. A normalized number is used directly as {@code long} key, other receivers (like
+ * alphanumeric ones) are hashed.
+ *
+ * <p>The counters are kept in open addressing hash tables of primitive arrays, that are split
+ * into stripes with their own lock. Per receiver and window there is one {@code long} with the
+ * window index and the counters of the current and the previous window; the sliding window is
+ * approximated by weighting the previous window with the part that still overlaps. An entry
+ * expires two of the longest windows after its last use; its slot is reused by new receivers and
+ * expired entries are dropped whenever a table has to grow, so memory is bounded by the number of
+ * receivers that are active within the longest window and not by the number of receivers ever
+ * seen.
+ *
+ * <p>Instances are thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ReceiverThrottle {
+
+  /**
+   * The default country code that replaces the leading zero of a national number.
+   */
+  public static final String DEFAULT_COUNTRY_CODE = "49";
+
+  /**
+   * The maximum number of messages of a limit.
+   */
+  public static final int MAX_MESSAGES = (1 << 12) - 1;
+
+  private static final int STRIPES = 64;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final long COUNT_MASK = MAX_MESSAGES;
+
+  private final Limit[] limits;
+
+  private final long expiryMillis;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  private volatile String defaultCountryCode = DEFAULT_COUNTRY_CODE;
+
+  /**
+   * Instantiates a new receiver throttle with one limit.
+   *
+   * @param maxMessages the maximum number of messages within the window
+   * @param window      the length of the window
+   * @param unit        the time unit of the window
+   */
+  public ReceiverThrottle(int maxMessages, long window, TimeUnit unit) {
+    this(new Limit(maxMessages, window, unit));
+  }
+
+  /**
+   * Instantiates a new receiver throttle. A message is only accepted, if it doesn't exceed any of
+   * the limits.
+   *
+   * @param limits the limits
+   */
+  public ReceiverThrottle(Limit... limits) {
+    Validate.notEmpty(limits, "At least one limit must be specified.");
+    Validate.noNullElements(limits, "Limits must not contain null.");
+    this.limits = limits.clone();
+    long max = 0L;
+    for (Limit limit : limits) {
+      max = Math.max(max, limit.windowMillis);
+    }
+    this.expiryMillis = 2L * max;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(this.limits.length);
+    }
+  }
+
+  /**
+   * Gets the country code that replaces the leading zero of a national number.
+   *
+   * @return the default country code
+   */
+  public String getDefaultCountryCode() {
+    return defaultCountryCode;
+  }
+
+  /**
+   * Sets the country code that replaces the leading zero of a national number.
+   *
+   * @param defaultCountryCode the default country code (digits only)
+   */
+  public void setDefaultCountryCode(String defaultCountryCode) {
+    Validate.isTrue(defaultCountryCode != null && defaultCountryCode.matches("[0-9]{1,3}"),
+        "defaultCountryCode must consist of one to three digits");
+    this.defaultCountryCode = defaultCountryCode;
+  }
+
+  /**
+   * Counts a message to the receiver, if it doesn't exceed any limit.
+   *
+   * @param receiver the receiver
+   * @return {@code true} if the message is accepted, {@code false} if it exceeds a limit (the
+   *     message is not counted then)
+   */
+  public boolean tryAcquire(final String receiver) {
+    Validate.notBlank(receiver, "receiver must not be blank");
+    final long key = key(receiver, defaultCountryCode);
+    final long hash = mix(key);
+    final Stripe stripe = stripes[(int) (hash >>> 58) & (STRIPES - 1)];
+    final long now = currentTimeMillis();
+    synchronized (stripe) {
+      return stripe.tryAcquire(key, (int) hash, now);
+    }
+  }
+
+  /**
+   * Gives back a message that was counted by {@link #tryAcquire(String)}, but not sent. The
+   * message is taken from the count of the current window (or of the previous one, if the window
+   * has changed meanwhile).
+   *
+   * @param receiver the receiver
+   */
+  public void release(final String receiver) {
+    Validate.notBlank(receiver, "receiver must not be blank");
+    final long key = key(receiver, defaultCountryCode);
+    final long hash = mix(key);
+    final Stripe stripe = stripes[(int) (hash >>> 58) & (STRIPES - 1)];
+    final long now = currentTimeMillis();
+    synchronized (stripe) {
+      stripe.release(key, (int) hash, now);
+    }
+  }
+
+  /**
+   * Gets the number of receivers that are kept (including expired ones that were not dropped
+   * yet).
+   *
+   * @return the number of receivers
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Gets the number of slots of all tables.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    int capacity = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        capacity += stripe.keys.length;
+      }
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the current time in milliseconds.
+   *
+   * @return the current time
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the key of a receiver. The key of a number is the normalized number plus one (a
+   * positive value), the key of any other receiver is a hash with the highest bit set (a negative
+   * value). The key is never 0.
+   *
+   * @param receiver           the receiver
+   * @param defaultCountryCode the country code that replaces the leading zero of a national
+   *                           number
+   * @return the key
+   */
+  public static long key(final String receiver, final String defaultCountryCode) {
+    final int length = receiver.length();
+    final char[] digits = new char[length + 3];
+    int n = 0;
+    boolean international = false;
+    for (int i = 0; i < length; i++) {
+      final char c = receiver.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits[n++] = c;
+      } else if (c == '+' && n == 0) {
+        international = true;
+      } else if (Character.isLetter(c)) {
+        return hash(receiver);
+      }
+    }
+    int start = 0;
+    if (!international && n > 2 && digits[0] == '0' && digits[1] == '0') {
+      start = 2;
+    } else if (!international && n > 1 && digits[0] == '0') {
+      final int cc = defaultCountryCode.length();
+      System.arraycopy(digits, 1, digits, cc, n - 1);
+      defaultCountryCode.getChars(0, cc, digits, 0);
+      n += cc - 1;
+    }
+    if (n - start < 1 || n - start > 18) {
+      return hash(receiver);
+    }
+    long number = 0L;
+    for (int i = start; i < n; i++) {
+      number = number * 10L + (digits[i] - '0');
+    }
+    return number + 1L;
+  }
+
+  private static long hash(final String receiver) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < receiver.length(); i++) {
+      h ^= Character.toLowerCase(receiver.charAt(i));
+      h *= 0x100000001b3L;
+    }
+    return h | Long.MIN_VALUE;
+  }
+
+  private static long mix(final long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * A sliding window limit.
+   */
+  public static final class Limit {
+
+    private final int maxMessages;
+
+    private final long windowMillis;
+
+    /**
+     * Instantiates a new limit.
+     *
+     * @param maxMessages the maximum number of messages within the window (at most {@link
+     *                    #MAX_MESSAGES})
+     * @param window      the length of the window (at least one second)
+     * @param unit        the time unit of the window
+     */
+    public Limit(int maxMessages, long window, TimeUnit unit) {
+      Validate.isTrue(maxMessages > 0 && maxMessages <= MAX_MESSAGES,
+          "maxMessages must be between 1 and " + MAX_MESSAGES);
+      Validate.notNull(unit, "unit must not be null");
+      this.maxMessages = maxMessages;
+      this.windowMillis = unit.toMillis(window);
+      Validate.isTrue(windowMillis >= 1000L, "window must be at least one second");
+    }
+
+    /**
+     * Gets the maximum number of messages within the window.
+     *
+     * @return the maximum number of messages
+     */
+    public int getMaxMessages() {
+      return maxMessages;
+    }
+
+    /**
+     * Gets the length of the window in milliseconds.
+     *
+     * @return the length of the window
+     */
+    public long getWindowMillis() {
+      return windowMillis;
+    }
+
+    @Override
+    public String toString() {
+      return maxMessages + " per " + windowMillis + " ms";
+    }
+  }
+
+  /*
+   * An open addressing table with linear probing. The state of a receiver and limit is
+   * window index (40 bits) | previous count (12 bits) | current count (12 bits).
+   */
+  private final class Stripe {
+
+    private final int limitCount;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    private long[] expires = new long[INITIAL_CAPACITY];
+
+    private long[] states;
+
+    private int size;
+
+    private Stripe(int limitCount) {
+      this.limitCount = limitCount;
+      this.states = new long[INITIAL_CAPACITY * limitCount];
+    }
+
+    private boolean tryAcquire(final long key, final int hash, final long now) {
+      int slot = find(key, hash, now);
+      if (slot < 0) {
+        slot = -slot - 1;
+        if (keys[slot] == 0L) {
+          if ((size + 1) * 2 > keys.length) {
+            resize(now);
+            slot = -find(key, hash, now) - 1;
+          }
+          size++;
+        }
+        keys[slot] = key;
+        for (int l = 0; l < limitCount; l++) {
+          states[slot * limitCount + l] = 0L;
+        }
+      }
+      final int base = slot * limitCount;
+      for (int l = 0; l < limitCount; l++) {
+        if (!allowed(limits[l], states[base + l], now)) {
+          return false;
+        }
+      }
+      for (int l = 0; l < limitCount; l++) {
+        states[base + l] = increment(limits[l], states[base + l], now);
+      }
+      expires[slot] = now + expiryMillis;
+      return true;
+    }
+
+    private void release(final long key, final int hash, final long now) {
+      final int slot = find(key, hash, now);
+      if (slot < 0) {
+        return;
+      }
+      final int base = slot * limitCount;
+      for (int l = 0; l < limitCount; l++) {
+        states[base + l] = decrement(limits[l], states[base + l], now);
+      }
+    }
+
+    /*
+     * Returns the slot of the key or, if it is not present, -(insertion slot) - 1. The insertion
+     * slot is the first expired slot of the probe sequence or the empty slot that ends it.
+     */
+    private int find(final long key, final int hash, final long now) {
+      final int mask = keys.length - 1;
+      int expired = -1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        final long k = keys[slot];
+        if (k == key) {
+          return slot;
+        }
+        if (k == 0L) {
+          return -(expired >= 0 ? expired : slot) - 1;
+        }
+        if (expired < 0 && expires[slot] < now) {
+          expired = slot;
+        }
+      }
+    }
+
+    private void resize(final long now) {
+      int live = 0;
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] != 0L && expires[i] >= now) {
+          live++;
+        }
+      }
+      int capacity = INITIAL_CAPACITY;
+      while (capacity < (live + 1) * 4) {
+        capacity <<= 1;
+      }
+      final long[] oldKeys = keys;
+      final long[] oldExpires = expires;
+      final long[] oldStates = states;
+      keys = new long[capacity];
+      expires = new long[capacity];
+      states = new long[capacity * limitCount];
+      size = 0;
+      final int mask = capacity - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0L && oldExpires[i] >= now) {
+          int slot = (int) mix(oldKeys[i]) & mask;
+          while (keys[slot] != 0L) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          expires[slot] = oldExpires[i];
+          System.arraycopy(oldStates, i * limitCount, states, slot * limitCount, limitCount);
+          size++;
+        }
+      }
+    }
+  }
+
+  private static boolean allowed(final Limit limit, final long state, final long now) {
+    final long window = now / limit.windowMillis;
+    final long elapsed = now % limit.windowMillis;
+    final long stateWindow = state >>> 24;
+    long previous = 0L;
+    long current = 0L;
+    if (stateWindow == window) {
+      previous = (state >>> 12) & COUNT_MASK;
+      current = state & COUNT_MASK;
+    } else if (stateWindow == window - 1L) {
+      previous = state & COUNT_MASK;
+    }
+    return previous * (limit.windowMillis - elapsed) + (current + 1L) * limit.windowMillis
+        <= limit.maxMessages * limit.windowMillis;
+  }
+
+  private static long decrement(final Limit limit, final long state, final long now) {
+    final long window = now / limit.windowMillis;
+    final long stateWindow = state >>> 24;
+    if ((stateWindow == window || stateWindow == window - 1L) && (state & COUNT_MASK) > 0L) {
+      return state - 1L;
+    }
+    if (stateWindow == window && ((state >>> 12) & COUNT_MASK) > 0L) {
+      return state - (1L << 12);
+    }
+    return state;
+  }
+
+  private static long increment(final Limit limit, final long state, final long now) {
+    final long window = now / limit.windowMillis;
+    final long stateWindow = state >>> 24;
+    if (stateWindow == window) {
+      return state + 1L;
+    }
+    final long previous = stateWindow == window - 1L ? state & COUNT_MASK : 0L;
+    return (window << 24) | (previous << 12) | 1L;
+  }
+
+}
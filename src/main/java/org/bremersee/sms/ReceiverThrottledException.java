@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+/**
+ * Exception that is thrown if a receiver has got too many SMS within a window of the {@link
+ * ReceiverThrottle}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class ReceiverThrottledException extends SmsRejectedException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default constructor.
+     */
+    public ReceiverThrottledException() {
+        super();
+    }
+
+    /**
+     * Constructs the exception with the specified message.
+     *
+     * @param message the exception message
+     */
+    public ReceiverThrottledException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs the exception with the specified cause.
+     *
+     * @param cause the cause
+     */
+    public ReceiverThrottledException(Throwable cause) {
+        super(cause);
+    }
+
+    /**
+     * Constructs the exception with the specified message and cause.
+     *
+     * @param message the exception message
+     * @param cause   the cause
+     */
+    public ReceiverThrottledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A transport that passes the requests to another transport and records each exchange in a
+ * file: the URL (with redacted credentials), the status code, the body and the timings. Failed
+ * exchanges are recorded, too. The file can be replayed by a {@link ReplaySmsTransport}.
+ *
+ * <p>The file is a gzip compressed stream of binary entries. Each entry is flushed, so the
+ * entries that are written before a crash can be read.
+ *
+ * <p>Usage:
+ * <pre>
+ * GoyyaSmsService smsService = new GoyyaSmsService(username, password);
+ * RecordingSmsTransport recorder = new RecordingSmsTransport(
+ *     smsService.getTransport(), Paths.get("gateway.rec"));
+ * smsService.setTransport(recorder);
+ * </pre>
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class RecordingSmsTransport implements SmsTransport, Closeable {
+
+  /**
+   * The status code of an exchange that failed with a timeout.
+   */
+  public static final int STATUS_TIMEOUT = -1;
+
+  /**
+   * The status code of an exchange that failed with another exception.
+   */
+  public static final int STATUS_ERROR = -2;
+
+  /**
+   * The replacement of redacted values.
+   */
+  public static final String REDACTED = "****";
+
+  /**
+   * The names of the URL parameters that are redacted by default (the credentials of the goyya
+   * gateway).
+   */
+  public static final Set<String> DEFAULT_REDACTED_PARAMETERS = Collections
+      .unmodifiableSet(new HashSet<>(Arrays.asList("id", "pw")));
+
+  private static final int MAGIC = 0x534d5352;
+
+  private static final byte VERSION = 1;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final SmsTransport transport;
+
+  private final DataOutputStream out;
+
+  private final Set<String> redactedParameters;
+
+  private final long start = System.nanoTime();
+
+  private long recorded;
+
+  private boolean closed;
+
+  /**
+   * Instantiates a new recording transport that redacts the default parameters.
+   *
+   * @param transport the transport that sends the requests
+   * @param file      the file (an existing file is overwritten)
+   * @throws IOException if the file can't be created
+   */
+  public RecordingSmsTransport(SmsTransport transport, Path file) throws IOException {
+    this(transport, file, DEFAULT_REDACTED_PARAMETERS);
+  }
+
+  /**
+   * Instantiates a new recording transport.
+   *
+   * @param transport          the transport that sends the requests
+   * @param file               the file (an existing file is overwritten)
+   * @param redactedParameters the names of the URL parameters whose values are not recorded
+   * @throws IOException if the file can't be created
+   */
+  public RecordingSmsTransport(SmsTransport transport, Path file,
+      Set<String> redactedParameters) throws IOException {
+    Validate.notNull(transport, "transport must not be null");
+    Validate.notNull(file, "file must not be null");
+    this.transport = transport;
+    this.redactedParameters = redactedParameters != null
+        ? new HashSet<>(redactedParameters)
+        : Collections.emptySet();
+    this.out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(Files.newOutputStream(file), true)));
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.flush();
+  }
+
+  @Override
+  public Response send(final String url, final int connectTimeoutMillis,
+      final int readTimeoutMillis) throws IOException {
+
+    final long begin = System.nanoTime();
+    final Response response;
+    try {
+      response = transport.send(url, connectTimeoutMillis, readTimeoutMillis);
+
+    } catch (IOException e) {
+      final long nanos = System.nanoTime() - begin;
+      write(new Entry(begin - start, nanos, nanos,
+          e instanceof SocketTimeoutException ? STATUS_TIMEOUT : STATUS_ERROR,
+          redact(url), redact(String.valueOf(e.getMessage()))));
+      throw e;
+    }
+    write(new Entry(begin - start, response.getConnectNanos(), response.getTotalNanos(),
+        response.getStatusCode(), redact(url), response.getBody()));
+    return response;
+  }
+
+  /**
+   * Replaces the values of the redacted parameters in a URL or in a text that contains URLs (like
+   * the message of an exception). A parameter starts after {@code ?} or {@code &} and its value
+   * ends at the next {@code &}, white space or quote.
+   *
+   * @param text the URL or text
+   * @return the text with redacted values
+   */
+  protected String redact(final String text) {
+    if (redactedParameters.isEmpty()) {
+      return text;
+    }
+    final StringBuilder sb = new StringBuilder(text.length());
+    final int length = text.length();
+    int i = 0;
+    while (i < length) {
+      final char c = text.charAt(i++);
+      sb.append(c);
+      if (c != '?' && c != '&') {
+        continue;
+      }
+      int end = i;
+      while (end < length && isNameChar(text.charAt(end))) {
+        end++;
+      }
+      if (end < length && text.charAt(end) == '='
+          && redactedParameters.contains(text.substring(i, end))) {
+        sb.append(text, i, end + 1).append(REDACTED);
+        i = end + 1;
+        while (i < length && !isValueEnd(text.charAt(i))) {
+          i++;
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean isNameChar(final char c) {
+    return c != '=' && c != '&' && c != '?' && !isValueEnd(c);
+  }
+
+  private static boolean isValueEnd(final char c) {
+    return c == '&' || c == '"' || c == '\'' || Character.isWhitespace(c);
+  }
+
+  private synchronized void write(final Entry entry) {
+    if (closed) {
+      return;
+    }
+    try {
+      out.writeLong(entry.offsetNanos);
+      out.writeLong(entry.connectNanos);
+      out.writeLong(entry.totalNanos);
+      out.writeInt(entry.statusCode);
+      writeString(out, entry.url);
+      writeString(out, entry.body);
+      out.flush();
+      recorded++;
+
+    } catch (IOException e) {
+      // the exchange itself was successful, so it must not fail
+      log.error("Recording exchange failed.", e);
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value)
+      throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Gets the number of recorded exchanges.
+   *
+   * @return the number of recorded exchanges
+   */
+  public synchronized long getRecorded() {
+    return recorded;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the entries of a recording.
+   *
+   * @param file the file
+   * @return the entries
+   * @throws IOException if the file can't be read or is not a recording
+   */
+  public static List<Entry> read(final Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Reads the entries of a recording. The stream is not closed.
+   *
+   * @param inputStream the input stream
+   * @return the entries
+   * @throws IOException if the stream can't be read or is not a recording
+   */
+  public static List<Entry> read(final InputStream inputStream) throws IOException {
+    final DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(inputStream)));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a recording of a sms transport.");
+    }
+    final byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version of recording: " + version);
+    }
+    final List<Entry> entries = new ArrayList<>();
+    try {
+      while (true) {
+        entries.add(new Entry(in.readLong(), in.readLong(), in.readLong(), in.readInt(),
+            readString(in), readString(in)));
+      }
+    } catch (EOFException e) {
+      // end of the recording (or an incomplete last entry of a recording that wasn't closed)
+      return entries;
+    }
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A recorded exchange.
+   */
+  public static final class Entry {
+
+    private final long offsetNanos;
+
+    private final long connectNanos;
+
+    private final long totalNanos;
+
+    private final int statusCode;
+
+    private final String url;
+
+    private final String body;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param offsetNanos  the start of the exchange relative to the start of the recording
+     * @param connectNanos the time to open the connection in nanoseconds
+     * @param totalNanos   the time of the whole exchange in nanoseconds
+     * @param statusCode   the status code ({@link #STATUS_TIMEOUT} or {@link #STATUS_ERROR}
+     *                     if the exchange failed)
+     * @param url          the redacted URL
+     * @param body         the body or the message of the exception
+     */
+    public Entry(long offsetNanos, long connectNanos, long totalNanos, int statusCode,
+        String url, String body) {
+      this.offsetNanos = offsetNanos;
+      this.connectNanos = connectNanos;
+      this.totalNanos = totalNanos;
+      this.statusCode = statusCode;
+      this.url = url;
+      this.body = body;
+    }
+
+    /**
+     * Gets the start of the exchange relative to the start of the recording.
+     *
+     * @return the offset in nanoseconds
+     */
+    public long getOffsetNanos() {
+      return offsetNanos;
+    }
+
+    /**
+     * Gets the time to open the connection.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getConnectNanos() {
+      return connectNanos;
+    }
+
+    /**
+     * Gets the time of the whole exchange.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /**
+     * Gets the status code.
+     *
+     * @return the status code ({@link #STATUS_TIMEOUT} or {@link #STATUS_ERROR} if the exchange
+     *     failed)
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    /**
+     * Gets the redacted URL.
+     *
+     * @return the URL
+     */
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     * Gets the body or the message of the exception.
+     *
+     * @return the body
+     */
+    public String getBody() {
+      return body;
+    }
+
+    @Override
+    public String toString() {
+      return "Entry {"
+          + "offsetNanos=" + offsetNanos
+          + ", connectNanos=" + connectNanos
+          + ", totalNanos=" + totalNanos
+          + ", statusCode=" + statusCode
+          + ", url='" + url + '\''
+          + ", body='" + body + '\''
+          + '}';
+    }
+  }
+
+}
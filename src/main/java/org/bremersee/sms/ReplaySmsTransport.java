@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A transport that serves the responses of a recording (see {@link RecordingSmsTransport})
+ * with their original timings, so that load tests and benchmarks run against the behaviour of
+ * a real gateway without network access. The requests get the recorded responses in the order
+ * of the recording; when the end is reached, the recording starts again.
+ *
+ * <p>Recorded timeouts and errors are thrown again. If the recorded connect or read time
+ * exceeds the timeout of the request, a {@link SocketTimeoutException} is thrown after the
+ * timeout.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ReplaySmsTransport implements SmsTransport {
+
+  private final List<RecordingSmsTransport.Entry> entries;
+
+  private final AtomicLong next = new AtomicLong();
+
+  private volatile double speedFactor = 1.0;
+
+  private volatile boolean loop = true;
+
+  /**
+   * Instantiates a new replay transport.
+   *
+   * @param entries the recorded entries
+   */
+  public ReplaySmsTransport(List<RecordingSmsTransport.Entry> entries) {
+    Validate.notEmpty(entries, "entries must not be empty");
+    this.entries = new ArrayList<>(entries);
+  }
+
+  /**
+   * Creates a replay transport of a recording.
+   *
+   * @param file the file of the recording
+   * @return the replay transport
+   * @throws IOException if the recording can't be read
+   */
+  public static ReplaySmsTransport load(final Path file) throws IOException {
+    return new ReplaySmsTransport(RecordingSmsTransport.read(file));
+  }
+
+  /**
+   * Gets the speed factor.
+   *
+   * @return the speed factor
+   */
+  public double getSpeedFactor() {
+    return speedFactor;
+  }
+
+  /**
+   * Sets the speed factor: the recorded times are divided by it, so 2 replays twice as fast
+   * and {@link Double#POSITIVE_INFINITY} replays without any delay.
+   *
+   * @param speedFactor the speed factor (greater than 0)
+   */
+  public void setSpeedFactor(double speedFactor) {
+    Validate.isTrue(speedFactor > 0.0, "speedFactor must be greater than 0");
+    this.speedFactor = speedFactor;
+  }
+
+  /**
+   * Checks whether the recording starts again when the end is reached.
+   *
+   * @return {@code true} if the recording is replayed in a loop (the default)
+   */
+  public boolean isLoop() {
+    return loop;
+  }
+
+  /**
+   * Sets whether the recording starts again when the end is reached. Otherwise an {@link
+   * IOException} is thrown.
+   *
+   * @param loop {@code true} to replay in a loop
+   */
+  public void setLoop(boolean loop) {
+    this.loop = loop;
+  }
+
+  /**
+   * Gets the number of replayed exchanges.
+   *
+   * @return the number of replayed exchanges
+   */
+  public long getReplayed() {
+    return Math.min(next.get(), loop ? Long.MAX_VALUE : entries.size());
+  }
+
+  @Override
+  public Response send(final String url, final int connectTimeoutMillis,
+      final int readTimeoutMillis) throws IOException {
+
+    final long index = next.getAndIncrement();
+    if (!loop && index >= entries.size()) {
+      throw new IOException("End of recording is reached.");
+    }
+    final RecordingSmsTransport.Entry entry = entries.get((int) (index % entries.size()));
+    final long connectNanos = scale(entry.getConnectNanos());
+    final long totalNanos = Math.max(connectNanos, scale(entry.getTotalNanos()));
+    final long connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+    if (connectNanos > connectTimeoutNanos) {
+      pause(connectTimeoutNanos);
+      throw new SocketTimeoutException("connect timed out");
+    }
+    final long readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+    if (totalNanos - connectNanos > readTimeoutNanos) {
+      pause(connectNanos + readTimeoutNanos);
+      throw new ResponseTimeoutException("Read timed out");
+    }
+    pause(totalNanos);
+    if (entry.getStatusCode() == RecordingSmsTransport.STATUS_TIMEOUT) {
+      throw new SocketTimeoutException(entry.getBody());
+    }
+    if (entry.getStatusCode() == RecordingSmsTransport.STATUS_ERROR) {
+      throw new IOException(entry.getBody());
+    }
+    return new Response(entry.getStatusCode(), entry.getBody(), connectNanos, totalNanos);
+  }
+
+  private long scale(final long nanos) {
+    return (long) (nanos / speedFactor);
+  }
+
+  private static void pause(final long nanos) throws IOException {
+    if (nanos <= 0L) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Replay was interrupted.", e);
+    }
+  }
+
+}
@@ -0,0 +1,569 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.RequestIdFormat;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+
+/**
+ * A compact binary format of {@link SmsSendRequestDto}, {@link SmsSendResponseDto} and {@link
+ * GoyyaSmsSendResponseDto} that is written to and read from {@link ByteBuffer}s (heap or direct
+ * buffers), for example to persist queued requests or to exchange them between nodes.
+ *
+ * <p>Every message has the following layout:
+ * <pre>
+ * int   length of the following bytes
+ * byte  version of the format
+ * byte  type (1 = request, 2 = response, 3 = goyya response)
+ * ...   the body of the type
+ * </pre>
+ * The body starts with a byte of flags that tells which (non null) values follow. Strings are
+ * written as UTF-8 with a variable length prefix, a request id in the format of {@code
+ * UUID.toString()} as 16 bytes, the send time as milliseconds since the epoch and the priority
+ * as one byte (since version 2). An extension is written as id of an {@link ExtensionCodec},
+ * length and the bytes of the codec. The deadline of a request is not written, a decoded request
+ * has no deadline.
+ *
+ * <p>A decoder skips everything of a message it does not know, so values that are appended by a
+ * later version of the format can be ignored by older decoders.
+ *
+ * <p>Instances are thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsBinaryCodec {
+
+  /**
+   * The version of the format that is written.
+   */
+  public static final byte VERSION = 2;
+
+  /**
+   * The type of a {@link SmsSendRequestDto}.
+   */
+  public static final byte TYPE_REQUEST = 1;
+
+  /**
+   * The type of a {@link SmsSendResponseDto}.
+   */
+  public static final byte TYPE_RESPONSE = 2;
+
+  /**
+   * The type of a {@link GoyyaSmsSendResponseDto}.
+   */
+  public static final byte TYPE_GOYYA_RESPONSE = 3;
+
+  private static final int HEADER_LENGTH = 6;
+
+  private static final int REQUEST_ID = 1;
+
+  private static final int REQUEST_ID_UUID = 1 << 1;
+
+  private static final int SENDER = 1 << 2;
+
+  private static final int RECEIVER = 1 << 3;
+
+  private static final int MESSAGE = 1 << 4;
+
+  private static final int SEND_TIME = 1 << 5;
+
+  private static final int EXTENSION = 1 << 6;
+
+  private static final int PRIORITY = 1 << 7;
+
+  private static final int REQUEST = 1;
+
+  private static final int SUCCESSFULLY_SENT = 1 << 1;
+
+  private static final int RESPONSE_EXTENSION = 1 << 2;
+
+  private static final int GOYYA_RESPONSE = 1;
+
+  private volatile ExtensionCodec[] extensionCodecs = new ExtensionCodec[0];
+
+  /**
+   * Instantiates a new binary codec with the {@link GoyyaExtensionCodec} and the {@link
+   * JsonExtensionCodec}.
+   */
+  public SmsBinaryCodec() {
+    register(new GoyyaExtensionCodec());
+    register(new JsonExtensionCodec());
+  }
+
+  /**
+   * Registers an extension codec. A codec that is registered later is asked first whether it can
+   * encode an extension. A codec with the same id is replaced.
+   *
+   * @param extensionCodec the extension codec
+   * @return this binary codec
+   */
+  public synchronized SmsBinaryCodec register(final ExtensionCodec extensionCodec) {
+    Validate.notNull(extensionCodec, "Extension codec must not be null.");
+    Validate.isTrue(extensionCodec.getId() > 0 && extensionCodec.getId() < 128,
+        "The id of the extension codec must be between 1 and 127.");
+    final ExtensionCodec[] codecs = extensionCodecs;
+    final ExtensionCodec[] newCodecs = new ExtensionCodec[codecs.length + 1];
+    newCodecs[0] = extensionCodec;
+    int n = 1;
+    for (ExtensionCodec codec : codecs) {
+      if (codec.getId() != extensionCodec.getId()) {
+        newCodecs[n++] = codec;
+      }
+    }
+    extensionCodecs = Arrays.copyOf(newCodecs, n);
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes of the encoded object (including the length prefix).
+   *
+   * @param value the request, response or goyya response
+   * @return the number of bytes
+   */
+  public int getEncodedLength(final Object value) {
+    return HEADER_LENGTH + getBodyLength(value);
+  }
+
+  /**
+   * Encodes the object into a new buffer of the exact size. The returned buffer is flipped, so it
+   * can be read or written to a channel.
+   *
+   * @param value  the request, response or goyya response
+   * @param direct {@code true} to allocate a direct buffer, otherwise a heap buffer
+   * @return the buffer
+   */
+  public ByteBuffer encode(final Object value, final boolean direct) {
+    final int length = getEncodedLength(value);
+    final ByteBuffer buffer = direct
+        ? ByteBuffer.allocateDirect(length)
+        : ByteBuffer.allocate(length);
+    encode(value, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Encodes the object at the current position into the buffer.
+   *
+   * @param value  the request, response or goyya response
+   * @param target the target buffer
+   * @throws java.nio.BufferOverflowException if the buffer is too small
+   */
+  public void encode(final Object value, final ByteBuffer target) {
+    Validate.notNull(value, "Value must not be null.");
+    final int start = target.position();
+    target.putInt(0);
+    target.put(VERSION);
+    if (value instanceof SmsSendRequestDto) {
+      target.put(TYPE_REQUEST);
+      writeRequest((SmsSendRequestDto) value, target);
+    } else if (value instanceof SmsSendResponseDto) {
+      target.put(TYPE_RESPONSE);
+      writeResponse((SmsSendResponseDto) value, target);
+    } else if (value instanceof GoyyaSmsSendResponseDto) {
+      target.put(TYPE_GOYYA_RESPONSE);
+      writeGoyyaResponse((GoyyaSmsSendResponseDto) value, target);
+    } else {
+      throw new IllegalArgumentException("Unsupported type: " + value.getClass().getName());
+    }
+    target.putInt(start, target.position() - start - 4);
+  }
+
+  /**
+   * Decodes the object at the current position of the buffer. Afterwards the position is at the
+   * end of the message.
+   *
+   * @param source the source buffer
+   * @return the request, response or goyya response
+   * @throws IllegalArgumentException  if the version or type of the message is not supported
+   * @throws BufferUnderflowException if the buffer does not contain the whole message
+   */
+  public Object decode(final ByteBuffer source) {
+    final int length = source.getInt(source.position());
+    if (length < 2 || source.remaining() - 4 < length) {
+      throw new BufferUnderflowException();
+    }
+    source.position(source.position() + 4);
+    final int end = source.position() + length;
+    final int limit = source.limit();
+    source.limit(end);
+    try {
+      final byte version = source.get();
+      if (version < 1 || version > VERSION) {
+        throw new IllegalArgumentException("Unsupported version: " + version);
+      }
+      final byte type = source.get();
+      switch (type) {
+        case TYPE_REQUEST:
+          return readRequest(source);
+        case TYPE_RESPONSE:
+          return readResponse(source);
+        case TYPE_GOYYA_RESPONSE:
+          return readGoyyaResponse(source);
+        default:
+          throw new IllegalArgumentException("Unsupported type: " + type);
+      }
+    } finally {
+      source.limit(limit);
+      source.position(end);
+    }
+  }
+
+  /**
+   * Decodes the object at the current position of the buffer.
+   *
+   * @param <T>       the expected type
+   * @param source    the source buffer
+   * @param valueType the class of the expected type
+   * @return the request, response or goyya response
+   */
+  public <T> T decode(final ByteBuffer source, final Class<T> valueType) {
+    final Object value = decode(source);
+    if (!valueType.isInstance(value)) {
+      throw new IllegalArgumentException(
+          "Decoded value of type " + value.getClass().getName() + " is not a " + valueType);
+    }
+    return valueType.cast(value);
+  }
+
+  private int getBodyLength(final Object value) {
+    Validate.notNull(value, "Value must not be null.");
+    if (value instanceof SmsSendRequestDto) {
+      return getRequestLength((SmsSendRequestDto) value);
+    }
+    if (value instanceof SmsSendResponseDto) {
+      final SmsSendResponseDto response = (SmsSendResponseDto) value;
+      int length = 1;
+      if (response.getRequest() != null) {
+        length += getRequestLength(response.getRequest());
+      }
+      if (response.getExtension() != null) {
+        length += getExtensionLength(response.getExtension());
+      }
+      return length;
+    }
+    if (value instanceof GoyyaSmsSendResponseDto) {
+      final String response = ((GoyyaSmsSendResponseDto) value).getResponse();
+      return 1 + (response != null ? getEncodedLength(response) : 0);
+    }
+    throw new IllegalArgumentException("Unsupported type: " + value.getClass().getName());
+  }
+
+  private int getRequestLength(final SmsSendRequestDto request) {
+    int length = 1;
+    final String requestId = request.getRequestId();
+    if (requestId != null) {
+      length += RequestIdFormat.isCanonicalUuid(requestId) ? 16 : getEncodedLength(requestId);
+    }
+    length += request.getSender() != null ? getEncodedLength(request.getSender()) : 0;
+    length += request.getReceiver() != null ? getEncodedLength(request.getReceiver()) : 0;
+    length += request.getMessage() != null ? getEncodedLength(request.getMessage()) : 0;
+    length += request.getSendTime() != null ? 8 : 0;
+    length += request.getPriority() != null ? 1 : 0;
+    if (request.getExtension() != null) {
+      length += getExtensionLength(request.getExtension());
+    }
+    return length;
+  }
+
+  private int getExtensionLength(final Object extension) {
+    return 5 + findExtensionCodec(extension).getEncodedLength(extension);
+  }
+
+  private void writeRequest(final SmsSendRequestDto request, final ByteBuffer target) {
+    final String requestId = request.getRequestId();
+    final boolean uuid = requestId != null && RequestIdFormat.isCanonicalUuid(requestId);
+    int flags = 0;
+    flags |= requestId != null ? REQUEST_ID : 0;
+    flags |= uuid ? REQUEST_ID_UUID : 0;
+    flags |= request.getSender() != null ? SENDER : 0;
+    flags |= request.getReceiver() != null ? RECEIVER : 0;
+    flags |= request.getMessage() != null ? MESSAGE : 0;
+    flags |= request.getSendTime() != null ? SEND_TIME : 0;
+    flags |= request.getExtension() != null ? EXTENSION : 0;
+    flags |= request.getPriority() != null ? PRIORITY : 0;
+    target.put((byte) flags);
+    if (uuid) {
+      target.putLong(RequestIdFormat.getMostSignificantBits(requestId));
+      target.putLong(RequestIdFormat.getLeastSignificantBits(requestId));
+    } else if (requestId != null) {
+      writeString(requestId, target);
+    }
+    if (request.getSender() != null) {
+      writeString(request.getSender(), target);
+    }
+    if (request.getReceiver() != null) {
+      writeString(request.getReceiver(), target);
+    }
+    if (request.getMessage() != null) {
+      writeString(request.getMessage(), target);
+    }
+    if (request.getSendTime() != null) {
+      target.putLong(request.getSendTime().getTime());
+    }
+    if (request.getPriority() != null) {
+      target.put((byte) request.getPriority().ordinal());
+    }
+    if (request.getExtension() != null) {
+      writeExtension(request.getExtension(), target);
+    }
+  }
+
+  private SmsSendRequestDto readRequest(final ByteBuffer source) {
+    final int flags = source.get();
+    final SmsSendRequestDto request = new SmsSendRequestDto();
+    if ((flags & REQUEST_ID_UUID) != 0) {
+      final long msb = source.getLong();
+      request.setRequestId(RequestIdFormat.format(msb, source.getLong()));
+    } else if ((flags & REQUEST_ID) != 0) {
+      request.setRequestId(readString(source));
+    } else {
+      request.setRequestId(null);
+    }
+    if ((flags & SENDER) != 0) {
+      request.setSender(readString(source));
+    }
+    if ((flags & RECEIVER) != 0) {
+      request.setReceiver(readString(source));
+    }
+    if ((flags & MESSAGE) != 0) {
+      request.setMessage(readString(source));
+    }
+    if ((flags & SEND_TIME) != 0) {
+      request.setSendTime(new Date(source.getLong()));
+    }
+    if ((flags & PRIORITY) != 0) {
+      request.setPriority(SmsPriority.fromOrdinal(source.get()));
+    }
+    if ((flags & EXTENSION) != 0) {
+      request.setExtension(readExtension(source));
+    }
+    return request;
+  }
+
+  private void writeResponse(final SmsSendResponseDto response, final ByteBuffer target) {
+    int flags = 0;
+    flags |= response.getRequest() != null ? REQUEST : 0;
+    flags |= response.isSuccessfullySent() ? SUCCESSFULLY_SENT : 0;
+    flags |= response.getExtension() != null ? RESPONSE_EXTENSION : 0;
+    target.put((byte) flags);
+    if (response.getRequest() != null) {
+      writeRequest(response.getRequest(), target);
+    }
+    if (response.getExtension() != null) {
+      writeExtension(response.getExtension(), target);
+    }
+  }
+
+  private SmsSendResponseDto readResponse(final ByteBuffer source) {
+    final int flags = source.get();
+    final SmsSendRequestDto request = (flags & REQUEST) != 0 ? readRequest(source) : null;
+    final Object extension = (flags & RESPONSE_EXTENSION) != 0 ? readExtension(source) : null;
+    return new SmsSendResponseDto(request, (flags & SUCCESSFULLY_SENT) != 0, extension);
+  }
+
+  private void writeGoyyaResponse(final GoyyaSmsSendResponseDto response,
+      final ByteBuffer target) {
+    target.put((byte) (response.getResponse() != null ? GOYYA_RESPONSE : 0));
+    if (response.getResponse() != null) {
+      writeString(response.getResponse(), target);
+    }
+  }
+
+  private GoyyaSmsSendResponseDto readGoyyaResponse(final ByteBuffer source) {
+    final int flags = source.get();
+    return (flags & GOYYA_RESPONSE) != 0
+        ? new GoyyaSmsSendResponseDto(readString(source))
+        : new GoyyaSmsSendResponseDto();
+  }
+
+  private ExtensionCodec findExtensionCodec(final Object extension) {
+    for (ExtensionCodec codec : extensionCodecs) {
+      if (codec.canEncode(extension)) {
+        return codec;
+      }
+    }
+    throw new IllegalArgumentException(
+        "There is no extension codec for " + extension.getClass().getName());
+  }
+
+  private void writeExtension(final Object extension, final ByteBuffer target) {
+    final ExtensionCodec codec = findExtensionCodec(extension);
+    target.put((byte) codec.getId());
+    final int start = target.position();
+    target.putInt(0);
+    codec.encode(extension, target);
+    target.putInt(start, target.position() - start - 4);
+  }
+
+  private Object readExtension(final ByteBuffer source) {
+    final int id = source.get();
+    final int length = source.getInt();
+    final int end = source.position() + length;
+    if (length < 0 || end > source.limit()) {
+      throw new BufferUnderflowException();
+    }
+    ExtensionCodec codec = null;
+    for (ExtensionCodec extensionCodec : extensionCodecs) {
+      if (extensionCodec.getId() == id) {
+        codec = extensionCodec;
+        break;
+      }
+    }
+    if (codec == null) {
+      throw new IllegalArgumentException("There is no extension codec with id " + id);
+    }
+    final int limit = source.limit();
+    source.limit(end);
+    try {
+      return codec.decode(source);
+    } finally {
+      source.limit(limit);
+      source.position(end);
+    }
+  }
+
+  /**
+   * Gets the number of bytes of the encoded string.
+   *
+   * @param value the string
+   * @return the number of bytes
+   */
+  static int getEncodedLength(final String value) {
+    final int length = getUtf8Length(value);
+    return getVarIntLength(length) + length;
+  }
+
+  /**
+   * Writes the string as UTF-8 with a variable length prefix.
+   *
+   * @param value  the string
+   * @param target the target buffer
+   */
+  static void writeString(final String value, final ByteBuffer target) {
+    writeVarInt(getUtf8Length(value), target);
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        target.put((byte) c);
+      } else if (c < 0x800) {
+        target.put((byte) (0xC0 | (c >> 6)));
+        target.put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, value.charAt(++i));
+        target.put((byte) (0xF0 | (cp >> 18)));
+        target.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+        target.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+        target.put((byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        target.put((byte) '?');
+      } else {
+        target.put((byte) (0xE0 | (c >> 12)));
+        target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        target.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+  }
+
+  /**
+   * Reads a string that was written by {@link #writeString(String, ByteBuffer)}.
+   *
+   * @param source the source buffer
+   * @return the string
+   */
+  static String readString(final ByteBuffer source) {
+    final int length = readVarInt(source);
+    if (length > source.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    final String value;
+    if (source.hasArray()) {
+      value = new String(source.array(), source.arrayOffset() + source.position(), length,
+          StandardCharsets.UTF_8);
+      source.position(source.position() + length);
+    } else {
+      final byte[] bytes = new byte[length];
+      source.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return value;
+  }
+
+  private static int getUtf8Length(final String value) {
+    final int length = value.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      if (c >= 0x800) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          bytes += 2;
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      } else if (c >= 0x80) {
+        bytes++;
+      }
+    }
+    return bytes;
+  }
+
+  private static int getVarIntLength(final int value) {
+    int length = 1;
+    int v = value >>> 7;
+    while (v != 0) {
+      length++;
+      v >>>= 7;
+    }
+    return length;
+  }
+
+  private static void writeVarInt(final int value, final ByteBuffer target) {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      target.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    target.put((byte) v);
+  }
+
+  private static int readVarInt(final ByteBuffer source) {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final byte b = source.get();
+      result |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new IllegalArgumentException("Malformed variable length integer.");
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.math.BigDecimal;
+
+/**
+ * The estimated encoding, number of parts and cost of one SMS (see {@link SmsCostEstimator}).
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SmsCostEstimate {
+
+  private final SmsEncoding encoding;
+
+  private final int length;
+
+  private final int parts;
+
+  private final String messageType;
+
+  private final BigDecimal cost;
+
+  /**
+   * Instantiates a new sms cost estimate.
+   *
+   * @param encoding    the encoding
+   * @param length      the length of the encoded message
+   * @param parts       the number of parts
+   * @param messageType the message type (can be {@code null})
+   * @param cost        the cost
+   */
+  SmsCostEstimate(SmsEncoding encoding, int length, int parts, String messageType,
+      BigDecimal cost) {
+    this.encoding = encoding;
+    this.length = length;
+    this.parts = parts;
+    this.messageType = messageType;
+    this.cost = cost;
+  }
+
+  /**
+   * Gets the encoding.
+   *
+   * @return the encoding
+   */
+  public SmsEncoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Gets the length of the encoded message (the number of septets or of UTF-16 code units).
+   *
+   * @return the length of the encoded message
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * Gets the number of parts.
+   *
+   * @return the number of parts
+   */
+  public int getParts() {
+    return parts;
+  }
+
+  /**
+   * Gets the message type of the gateway.
+   *
+   * @return the message type (can be {@code null} if the gateway has no message types)
+   */
+  public String getMessageType() {
+    return messageType;
+  }
+
+  /**
+   * Gets the cost.
+   *
+   * @return the cost
+   */
+  public BigDecimal getCost() {
+    return cost;
+  }
+
+  @Override
+  public String toString() {
+    return "SmsCostEstimate{"
+        + "encoding=" + encoding
+        + ", length=" + length
+        + ", parts=" + parts
+        + ", messageType='" + messageType + '\''
+        + ", cost=" + cost
+        + '}';
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+
+/**
+ * Estimates the encoding, the number of parts and the cost of SMS without sending them. The
+ * estimation uses the maximum length of one SMS and the default message of a configuration; if
+ * it is a {@link GoyyaSmsServiceConfiguration}, the message type is resolved, too.
+ *
+ * <p>Many requests are estimated in parallel. No estimate object is created per request, the
+ * parts are summed up per thread and the cost is computed once at the end.
+ *
+ * <p>Instances are thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsCostEstimator {
+
+  private final SmsServiceConfiguration configuration;
+
+  private final BigDecimal pricePerPart;
+
+  /**
+   * Instantiates a new sms cost estimator.
+   *
+   * @param configuration the configuration of the sms service
+   * @param pricePerPart  the price of one part
+   */
+  public SmsCostEstimator(SmsServiceConfiguration configuration, BigDecimal pricePerPart) {
+    Validate.notNull(configuration, "Configuration must not be null.");
+    Validate.notNull(pricePerPart, "Price per part must not be null.");
+    Validate.isTrue(pricePerPart.signum() >= 0, "Price per part must not be negative.");
+    this.configuration = configuration;
+    this.pricePerPart = pricePerPart;
+  }
+
+  /**
+   * Gets the configuration.
+   *
+   * @return the configuration
+   */
+  public SmsServiceConfiguration getConfiguration() {
+    return configuration;
+  }
+
+  /**
+   * Gets the price of one part.
+   *
+   * @return the price of one part
+   */
+  public BigDecimal getPricePerPart() {
+    return pricePerPart;
+  }
+
+  /**
+   * Estimates one message.
+   *
+   * @param message the message (if it is blank, the default message is used)
+   * @return the estimate
+   */
+  public SmsCostEstimate estimate(final String message) {
+    final String text = getMessage(message);
+    final SmsEncoding encoding = SmsEncoding.detect(text);
+    final int parts = encoding.getNumberOfParts(text, configuration.getMaxLengthOfOneSms());
+    return new SmsCostEstimate(encoding, encoding.getLength(text), parts,
+        getMessageType(parts), pricePerPart.multiply(BigDecimal.valueOf(parts)));
+  }
+
+  /**
+   * Estimates one request.
+   *
+   * @param smsSendRequest the request
+   * @return the estimate
+   */
+  public SmsCostEstimate estimate(final SmsSendRequestDto smsSendRequest) {
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    return estimate(smsSendRequest.getMessage());
+  }
+
+  /**
+   * Estimates all requests in parallel.
+   *
+   * @param smsSendRequests the requests
+   * @return the summary
+   */
+  public SmsCostSummary estimateAll(final Collection<? extends SmsSendRequestDto> smsSendRequests) {
+    Validate.notNull(smsSendRequests, "smsSendRequests must not be null");
+    return estimateAll(smsSendRequests.parallelStream());
+  }
+
+  /**
+   * Estimates all requests of the stream in parallel. The stream is consumed.
+   *
+   * @param smsSendRequests the requests
+   * @return the summary
+   */
+  public SmsCostSummary estimateAll(final Stream<? extends SmsSendRequestDto> smsSendRequests) {
+    Validate.notNull(smsSendRequests, "smsSendRequests must not be null");
+    return smsSendRequests.parallel()
+        .map(SmsSendRequestDto::getMessage)
+        .collect(summarizing());
+  }
+
+  /**
+   * Estimates all messages of the stream in parallel. The stream is consumed.
+   *
+   * @param messages the messages (blank messages are replaced by the default message)
+   * @return the summary
+   */
+  public SmsCostSummary estimateMessages(final Stream<String> messages) {
+    Validate.notNull(messages, "Messages must not be null.");
+    return messages.parallel().collect(summarizing());
+  }
+
+  private Collector<String, Accumulator, SmsCostSummary> summarizing() {
+    return Collector.of(
+        Accumulator::new,
+        (accumulator, message) -> accumulator.add(getMessage(message),
+            configuration.getMaxLengthOfOneSms()),
+        Accumulator::combine,
+        accumulator -> accumulator.toSummary(pricePerPart));
+  }
+
+  private String getMessage(final String message) {
+    if (StringUtils.isNotBlank(message)) {
+      return message;
+    }
+    return StringUtils.defaultString(configuration.getDefaultMessage());
+  }
+
+  private String getMessageType(final int parts) {
+    if (!(configuration instanceof GoyyaSmsServiceConfiguration)) {
+      return null;
+    }
+    return GoyyaSmsService.getMessageType(
+        ((GoyyaSmsServiceConfiguration) configuration).getDefaultMessageType(), parts);
+  }
+
+  private static class Accumulator {
+
+    private long messages;
+
+    private long gsm7Messages;
+
+    private long parts;
+
+    private int maxParts;
+
+    private void add(final String message, final int maxLengthOfOneSms) {
+      final SmsEncoding encoding = SmsEncoding.detect(message);
+      final int n = encoding.getNumberOfParts(message, maxLengthOfOneSms);
+      messages++;
+      if (encoding == SmsEncoding.GSM_7) {
+        gsm7Messages++;
+      }
+      parts += n;
+      maxParts = Math.max(maxParts, n);
+    }
+
+    private Accumulator combine(final Accumulator other) {
+      messages += other.messages;
+      gsm7Messages += other.gsm7Messages;
+      parts += other.parts;
+      maxParts = Math.max(maxParts, other.maxParts);
+      return this;
+    }
+
+    private SmsCostSummary toSummary(final BigDecimal pricePerPart) {
+      return new SmsCostSummary(messages, gsm7Messages, messages - gsm7Messages, parts,
+          maxParts, pricePerPart.multiply(BigDecimal.valueOf(parts)));
+    }
+  }
+
+}
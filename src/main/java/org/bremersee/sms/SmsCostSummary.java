@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.math.BigDecimal;
+
+/**
+ * The estimated number of parts and cost of many SMS (see {@link SmsCostEstimator}).
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SmsCostSummary {
+
+  private final long messages;
+
+  private final long gsm7Messages;
+
+  private final long ucs2Messages;
+
+  private final long parts;
+
+  private final int maxParts;
+
+  private final BigDecimal cost;
+
+  /**
+   * Instantiates a new sms cost summary.
+   *
+   * @param messages     the number of messages
+   * @param gsm7Messages the number of GSM 7-bit messages
+   * @param ucs2Messages the number of UCS-2 messages
+   * @param parts        the number of parts
+   * @param maxParts     the maximum number of parts of one message
+   * @param cost         the cost
+   */
+  SmsCostSummary(long messages, long gsm7Messages, long ucs2Messages, long parts, int maxParts,
+      BigDecimal cost) {
+    this.messages = messages;
+    this.gsm7Messages = gsm7Messages;
+    this.ucs2Messages = ucs2Messages;
+    this.parts = parts;
+    this.maxParts = maxParts;
+    this.cost = cost;
+  }
+
+  /**
+   * Gets the number of messages.
+   *
+   * @return the number of messages
+   */
+  public long getMessages() {
+    return messages;
+  }
+
+  /**
+   * Gets the number of messages that are encoded with the GSM 7-bit alphabet.
+   *
+   * @return the number of GSM 7-bit messages
+   */
+  public long getGsm7Messages() {
+    return gsm7Messages;
+  }
+
+  /**
+   * Gets the number of messages that are encoded with UCS-2.
+   *
+   * @return the number of UCS-2 messages
+   */
+  public long getUcs2Messages() {
+    return ucs2Messages;
+  }
+
+  /**
+   * Gets the number of parts of all messages.
+   *
+   * @return the number of parts
+   */
+  public long getParts() {
+    return parts;
+  }
+
+  /**
+   * Gets the maximum number of parts of one message.
+   *
+   * @return the maximum number of parts of one message
+   */
+  public int getMaxParts() {
+    return maxParts;
+  }
+
+  /**
+   * Gets the cost of all messages.
+   *
+   * @return the cost
+   */
+  public BigDecimal getCost() {
+    return cost;
+  }
+
+  @Override
+  public String toString() {
+    return "SmsCostSummary{"
+        + "messages=" + messages
+        + ", gsm7Messages=" + gsm7Messages
+        + ", ucs2Messages=" + ucs2Messages
+        + ", parts=" + parts
+        + ", maxParts=" + maxParts
+        + ", cost=" + cost
+        + '}';
+  }
+
+}
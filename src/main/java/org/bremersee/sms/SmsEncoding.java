@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+/**
+ * The encodings of a SMS. A message is encoded with the GSM 7-bit default alphabet if all of its
+ * characters are part of the alphabet or of its extension table, otherwise with UCS-2.
+ *
+ * <p>The maximum length of one SMS of the configuration (see {@link
+ * SmsServiceConfiguration#getMaxLengthOfOneSms()}) is the number of GSM 7-bit characters of one
+ * part of a concatenated message (153 by default). Each part of a concatenated message carries a
+ * user data header of six octets, that a single message does not need; a single message holds
+ * seven septets more (160 GSM 7-bit characters by default). A UCS-2 message carries the same
+ * number of bits, so it holds fewer characters (70 in a single message and 67 in a part by
+ * default).
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public enum SmsEncoding {
+
+  /**
+   * The GSM 7-bit default alphabet (3GPP TS 23.038). Characters of the extension table need two
+   * septets.
+   */
+  GSM_7(7),
+
+  /**
+   * UCS-2 (or rather UTF-16), two octets per character.
+   */
+  UCS_2(16);
+
+  private static final String GSM_BASIC = "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./"
+      + "0123456789:;<=>?¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+
+  private static final String GSM_EXTENSION = "\f^{}\\[~]|€";
+
+  private static final char EURO_SIGN = '€';
+
+  private static final int HEADER_SEPTETS = 7;
+
+  private static final int HEADER_BITS = 48;
+
+  private static final byte[] SEPTETS = new byte[0x400];
+
+  static {
+    for (int i = 0; i < GSM_BASIC.length(); i++) {
+      SEPTETS[GSM_BASIC.charAt(i)] = 1;
+    }
+    for (int i = 0; i < GSM_EXTENSION.length(); i++) {
+      final char c = GSM_EXTENSION.charAt(i);
+      if (c < SEPTETS.length) {
+        SEPTETS[c] = 2;
+      }
+    }
+  }
+
+  private final int bitsPerCharacter;
+
+  SmsEncoding(int bitsPerCharacter) {
+    this.bitsPerCharacter = bitsPerCharacter;
+  }
+
+  /**
+   * Gets the bits per character.
+   *
+   * @return the bits per character
+   */
+  public int getBitsPerCharacter() {
+    return bitsPerCharacter;
+  }
+
+  /**
+   * Detects the encoding of the message.
+   *
+   * @param message the message (can be {@code null})
+   * @return {@link #GSM_7} if all characters are part of the GSM 7-bit alphabet, otherwise {@link
+   *     #UCS_2}
+   */
+  public static SmsEncoding detect(final CharSequence message) {
+    if (message == null) {
+      return GSM_7;
+    }
+    for (int i = 0, n = message.length(); i < n; i++) {
+      if (septets(message.charAt(i)) == 0) {
+        return UCS_2;
+      }
+    }
+    return GSM_7;
+  }
+
+  private static int septets(final char c) {
+    if (c < SEPTETS.length) {
+      return SEPTETS[c];
+    }
+    return c == EURO_SIGN ? 2 : 0;
+  }
+
+  /**
+   * Returns the number of characters of a single (not concatenated) message.
+   *
+   * @param maxLengthOfOneSms the maximum length of one SMS in GSM 7-bit characters
+   * @return the number of characters of a single message in this encoding
+   */
+  public int getMaxLengthOfSingleSms(final int maxLengthOfOneSms) {
+    return Math.max(1, getSingleSmsBits(maxLengthOfOneSms) / bitsPerCharacter);
+  }
+
+  /**
+   * Returns the number of characters of one part of a concatenated message.
+   *
+   * @param maxLengthOfOneSms the maximum length of one SMS in GSM 7-bit characters
+   * @return the number of characters of one part in this encoding
+   */
+  public int getMaxLengthOfOnePart(final int maxLengthOfOneSms) {
+    return Math.max(1,
+        (getSingleSmsBits(maxLengthOfOneSms) - HEADER_BITS) / bitsPerCharacter);
+  }
+
+  private static int getSingleSmsBits(final int maxLengthOfOneSms) {
+    return (maxLengthOfOneSms + HEADER_SEPTETS) * GSM_7.bitsPerCharacter;
+  }
+
+  /**
+   * Returns the length of the encoded message (the number of septets or of UTF-16 code units).
+   *
+   * @param message the message (can be {@code null})
+   * @return the length of the encoded message
+   */
+  public int getLength(final CharSequence message) {
+    if (message == null) {
+      return 0;
+    }
+    if (this == UCS_2) {
+      return message.length();
+    }
+    int length = 0;
+    for (int i = 0, n = message.length(); i < n; i++) {
+      length += Math.max(1, septets(message.charAt(i)));
+    }
+    return length;
+  }
+
+  /**
+   * Returns the number of parts that are needed to send the message in this encoding. A message
+   * that fits into a single SMS has one part, otherwise it is split into parts of a concatenated
+   * message. Neither an escaped character of the GSM extension table nor a surrogate pair is
+   * split between two parts.
+   *
+   * @param message           the message (can be {@code null})
+   * @param maxLengthOfOneSms the maximum length of one SMS in GSM 7-bit characters
+   * @return the number of parts
+   */
+  public int getNumberOfParts(final CharSequence message, final int maxLengthOfOneSms) {
+    if (message == null || maxLengthOfOneSms <= 0) {
+      return 1;
+    }
+    if (getLength(message) <= getMaxLengthOfSingleSms(maxLengthOfOneSms)) {
+      return 1;
+    }
+    final int maxLengthOfOnePart = getMaxLengthOfOnePart(maxLengthOfOneSms);
+    int parts = 1;
+    int used = 0;
+    for (int i = 0, n = message.length(); i < n; i++) {
+      final char c = message.charAt(i);
+      final int width;
+      if (this == GSM_7) {
+        width = Math.max(1, septets(c));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n
+          && Character.isLowSurrogate(message.charAt(i + 1))) {
+        width = 2;
+        i++;
+      } else {
+        width = 1;
+      }
+      if (used + width > maxLengthOfOnePart) {
+        parts++;
+        used = 0;
+      }
+      used += width;
+    }
+    return parts;
+  }
+
+  /**
+   * Detects the encoding of the message and returns the number of parts that are needed to send
+   * it.
+   *
+   * @param message           the message (can be {@code null})
+   * @param maxLengthOfOneSms the maximum length of one SMS in GSM 7-bit characters
+   * @return the number of parts
+   */
+  public static int countParts(final CharSequence message, final int maxLengthOfOneSms) {
+    return detect(message).getNumberOfParts(message, maxLengthOfOneSms);
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+/**
+ * Emits the events of the SMS send lifecycle to the Java Flight Recorder. The events are only
+ * emitted, if the classes of the flight recorder ({@code jdk.jfr}) are available; otherwise all
+ * methods do nothing. The implementation that uses the flight recorder is loaded by name, so
+ * this class can be loaded on every JVM.
+ *
+ * <p>The {@code begin} methods return {@code null}, if the event is disabled, and the {@code
+ * end} methods ignore {@code null}; so a disabled event costs a check of its enabled flag.
+ *
+ * @author Christian Bremer
+ */
+abstract class SmsFlightRecorder {
+
+  private static final SmsFlightRecorder INSTANCE = create();
+
+  /**
+   * The phases of sending a SMS.
+   */
+  enum Phase {
+
+    /**
+     * Admission of the request: deadline check, throttling and reservation of credit.
+     */
+    ADMISSION,
+
+    /**
+     * Building of the gateway URL.
+     */
+    URL_BUILD,
+
+    /**
+     * Opening of the connection (including the TLS handshake of a HTTPS connection).
+     */
+    CONNECT,
+
+    /**
+     * Reading of the response.
+     */
+    READ,
+
+    /**
+     * Parsing of the response.
+     */
+    PARSE
+  }
+
+  private static SmsFlightRecorder create() {
+    try {
+      Class.forName("jdk.jfr.Event", false, SmsFlightRecorder.class.getClassLoader());
+      return (SmsFlightRecorder) Class
+          .forName("org.bremersee.sms.JfrSmsFlightRecorder")
+          .newInstance();
+
+    } catch (Exception | LinkageError e) {
+      return new SmsFlightRecorder() {
+      };
+    }
+  }
+
+  /**
+   * Gets the flight recorder.
+   *
+   * @return the flight recorder
+   */
+  static SmsFlightRecorder get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks whether the events can be recorded.
+   *
+   * @return {@code true} if the classes of the flight recorder are available
+   */
+  boolean isAvailable() {
+    return false;
+  }
+
+  /**
+   * Begins a phase.
+   *
+   * @return the event or {@code null} if phase events are disabled
+   */
+  Object beginPhase() {
+    return null;
+  }
+
+  /**
+   * Ends a phase.
+   *
+   * @param event     the event of {@link #beginPhase()}
+   * @param phase     the phase
+   * @param requestId the request id
+   * @param gateway   the name of the gateway
+   * @param detail    a detail (like the status code of the response or whether TLS is used)
+   */
+  void endPhase(Object event, Phase phase, String requestId, String gateway, String detail) {
+  }
+
+  /**
+   * Begins sending a SMS.
+   *
+   * @return the event or {@code null} if send events are disabled
+   */
+  Object beginSend() {
+    return null;
+  }
+
+  /**
+   * Ends sending a SMS.
+   *
+   * @param event     the event of {@link #beginSend()}
+   * @param requestId the request id
+   * @param gateway   the name of the gateway
+   * @param outcome   the outcome
+   * @param parts     the number of parts
+   */
+  void endSend(Object event, String requestId, String gateway, String outcome, int parts) {
+  }
+
+}
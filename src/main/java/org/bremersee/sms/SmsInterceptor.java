@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+
+/**
+ * Intercepts the sends of an {@link AbstractSmsService}. The interceptors of a service are
+ * compiled into an array when they are set, so a send walks over them by index without
+ * allocating lambdas or iterators.
+ *
+ * <p>The interceptors are called in the order they were added before the SMS is sent and in the
+ * reverse order afterwards. An interceptor may change the request before it is sent, reject it by
+ * throwing a {@link SmsException} or answer it by itself by returning a response (then neither the
+ * following interceptors nor the gateway are called).
+ *
+ * <p>Implementations must be thread safe.
+ *
+ * @author Christian Bremer
+ */
+public interface SmsInterceptor {
+
+  /**
+   * Is called before the SMS is sent. The default implementation does nothing.
+   *
+   * @param smsSendRequest the request (can be changed)
+   * @return {@code null} to continue or the response that is returned instead of sending the SMS
+   * @throws SmsException if the request is rejected
+   */
+  default SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+    return null;
+  }
+
+  /**
+   * Is called after the SMS was sent or after sending has failed, but only if {@link
+   * #beforeSend(SmsSendRequestDto)} of this interceptor has returned. Exceptions that are thrown
+   * here are logged and ignored, because the SMS may already have been sent. The default
+   * implementation does nothing.
+   *
+   * @param smsSendRequest  the request
+   * @param smsSendResponse the response ({@code null} if sending has failed)
+   * @param exception       the exception ({@code null} if there is a response)
+   */
+  default void afterSend(SmsSendRequestDto smsSendRequest, SmsSendResponseDto smsSendResponse,
+      RuntimeException exception) {
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Reads a sequence of objects (for example {@link org.bremersee.sms.model.SmsSendRequestDto},
+ * {@link org.bremersee.sms.model.SmsSendResponseDto} or {@link
+ * org.bremersee.sms.model.GoyyaSmsSendResponseDto}) from newline delimited JSON (NDJSON). The
+ * objects are parsed one by one while iterating, so the memory that is needed does not depend on
+ * the number of objects in the stream.
+ *
+ * <p>Instances are not thread safe.
+ *
+ * @param <T> the type of the objects
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsNdjsonReader<T> implements Iterator<T>, Closeable {
+
+  private final MappingIterator<T> iterator;
+
+  /**
+   * Instantiates a new NDJSON reader with the default object mapper.
+   *
+   * @param inputStream the input stream
+   * @param valueType   the class of the objects
+   * @throws IOException if the stream cannot be read
+   */
+  public SmsNdjsonReader(InputStream inputStream, Class<T> valueType) throws IOException {
+    this(inputStream, valueType, null);
+  }
+
+  /**
+   * Instantiates a new NDJSON reader.
+   *
+   * @param inputStream  the input stream
+   * @param valueType    the class of the objects
+   * @param objectMapper the object mapper (can be {@code null})
+   * @throws IOException if the stream cannot be read
+   */
+  public SmsNdjsonReader(InputStream inputStream, Class<T> valueType, ObjectMapper objectMapper)
+      throws IOException {
+    Validate.notNull(inputStream, "Input stream must not be null.");
+    Validate.notNull(valueType, "Value type must not be null.");
+    this.iterator = (objectMapper != null ? objectMapper : ExtensionUtils.objectMapper())
+        .readerFor(valueType)
+        .readValues(inputStream);
+  }
+
+  /**
+   * Instantiates a new NDJSON reader.
+   *
+   * @param reader       the reader
+   * @param valueType    the class of the objects
+   * @param objectMapper the object mapper (can be {@code null})
+   * @throws IOException if the stream cannot be read
+   */
+  public SmsNdjsonReader(Reader reader, Class<T> valueType, ObjectMapper objectMapper)
+      throws IOException {
+    Validate.notNull(reader, "Reader must not be null.");
+    Validate.notNull(valueType, "Value type must not be null.");
+    this.iterator = (objectMapper != null ? objectMapper : ExtensionUtils.objectMapper())
+        .readerFor(valueType)
+        .readValues(reader);
+  }
+
+  /**
+   * Checks whether there is another object.
+   *
+   * @return {@code true} if there is another object, otherwise {@code false}
+   * @throws UncheckedIOException if the stream cannot be read
+   */
+  @Override
+  public boolean hasNext() {
+    try {
+      return iterator.hasNextValue();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads the next object.
+   *
+   * @return the next object
+   * @throws UncheckedIOException if the stream cannot be read
+   */
+  @Override
+  public T next() {
+    try {
+      if (!iterator.hasNextValue()) {
+        throw new NoSuchElementException();
+      }
+      return iterator.nextValue();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Closes the underlying stream.
+   *
+   * @throws IOException if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    iterator.close();
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Writes a sequence of objects as newline delimited JSON (NDJSON), one object per line. Every
+ * object is written as soon as it is passed, so nothing of the sequence is held in memory.
+ *
+ * <p>Instances are not thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsNdjsonWriter implements Closeable, Flushable {
+
+  private final SequenceWriter writer;
+
+  /**
+   * Instantiates a new NDJSON writer with the default object mapper.
+   *
+   * @param outputStream the output stream
+   * @throws IOException if the stream cannot be written
+   */
+  public SmsNdjsonWriter(OutputStream outputStream) throws IOException {
+    this(outputStream, null);
+  }
+
+  /**
+   * Instantiates a new NDJSON writer.
+   *
+   * @param outputStream the output stream
+   * @param objectMapper the object mapper (can be {@code null})
+   * @throws IOException if the stream cannot be written
+   */
+  public SmsNdjsonWriter(OutputStream outputStream, ObjectMapper objectMapper)
+      throws IOException {
+    Validate.notNull(outputStream, "Output stream must not be null.");
+    this.writer = createWriter(objectMapper).writeValues(outputStream);
+  }
+
+  /**
+   * Instantiates a new NDJSON writer.
+   *
+   * @param writer       the writer
+   * @param objectMapper the object mapper (can be {@code null})
+   * @throws IOException if the stream cannot be written
+   */
+  public SmsNdjsonWriter(Writer writer, ObjectMapper objectMapper) throws IOException {
+    Validate.notNull(writer, "Writer must not be null.");
+    this.writer = createWriter(objectMapper).writeValues(writer);
+  }
+
+  private static ObjectWriter createWriter(final ObjectMapper objectMapper) {
+    return (objectMapper != null ? objectMapper : ExtensionUtils.objectMapper())
+        .writer()
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .withRootValueSeparator("\n");
+  }
+
+  /**
+   * Writes an object as one line.
+   *
+   * @param value the object
+   * @return this writer
+   * @throws IOException if the stream cannot be written
+   */
+  public SmsNdjsonWriter write(final Object value) throws IOException {
+    Validate.notNull(value, "Value must not be null.");
+    writer.write(value);
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  /**
+   * Flushes the written objects into the underlying stream. The underlying stream is not closed.
+   *
+   * @throws IOException if the stream cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+}
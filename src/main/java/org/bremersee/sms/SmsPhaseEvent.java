@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of one phase of sending a SMS (see {@link
+ * SmsFlightRecorder.Phase}).
+ *
+ * @author Christian Bremer
+ */
+@Name(SmsPhaseEvent.NAME)
+@Label("SMS Send Phase")
+@Category({"SMS"})
+@Description("A phase of sending a SMS")
+@StackTrace(false)
+final class SmsPhaseEvent extends Event {
+
+  /**
+   * The name of the event.
+   */
+  static final String NAME = "org.bremersee.sms.SendPhase";
+
+  @Label("Phase")
+  @Description("ADMISSION, URL_BUILD, CONNECT, READ or PARSE")
+  String phase;
+
+  @Label("Request Id")
+  String requestId;
+
+  @Label("Gateway")
+  String gateway;
+
+  @Label("Detail")
+  String detail;
+
+}
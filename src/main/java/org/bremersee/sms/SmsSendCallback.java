@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+
+/**
+ * Receives the outcome of a request that was published into a {@link SmsSendPipeline}.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+public interface SmsSendCallback {
+
+  /**
+   * Is called by the dispatching thread of the pipeline, when the request was handled. It must
+   * return quickly.
+   *
+   * @param smsSendRequest  the request
+   * @param smsSendResponse the response ({@code null} if the request was rejected or sending has
+   *                        failed)
+   * @param exception       the exception ({@code null} if there is a response)
+   */
+  void onComplete(SmsSendRequestDto smsSendRequest, SmsSendResponseDto smsSendResponse,
+      RuntimeException exception);
+
+}
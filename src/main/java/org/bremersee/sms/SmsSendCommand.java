@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+
+/**
+ * A small command line sender, that is also the entry point of the native image (see the
+ * {@code native} profile of the build).
+ *
+ * <pre>
+ * sms-send [-c config.properties] [-s sender] [--dry-run] receiver message
+ * </pre>
+ *
+ * <p>The configuration file contains the keys of {@link GoyyaSmsServiceConfiguration}. With
+ * {@code --dry-run} the SMS is sent by the {@link DummySmsService}. The exit code is 0 if the SMS
+ * was sent, 1 if the gateway didn't accept it and 2 on wrong usage or any other error.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SmsSendCommand {
+
+  /**
+   * The usage.
+   */
+  public static final String USAGE
+      = "Usage: sms-send [-c config.properties] [-s sender] [--dry-run] receiver message";
+
+  private SmsSendCommand() {
+    super();
+  }
+
+  /**
+   * The entry point.
+   *
+   * @param args the arguments
+   */
+  public static void main(String[] args) {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Runs the command.
+   *
+   * @param args the arguments
+   * @param out  the standard output
+   * @param err  the error output
+   * @return the exit code
+   */
+  public static int run(final String[] args, final PrintStream out, final PrintStream err) {
+    String config = null;
+    String sender = null;
+    boolean dryRun = false;
+    final List<String> positional = new ArrayList<>(2);
+    for (int i = 0; i < args.length; i++) {
+      final String arg = args[i];
+      if (("-c".equals(arg) || "-s".equals(arg)) && i + 1 < args.length) {
+        if ("-c".equals(arg)) {
+          config = args[++i];
+        } else {
+          sender = args[++i];
+        }
+      } else if ("--dry-run".equals(arg)) {
+        dryRun = true;
+      } else if (arg.startsWith("-")) {
+        err.println(USAGE);
+        return 2;
+      } else {
+        positional.add(arg);
+      }
+    }
+    if (positional.size() != 2) {
+      err.println(USAGE);
+      return 2;
+    }
+
+    try {
+      ExtensionUtils.registerReader(GoyyaSmsSendResponseDto.class, new GoyyaExtensionReader());
+      final AbstractSmsService smsService = dryRun ? new DummySmsService() : new GoyyaSmsService();
+      if (config != null) {
+        smsService.configure(load(config), null);
+      }
+      final SmsSendResponseDto response = smsService
+          .sendSms(sender, positional.get(0), positional.get(1), null);
+      out.println("Successfully sent: " + response.isSuccessfullySent());
+      if (response.getExtension() != null) {
+        out.println("Response: " + response.getExtension());
+      }
+      return response.isSuccessfullySent() ? 0 : 1;
+
+    } catch (IOException | RuntimeException e) {
+      err.println("Sending sms failed: " + e.getMessage());
+      return 2;
+    }
+  }
+
+  private static Properties load(final String file) throws IOException {
+    final Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(Paths.get(file))) {
+      properties.load(in);
+    }
+    return properties;
+  }
+
+}
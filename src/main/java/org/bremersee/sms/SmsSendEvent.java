@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder event of sending one SMS, from the call of {@link
+ * AbstractSmsService#sendSms(org.bremersee.sms.model.SmsSendRequestDto)} until the response.
+ *
+ * @author Christian Bremer
+ */
+@Name(SmsSendEvent.NAME)
+@Label("SMS Send")
+@Category({"SMS"})
+@Description("Sending of a SMS")
+@StackTrace(false)
+final class SmsSendEvent extends Event {
+
+  /**
+   * The name of the event.
+   */
+  static final String NAME = "org.bremersee.sms.Send";
+
+  @Label("Request Id")
+  String requestId;
+
+  @Label("Gateway")
+  String gateway;
+
+  @Label("Outcome")
+  @Description("SENT, NOT_SENT, REJECTED, TIMEOUT or FAILED")
+  String outcome;
+
+  @Label("Parts")
+  @Description("Number of SMS parts of the message")
+  int parts;
+
+}
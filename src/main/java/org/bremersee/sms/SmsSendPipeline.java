@@ -0,0 +1,676 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-process send pipeline in the style of the LMAX Disruptor. Requests are published into a
+ * preallocated ring of mutable slots and pass five stages, each on its own thread:
+ *
+ * <ol>
+ * <li>validate: captures the configuration snapshot of the sms service, that the request uses
+ * in all stages, resolves sender, receiver and message and checks the deadline,</li>
+ * <li>dedupe: rejects a request whose id was seen recently,</li>
+ * <li>rate limit: waits for a permit of the {@link TokenBucketRateLimiter} (if there is one),</li>
+ * <li>encode: computes the {@link SmsEncoding} and the number of parts,</li>
+ * <li>dispatch: calls {@link AbstractSmsService#doSendSms(SmsSendRequestDto)} and the
+ * callback.</li>
+ * </ol>
+ *
+ * <p>Every stage has its own sequence and only follows the sequence of the stage before (its
+ * barrier); the producers only wait for the last stage, when the ring is full. A stage handles
+ * all slots up to its barrier as one batch and publishes its sequence once per batch. Every field
+ * of a slot is written by one stage only, so there are neither locks nor allocations per request
+ * (except the ones of the sms service and of {@link #submit(SmsSendRequestDto)}).
+ *
+ * <p>The stages replace the admission of {@link AbstractSmsService#sendSms(SmsSendRequestDto)}:
+ * credit ledger, receiver throttle and interceptors of the service are not used.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsSendPipeline implements Closeable {
+
+  /**
+   * The default number of slots.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 14;
+
+  /**
+   * The default number of request ids that are remembered for deduplication.
+   */
+  public static final int DEFAULT_DEDUPE_WINDOW = 1 << 16;
+
+  private static final int SPINS = 100;
+
+  private static final int YIELDS = 10;
+
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+  private static final long SHUTDOWN_MILLIS = 10000L;
+
+  /*
+   * The value of the cursor after the pipeline was closed.
+   */
+  private static final long CLOSED = Long.MAX_VALUE;
+
+  /**
+   * The Log.
+   */
+  protected final Logger log = LoggerFactory.getLogger(getClass());
+
+  private final AbstractSmsService smsService;
+
+  private final TokenBucketRateLimiter rateLimiter;
+
+  private final Slot[] slots;
+
+  private final int mask;
+
+  private final String[] recentIds;
+
+  private final Sequence cursor = new Sequence();
+
+  private final Stage[] stages;
+
+  private final Thread[] threads;
+
+  private volatile long sent;
+
+  private volatile long notSent;
+
+  private volatile long rejected;
+
+  private volatile long failed;
+
+  private volatile long sentParts;
+
+  private volatile boolean accepting = true;
+
+  private volatile boolean running = true;
+
+  private volatile long closedCursor;
+
+  /**
+   * Instantiates and starts a new sms send pipeline with the default capacity and without rate
+   * limit.
+   *
+   * @param smsService the sms service
+   */
+  public SmsSendPipeline(AbstractSmsService smsService) {
+    this(smsService, null, DEFAULT_CAPACITY, DEFAULT_DEDUPE_WINDOW);
+  }
+
+  /**
+   * Instantiates and starts a new sms send pipeline.
+   *
+   * @param smsService   the sms service
+   * @param rateLimiter  the rate limiter (can be {@code null})
+   * @param capacity     the number of slots (it is rounded up to a power of two)
+   * @param dedupeWindow the number of request ids that are remembered (it is rounded up to a
+   *                     power of two); a request id is forgotten earlier, if another id falls
+   *                     into the same bucket
+   */
+  public SmsSendPipeline(AbstractSmsService smsService, TokenBucketRateLimiter rateLimiter,
+      int capacity, int dedupeWindow) {
+
+    Validate.notNull(smsService, "smsService must not be null");
+    Validate.isTrue(capacity > 0 && capacity <= (1 << 30),
+        "capacity must be between 1 and 2^30");
+    Validate.isTrue(dedupeWindow > 0 && dedupeWindow <= (1 << 30),
+        "dedupeWindow must be between 1 and 2^30");
+    this.smsService = smsService;
+    this.rateLimiter = rateLimiter;
+    final int size = powerOfTwo(capacity);
+    this.slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+    }
+    this.mask = size - 1;
+    this.recentIds = new String[powerOfTwo(dedupeWindow)];
+    this.stages = new Stage[]{
+        new ValidateStage(), new DedupeStage(), new RateLimitStage(), new EncodeStage(),
+        new DispatchStage()};
+    this.threads = new Thread[stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      stages[i].barrier = i == 0 ? null : stages[i - 1].sequence;
+      threads[i] = new Thread(stages[i], "sms-pipeline-" + stages[i].name);
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+  }
+
+  private static int powerOfTwo(final int minValue) {
+    int value = 1;
+    while (value < minValue) {
+      value <<= 1;
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of slots.
+   *
+   * @return the number of slots
+   */
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  /**
+   * Gets the number of published requests.
+   *
+   * @return the number of published requests
+   */
+  public long getPublished() {
+    final long current = cursor.get();
+    return (current != CLOSED ? current : closedCursor) + 1L;
+  }
+
+  /**
+   * Gets the number of requests that have left the pipeline.
+   *
+   * @return the number of completed requests
+   */
+  public long getCompleted() {
+    return stages[stages.length - 1].sequence.get() + 1L;
+  }
+
+  /**
+   * Gets the number of sent SMS.
+   *
+   * @return the number of sent SMS
+   */
+  public long getSent() {
+    return sent;
+  }
+
+  /**
+   * Gets the number of parts of the sent SMS.
+   *
+   * @return the number of parts of the sent SMS
+   */
+  public long getSentParts() {
+    return sentParts;
+  }
+
+  /**
+   * Gets the number of SMS that the gateway did not send.
+   *
+   * @return the number of SMS that were not sent
+   */
+  public long getNotSent() {
+    return notSent;
+  }
+
+  /**
+   * Gets the number of requests that were rejected by a stage (invalid, expired or duplicate).
+   *
+   * @return the number of rejected requests
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  /**
+   * Gets the number of requests whose sending has failed with an exception.
+   *
+   * @return the number of failed requests
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * Publishes the request, if there is a free slot.
+   *
+   * @param smsSendRequest the request
+   * @param callback       the callback (can be {@code null})
+   * @return {@code true} if the request was published, {@code false} if the ring is full
+   */
+  public boolean tryPublish(final SmsSendRequestDto smsSendRequest,
+      final SmsSendCallback callback) {
+
+    Validate.notNull(smsSendRequest, "smsSendRequest must not be null");
+    Validate.validState(accepting, "Pipeline is closed.");
+    final Sequence gating = stages[stages.length - 1].sequence;
+    long current;
+    long next;
+    do {
+      current = cursor.get();
+      Validate.validState(current != CLOSED, "Pipeline is closed.");
+      next = current + 1L;
+      if (next - slots.length > gating.get()) {
+        return false;
+      }
+    } while (!cursor.compareAndSet(current, next));
+    final Slot slot = slots[(int) (next & mask)];
+    slot.request = smsSendRequest;
+    slot.callback = callback;
+    slot.published = next;
+    return true;
+  }
+
+  /**
+   * Publishes the request and waits for a free slot, if the ring is full.
+   *
+   * @param smsSendRequest the request
+   * @param callback       the callback (can be {@code null})
+   */
+  public void publish(final SmsSendRequestDto smsSendRequest, final SmsSendCallback callback) {
+    int idle = 0;
+    while (!tryPublish(smsSendRequest, callback)) {
+      idle = idle(idle);
+    }
+  }
+
+  /**
+   * Publishes the request and returns a future of the response. A rejected request completes the
+   * future exceptionally.
+   *
+   * @param smsSendRequest the request
+   * @return the future of the response
+   */
+  public CompletableFuture<SmsSendResponseDto> submit(final SmsSendRequestDto smsSendRequest) {
+    final CompletableFuture<SmsSendResponseDto> future = new CompletableFuture<>();
+    publish(smsSendRequest, (request, response, exception) -> {
+      if (exception != null) {
+        future.completeExceptionally(exception);
+      } else {
+        future.complete(response);
+      }
+    });
+    return future;
+  }
+
+  private static int idle(final int idle) {
+    if (idle < SPINS) {
+      return idle + 1;
+    }
+    if (idle < SPINS + YIELDS) {
+      Thread.yield();
+      return idle + 1;
+    }
+    LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle - SPINS - YIELDS, 20)));
+    return idle + 1;
+  }
+
+  /**
+   * Stops accepting requests, waits until the published requests have passed the pipeline and
+   * stops the threads. Requests that are published while closing and that were not handled by
+   * the stages are rejected.
+   */
+  @Override
+  public void close() {
+    if (cursor.get() == CLOSED) {
+      return;
+    }
+    accepting = false;
+    final long deadline = System.currentTimeMillis() + SHUTDOWN_MILLIS;
+    int idle = 0;
+    while (getCompleted() < getPublished() && System.currentTimeMillis() < deadline) {
+      idle = idle(idle);
+    }
+    running = false;
+    for (Thread thread : threads) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join(SHUTDOWN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    boolean stopped = true;
+    for (Thread thread : threads) {
+      stopped = stopped && !thread.isAlive();
+    }
+    if (stopped) {
+      rejectPending();
+    }
+    final long pending = getPublished() - getCompleted();
+    if (pending > 0L) {
+      log.warn("Sms send pipeline was closed with {} pending requests.", pending);
+    }
+  }
+
+  /*
+   * Seals the cursor, so that no request can be published anymore, and rejects the requests
+   * that a producer has published after the stages were stopped. Must be called after all stage
+   * threads have terminated.
+   */
+  private void rejectPending() {
+    long last;
+    do {
+      last = cursor.get();
+      closedCursor = last;
+    } while (!cursor.compareAndSet(last, CLOSED));
+    final Sequence completed = stages[stages.length - 1].sequence;
+    long rejectedCount = rejected;
+    for (long s = completed.get() + 1L; s <= last; s++) {
+      final Slot slot = slots[(int) (s & mask)];
+      int idle = 0;
+      while (slot.published != s) {
+        idle = idle(idle);
+      }
+      rejectedCount++;
+      if (slot.callback != null) {
+        try {
+          slot.callback.onComplete(slot.request, null,
+              new SmsRejectedException("Pipeline is closed."));
+        } catch (RuntimeException e) {
+          log.warn("Callback of SMS specified by " + slot.request + " failed.", e);
+        }
+      }
+      slot.clear();
+    }
+    rejected = rejectedCount;
+    completed.lazySet(last);
+  }
+
+  /**
+   * A stage of the pipeline.
+   */
+  private abstract class Stage implements Runnable {
+
+    private final String name;
+
+    private final Sequence sequence = new Sequence();
+
+    private Sequence barrier;
+
+    private Stage(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void run() {
+      long next = 0L;
+      int idle = 0;
+      while (running) {
+        final long available = getAvailable(next);
+        if (available < next) {
+          idle = idle(idle);
+          continue;
+        }
+        idle = 0;
+        for (long s = next; s <= available; s++) {
+          try {
+            onEvent(slots[(int) (s & mask)], s == available);
+          } catch (RuntimeException e) {
+            log.error("Stage " + name + " of sms send pipeline failed.", e);
+          }
+        }
+        sequence.lazySet(available);
+        next = available + 1L;
+      }
+    }
+
+    private long getAvailable(final long next) {
+      if (barrier != null) {
+        return barrier.get();
+      }
+      final long claimed = cursor.get();
+      long s = next;
+      while (s <= claimed && slots[(int) (s & mask)].published == s) {
+        s++;
+      }
+      return s - 1L;
+    }
+
+    /**
+     * Handles one slot.
+     *
+     * @param slot       the slot
+     * @param endOfBatch {@code true} if it is the last slot of the batch
+     */
+    abstract void onEvent(Slot slot, boolean endOfBatch);
+  }
+
+  private final class ValidateStage extends Stage {
+
+    private ValidateStage() {
+      super("validate");
+    }
+
+    @Override
+    void onEvent(final Slot slot, final boolean endOfBatch) {
+      final SmsSendRequestDto request = slot.request;
+      final SmsServiceConfiguration config = smsService.getConfiguration();
+      slot.config = config;
+      try {
+        smsService.getSender(request, config);
+        slot.receiver = smsService.getReceiver(request, config);
+        slot.message = smsService.getMessage(request, config);
+      } catch (RuntimeException e) {
+        slot.exception = new SmsRejectedException(
+            "SMS specified by " + request + " is not valid: " + e.getMessage(), e);
+        return;
+      }
+      if (AbstractSmsService.getRemainingMillis(request) <= 0L) {
+        slot.exception = new SmsTimeoutException(
+            "Deadline of SMS specified by " + request + " has passed.");
+      }
+    }
+  }
+
+  private final class DedupeStage extends Stage {
+
+    private DedupeStage() {
+      super("dedupe");
+    }
+
+    @Override
+    void onEvent(final Slot slot, final boolean endOfBatch) {
+      final String requestId = slot.request.getRequestId();
+      if (slot.exception != null || requestId == null) {
+        return;
+      }
+      final int hash = requestId.hashCode();
+      final int index = (hash ^ (hash >>> 16)) & (recentIds.length - 1);
+      if (requestId.equals(recentIds[index])) {
+        slot.exception = new SmsRejectedException(
+            "SMS with request id [" + requestId + "] was already published.");
+      } else {
+        recentIds[index] = requestId;
+      }
+    }
+  }
+
+  private final class RateLimitStage extends Stage {
+
+    private RateLimitStage() {
+      super("rate-limit");
+    }
+
+    @Override
+    void onEvent(final Slot slot, final boolean endOfBatch) {
+      if (rateLimiter == null || slot.exception != null) {
+        return;
+      }
+      while (!rateLimiter.tryAcquire() && running) {
+        LockSupport.parkNanos(Math.max(1000L, Math.min(MAX_PARK_NANOS,
+            rateLimiter.getWaitNanos())));
+      }
+    }
+  }
+
+  private final class EncodeStage extends Stage {
+
+    private EncodeStage() {
+      super("encode");
+    }
+
+    @Override
+    void onEvent(final Slot slot, final boolean endOfBatch) {
+      if (slot.exception != null) {
+        return;
+      }
+      slot.encoding = SmsEncoding.detect(slot.message);
+      slot.parts = slot.encoding.getNumberOfParts(slot.message,
+          slot.config.getMaxLengthOfOneSms());
+    }
+  }
+
+  private final class DispatchStage extends Stage {
+
+    private long sentCount;
+
+    private long notSentCount;
+
+    private long rejectedCount;
+
+    private long failedCount;
+
+    private long partsCount;
+
+    private DispatchStage() {
+      super("dispatch");
+    }
+
+    @Override
+    void onEvent(final Slot slot, final boolean endOfBatch) {
+      if (slot.exception == null) {
+        try {
+          slot.response = smsService.doSendSms(slot.request, slot.config);
+          if (slot.response != null && slot.response.isSuccessfullySent()) {
+            sentCount++;
+            partsCount += slot.parts;
+          } else {
+            notSentCount++;
+          }
+        } catch (RuntimeException e) {
+          slot.exception = e;
+          failedCount++;
+        }
+      } else {
+        rejectedCount++;
+      }
+      final SmsSendCallback callback = slot.callback;
+      if (callback != null) {
+        try {
+          callback.onComplete(slot.request, slot.response, slot.exception);
+        } catch (RuntimeException e) {
+          log.warn("Callback of SMS specified by " + slot.request + " failed.", e);
+        }
+      }
+      slot.clear();
+      if (endOfBatch) {
+        sent = sentCount;
+        notSent = notSentCount;
+        rejected = rejectedCount;
+        failed = failedCount;
+        sentParts = partsCount;
+      }
+    }
+  }
+
+  /**
+   * A slot of the ring. The request and the callback are written by the producer, the other
+   * fields by the stages.
+   */
+  private static final class Slot {
+
+    private volatile long published = -1L;
+
+    private SmsSendRequestDto request;
+
+    private SmsSendCallback callback;
+
+    private SmsServiceConfiguration config;
+
+    private String receiver;
+
+    private String message;
+
+    private SmsEncoding encoding;
+
+    private int parts;
+
+    private SmsSendResponseDto response;
+
+    private RuntimeException exception;
+
+    private void clear() {
+      request = null;
+      callback = null;
+      config = null;
+      receiver = null;
+      message = null;
+      encoding = null;
+      parts = 0;
+      response = null;
+      exception = null;
+    }
+  }
+
+  /**
+   * A sequence that is padded to a cache line on both sides, so that the sequences of different
+   * stages do not share a cache line.
+   */
+  private static class LeftPadding {
+
+    protected long p1;
+    protected long p2;
+    protected long p3;
+    protected long p4;
+    protected long p5;
+    protected long p6;
+    protected long p7;
+  }
+
+  private static class SequenceValue extends LeftPadding {
+
+    protected volatile long value = -1L;
+  }
+
+  private static final class Sequence extends SequenceValue {
+
+    private static final AtomicLongFieldUpdater<SequenceValue> UPDATER =
+        AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+    protected long p9;
+    protected long p10;
+    protected long p11;
+    protected long p12;
+    protected long p13;
+    protected long p14;
+    protected long p15;
+
+    private long get() {
+      return value;
+    }
+
+    private void lazySet(final long newValue) {
+      UPDATER.lazySet(this, newValue);
+    }
+
+    private boolean compareAndSet(final long expected, final long newValue) {
+      return UPDATER.compareAndSet(this, expected, newValue);
+    }
+  }
+
+}
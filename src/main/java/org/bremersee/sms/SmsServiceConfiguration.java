@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An immutable snapshot of the configuration of an {@link AbstractSmsService}. A snapshot is
+ * changed by the {@code with...} methods, which return a changed copy; values that are derived
+ * from the configuration (like the {@link Charset}) are calculated once when the copy is made.
+ *
+ * <p>A service holds its snapshot in an atomic reference, so a running send always sees one
+ * consistent configuration, even if the configuration is changed or reloaded at the same time.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsServiceConfiguration implements Cloneable {
+
+  /**
+   * The property key of the default sender.
+   */
+  public static final String DEFAULT_SENDER_KEY = "defaultSender";
+
+  /**
+   * The property key of the default receiver.
+   */
+  public static final String DEFAULT_RECEIVER_KEY = "defaultReceiver";
+
+  /**
+   * The property key of the default message.
+   */
+  public static final String DEFAULT_MESSAGE_KEY = "defaultMessage";
+
+  /**
+   * The property key of the charset.
+   */
+  public static final String CHARSET_KEY = "charset";
+
+  /**
+   * The property key of the maximum length of one SMS.
+   */
+  public static final String MAX_LENGTH_OF_ONE_SMS_KEY = "maxLengthOfOneSms";
+
+  /**
+   * The property key of the time a send waits for credit.
+   */
+  public static final String CREDIT_WAIT_MILLIS_KEY = "creditWaitMillis";
+
+  private String defaultSender;
+
+  private String defaultReceiver;
+
+  private String defaultMessage;
+
+  private String charsetName = AbstractSmsService.DEFAULT_CHARSET.name();
+
+  private Charset charset = AbstractSmsService.DEFAULT_CHARSET;
+
+  private int maxLengthOfOneSms = AbstractSmsService.DEFAULT_MAX_LENGTH_OF_ONE_SMS;
+
+  private long creditWaitMillis;
+
+  /**
+   * Instantiates a new configuration with default values.
+   */
+  public SmsServiceConfiguration() {
+    super();
+  }
+
+  /**
+   * Creates a copy of this configuration. Sub classes must copy mutable values here.
+   *
+   * @return the copy
+   */
+  protected SmsServiceConfiguration copy() {
+    try {
+      return (SmsServiceConfiguration) clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Calculates the values that are derived from the configuration. It is called on every copy
+   * that is returned by a {@code with...} method, before the copy is published.
+   *
+   * @throws IllegalArgumentException if the configuration is not valid
+   */
+  protected void derive() {
+    charset = StringUtils.isNotBlank(charsetName)
+        ? Charset.forName(charsetName)
+        : AbstractSmsService.DEFAULT_CHARSET;
+  }
+
+  /**
+   * Applies the changes to a copy of this configuration.
+   *
+   * @param <T>     the type of the configuration
+   * @param changes the changes
+   * @return the changed copy
+   */
+  @SuppressWarnings("unchecked")
+  protected final <T extends SmsServiceConfiguration> T change(final Consumer<T> changes) {
+    final T copy = (T) copy();
+    changes.accept(copy);
+    copy.derive();
+    return copy;
+  }
+
+  /**
+   * Returns a copy with the values of the properties. Properties that are not present do not
+   * change the configuration.
+   *
+   * @param properties the properties
+   * @param prefix     the prefix of the property keys (can be {@code null})
+   * @return the changed copy
+   * @throws IllegalArgumentException if a value is not valid
+   */
+  public SmsServiceConfiguration withProperties(final Properties properties, final String prefix) {
+    return change(c -> c.applyProperties(properties, prefix != null ? prefix : ""));
+  }
+
+  /**
+   * Sets the values of the properties into this configuration, which must be a copy that is not
+   * published yet.
+   *
+   * @param properties the properties
+   * @param prefix     the prefix of the property keys
+   */
+  protected void applyProperties(final Properties properties, final String prefix) {
+    defaultSender = properties.getProperty(prefix + DEFAULT_SENDER_KEY, defaultSender);
+    defaultReceiver = properties.getProperty(prefix + DEFAULT_RECEIVER_KEY, defaultReceiver);
+    defaultMessage = properties.getProperty(prefix + DEFAULT_MESSAGE_KEY, defaultMessage);
+    charsetName = properties.getProperty(prefix + CHARSET_KEY, charsetName);
+    maxLengthOfOneSms = getInt(properties, prefix + MAX_LENGTH_OF_ONE_SMS_KEY, maxLengthOfOneSms);
+    creditWaitMillis = getLong(properties, prefix + CREDIT_WAIT_MILLIS_KEY, creditWaitMillis);
+  }
+
+  /**
+   * Gets an int property.
+   *
+   * @param properties   the properties
+   * @param key          the key
+   * @param defaultValue the default value
+   * @return the value
+   * @throws IllegalArgumentException if the value is not a number
+   */
+  protected static int getInt(final Properties properties, final String key,
+      final int defaultValue) {
+    final String value = StringUtils.trimToNull(properties.getProperty(key));
+    try {
+      return value != null ? Integer.parseInt(value) : defaultValue;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Value of [" + key + "] is not a number: " + value, e);
+    }
+  }
+
+  /**
+   * Gets a long property.
+   *
+   * @param properties   the properties
+   * @param key          the key
+   * @param defaultValue the default value
+   * @return the value
+   * @throws IllegalArgumentException if the value is not a number
+   */
+  protected static long getLong(final Properties properties, final String key,
+      final long defaultValue) {
+    final String value = StringUtils.trimToNull(properties.getProperty(key));
+    try {
+      return value != null ? Long.parseLong(value) : defaultValue;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Value of [" + key + "] is not a number: " + value, e);
+    }
+  }
+
+  /**
+   * Gets the default sender.
+   *
+   * @return the default sender
+   */
+  public String getDefaultSender() {
+    return defaultSender;
+  }
+
+  /**
+   * Returns a copy with the default sender.
+   *
+   * @param defaultSender the default sender
+   * @return the changed copy
+   */
+  public SmsServiceConfiguration withDefaultSender(final String defaultSender) {
+    return change(c -> c.defaultSender = defaultSender);
+  }
+
+  /**
+   * Gets the default receiver.
+   *
+   * @return the default receiver
+   */
+  public String getDefaultReceiver() {
+    return defaultReceiver;
+  }
+
+  /**
+   * Returns a copy with the default receiver.
+   *
+   * @param defaultReceiver the default receiver
+   * @return the changed copy
+   */
+  public SmsServiceConfiguration withDefaultReceiver(final String defaultReceiver) {
+    return change(c -> c.defaultReceiver = defaultReceiver);
+  }
+
+  /**
+   * Gets the default message.
+   *
+   * @return the default message
+   */
+  public String getDefaultMessage() {
+    return defaultMessage;
+  }
+
+  /**
+   * Returns a copy with the default message.
+   *
+   * @param defaultMessage the default message
+   * @return the changed copy
+   */
+  public SmsServiceConfiguration withDefaultMessage(final String defaultMessage) {
+    return change(c -> c.defaultMessage = defaultMessage);
+  }
+
+  /**
+   * Gets the name of the charset.
+   *
+   * @return the name of the charset
+   */
+  public String getCharsetName() {
+    return charsetName;
+  }
+
+  /**
+   * Gets the charset.
+   *
+   * @return the charset
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Returns a copy with the charset.
+   *
+   * @param charsetName the name of the charset
+   * @return the changed copy
+   * @throws IllegalArgumentException if the charset is not supported
+   */
+  public SmsServiceConfiguration withCharset(final String charsetName) {
+    return change(c -> c.charsetName = charsetName);
+  }
+
+  /**
+   * Gets the maximum length of one SMS.
+   *
+   * @return the maximum length of one SMS
+   */
+  public int getMaxLengthOfOneSms() {
+    return maxLengthOfOneSms;
+  }
+
+  /**
+   * Returns a copy with the maximum length of one SMS.
+   *
+   * @param maxLengthOfOneSms the maximum length of one SMS
+   * @return the changed copy
+   */
+  public SmsServiceConfiguration withMaxLengthOfOneSms(final int maxLengthOfOneSms) {
+    return change(c -> c.maxLengthOfOneSms = maxLengthOfOneSms);
+  }
+
+  /**
+   * Gets the time in milliseconds a send waits for credit.
+   *
+   * @return the time in milliseconds a send waits for credit
+   */
+  public long getCreditWaitMillis() {
+    return creditWaitMillis;
+  }
+
+  /**
+   * Returns a copy with the time in milliseconds a send waits for credit.
+   *
+   * @param creditWaitMillis the time in milliseconds a send waits for credit
+   * @return the changed copy
+   */
+  public SmsServiceConfiguration withCreditWaitMillis(final long creditWaitMillis) {
+    return change(c -> c.creditWaitMillis = creditWaitMillis);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " {"
+        + "defaultSender='" + defaultSender + '\''
+        + ", defaultReceiver='" + defaultReceiver + '\''
+        + ", defaultMessage='" + defaultMessage + '\''
+        + ", charset='" + charsetName + '\''
+        + ", maxLengthOfOneSms=" + maxLengthOfOneSms
+        + ", creditWaitMillis=" + creditWaitMillis
+        + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SmsServiceConfiguration that = (SmsServiceConfiguration) o;
+    return maxLengthOfOneSms == that.maxLengthOfOneSms &&
+        creditWaitMillis == that.creditWaitMillis &&
+        Objects.equals(defaultSender, that.defaultSender) &&
+        Objects.equals(defaultReceiver, that.defaultReceiver) &&
+        Objects.equals(defaultMessage, that.defaultMessage) &&
+        Objects.equals(charsetName, that.charsetName);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(defaultSender, defaultReceiver, defaultMessage, charsetName,
+        maxLengthOfOneSms, creditWaitMillis);
+  }
+
+}
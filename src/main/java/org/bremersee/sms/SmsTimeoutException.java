@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+/**
+ * Exception that is thrown if a SMS could not be sent within the timeouts of the service or
+ * until the deadline of the request. The SMS may have been sent nevertheless, if the timeout
+ * occurred while waiting for the response of the gateway (see {@link #isRequestSent()}).
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SmsTimeoutException extends SmsException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean requestSent;
+
+    /**
+     * Default constructor.
+     */
+    public SmsTimeoutException() {
+        super();
+        this.requestSent = false;
+    }
+
+    /**
+     * Constructs the exception with the specified message.
+     *
+     * @param message the exception message
+     */
+    public SmsTimeoutException(String message) {
+        super(message);
+        this.requestSent = false;
+    }
+
+    /**
+     * Constructs the exception with the specified cause.
+     *
+     * @param cause the cause
+     */
+    public SmsTimeoutException(Throwable cause) {
+        super(cause);
+        this.requestSent = false;
+    }
+
+    /**
+     * Constructs the exception with the specified message and cause.
+     *
+     * @param message the exception message
+     * @param cause   the cause
+     */
+    public SmsTimeoutException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    /**
+     * Constructs the exception with the specified message and cause.
+     *
+     * @param message     the exception message
+     * @param cause       the cause
+     * @param requestSent {@code true} if the request was sent to the gateway before the timeout
+     *                    occurred
+     */
+    public SmsTimeoutException(String message, Throwable cause, boolean requestSent) {
+        super(message, cause);
+        this.requestSent = requestSent;
+    }
+
+    /**
+     * Determines whether the request was sent to the gateway before the timeout occurred. In this
+     * case the gateway may have sent the SMS.
+     *
+     * @return {@code true} if the request was sent, otherwise {@code false}
+     */
+    public boolean isRequestSent() {
+        return requestSent;
+    }
+
+}
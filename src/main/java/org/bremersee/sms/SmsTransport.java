@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Sends a request to a SMS gateway and returns the answer. The {@link GoyyaSmsService} uses
+ * HTTP by default; other transports can record the traffic ({@link RecordingSmsTransport}) or
+ * serve recorded answers without network access ({@link ReplaySmsTransport}).
+ *
+ * <p>Implementations must be thread safe.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+public interface SmsTransport {
+
+  /**
+   * Sends the request.
+   *
+   * @param url                  the URL with all request parameters
+   * @param connectTimeoutMillis the connect timeout in milliseconds (greater than 0)
+   * @param readTimeoutMillis    the read timeout in milliseconds (greater than 0)
+   * @return the response
+   * @throws IOException if sending fails ({@link SocketTimeoutException} if a timeout elapses,
+   *                     {@link ResponseTimeoutException} if it elapses after the request was
+   *                     sent)
+   */
+  Response send(String url, int connectTimeoutMillis, int readTimeoutMillis) throws IOException;
+
+  /**
+   * Thrown if the request was sent, but the response didn't arrive in time. The gateway may have
+   * sent the SMS nevertheless.
+   */
+  class ResponseTimeoutException extends SocketTimeoutException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new response timeout exception.
+     *
+     * @param message the message
+     */
+    public ResponseTimeoutException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * The response of the gateway with the timings of the exchange.
+   */
+  final class Response {
+
+    private final int statusCode;
+
+    private final String body;
+
+    private final long connectNanos;
+
+    private final long totalNanos;
+
+    /**
+     * Instantiates a new response.
+     *
+     * @param statusCode   the status code
+     * @param body         the body
+     * @param connectNanos the time to open the connection in nanoseconds
+     * @param totalNanos   the time of the whole exchange in nanoseconds
+     */
+    public Response(int statusCode, String body, long connectNanos, long totalNanos) {
+      this.statusCode = statusCode;
+      this.body = body;
+      this.connectNanos = connectNanos;
+      this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Gets the status code.
+     *
+     * @return the status code
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    /**
+     * Gets the body.
+     *
+     * @return the body
+     */
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * Gets the time to open the connection.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getConnectNanos() {
+      return connectNanos;
+    }
+
+    /**
+     * Gets the time of the whole exchange.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "Response {"
+          + "statusCode=" + statusCode
+          + ", body='" + body + '\''
+          + ", connectNanos=" + connectNanos
+          + ", totalNanos=" + totalNanos
+          + '}';
+    }
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.ObjectFactory;
+
+/**
+ * Reads a sequence of objects of the model package from a list element (as it is written by
+ * {@link SmsXmlListWriter}). The reader walks through the document with StAX and unmarshals only
+ * the current child element of the list, so the memory that is needed does not depend on the
+ * number of elements.
+ *
+ * <p>Instances are not thread safe.
+ *
+ * @param <T> the type of the objects (use {@link Object} for lists with different types)
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsXmlListReader<T> implements Iterator<T>, Closeable {
+
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+  private final XMLStreamReader reader;
+
+  private final Class<T> valueType;
+
+  private final Unmarshaller unmarshaller;
+
+  private T nextValue;
+
+  private boolean done;
+
+  /**
+   * Instantiates a new xml list reader.
+   *
+   * @param inputStream the input stream
+   * @param valueType   the class of the objects
+   * @throws IOException if the list element cannot be read
+   */
+  public SmsXmlListReader(InputStream inputStream, Class<T> valueType) throws IOException {
+    Validate.notNull(inputStream, "Input stream must not be null.");
+    Validate.notNull(valueType, "Value type must not be null.");
+    this.valueType = valueType;
+    try {
+      this.reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    this.unmarshaller = createUnmarshaller();
+    readStartList();
+  }
+
+  /**
+   * Instantiates a new xml list reader.
+   *
+   * @param reader    the reader
+   * @param valueType the class of the objects
+   * @throws IOException if the list element cannot be read
+   */
+  public SmsXmlListReader(Reader reader, Class<T> valueType) throws IOException {
+    Validate.notNull(reader, "Reader must not be null.");
+    Validate.notNull(valueType, "Value type must not be null.");
+    this.valueType = valueType;
+    try {
+      this.reader = INPUT_FACTORY.createXMLStreamReader(reader);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    this.unmarshaller = createUnmarshaller();
+    readStartList();
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return factory;
+  }
+
+  private static Unmarshaller createUnmarshaller() throws IOException {
+    try {
+      return ExtensionUtils.getJaxbContext(ObjectFactory.class).createUnmarshaller();
+    } catch (JAXBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void readStartList() throws IOException {
+    try {
+      while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+        // skip prolog
+      }
+      if (!reader.isStartElement()) {
+        throw new IOException("The document does not contain a list element.");
+      }
+      reader.next();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Checks whether the list has another element.
+   *
+   * @return {@code true} if there is another element, otherwise {@code false}
+   * @throws IllegalStateException if the document cannot be read
+   */
+  @Override
+  public boolean hasNext() {
+    if (nextValue != null) {
+      return true;
+    }
+    if (done) {
+      return false;
+    }
+    try {
+      while (true) {
+        final int event = reader.getEventType();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          nextValue = unmarshal();
+          return true;
+        }
+        if (event == XMLStreamConstants.END_ELEMENT
+            || event == XMLStreamConstants.END_DOCUMENT || !reader.hasNext()) {
+          done = true;
+          return false;
+        }
+        reader.next();
+      }
+    } catch (XMLStreamException | JAXBException e) {
+      done = true;
+      throw new IllegalStateException("Reading the next list element failed.", e);
+    }
+  }
+
+  private T unmarshal() throws JAXBException {
+    final String name = reader.getLocalName();
+    Object value = unmarshaller.unmarshal(reader);
+    if (value instanceof JAXBElement) {
+      value = ((JAXBElement<?>) value).getValue();
+    }
+    if (!valueType.isInstance(value)) {
+      throw new JAXBException("Element [" + name + "] is not of type " + valueType.getName());
+    }
+    return valueType.cast(value);
+  }
+
+  /**
+   * Reads the next element of the list.
+   *
+   * @return the next element
+   * @throws IllegalStateException if the document cannot be read
+   */
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final T value = nextValue;
+    nextValue = null;
+    return value;
+  }
+
+  /**
+   * Closes the StAX reader. The underlying stream is not closed.
+   *
+   * @throws IOException if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    done = true;
+    nextValue = null;
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+}
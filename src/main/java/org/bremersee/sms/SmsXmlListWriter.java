@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.commons.lang3.Validate;
+import org.bremersee.sms.model.ObjectFactory;
+
+/**
+ * Writes a sequence of objects of the model package into a list element ({@code smsList}) of the
+ * xml schema {@code bremersee-sms-v1.xsd}. Every object is marshalled as XML fragment directly
+ * into a StAX writer, so nothing of the sequence is held in memory.
+ *
+ * <p>Instances are not thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class SmsXmlListWriter implements Closeable, Flushable {
+
+  /**
+   * The namespace of the xml schema.
+   */
+  public static final String NAMESPACE = "http://bremersee.org/xmlschemas/sms/v1";
+
+  /**
+   * The name of the list element.
+   */
+  public static final String LIST_ELEMENT = "smsList";
+
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private final XMLStreamWriter writer;
+
+  private final Marshaller marshaller;
+
+  private boolean closed;
+
+  /**
+   * Instantiates a new xml list writer that writes UTF-8.
+   *
+   * @param outputStream the output stream
+   * @throws IOException if the list element cannot be written
+   */
+  public SmsXmlListWriter(OutputStream outputStream) throws IOException {
+    Validate.notNull(outputStream, "Output stream must not be null.");
+    try {
+      this.writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+      this.writer.writeStartDocument("UTF-8", "1.0");
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    this.marshaller = createMarshaller();
+    writeStartList();
+  }
+
+  /**
+   * Instantiates a new xml list writer.
+   *
+   * @param writer the writer
+   * @throws IOException if the list element cannot be written
+   */
+  public SmsXmlListWriter(Writer writer) throws IOException {
+    Validate.notNull(writer, "Writer must not be null.");
+    try {
+      this.writer = OUTPUT_FACTORY.createXMLStreamWriter(writer);
+      this.writer.writeStartDocument();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    this.marshaller = createMarshaller();
+    writeStartList();
+  }
+
+  private static Marshaller createMarshaller() throws IOException {
+    try {
+      final Marshaller marshaller = ExtensionUtils.getJaxbContext(ObjectFactory.class)
+          .createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+      return marshaller;
+    } catch (JAXBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void writeStartList() throws IOException {
+    try {
+      writer.setDefaultNamespace(NAMESPACE);
+      writer.writeStartElement(NAMESPACE, LIST_ELEMENT);
+      writer.writeDefaultNamespace(NAMESPACE);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Writes an object of the model package into the list.
+   *
+   * @param value the object
+   * @return this writer
+   * @throws IOException if the object cannot be written
+   */
+  public SmsXmlListWriter write(final Object value) throws IOException {
+    Validate.notNull(value, "Value must not be null.");
+    Validate.validState(!closed, "Writer is closed.");
+    try {
+      marshaller.marshal(value, writer);
+    } catch (JAXBException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    try {
+      writer.flush();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Closes the list element and flushes the document into the underlying stream. The underlying
+   * stream is not closed.
+   *
+   * @throws IOException if the document cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+      writer.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+  }
+
+}
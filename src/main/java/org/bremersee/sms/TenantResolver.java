@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import org.bremersee.sms.model.SmsSendRequestDto;
+
+/**
+ * Resolves the tenant of a sms request.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+public interface TenantResolver {
+
+  /**
+   * Resolves the tenant of the request.
+   *
+   * @param smsSendRequest the request
+   * @return the id of the tenant or {@code null} if the request does not specify a tenant
+   */
+  String resolveTenant(SmsSendRequestDto smsSendRequest);
+
+}
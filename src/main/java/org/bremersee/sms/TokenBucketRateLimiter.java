@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A lock-free token bucket rate limiter. It is implemented as generic cell rate algorithm: the
+ * only state is the theoretical time when the bucket is full again, which is updated with a
+ * compare-and-set.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class TokenBucketRateLimiter {
+
+  private final long intervalNanos;
+
+  private final long toleranceNanos;
+
+  private final AtomicLong fullAt;
+
+  /**
+   * Instantiates a new token bucket rate limiter with a burst of one second.
+   *
+   * @param permitsPerSecond the permits per second
+   */
+  public TokenBucketRateLimiter(double permitsPerSecond) {
+    this(permitsPerSecond, Math.max(1, (int) Math.ceil(permitsPerSecond)));
+  }
+
+  /**
+   * Instantiates a new token bucket rate limiter.
+   *
+   * @param permitsPerSecond the permits per second
+   * @param burst            the maximum number of permits that can be acquired at once after a
+   *                         pause (the size of the bucket)
+   */
+  public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+    Validate.isTrue(permitsPerSecond > 0., "Permits per second must be greater than 0.");
+    Validate.isTrue(burst > 0, "Burst must be greater than 0.");
+    this.intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1L) / permitsPerSecond));
+    this.toleranceNanos = intervalNanos * (burst - 1);
+    this.fullAt = new AtomicLong(System.nanoTime() - toleranceNanos);
+  }
+
+  /**
+   * Gets the permits per second.
+   *
+   * @return the permits per second
+   */
+  public double getPermitsPerSecond() {
+    return (double) TimeUnit.SECONDS.toNanos(1L) / intervalNanos;
+  }
+
+  /**
+   * Gets the size of the bucket.
+   *
+   * @return the burst
+   */
+  public int getBurst() {
+    return (int) (toleranceNanos / intervalNanos) + 1;
+  }
+
+  /**
+   * Acquires a permit if one is available.
+   *
+   * @return {@code true} if the permit was acquired, otherwise {@code false}
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      final long now = System.nanoTime();
+      final long current = fullAt.get();
+      final long arrival = current - now > 0L ? current : now;
+      if (arrival - now > toleranceNanos) {
+        return false;
+      }
+      if (fullAt.compareAndSet(current, arrival + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns the nanoseconds until the next permit is available.
+   *
+   * @return the nanoseconds until the next permit is available ({@code 0} if one is available)
+   */
+  public long getWaitNanos() {
+    final long wait = fullAt.get() - System.nanoTime() - toleranceNanos;
+    return wait > 0L ? wait : 0L;
+  }
+
+  @Override
+  public String toString() {
+    return "TokenBucketRateLimiter {"
+        + "permitsPerSecond=" + getPermitsPerSecond()
+        + ", burst=" + getBurst()
+        + '}';
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import org.w3c.dom.Node;
+
+/**
+ * A pool of unmarshallers of one {@link JAXBContext}. Unmarshallers are not thread safe, so each
+ * unmarshalling borrows one from the pool and returns it afterwards.
+ *
+ * @author Christian Bremer
+ */
+final class UnmarshallerPool {
+
+  private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  private final JAXBContext jaxbContext;
+
+  private final Queue<Unmarshaller> idle = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /**
+   * Instantiates a new unmarshaller pool.
+   *
+   * @param jaxbContext the jaxb context
+   */
+  UnmarshallerPool(JAXBContext jaxbContext) {
+    this.jaxbContext = jaxbContext;
+  }
+
+  /**
+   * Gets the jaxb context.
+   *
+   * @return the jaxb context
+   */
+  JAXBContext getJaxbContext() {
+    return jaxbContext;
+  }
+
+  /**
+   * Unmarshals the XML node.
+   *
+   * @param node the XML node
+   * @return the unmarshalled object (a {@link JAXBElement} is unwrapped)
+   * @throws JAXBException if unmarshalling fails
+   */
+  Object unmarshal(final Node node) throws JAXBException {
+    Unmarshaller unmarshaller = idle.poll();
+    if (unmarshaller != null) {
+      idleCount.decrementAndGet();
+    } else {
+      unmarshaller = jaxbContext.createUnmarshaller();
+    }
+    final Object result = unmarshaller.unmarshal(node);
+    if (idleCount.incrementAndGet() <= MAX_IDLE) {
+      idle.offer(unmarshaller);
+    } else {
+      idleCount.decrementAndGet();
+    }
+    return result instanceof JAXBElement ? ((JAXBElement<?>) result).getValue() : result;
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+
+/**
+ * Access to the memory operations of {@code sun.misc.Unsafe}, that are needed by the {@link
+ * MappedSmsRingBuffer} to work on the memory of a mapped file (compare and swap, ordered and
+ * volatile reads and writes). The class is looked up at runtime and its methods are called by
+ * constant method handles, which are inlined by the JIT compiler, so that the internal API is not
+ * referenced at compile time. All addresses are absolute.
+ *
+ * @author Christian Bremer
+ */
+final class UnsafeAccess {
+
+  private static final MethodHandle GET_INT;
+
+  private static final MethodHandle GET_INT_VOLATILE;
+
+  private static final MethodHandle GET_LONG;
+
+  private static final MethodHandle GET_LONG_VOLATILE;
+
+  private static final MethodHandle PUT_INT;
+
+  private static final MethodHandle PUT_ORDERED_INT;
+
+  private static final MethodHandle PUT_ORDERED_LONG;
+
+  private static final MethodHandle COMPARE_AND_SWAP_LONG;
+
+  private static final MethodHandle SET_MEMORY;
+
+  private static final long ADDRESS_OFFSET;
+
+  static {
+    try {
+      final Class<?> type = Class.forName("sun.misc.Unsafe");
+      final Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      final Object unsafe = field.get(null);
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      GET_INT = lookup.findVirtual(type, "getInt",
+          MethodType.methodType(int.class, long.class)).bindTo(unsafe);
+      GET_INT_VOLATILE = lookup.findVirtual(type, "getIntVolatile",
+          MethodType.methodType(int.class, Object.class, long.class)).bindTo(unsafe);
+      GET_LONG = lookup.findVirtual(type, "getLong",
+          MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+      GET_LONG_VOLATILE = lookup.findVirtual(type, "getLongVolatile",
+          MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+      PUT_INT = lookup.findVirtual(type, "putInt",
+          MethodType.methodType(void.class, long.class, int.class)).bindTo(unsafe);
+      PUT_ORDERED_INT = lookup.findVirtual(type, "putOrderedInt",
+          MethodType.methodType(void.class, Object.class, long.class, int.class)).bindTo(unsafe);
+      PUT_ORDERED_LONG = lookup.findVirtual(type, "putOrderedLong",
+          MethodType.methodType(void.class, Object.class, long.class, long.class))
+          .bindTo(unsafe);
+      COMPARE_AND_SWAP_LONG = lookup.findVirtual(type, "compareAndSwapLong",
+          MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class))
+          .bindTo(unsafe);
+      SET_MEMORY = lookup.findVirtual(type, "setMemory",
+          MethodType.methodType(void.class, long.class, long.class, byte.class)).bindTo(unsafe);
+      final MethodHandle objectFieldOffset = lookup.findVirtual(type, "objectFieldOffset",
+          MethodType.methodType(long.class, Field.class)).bindTo(unsafe);
+      ADDRESS_OFFSET = (long) objectFieldOffset.invokeExact(
+          Buffer.class.getDeclaredField("address"));
+    } catch (Throwable e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private UnsafeAccess() {
+  }
+
+  /**
+   * Returns the address of the memory of a direct buffer.
+   *
+   * @param buffer the direct buffer
+   * @return the address
+   */
+  static long getAddress(final Buffer buffer) {
+    try {
+      return (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static int getInt(final long address) {
+    try {
+      return (int) GET_INT.invokeExact(address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static int getIntVolatile(final long address) {
+    try {
+      return (int) GET_INT_VOLATILE.invokeExact((Object) null, address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static long getLongVolatile(final long address) {
+    try {
+      return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putInt(final long address, final int value) {
+    try {
+      PUT_INT.invokeExact(address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putOrderedInt(final long address, final int value) {
+    try {
+      PUT_ORDERED_INT.invokeExact((Object) null, address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void putOrderedLong(final long address, final long value) {
+    try {
+      PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static boolean compareAndSwapLong(final long address, final long expected, final long value) {
+    try {
+      return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expected, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  static void setMemory(final long address, final long bytes, final byte value) {
+    try {
+      SET_MEMORY.invokeExact(address, bytes, value);
+    } catch (Throwable e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static RuntimeException rethrow(final Throwable e) {
+    if (e instanceof RuntimeException) {
+      return (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    return new IllegalStateException(e);
+  }
+
+}
@@ -26,7 +26,9 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.util.Objects;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -47,6 +49,8 @@ import org.bremersee.sms.GoyyaSmsService;
     "response",
     "ID",
     "count",
+    "limit",
+    "credit",
     "responseParsingException"
 })
 
@@ -62,6 +66,8 @@ import org.bremersee.sms.GoyyaSmsService;
     "response",
     "ID",
     "count",
+    "limit",
+    "credit",
     "responseParsingException"
 })
 @SuppressWarnings({"WeakerAccess", "unused"})
@@ -71,12 +77,20 @@ public class GoyyaSmsSendResponseDto implements Serializable {
 
   private static final String SUCCESS_RESPONSE = "OK";
 
+  private static final Pattern LEADING_NUMBER = Pattern.compile("^-?\\d+([.,]\\d+)?");
+
+  private static final Pattern LEADING_INTEGER = Pattern.compile("^-?\\d+");
+
   private String response;
 
   private String ID;
 
   private Integer count;
 
+  private Integer limit;
+
+  private BigDecimal credit;
+
   private ResponseParsingExceptionDto responseParsingException = null;
 
   /**
@@ -114,6 +128,20 @@ public class GoyyaSmsSendResponseDto implements Serializable {
               this.count = Integer.parseInt(a[1].substring(0, i3));
             }
           }
+
+          if (a.length > 2) {
+            String tmpLimit = leadingNumber(a[2], LEADING_INTEGER);
+            if (tmpLimit != null) {
+              this.limit = Integer.parseInt(tmpLimit);
+            }
+          }
+
+          if (a.length > 3) {
+            String tmpCredit = leadingNumber(a[3], LEADING_NUMBER);
+            if (tmpCredit != null) {
+              this.credit = new BigDecimal(tmpCredit.replace(',', '.'));
+            }
+          }
         }
       }
     } catch (Exception e) {
@@ -121,6 +149,19 @@ public class GoyyaSmsSendResponseDto implements Serializable {
     }
   }
 
+  /**
+   * Returns the leading number of the value or {@code null} if the value does not start with a
+   * number.
+   *
+   * @param value   the value
+   * @param pattern the pattern of the number (integer or decimal)
+   * @return the leading number
+   */
+  private static String leadingNumber(String value, Pattern pattern) {
+    Matcher matcher = pattern.matcher(value.trim());
+    return matcher.find() ? matcher.group() : null;
+  }
+
   /**
    * Returns {@code true} if everything seems to be good otherwise {@code false}.
    *
@@ -195,6 +236,48 @@ public class GoyyaSmsSendResponseDto implements Serializable {
     this.count = count;
   }
 
+  /**
+   * Returns the remaining limit of messages that is returned if the limit was requested.
+   *
+   * @return the limit
+   */
+  @XmlElement(name = "limit")
+  @JsonProperty(value = "limit")
+  public Integer getLimit() {
+    return limit;
+  }
+
+  /**
+   * Sets the remaining limit of messages.
+   *
+   * @param limit the limit
+   */
+  @JsonProperty(value = "limit")
+  protected void setLimit(Integer limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * Returns the remaining credit that is returned if the limit was requested.
+   *
+   * @return the credit
+   */
+  @XmlElement(name = "credit")
+  @JsonProperty(value = "credit")
+  public BigDecimal getCredit() {
+    return credit;
+  }
+
+  /**
+   * Sets the remaining credit.
+   *
+   * @param credit the credit
+   */
+  @JsonProperty(value = "credit")
+  protected void setCredit(BigDecimal credit) {
+    this.credit = credit;
+  }
+
   /**
    * Returns the exception that occurred by parsing the real response from the Goyya service or
    * {@code null} if there is no such exception.
@@ -224,6 +307,8 @@ public class GoyyaSmsSendResponseDto implements Serializable {
         + "response='" + response + '\''
         + ", ID='" + ID + '\''
         + ", count=" + count
+        + ", limit=" + limit
+        + ", credit=" + credit
         + ", responseParsingException=" + responseParsingException
         + '}';
   }
@@ -240,12 +325,14 @@ public class GoyyaSmsSendResponseDto implements Serializable {
     return Objects.equals(response, that.response) &&
         Objects.equals(ID, that.ID) &&
         Objects.equals(count, that.count) &&
+        Objects.equals(limit, that.limit) &&
+        Objects.equals(credit, that.credit) &&
         Objects.equals(responseParsingException, that.responseParsingException);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(response, ID, count, responseParsingException);
+    return Objects.hash(response, ID, count, limit, credit, responseParsingException);
   }
 
   /**
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates random (version 4) UUIDs in the format of {@link java.util.UUID#toString()}. In
+ * contrast to {@link java.util.UUID#randomUUID()} the random numbers are taken from the {@link
+ * ThreadLocalRandom}, so threads do not contend on a shared {@link java.security.SecureRandom}.
+ * The ids are predictable and not suitable as secrets.
+ *
+ * <p>This generator is not the default, it must be registered as service or set with {@link
+ * RequestIdGenerators#setDefault(RequestIdGenerator)}.
+ *
+ * @author Christian Bremer
+ */
+public class RandomRequestIdGenerator implements RequestIdGenerator {
+
+  @Override
+  public String generateRequestId() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+    final long lsb = (random.nextLong() & ~(3L << 62)) | (1L << 63);
+    return RequestIdFormat.format(msb, lsb);
+  }
+
+}
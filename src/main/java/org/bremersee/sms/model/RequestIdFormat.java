@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+/**
+ * Parses and formats request ids in the lower case format of {@link java.util.UUID#toString()}
+ * without creating an UUID.
+ *
+ * <p>This is an internal helper of the generators, the binary codec and the delivery status
+ * store.
+ *
+ * @author Christian Bremer
+ */
+public final class RequestIdFormat {
+
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  private RequestIdFormat() {
+  }
+
+  /**
+   * Checks whether the value is an UUID in the lower case format of
+   * {@link java.util.UUID#toString()}.
+   *
+   * @param value the value
+   * @return {@code true} if the value can be packed into two longs, otherwise {@code false}
+   */
+  public static boolean isCanonicalUuid(final String value) {
+    if (value.length() != 36) {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      final char c = value.charAt(i);
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return false;
+        }
+      } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the most significant bits of a canonical UUID.
+   *
+   * @param value the canonical UUID
+   * @return the most significant bits
+   */
+  public static long getMostSignificantBits(final String value) {
+    return parseHex(value, 0, 18);
+  }
+
+  /**
+   * Gets the least significant bits of a canonical UUID.
+   *
+   * @param value the canonical UUID
+   * @return the least significant bits
+   */
+  public static long getLeastSignificantBits(final String value) {
+    return parseHex(value, 19, 36);
+  }
+
+  /**
+   * Formats the most and least significant bits.
+   *
+   * @param msb the most significant bits
+   * @param lsb the least significant bits
+   * @return the formatted id
+   */
+  public static String format(final long msb, final long lsb) {
+    final char[] chars = new char[36];
+    appendHex(chars, 0, msb);
+    appendHex(chars, 19, lsb);
+    chars[18] = '-';
+    return new String(chars);
+  }
+
+  private static long parseHex(final String value, final int from, final int to) {
+    long result = 0L;
+    for (int i = from; i < to; i++) {
+      final char c = value.charAt(i);
+      if (c != '-') {
+        result = (result << 4) | (c <= '9' ? c - '0' : c - 'a' + 10);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Writes 16 hex digits and inserts the dashes of the UUID format.
+   */
+  private static void appendHex(final char[] chars, final int offset, final long value) {
+    int position = offset;
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      if (position == 8 || position == 13 || position == 23) {
+        chars[position++] = '-';
+      }
+      chars[position++] = DIGITS[(int) (value >>> shift) & 0xF];
+    }
+  }
+
+}
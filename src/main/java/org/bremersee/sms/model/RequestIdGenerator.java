@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+/**
+ * Generates the ids of sms requests.
+ *
+ * <p>The default generator is returned by {@link RequestIdGenerators#getDefault()}. It can be
+ * replaced by registering an implementation as service (a file {@code
+ * META-INF/services/org.bremersee.sms.model.RequestIdGenerator}) or by calling {@link
+ * RequestIdGenerators#setDefault(RequestIdGenerator)}.
+ *
+ * <p>Implementations must be thread safe.
+ *
+ * @author Christian Bremer
+ */
+@FunctionalInterface
+public interface RequestIdGenerator {
+
+  /**
+   * Generates a new request id.
+   *
+   * @return the request id
+   */
+  String generateRequestId();
+
+}
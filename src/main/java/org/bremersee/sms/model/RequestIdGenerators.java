@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the default {@link RequestIdGenerator}. The default generator is the first one that is
+ * found by the {@link ServiceLoader}, otherwise it is a {@link SecureRandomRequestIdGenerator}.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class RequestIdGenerators {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestIdGenerators.class);
+
+  private static volatile RequestIdGenerator defaultGenerator = loadDefault();
+
+  private RequestIdGenerators() {
+  }
+
+  private static RequestIdGenerator loadDefault() {
+    try {
+      final Iterator<RequestIdGenerator> iterator = ServiceLoader
+          .load(RequestIdGenerator.class, RequestIdGenerators.class.getClassLoader())
+          .iterator();
+      if (iterator.hasNext()) {
+        final RequestIdGenerator generator = iterator.next();
+        log.info("Using request id generator {}", generator.getClass().getName());
+        return generator;
+      }
+    } catch (Throwable t) { // NOSONAR
+      log.error("Loading request id generator failed, using random request ids.", t);
+    }
+    return new SecureRandomRequestIdGenerator();
+  }
+
+  /**
+   * Gets the default request id generator.
+   *
+   * @return the default request id generator
+   */
+  public static RequestIdGenerator getDefault() {
+    return defaultGenerator;
+  }
+
+  /**
+   * Sets the default request id generator.
+   *
+   * @param generator the request id generator (if it is {@code null}, the default generator is
+   *                  loaded again)
+   */
+  public static void setDefault(final RequestIdGenerator generator) {
+    defaultGenerator = generator != null ? generator : loadDefault();
+  }
+
+  /**
+   * Generates a new request id with the default generator.
+   *
+   * @return the request id
+   */
+  public static String nextRequestId() {
+    return defaultGenerator.generateRequestId();
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs with {@link UUID#randomUUID()}. The random numbers are taken
+ * from a cryptographically strong {@link java.security.SecureRandom}, so the ids cannot be
+ * predicted. This is the default generator.
+ *
+ * @author Christian Bremer
+ */
+public class SecureRandomRequestIdGenerator implements RequestIdGenerator {
+
+  @Override
+  public String generateRequestId() {
+    return UUID.randomUUID().toString();
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * The priority class of a sms. A request without priority is sent with {@link #NORMAL}.
+ *
+ * @author Christian Bremer
+ */
+@XmlType(name = "smsPriorityType")
+@XmlEnum
+public enum SmsPriority {
+
+  /**
+   * Time critical messages like one time passwords. They are always sent before messages of the
+   * other classes.
+   */
+  HIGH,
+
+  /**
+   * Normal messages.
+   */
+  NORMAL,
+
+  /**
+   * Bulk messages like newsletters or marketing campaigns.
+   */
+  LOW;
+
+  private static final SmsPriority[] VALUES = values();
+
+  /**
+   * Returns the priority of the specified ordinal.
+   *
+   * @param ordinal the ordinal
+   * @return the priority
+   * @throws IllegalArgumentException if there is no priority with this ordinal
+   */
+  public static SmsPriority fromOrdinal(final int ordinal) {
+    if (ordinal < 0 || ordinal >= VALUES.length) {
+      throw new IllegalArgumentException("Unknown priority: " + ordinal);
+    }
+    return VALUES[ordinal];
+  }
+
+  /**
+   * Returns the specified priority or {@link #NORMAL}, if it is {@code null}.
+   *
+   * @param priority the priority (can be {@code null})
+   * @return the priority
+   */
+  public static SmsPriority orDefault(final SmsPriority priority) {
+    return priority != null ? priority : NORMAL;
+  }
+
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * An immutable and lean variant of {@link SmsSendRequestDto} for pipelines that hold many
+ * requests at once. Compared with the dto it does not create a random id when it is deserialized,
+ * it holds the send time as primitive milliseconds since the epoch, it deduplicates the sender
+ * (normally there are only a few different senders) and it can create the extension lazily.
+ *
+ * <p>Instances are created with a {@link Builder} and are thread safe.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class SmsRequest {
+
+  /**
+   * The value of {@link #getSendTimeMillis()} if the sms should be sent immediately.
+   */
+  public static final long NO_SEND_TIME = Long.MIN_VALUE;
+
+  /**
+   * The value of {@link #getDeadlineMillis()} if the sms has no deadline.
+   */
+  public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  private static final int MAX_SENDERS = 1024;
+
+  private static final Map<String, String> SENDERS = new ConcurrentHashMap<>();
+
+  private final String requestId;
+
+  private final String sender;
+
+  private final String receiver;
+
+  private final String message;
+
+  private final long sendTimeMillis;
+
+  private final SmsPriority priority;
+
+  private final long deadlineMillis;
+
+  private volatile Object extension;
+
+  private volatile Supplier<?> extensionSupplier;
+
+  private SmsRequest(Builder builder) {
+    this.requestId = builder.requestId != null
+        ? builder.requestId
+        : RequestIdGenerators.nextRequestId();
+    this.sender = deduplicate(builder.sender);
+    this.receiver = builder.receiver;
+    this.message = builder.message;
+    this.sendTimeMillis = builder.sendTimeMillis;
+    this.priority = builder.priority;
+    this.deadlineMillis = builder.deadlineMillis;
+    this.extension = builder.extension;
+    this.extensionSupplier = builder.extension == null ? builder.extensionSupplier : null;
+  }
+
+  private static String deduplicate(final String sender) {
+    if (sender == null) {
+      return null;
+    }
+    final String existing = SENDERS.get(sender);
+    if (existing != null) {
+      return existing;
+    }
+    if (SENDERS.size() >= MAX_SENDERS) {
+      return sender;
+    }
+    final String previous = SENDERS.putIfAbsent(sender, sender);
+    return previous != null ? previous : sender;
+  }
+
+  /**
+   * Creates a new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates a request from a dto. The extension of the dto is taken as it is.
+   *
+   * @param dto the dto
+   * @return the request (or {@code null} if the dto is {@code null})
+   */
+  public static SmsRequest fromDto(final SmsSendRequestDto dto) {
+    if (dto == null) {
+      return null;
+    }
+    return builder()
+        .requestId(dto.getRequestId())
+        .sender(dto.getSender())
+        .receiver(dto.getReceiver())
+        .message(dto.getMessage())
+        .sendTime(dto.getSendTime())
+        .priority(dto.getPriority())
+        .deadline(dto.getDeadline())
+        .extension(dto.getExtension())
+        .build();
+  }
+
+  /**
+   * Creates a new dto of this request. A lazy extension is created by this call.
+   *
+   * @return the dto
+   */
+  public SmsSendRequestDto toDto() {
+    final SmsSendRequestDto dto = new SmsSendRequestDto(
+        sender, receiver, message, getSendTime(), getExtension());
+    dto.setRequestId(requestId);
+    dto.setPriority(priority);
+    dto.setDeadline(getDeadline());
+    return dto;
+  }
+
+  /**
+   * Creates a builder that is initialized with the values of this request.
+   *
+   * @return the builder
+   */
+  public Builder toBuilder() {
+    final Builder builder = builder()
+        .requestId(requestId)
+        .sender(sender)
+        .receiver(receiver)
+        .message(message)
+        .sendTimeMillis(sendTimeMillis)
+        .priority(priority)
+        .deadlineMillis(deadlineMillis);
+    final Supplier<?> supplier = extensionSupplier;
+    return supplier != null ? builder.lazyExtension(supplier) : builder.extension(extension);
+  }
+
+  /**
+   * Gets request id.
+   *
+   * @return the request id
+   */
+  public String getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * Gets sender.
+   *
+   * @return the sender
+   */
+  public String getSender() {
+    return sender;
+  }
+
+  /**
+   * Gets receiver.
+   *
+   * @return the receiver
+   */
+  public String getReceiver() {
+    return receiver;
+  }
+
+  /**
+   * Gets message.
+   *
+   * @return the message
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Gets send time in milliseconds since the epoch.
+   *
+   * @return the send time or {@link #NO_SEND_TIME}
+   */
+  public long getSendTimeMillis() {
+    return sendTimeMillis;
+  }
+
+  /**
+   * Checks whether a send time is set.
+   *
+   * @return {@code true} if a send time is set, otherwise {@code false}
+   */
+  public boolean hasSendTime() {
+    return sendTimeMillis != NO_SEND_TIME;
+  }
+
+  /**
+   * Gets send time.
+   *
+   * @return a new date of the send time or {@code null}
+   */
+  public Date getSendTime() {
+    return hasSendTime() ? new Date(sendTimeMillis) : null;
+  }
+
+  /**
+   * Gets extension. A lazy extension is created on the first call.
+   *
+   * @return the extension
+   */
+  public Object getExtension() {
+    final Supplier<?> supplier = extensionSupplier;
+    if (supplier == null) {
+      return extension;
+    }
+    synchronized (this) {
+      if (extensionSupplier != null) {
+        extension = extensionSupplier.get();
+        extensionSupplier = null;
+      }
+      return extension;
+    }
+  }
+
+  /**
+   * Gets the priority.
+   *
+   * @return the priority (can be {@code null}, which means {@link SmsPriority#NORMAL})
+   */
+  public SmsPriority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Gets deadline in milliseconds since the epoch.
+   *
+   * @return the deadline or {@link #NO_DEADLINE}
+   */
+  public long getDeadlineMillis() {
+    return deadlineMillis;
+  }
+
+  /**
+   * Checks whether a deadline is set.
+   *
+   * @return {@code true} if a deadline is set, otherwise {@code false}
+   */
+  public boolean hasDeadline() {
+    return deadlineMillis != NO_DEADLINE;
+  }
+
+  /**
+   * Gets deadline.
+   *
+   * @return a new date of the deadline or {@code null}
+   */
+  public Date getDeadline() {
+    return hasDeadline() ? new Date(deadlineMillis) : null;
+  }
+
+  @Override
+  public String toString() {
+    return "SmsRequest {"
+        + "requestId='" + requestId + '\''
+        + ", sender='" + sender + '\''
+        + ", receiver='" + receiver + '\''
+        + ", message='" + message + '\''
+        + ", sendTimeMillis=" + sendTimeMillis
+        + ", priority=" + priority
+        + ", deadlineMillis=" + deadlineMillis
+        + ", extension=" + (extensionSupplier != null ? "(lazy)" : extension)
+        + '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SmsRequest)) {
+      return false;
+    }
+    SmsRequest that = (SmsRequest) o;
+    return sendTimeMillis == that.sendTimeMillis &&
+        priority == that.priority &&
+        deadlineMillis == that.deadlineMillis &&
+        Objects.equals(requestId, that.requestId) &&
+        Objects.equals(sender, that.sender) &&
+        Objects.equals(receiver, that.receiver) &&
+        Objects.equals(message, that.message) &&
+        Objects.equals(getExtension(), that.getExtension());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(requestId, sender, receiver, message, sendTimeMillis, priority,
+        deadlineMillis, getExtension());
+  }
+
+  /**
+   * The builder of a {@link SmsRequest}. A builder is not thread safe.
+   */
+  public static final class Builder {
+
+    private String requestId;
+
+    private String sender;
+
+    private String receiver;
+
+    private String message;
+
+    private long sendTimeMillis = NO_SEND_TIME;
+
+    private SmsPriority priority;
+
+    private long deadlineMillis = NO_DEADLINE;
+
+    private Object extension;
+
+    private Supplier<?> extensionSupplier;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the request id. If no request id is set, an id of the default {@link
+     * RequestIdGenerator} is used.
+     *
+     * @param requestId the request id
+     * @return the builder
+     */
+    public Builder requestId(String requestId) {
+      this.requestId = requestId;
+      return this;
+    }
+
+    /**
+     * Sets the sender.
+     *
+     * @param sender the sender
+     * @return the builder
+     */
+    public Builder sender(String sender) {
+      this.sender = sender;
+      return this;
+    }
+
+    /**
+     * Sets the receiver.
+     *
+     * @param receiver the receiver
+     * @return the builder
+     */
+    public Builder receiver(String receiver) {
+      this.receiver = receiver;
+      return this;
+    }
+
+    /**
+     * Sets the message.
+     *
+     * @param message the message
+     * @return the builder
+     */
+    public Builder message(String message) {
+      this.message = message;
+      return this;
+    }
+
+    /**
+     * Sets the send time in milliseconds since the epoch.
+     *
+     * @param sendTimeMillis the send time or {@link #NO_SEND_TIME}
+     * @return the builder
+     */
+    public Builder sendTimeMillis(long sendTimeMillis) {
+      this.sendTimeMillis = sendTimeMillis;
+      return this;
+    }
+
+    /**
+     * Sets the send time.
+     *
+     * @param sendTime the send time (can be {@code null})
+     * @return the builder
+     */
+    public Builder sendTime(Date sendTime) {
+      this.sendTimeMillis = sendTime != null ? sendTime.getTime() : NO_SEND_TIME;
+      return this;
+    }
+
+    /**
+     * Sets the priority.
+     *
+     * @param priority the priority (can be {@code null})
+     * @return the builder
+     */
+    public Builder priority(SmsPriority priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    /**
+     * Sets the deadline in milliseconds since the epoch.
+     *
+     * @param deadlineMillis the deadline or {@link #NO_DEADLINE}
+     * @return the builder
+     */
+    public Builder deadlineMillis(long deadlineMillis) {
+      this.deadlineMillis = deadlineMillis;
+      return this;
+    }
+
+    /**
+     * Sets the deadline.
+     *
+     * @param deadline the deadline (can be {@code null})
+     * @return the builder
+     */
+    public Builder deadline(Date deadline) {
+      this.deadlineMillis = deadline != null ? deadline.getTime() : NO_DEADLINE;
+      return this;
+    }
+
+    /**
+     * Sets the extension.
+     *
+     * @param extension the extension
+     * @return the builder
+     */
+    public Builder extension(Object extension) {
+      this.extension = extension;
+      this.extensionSupplier = null;
+      return this;
+    }
+
+    /**
+     * Sets a supplier that creates the extension on the first call of {@link
+     * SmsRequest#getExtension()}. The supplier is called at most once.
+     *
+     * @param extensionSupplier the extension supplier
+     * @return the builder
+     */
+    public Builder lazyExtension(Supplier<?> extensionSupplier) {
+      this.extension = null;
+      this.extensionSupplier = extensionSupplier;
+      return this;
+    }
+
+    /**
+     * Builds the request.
+     *
+     * @return the request
+     */
+    public SmsRequest build() {
+      return new SmsRequest(this);
+    }
+  }
+
+}
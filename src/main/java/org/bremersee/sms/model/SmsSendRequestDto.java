@@ -25,7 +25,6 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.Objects;
-import java.util.UUID;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAnyElement;
@@ -46,6 +45,8 @@ import javax.xml.bind.annotation.XmlType;
     "receiver",
     "message",
     "sendTime",
+    "priority",
+    "deadline",
     "extension"
 })
 
@@ -62,6 +63,8 @@ import javax.xml.bind.annotation.XmlType;
     "receiver",
     "message",
     "sendTime",
+    "priority",
+    "deadline",
     "extension"
 })
 @SuppressWarnings({"WeakerAccess", "unused"})
@@ -69,7 +72,9 @@ public class SmsSendRequestDto implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
-  private String requestId = UUID.randomUUID().toString();
+  private volatile String requestId;
+
+  private volatile boolean requestIdAssigned;
 
   private String sender;
 
@@ -79,6 +84,10 @@ public class SmsSendRequestDto implements Serializable {
 
   private Date sendTime;
 
+  private SmsPriority priority;
+
+  private Date deadline;
+
   private Object extension;
 
   /**
@@ -151,14 +160,26 @@ public class SmsSendRequestDto implements Serializable {
   }
 
   /**
-   * Gets request id.
+   * Gets request id. If no request id was set, an id is generated by the default {@link
+   * RequestIdGenerator} on the first call, so that deserialized requests do not pay for an id
+   * that is overwritten anyway.
    *
    * @return the request id
    */
   @XmlElement(name = "requestId")
   @JsonProperty(value = "requestId")
   public String getRequestId() {
-    return requestId;
+    String id = requestId;
+    if (id == null && !requestIdAssigned) {
+      synchronized (this) {
+        if (requestId == null && !requestIdAssigned) {
+          requestId = RequestIdGenerators.nextRequestId();
+          requestIdAssigned = true;
+        }
+        id = requestId;
+      }
+    }
+    return id;
   }
 
   /**
@@ -169,6 +190,7 @@ public class SmsSendRequestDto implements Serializable {
   @JsonProperty(value = "requestId")
   public void setRequestId(String requestId) {
     this.requestId = requestId;
+    this.requestIdAssigned = true;
   }
 
   /**
@@ -255,6 +277,49 @@ public class SmsSendRequestDto implements Serializable {
     this.sendTime = sendTime;
   }
 
+  /**
+   * Gets priority.
+   *
+   * @return the priority (can be {@code null}, which means {@link SmsPriority#NORMAL})
+   */
+  @XmlElement(name = "priority")
+  @JsonProperty(value = "priority")
+  public SmsPriority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Sets priority.
+   *
+   * @param priority the priority
+   */
+  @JsonProperty(value = "priority")
+  public void setPriority(SmsPriority priority) {
+    this.priority = priority;
+  }
+
+  /**
+   * Gets deadline. If the SMS can't be sent until the deadline, the service gives up with a
+   * {@link org.bremersee.sms.SmsTimeoutException}.
+   *
+   * @return the deadline (can be {@code null})
+   */
+  @XmlElement(name = "deadline")
+  @JsonProperty(value = "deadline")
+  public Date getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Sets deadline.
+   *
+   * @param deadline the deadline
+   */
+  @JsonProperty(value = "deadline")
+  public void setDeadline(Date deadline) {
+    this.deadline = deadline;
+  }
+
   /**
    * Gets extension.
    *
@@ -279,11 +344,13 @@ public class SmsSendRequestDto implements Serializable {
   @Override
   public String toString() {
     return "SmsSendRequestDto {"
-        + "requestId='" + requestId + '\''
+        + "requestId='" + getRequestId() + '\''
         + ", sender='" + sender + '\''
         + ", receiver='" + receiver + '\''
         + ", message='" + message + '\''
         + ", sendTime=" + sendTime
+        + ", priority=" + priority
+        + ", deadline=" + deadline
         + ", extension=" + extension
         + '}';
   }
@@ -297,16 +364,19 @@ public class SmsSendRequestDto implements Serializable {
       return false;
     }
     SmsSendRequestDto that = (SmsSendRequestDto) o;
-    return Objects.equals(requestId, that.requestId) &&
+    return Objects.equals(getRequestId(), that.getRequestId()) &&
         Objects.equals(sender, that.sender) &&
         Objects.equals(receiver, that.receiver) &&
         Objects.equals(message, that.message) &&
         Objects.equals(sendTime, that.sendTime) &&
+        priority == that.priority &&
+        Objects.equals(deadline, that.deadline) &&
         Objects.equals(extension, that.extension);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(requestId, sender, receiver, message, sendTime, extension);
+    return Objects.hash(getRequestId(), sender, receiver, message, sendTime, priority,
+        deadline, extension);
   }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.model;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Generates time ordered ids in the format of {@link java.util.UUID#toString()} (similar to a
+ * version 7 UUID or a Snowflake id). The 128 bits are composed of
+ * <pre>
+ * 48 bits  milliseconds since the epoch
+ *  4 bits  version (7)
+ * 12 bits  node id
+ *  2 bits  variant
+ * 16 bits  id of the generating thread
+ * 46 bits  sequence of the generating thread
+ * </pre>
+ * So the ids sort (as numbers and as strings) by the time they were generated, which gives the
+ * stores a good index locality. Every thread has its own sequence, so no state is shared between
+ * threads; the ids of one thread are strictly increasing. Nodes that generate ids at the same
+ * time must have different node ids.
+ *
+ * <p>The sequence of a thread starts at a random value and is never reset, so ids stay unique
+ * even if a thread id is reused by a later thread.
+ *
+ * @author Christian Bremer
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class TimeOrderedRequestIdGenerator implements RequestIdGenerator {
+
+  /**
+   * The system property that sets the node id of the default constructor.
+   */
+  public static final String NODE_ID_PROPERTY = "bremersee.sms.node-id";
+
+  /**
+   * The maximum node id.
+   */
+  public static final int MAX_NODE_ID = 0xFFF;
+
+  private static final long SEQUENCE_MASK = (1L << 46) - 1L;
+
+  private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+  private final int nodeId;
+
+  private final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+
+  /**
+   * Instantiates a new time ordered request id generator with the node id of the system property
+   * {@value #NODE_ID_PROPERTY} (default is 0).
+   */
+  public TimeOrderedRequestIdGenerator() {
+    this(Integer.getInteger(NODE_ID_PROPERTY, 0));
+  }
+
+  /**
+   * Instantiates a new time ordered request id generator.
+   *
+   * @param nodeId the node id (between 0 and {@value #MAX_NODE_ID})
+   */
+  public TimeOrderedRequestIdGenerator(int nodeId) {
+    Validate.isTrue(nodeId >= 0 && nodeId <= MAX_NODE_ID,
+        "Node id must be between 0 and " + MAX_NODE_ID);
+    this.nodeId = nodeId;
+  }
+
+  /**
+   * Gets node id.
+   *
+   * @return the node id
+   */
+  public int getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public String generateRequestId() {
+    final State state = states.get();
+    final long now = System.currentTimeMillis();
+    if (now > state.millis) {
+      state.millis = now;
+    }
+    state.sequence = (state.sequence + 1L) & SEQUENCE_MASK;
+    final long msb = (state.millis << 16) | 0x7000L | nodeId;
+    final long lsb = (1L << 63) | ((long) state.threadId << 46) | state.sequence;
+    return RequestIdFormat.format(msb, lsb);
+  }
+
+  /**
+   * Gets the milliseconds since the epoch of an id that was generated by this class.
+   *
+   * @param requestId the request id
+   * @return the milliseconds since the epoch
+   */
+  public static long getTimestamp(final String requestId) {
+    Validate.isTrue(requestId != null && requestId.length() == 36,
+        "Request id must be a time ordered id.");
+    return Long.parseLong(requestId.substring(0, 8) + requestId.substring(9, 13), 16);
+  }
+
+  private static final class State {
+
+    private final int threadId = THREAD_IDS.getAndIncrement() & 0xFFFF;
+
+    private long millis;
+
+    private long sequence = ThreadLocalRandom.current().nextLong() & (SEQUENCE_MASK >>> 1);
+  }
+
+}
@@ -0,0 +1,28 @@
+-- The tables of the JDBC outbox (org.bremersee.sms.JdbcSmsOutbox).
+-- Written in standard SQL, change the CLOB type if the database uses another one (e.g. TEXT).
+
+CREATE TABLE sms_outbox (
+  id VARCHAR(64) NOT NULL PRIMARY KEY,
+  partition_no INT NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  payload CLOB NOT NULL,
+  attempts INT NOT NULL,
+  next_attempt BIGINT NOT NULL,
+  created_at BIGINT NOT NULL,
+  updated_at BIGINT NOT NULL,
+  node_id VARCHAR(128),
+  last_error VARCHAR(1000)
+);
+
+CREATE INDEX sms_outbox_poll ON sms_outbox (partition_no, status, next_attempt);
+
+CREATE TABLE sms_outbox_lease (
+  partition_no INT NOT NULL PRIMARY KEY,
+  owner VARCHAR(128),
+  expires BIGINT NOT NULL
+);
+
+CREATE TABLE sms_outbox_node (
+  node_id VARCHAR(128) NOT NULL PRIMARY KEY,
+  expires BIGINT NOT NULL
+);
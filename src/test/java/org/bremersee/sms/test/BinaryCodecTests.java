@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.bremersee.sms.SmsBinaryCodec;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The binary codec tests.
+ *
+ * @author Christian Bremer
+ */
+public class BinaryCodecTests {
+
+  private final SmsBinaryCodec codec = new SmsBinaryCodec();
+
+  private static SmsSendRequestDto createRequest() {
+    return new SmsSendRequestDto("bremersee", "0123456789", "Hällo Wörld 😀",
+        new Date(1500000000000L));
+  }
+
+  /**
+   * Test encoding and decoding of all types with heap and direct buffers.
+   */
+  @Test
+  public void testRoundTrip() {
+
+    System.out.println("Testing binary codec round trip ...");
+
+    SmsSendRequestDto request = createRequest();
+    Map<String, Object> extension = new LinkedHashMap<>();
+    extension.put("key", "value");
+    extension.put("number", 42);
+    SmsSendRequestDto requestWithExtension = createRequest();
+    requestWithExtension.setRequestId("not-an-uuid");
+    requestWithExtension.setExtension(extension);
+    SmsSendRequestDto emptyRequest = new SmsSendRequestDto();
+    emptyRequest.setRequestId(null);
+    GoyyaSmsSendResponseDto goyya = new GoyyaSmsSendResponseDto("OK (4711, 1 SMS, 9 SMS)");
+    SmsSendResponseDto response = new SmsSendResponseDto(request, true, goyya);
+
+    Object[] values = {request, requestWithExtension, emptyRequest, goyya, response,
+        new SmsSendResponseDto(false)};
+    for (boolean direct : new boolean[]{false, true}) {
+      int length = 0;
+      for (Object value : values) {
+        length += codec.getEncodedLength(value);
+        TestCase.assertEquals(value, codec.decode(codec.encode(value, direct)));
+      }
+      ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+      for (Object value : values) {
+        codec.encode(value, buffer);
+      }
+      TestCase.assertFalse(buffer.hasRemaining());
+      buffer.flip();
+      for (Object value : values) {
+        TestCase.assertEquals(value, codec.decode(buffer));
+      }
+      TestCase.assertFalse(buffer.hasRemaining());
+    }
+    TestCase.assertEquals(request.getRequestId(),
+        codec.decode(codec.encode(request, false), SmsSendRequestDto.class).getRequestId());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Compares size and speed with java serialization.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void benchmarkAgainstSerialization() throws Exception {
+
+    System.out.println("Benchmarking binary codec against java serialization ...");
+
+    SmsSendResponseDto response = new SmsSendResponseDto(createRequest(), true,
+        new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)"));
+
+    final int iterations = 20000;
+    int serializedLength = 0;
+    int encodedLength = 0;
+    for (int round = 0; round < 2; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+          oos.writeObject(response);
+        }
+        byte[] bytes = out.toByteArray();
+        serializedLength = bytes.length;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+          ois.readObject();
+        }
+      }
+      long serializationNanos = System.nanoTime() - start;
+
+      ByteBuffer buffer = ByteBuffer.allocate(1024);
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        buffer.clear();
+        codec.encode(response, buffer);
+        encodedLength = buffer.position();
+        buffer.flip();
+        codec.decode(buffer);
+      }
+      long codecNanos = System.nanoTime() - start;
+
+      if (round == 1) {
+        System.out.println("Java serialization: " + serializedLength + " bytes, "
+            + serializationNanos / iterations + " ns per round trip");
+        System.out.println("Binary codec:       " + encodedLength + " bytes, "
+            + codecNanos / iterations + " ns per round trip");
+      }
+    }
+    TestCase.assertTrue(encodedLength * 5 <= serializedLength);
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.CoalescingSmsService;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The coalescing tests.
+ *
+ * @author Christian Bremer
+ */
+public class CoalescingTests {
+
+  /**
+   * Test that messages to the same receiver are combined.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCoalescing() throws Exception {
+
+    System.out.println("Testing coalescing of messages ...");
+
+    final List<SmsSendRequestDto> sent = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        sent.add(smsSendRequest);
+        return new SmsSendResponseDto(smsSendRequest, true,
+            new GoyyaSmsSendResponseDto("OK (" + sent.size() + ", 1 SMS)"));
+      }
+    };
+    delegate.setDefaultSender("alerts");
+
+    final List<List<SmsSendRequestDto>> mapped = Collections.synchronizedList(new ArrayList<>());
+    try (CoalescingSmsService smsService = new CoalescingSmsService(delegate)) {
+      smsService.setWindowMillis(200L);
+      smsService.setListener((combined, originals, response) -> mapped.add(originals));
+
+      SmsSendRequestDto r1 = new SmsSendRequestDto("0171 1234567", "Disk full");
+      SmsSendRequestDto r2 = new SmsSendRequestDto("+49 171 1234567", "CPU high");
+      r2.setPriority(SmsPriority.HIGH);
+      SmsSendRequestDto r3 = new SmsSendRequestDto("0049171 1234567", "Disk full");
+      SmsSendRequestDto other = new SmsSendRequestDto("0171 7654321", "Disk full");
+      List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+      for (SmsSendRequestDto r : new SmsSendRequestDto[]{r1, r2, r3, other}) {
+        futures.add(smsService.submit(r));
+      }
+      for (CompletableFuture<SmsSendResponseDto> future : futures) {
+        TestCase.assertTrue(future.get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+      }
+
+      TestCase.assertEquals(2, sent.size());
+      SmsSendRequestDto combined = sent.get(0).getReceiver().equals("0171 1234567")
+          ? sent.get(0) : sent.get(1);
+      TestCase.assertEquals("Disk full\nCPU high", combined.getMessage());
+      TestCase.assertEquals(SmsPriority.HIGH, combined.getPriority());
+
+      SmsSendResponseDto response = futures.get(2).get();
+      TestCase.assertEquals(r3.getRequestId(), response.getRequest().getRequestId());
+      TestCase.assertEquals(futures.get(0).get().getExtension(), response.getExtension());
+      TestCase.assertEquals(4L, smsService.getReceived());
+      TestCase.assertEquals(2L, smsService.getSent());
+      TestCase.assertEquals(2, mapped.size());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a batch is sent, when the next message doesn't fit, that a request with a deadline
+   * is sent directly and that closing sends the remaining batches.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testMaxLength() throws Exception {
+
+    System.out.println("Testing maximum length of coalesced messages ...");
+
+    final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        sent.add(smsSendRequest.getMessage());
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    delegate.setDefaultSender("alerts");
+
+    CoalescingSmsService smsService = new CoalescingSmsService(delegate);
+    smsService.setWindowMillis(TimeUnit.MINUTES.toMillis(10L));
+    smsService.setMaxMessageLength(20);
+    List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+    futures.add(smsService.submit(new SmsSendRequestDto("0171 1234567", "Message 1")));
+    futures.add(smsService.submit(new SmsSendRequestDto("0171 1234567", "Message 2")));
+    futures.add(smsService.submit(new SmsSendRequestDto("0171 1234567", "Message 3")));
+    futures.get(0).get(10L, TimeUnit.SECONDS);
+    TestCase.assertEquals(Collections.singletonList("Message 1\nMessage 2"), sent);
+    TestCase.assertFalse(futures.get(2).isDone());
+
+    // a request with a deadline does not wait for the window
+    SmsSendRequestDto urgent = new SmsSendRequestDto("0171 1234567", "Urgent");
+    urgent.setDeadline(new Date(System.currentTimeMillis() + 1000L));
+    TestCase.assertTrue(smsService.submit(urgent).get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+    TestCase.assertEquals("Urgent", sent.get(1));
+    TestCase.assertFalse(futures.get(2).isDone());
+
+    smsService.close();
+    TestCase.assertTrue(futures.get(2).get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+    TestCase.assertEquals("Message 3", sent.get(2));
+
+    System.out.println("OK\n");
+  }
+
+}
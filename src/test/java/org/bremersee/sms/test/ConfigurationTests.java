@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import junit.framework.TestCase;
+import org.bremersee.sms.ConfigurationFileWatcher;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.GoyyaSmsService;
+import org.bremersee.sms.GoyyaSmsServiceConfiguration;
+import org.bremersee.sms.SmsInterceptor;
+import org.bremersee.sms.SmsServiceConfiguration;
+import org.bremersee.sms.SmsTransport;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The configuration tests.
+ *
+ * @author Christian Bremer
+ */
+public class ConfigurationTests {
+
+  /**
+   * Test that changes create new snapshots with derived values.
+   */
+  @Test
+  public void testSnapshots() {
+
+    System.out.println("Testing configuration snapshots ...");
+
+    GoyyaSmsService smsService = new GoyyaSmsService("user", "p&ss", null);
+    GoyyaSmsServiceConfiguration first = smsService.getConfiguration();
+    TestCase.assertEquals(GoyyaSmsService.DEFAULT_URL + "?id=user&pw=p%26ss",
+        first.getRequestPrefix());
+
+    smsService.setCharset("UTF-8");
+    smsService.setUrl("https://example.org/send?lang=de");
+    GoyyaSmsServiceConfiguration second = smsService.getConfiguration();
+    TestCase.assertNotSame(first, second);
+    TestCase.assertEquals(StandardCharsets.ISO_8859_1, first.getCharset());
+    TestCase.assertEquals(StandardCharsets.UTF_8, second.getCharset());
+    TestCase.assertEquals("https://example.org/send?lang=de&id=user&pw=p%26ss",
+        second.getRequestPrefix());
+    TestCase.assertEquals("example.org", second.getParsedUrl().getHost());
+    TestCase.assertEquals("UTF-8", smsService.getCharset());
+
+    try {
+      smsService.setUrl("no url");
+      TestCase.fail("IllegalArgumentException expected.");
+    } catch (IllegalArgumentException e) {
+      TestCase.assertSame(second, smsService.getConfiguration());
+    }
+
+    smsService.setProxyHost("proxy.example.org");
+    smsService.setProxyPort(3128);
+    smsService.setProxyUsername("proxy");
+    GoyyaSmsServiceConfiguration third = smsService.getConfiguration();
+    TestCase.assertNotNull(third.getProxy());
+    TestCase.assertEquals("Basic cHJveHk6", third.getProxyAuthorization());
+    TestCase.assertFalse(third.toString().contains("p&ss"));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test configuration by properties.
+   */
+  @Test
+  public void testProperties() {
+
+    System.out.println("Testing configuration by properties ...");
+
+    GoyyaSmsService smsService = new GoyyaSmsService();
+    Properties properties = new Properties();
+    properties.setProperty("sms." + SmsServiceConfiguration.DEFAULT_SENDER_KEY, "bremersee");
+    properties.setProperty("sms." + SmsServiceConfiguration.MAX_LENGTH_OF_ONE_SMS_KEY, "120");
+    properties.setProperty("sms." + GoyyaSmsServiceConfiguration.USERNAME_KEY, "user");
+    smsService.configure(properties, "sms.");
+    TestCase.assertEquals("bremersee", smsService.getDefaultSender());
+    TestCase.assertEquals(120, smsService.getMaxLengthOfOneSms());
+    TestCase.assertEquals("user", smsService.getConfiguration().getUsername());
+
+    SmsServiceConfiguration before = smsService.getConfiguration();
+    properties.setProperty("sms." + SmsServiceConfiguration.DEFAULT_SENDER_KEY, "other");
+    properties.setProperty("sms." + SmsServiceConfiguration.CHARSET_KEY, "NO-SUCH-CHARSET");
+    try {
+      smsService.configure(properties, "sms.");
+      TestCase.fail("IllegalArgumentException expected.");
+    } catch (IllegalArgumentException e) {
+      TestCase.assertSame(before, smsService.getConfiguration());
+      TestCase.assertEquals("bremersee", smsService.getDefaultSender());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test reloading of a watched configuration file.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testFileWatcher() throws Exception {
+
+    System.out.println("Testing configuration file watcher ...");
+
+    Path dir = Files.createTempDirectory("sms-config");
+    Path file = dir.resolve("sms.properties");
+    write(file, "defaultSender=first\n");
+
+    GoyyaSmsService smsService = new GoyyaSmsService();
+    final int maxLengthOfOneSms = smsService.getMaxLengthOfOneSms();
+    try (ConfigurationFileWatcher watcher = new ConfigurationFileWatcher(file, smsService, null)) {
+      watcher.setSettleMillis(10L);
+      watcher.start();
+      TestCase.assertEquals("first", smsService.getDefaultSender());
+
+      write(file, "charset=NO-SUCH-CHARSET\ndefaultSender=broken\n");
+      TestCase.assertFalse(watcher.reload());
+      TestCase.assertEquals("first", smsService.getDefaultSender());
+      TestCase.assertTrue(watcher.getFailureCount() > 0L);
+
+      write(file, "defaultSender=second\nmaxLengthOfOneSms=100\n");
+      long deadline = System.currentTimeMillis() + 15000L;
+      while (!"second".equals(smsService.getDefaultSender())
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50L);
+        watcher.reload();
+      }
+      TestCase.assertEquals("second", smsService.getDefaultSender());
+      TestCase.assertEquals(100, smsService.getMaxLengthOfOneSms());
+
+      // a removed key gets the value that it had when the watcher was started
+      write(file, "defaultSender=third\n");
+      deadline = System.currentTimeMillis() + 15000L;
+      while (!"third".equals(smsService.getDefaultSender())
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50L);
+        watcher.reload();
+      }
+      TestCase.assertEquals("third", smsService.getDefaultSender());
+      TestCase.assertEquals(maxLengthOfOneSms, smsService.getMaxLengthOfOneSms());
+
+      // an edit that keeps the size of the file is loaded, too
+      write(file, "defaultSender=fifth\n");
+      deadline = System.currentTimeMillis() + 15000L;
+      while (!"fifth".equals(smsService.getDefaultSender())
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50L);
+        watcher.reload();
+      }
+      TestCase.assertEquals("fifth", smsService.getDefaultSender());
+      TestCase.assertFalse(watcher.reload());
+      System.out.println("Reloads: " + watcher.getReloadCount()
+          + ", failures: " + watcher.getFailureCount());
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(dir);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a send uses the configuration snapshot it has started with, even if the
+   * configuration changes while it is running.
+   */
+  @Test
+  public void testSnapshotDuringSend() {
+
+    System.out.println("Testing configuration snapshot during send ...");
+
+    final List<String> urls = new ArrayList<>();
+    final GoyyaSmsService smsService = new GoyyaSmsService("user", "secret");
+    smsService.setDefaultSender("first");
+    smsService.setCreditLedger(new CreditLedger(5L));
+    smsService.setTransport((url, connectTimeoutMillis, readTimeoutMillis) -> {
+      urls.add(url);
+      return new SmsTransport.Response(200, "OK (4711, 2 SMS)", 1L, 2L);
+    });
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+        smsService.updateConfiguration(c -> c
+            .withDefaultSender("second")
+            .withMaxLengthOfOneSms(20));
+        return null;
+      }
+    });
+
+    char[] message = new char[200];
+    Arrays.fill(message, 'a');
+    TestCase.assertTrue(smsService.sendSms("0123456789", new String(message))
+        .isSuccessfullySent());
+    TestCase.assertEquals(1, urls.size());
+    TestCase.assertTrue(urls.get(0).contains("&sender=first&"));
+    TestCase.assertTrue(urls.get(0).contains("&msgtype=c"));
+    TestCase.assertEquals(3L, smsService.getCreditLedger().getAvailable());
+    TestCase.assertEquals("second", smsService.getDefaultSender());
+
+    System.out.println("OK\n");
+  }
+
+  private static void write(Path file, String content) throws Exception {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+    Files.move(tmp, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import junit.framework.TestCase;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.GoyyaSmsService;
+import org.bremersee.sms.GoyyaSmsServiceConfiguration;
+import org.bremersee.sms.SmsCostEstimate;
+import org.bremersee.sms.SmsCostEstimator;
+import org.bremersee.sms.SmsCostSummary;
+import org.bremersee.sms.SmsEncoding;
+import org.bremersee.sms.SmsServiceConfiguration;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.junit.Test;
+
+/**
+ * The cost estimator tests.
+ *
+ * @author Christian Bremer
+ */
+public class CostEstimatorTests {
+
+  private static final String CYRILLIC = "Привет";
+
+  /**
+   * Test detection of the encoding and counting of parts.
+   */
+  @Test
+  public void testEncoding() {
+
+    System.out.println("Testing encoding of messages ...");
+
+    TestCase.assertEquals(SmsEncoding.GSM_7, SmsEncoding.detect("Hallo Jürgen, 5 € [ok]"));
+    TestCase.assertEquals(SmsEncoding.UCS_2, SmsEncoding.detect(CYRILLIC));
+    TestCase.assertEquals(SmsEncoding.UCS_2, SmsEncoding.detect("Hello 😀"));
+
+    TestCase.assertEquals(5, SmsEncoding.GSM_7.getLength("Hello"));
+    TestCase.assertEquals(4, SmsEncoding.GSM_7.getLength("5 €"));
+    TestCase.assertEquals(160, SmsEncoding.GSM_7.getMaxLengthOfSingleSms(153));
+    TestCase.assertEquals(153, SmsEncoding.GSM_7.getMaxLengthOfOnePart(153));
+    TestCase.assertEquals(70, SmsEncoding.UCS_2.getMaxLengthOfSingleSms(153));
+    TestCase.assertEquals(67, SmsEncoding.UCS_2.getMaxLengthOfOnePart(153));
+
+    TestCase.assertEquals(1, SmsEncoding.GSM_7.getNumberOfParts(repeat('a', 160), 153));
+    TestCase.assertEquals(2, SmsEncoding.GSM_7.getNumberOfParts(repeat('a', 161), 153));
+    TestCase.assertEquals(2, SmsEncoding.GSM_7.getNumberOfParts(repeat('a', 159) + "€", 153));
+    TestCase.assertEquals(2, SmsEncoding.GSM_7.getNumberOfParts(repeat('a', 306), 153));
+    TestCase.assertEquals(3, SmsEncoding.GSM_7.getNumberOfParts(repeat('a', 307), 153));
+    // the escaped euro sign is not split, so it moves into the second part
+    TestCase.assertEquals(3, SmsEncoding.GSM_7.getNumberOfParts(
+        repeat('a', 9) + "€" + repeat('a', 9), 10));
+    TestCase.assertEquals(1, SmsEncoding.UCS_2.getNumberOfParts(repeat('Ж', 70), 153));
+    TestCase.assertEquals(2, SmsEncoding.UCS_2.getNumberOfParts(repeat('Ж', 71), 153));
+    TestCase.assertEquals(3, SmsEncoding.UCS_2.getNumberOfParts(repeat('Ж', 135), 153));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test estimation of single messages.
+   */
+  @Test
+  public void testEstimate() {
+
+    System.out.println("Testing estimation of single messages ...");
+
+    GoyyaSmsServiceConfiguration configuration = new GoyyaSmsService().getConfiguration();
+    SmsCostEstimator estimator = new SmsCostEstimator(configuration, new BigDecimal("0.075"));
+
+    SmsCostEstimate estimate = estimator.estimate("Hello");
+    TestCase.assertEquals(SmsEncoding.GSM_7, estimate.getEncoding());
+    TestCase.assertEquals(1, estimate.getParts());
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_TEXT_VALUE, estimate.getMessageType());
+    TestCase.assertEquals(new BigDecimal("0.075"), estimate.getCost());
+
+    estimate = estimator.estimate(new SmsSendRequestDto("0123456789", repeat(CYRILLIC, 20)));
+    TestCase.assertEquals(SmsEncoding.UCS_2, estimate.getEncoding());
+    TestCase.assertEquals(120, estimate.getLength());
+    TestCase.assertEquals(2, estimate.getParts());
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_LONG_TEXT_VALUE, estimate.getMessageType());
+    TestCase.assertEquals(new BigDecimal("0.150"), estimate.getCost());
+
+    // the estimate and the goyya service agree on the message type
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_LONG_TEXT_VALUE,
+        new MessageTypeGoyyaSmsService().getMessageType(repeat(CYRILLIC, 17)));
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_TEXT_VALUE,
+        new MessageTypeGoyyaSmsService().getMessageType(repeat('a', 160)));
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_TEXT_VALUE,
+        estimator.estimate(repeat('a', 160)).getMessageType());
+
+    estimator = new SmsCostEstimator(configuration.withDefaultMessageType(
+        GoyyaSmsService.MESSAGE_TYPE_FLASH_VALUE), BigDecimal.ONE);
+    TestCase.assertEquals(GoyyaSmsService.MESSAGE_TYPE_FLASH_VALUE,
+        estimator.estimate("Hello").getMessageType());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test estimation of many messages.
+   */
+  @Test
+  public void testEstimateAll() {
+
+    System.out.println("Testing estimation of many messages ...");
+
+    SmsServiceConfiguration configuration = new SmsServiceConfiguration()
+        .withDefaultMessage("Default message");
+    SmsCostEstimator estimator = new SmsCostEstimator(configuration, new BigDecimal("0.07"));
+
+    List<SmsSendRequestDto> requests = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      requests.add(new SmsSendRequestDto("0123456789", createMessage(i)));
+    }
+    SmsCostSummary summary = estimator.estimateAll(requests);
+    long parts = 0L;
+    for (SmsSendRequestDto request : requests) {
+      parts += estimator.estimate(request).getParts();
+    }
+    TestCase.assertEquals(1000L, summary.getMessages());
+    TestCase.assertEquals(parts, summary.getParts());
+    TestCase.assertEquals(900L, summary.getGsm7Messages());
+    TestCase.assertEquals(100L, summary.getUcs2Messages());
+    TestCase.assertEquals(new BigDecimal("0.07").multiply(BigDecimal.valueOf(parts)),
+        summary.getCost());
+
+    final int size = 500_000;
+    long start = System.nanoTime();
+    summary = estimator.estimateMessages(IntStream.range(0, size)
+        .mapToObj(CostEstimatorTests::createMessage));
+    System.out.println("Estimated " + size + " messages in "
+        + (System.nanoTime() - start) / 1000000L + " ms: " + summary);
+    TestCase.assertEquals(size, summary.getMessages());
+    TestCase.assertEquals(size / 10, summary.getUcs2Messages());
+    TestCase.assertEquals(3, summary.getMaxParts());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a sms service reserves the parts of the encoded message.
+   */
+  @Test
+  public void testReservationOfUcs2Message() {
+
+    System.out.println("Testing reservation of UCS-2 message ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setMaxLengthOfOneSms(10);
+    smsService.setCreditLedger(new CreditLedger(2L));
+
+    smsService.sendSms("0123456789", CYRILLIC + "!!");
+    TestCase.assertEquals(0L, smsService.getCreditLedger().getAvailable());
+
+    System.out.println("OK\n");
+  }
+
+  private static String createMessage(final int i) {
+    switch (i % 10) {
+      case 0:
+        return repeat(CYRILLIC, 1 + i % 25);
+      case 1:
+        return null;
+      default:
+        return repeat('x', 1 + i % 400);
+    }
+  }
+
+  private static String repeat(final char c, final int count) {
+    return repeat(String.valueOf(c), count);
+  }
+
+  private static String repeat(final String s, final int count) {
+    StringBuilder sb = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
+  private static class MessageTypeGoyyaSmsService extends GoyyaSmsService {
+
+    @Override
+    public String getMessageType(final String message) {
+      return super.getMessageType(message);
+    }
+  }
+
+}
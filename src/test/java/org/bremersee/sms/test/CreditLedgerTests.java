@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.InsufficientCreditException;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The credit ledger tests.
+ *
+ * @author Christian Bremer
+ */
+public class CreditLedgerTests {
+
+  /**
+   * Test parsing of limit and credit.
+   */
+  @Test
+  public void testParseLimitAndCredit() {
+
+    System.out.println("Testing parsing of limit and credit ...");
+
+    GoyyaSmsSendResponseDto response = new GoyyaSmsSendResponseDto(
+        "OK (4711, 2 SMS, 98 SMS, 12.50 EUR)");
+    TestCase.assertEquals("4711", response.getID());
+    TestCase.assertEquals(Integer.valueOf(2), response.getCount());
+    TestCase.assertEquals(Integer.valueOf(98), response.getLimit());
+    TestCase.assertEquals(new BigDecimal("12.50"), response.getCredit());
+    TestCase.assertNull(response.getResponseParsingException());
+
+    response = new GoyyaSmsSendResponseDto("OK (4711, 2 SMS, 98.5 SMS, 12.50 EUR)");
+    TestCase.assertEquals(Integer.valueOf(98), response.getLimit());
+    TestCase.assertEquals(new BigDecimal("12.50"), response.getCredit());
+    TestCase.assertNull(response.getResponseParsingException());
+
+    response = new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)");
+    TestCase.assertNull(response.getLimit());
+    TestCase.assertNull(response.getCredit());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test concurrent reservations.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConcurrentReservations() throws Exception {
+
+    System.out.println("Testing concurrent reservations ...");
+
+    final CreditLedger ledger = new CreditLedger(1000L);
+    final AtomicInteger granted = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(8);
+    for (int t = 0; t < 8; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          CreditLedger.Reservation reservation = ledger.tryReserve(3L);
+          if (reservation != null) {
+            granted.incrementAndGet();
+          }
+        }
+        latch.countDown();
+      }).start();
+    }
+    TestCase.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+    TestCase.assertEquals(333, granted.get());
+    TestCase.assertEquals(1L, ledger.getAvailable());
+    TestCase.assertEquals(999L, ledger.getReserved());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test concurrent reservations while the balance is updated, the reserved credit must never
+   * exceed the balance.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConcurrentUpdateBalance() throws Exception {
+
+    System.out.println("Testing concurrent reservations and balance updates ...");
+
+    final long balance = 4L;
+    final CreditLedger ledger = new CreditLedger(balance);
+    final AtomicLong held = new AtomicLong();
+    final AtomicLong maxHeld = new AtomicLong();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final CountDownLatch latch = new CountDownLatch(8);
+    for (int t = 0; t < 8; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < 100000; i++) {
+          CreditLedger.Reservation reservation = ledger.tryReserve(1L);
+          if (reservation != null) {
+            maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+            held.decrementAndGet();
+            ledger.release(reservation);
+          }
+        }
+        latch.countDown();
+      }).start();
+    }
+    Thread updater = new Thread(() -> {
+      while (running.get()) {
+        ledger.updateBalance(balance);
+      }
+    });
+    updater.start();
+    TestCase.assertTrue(latch.await(30L, TimeUnit.SECONDS));
+    running.set(false);
+    updater.join();
+    TestCase.assertTrue(maxHeld.get() <= balance);
+    TestCase.assertEquals(balance, ledger.getAvailable());
+    TestCase.assertEquals(0L, ledger.getReserved());
+    TestCase.assertTrue(ledger.getAvailable() + ledger.getReserved() <= balance);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test commit, release and update of the balance.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testReconcile() throws Exception {
+
+    System.out.println("Testing reconciliation ...");
+
+    CreditLedger ledger = new CreditLedger(10L);
+    CreditLedger.Reservation r1 = ledger.tryReserve(3L);
+    CreditLedger.Reservation r2 = ledger.tryReserve(3L);
+    TestCase.assertEquals(4L, ledger.getAvailable());
+
+    ledger.commit(r1, 2L);
+    TestCase.assertEquals(5L, ledger.getAvailable());
+    ledger.commit(r1, 2L);
+    TestCase.assertEquals(5L, ledger.getAvailable());
+
+    ledger.updateBalance(20L);
+    TestCase.assertEquals(17L, ledger.getAvailable());
+
+    ledger.release(r2);
+    TestCase.assertEquals(20L, ledger.getAvailable());
+    TestCase.assertEquals(0L, ledger.getReserved());
+
+    final CreditLedger.Reservation big = ledger.tryReserve(20L);
+    final List<CreditLedger.Reservation> waited = new ArrayList<>();
+    Thread waiter = new Thread(() -> {
+      try {
+        waited.add(ledger.reserve(5L, 5L, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    Thread.sleep(50L);
+    ledger.commit(big, 10L);
+    waiter.join(5000L);
+    TestCase.assertEquals(1, waited.size());
+    TestCase.assertNotNull(waited.get(0));
+    TestCase.assertEquals(5L, ledger.getAvailable());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a sms service rejects sends without sufficient credit.
+   */
+  @Test
+  public void testSmsServiceWithLedger() {
+
+    System.out.println("Testing sms service with credit ledger ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setMaxLengthOfOneSms(10);
+    smsService.setCreditLedger(new CreditLedger(3L));
+
+    smsService.sendSms("0123456789", "Nineteen characters");
+    TestCase.assertEquals(1L, smsService.getCreditLedger().getAvailable());
+    try {
+      smsService.sendSms("0123456789", "Nineteen characters");
+      TestCase.fail("InsufficientCreditException expected.");
+    } catch (InsufficientCreditException e) {
+      TestCase.assertEquals(1L, smsService.getCreditLedger().getAvailable());
+    }
+    smsService.sendSms("0123456789", "Short");
+    TestCase.assertEquals(0L, smsService.getCreditLedger().getAvailable());
+    TestCase.assertEquals(0L, smsService.getCreditLedger().getReserved());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that an error of the gateway releases the reserved credit.
+   */
+  @Test
+  public void testErrorReleasesCredit() {
+
+    System.out.println("Testing release of credit after an error ...");
+
+    DummySmsService smsService = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        throw new AssertionError("Gateway failed.");
+      }
+    };
+    smsService.setDefaultSender("bremersee");
+    smsService.setCreditLedger(new CreditLedger(3L));
+    try {
+      smsService.sendSms("0123456789", "Short");
+      TestCase.fail("AssertionError expected.");
+    } catch (AssertionError e) {
+      TestCase.assertEquals(3L, smsService.getCreditLedger().getAvailable());
+      TestCase.assertEquals(0L, smsService.getCreditLedger().getReserved());
+    }
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.bremersee.sms.DeliveryReceiptParser;
+import org.bremersee.sms.DeliveryReceiptReceiver;
+import org.bremersee.sms.DeliveryStatus;
+import org.bremersee.sms.DeliveryStatusStore;
+import org.junit.Test;
+
+/**
+ * The delivery receipt tests.
+ *
+ * @author Christian Bremer
+ */
+public class DeliveryReceiptTests {
+
+  /**
+   * Test parser.
+   */
+  @Test
+  public void testParser() {
+
+    System.out.println("Testing delivery receipt parser ...");
+
+    byte[] bytes = ("msgid=4711&status=delivered\n"
+        + "status=4&msgid=A%2D0815\r\n"
+        + "foo=bar&msgid=42&status=not+delivered\n"
+        + "msgid=&status=DELIVERED\n"
+        + "msgid=44&status=not%20delivered\n"
+        + "msgid=45&status=whatever\n"
+        + "msgid=46&status=0\n"
+        + "msgid=43").getBytes(StandardCharsets.US_ASCII);
+
+    Map<String, DeliveryStatus> result = new LinkedHashMap<>();
+    List<String> skipped = new ArrayList<>();
+    int count = new DeliveryReceiptParser().parse(bytes, 0, bytes.length,
+        new DeliveryReceiptParser.DeliveryReceiptConsumer() {
+          @Override
+          public void accept(String messageId, DeliveryStatus status) {
+            result.put(messageId, status);
+          }
+
+          @Override
+          public void skip(String messageId) {
+            skipped.add(messageId);
+          }
+        });
+
+    TestCase.assertEquals(4, count);
+    TestCase.assertEquals(DeliveryStatus.DELIVERED, result.get("4711"));
+    TestCase.assertEquals(DeliveryStatus.NOT_DELIVERED, result.get("A-0815"));
+    TestCase.assertEquals(DeliveryStatus.NOT_DELIVERED, result.get("42"));
+    TestCase.assertEquals(DeliveryStatus.NOT_DELIVERED, result.get("44"));
+    TestCase.assertEquals(Arrays.asList("45", "46"), skipped);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test receiver.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testReceiver() throws Exception {
+
+    System.out.println("Testing delivery receipt receiver ...");
+
+    final int size = 500;
+    DeliveryStatusStore store = new DeliveryStatusStore();
+    for (int i = 0; i < size; i++) {
+      store.register("request-" + i, String.valueOf(i), DeliveryStatus.ACCEPTED);
+    }
+
+    try (DeliveryReceiptReceiver receiver = new DeliveryReceiptReceiver(store)) {
+      receiver.start();
+      String url = "http://localhost:" + receiver.getPort() + DeliveryReceiptReceiver.DEFAULT_PATH;
+
+      long start = System.nanoTime();
+      for (int i = 0; i < size; i += 2) {
+        HttpURLConnection con = (HttpURLConnection) new URL(
+            url + "?msgid=" + i + "&status=DELIVERED").openConnection();
+        TestCase.assertEquals(200, con.getResponseCode());
+        con.disconnect();
+      }
+      StringBuilder body = new StringBuilder();
+      for (int i = 1; i < size; i += 2) {
+        body.append("msgid=").append(i).append("&status=EXPIRED\n");
+      }
+      HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+      con.setRequestMethod("POST");
+      con.setDoOutput(true);
+      try (OutputStream out = con.getOutputStream()) {
+        out.write(body.toString().getBytes(StandardCharsets.US_ASCII));
+      }
+      TestCase.assertEquals(200, con.getResponseCode());
+      con.disconnect();
+      System.out.println("Sent " + (size / 2 + 1) + " callbacks in "
+          + (System.nanoTime() - start) / 1000000L + " ms");
+
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (receiver.getAppliedCount() < size && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10L);
+      }
+      TestCase.assertEquals(size, receiver.getReceivedCount());
+      TestCase.assertEquals(size, receiver.getAppliedCount());
+    }
+
+    TestCase.assertEquals(DeliveryStatus.DELIVERED, store.getStatusByRequestId("request-10"));
+    TestCase.assertEquals(DeliveryStatus.EXPIRED, store.getStatusByRequestId("request-11"));
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.DeliveryStatus;
+import org.bremersee.sms.DeliveryStatusEntry;
+import org.bremersee.sms.DeliveryStatusPoller;
+import org.bremersee.sms.DeliveryStatusStore;
+import org.bremersee.sms.GoyyaSmsServiceConfiguration;
+import org.bremersee.sms.HttpDeliveryStatusSource;
+import org.bremersee.sms.SmsTimeoutException;
+import org.junit.Test;
+
+/**
+ * The delivery status tests.
+ *
+ * @author Christian Bremer
+ */
+public class DeliveryStatusTests {
+
+  /**
+   * Test register and find.
+   */
+  @Test
+  public void testRegisterAndFind() {
+
+    System.out.println("Testing delivery status store ...");
+
+    DeliveryStatusStore store = new DeliveryStatusStore(4);
+    String uuid = UUID.randomUUID().toString();
+    store.register(uuid, "4711", DeliveryStatus.ACCEPTED);
+    store.register("my-request", "A-0815", DeliveryStatus.ACCEPTED);
+    store.register("without-message-id", null, DeliveryStatus.REJECTED);
+
+    TestCase.assertEquals(3, store.size());
+    TestCase.assertEquals(DeliveryStatus.ACCEPTED, store.getStatusByRequestId(uuid));
+    TestCase.assertEquals(DeliveryStatus.ACCEPTED, store.getStatusByMessageId("A-0815"));
+    TestCase.assertEquals(DeliveryStatus.UNKNOWN, store.getStatusByMessageId("0815"));
+
+    DeliveryStatusEntry entry = store.findByMessageId("4711");
+    TestCase.assertNotNull(entry);
+    TestCase.assertEquals(uuid, entry.getRequestId());
+    TestCase.assertEquals("4711", entry.getMessageId());
+
+    TestCase.assertTrue(store.update("4711", DeliveryStatus.DELIVERED));
+    TestCase.assertFalse(store.update("4711", DeliveryStatus.BUFFERED));
+    TestCase.assertEquals(DeliveryStatus.DELIVERED, store.getStatusByRequestId(uuid));
+
+    List<String> pending = new ArrayList<>();
+    TestCase.assertEquals(3, store.collectPending(0, 10, pending));
+    TestCase.assertEquals(1, pending.size());
+    TestCase.assertEquals("A-0815", pending.get(0));
+
+    TestCase.assertEquals(2, store.removeFinal(Long.MAX_VALUE));
+    TestCase.assertEquals(1, store.size());
+    TestCase.assertNull(store.findByRequestId(uuid));
+    TestCase.assertEquals("my-request", store.findByMessageId("A-0815").getRequestId());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a final status is kept and that a receipt before the registration is applied.
+   */
+  @Test
+  public void testEarlyReceipt() {
+
+    System.out.println("Testing early delivery receipt ...");
+
+    DeliveryStatusStore store = new DeliveryStatusStore();
+    TestCase.assertFalse(store.update("4711", DeliveryStatus.DELIVERED));
+    TestCase.assertFalse(store.update("4711", DeliveryStatus.BUFFERED));
+    store.register("fast", "4711", DeliveryStatus.ACCEPTED);
+    TestCase.assertEquals(DeliveryStatus.DELIVERED, store.getStatusByRequestId("fast"));
+
+    store.register("final", null, DeliveryStatus.REJECTED);
+    store.register("final", "0815", DeliveryStatus.ACCEPTED);
+    TestCase.assertEquals(DeliveryStatus.REJECTED, store.getStatusByMessageId("0815"));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test many entries.
+   */
+  @Test
+  public void testManyEntries() {
+
+    System.out.println("Testing delivery status store with many entries ...");
+
+    final int size = 200000;
+    DeliveryStatusStore store = new DeliveryStatusStore();
+    String[] requestIds = new String[size];
+    for (int i = 0; i < size; i++) {
+      requestIds[i] = UUID.randomUUID().toString();
+      store.register(requestIds[i], String.valueOf(100000000L + i), DeliveryStatus.ACCEPTED);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < size; i++) {
+      TestCase.assertEquals(DeliveryStatus.ACCEPTED, store.getStatusByRequestId(requestIds[i]));
+      TestCase.assertEquals(requestIds[i],
+          store.findByMessageId(String.valueOf(100000000L + i)).getRequestId());
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println("Average time of two lookups: " + (nanos / size) + " ns");
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test poller with a local stub of the gateway.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testPoller() throws Exception {
+
+    System.out.println("Testing delivery status poller ...");
+
+    final List<String> queries = new ArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/status", exchange -> {
+      String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+      queries.add(query);
+      String ids = query.substring(query.indexOf("msgid=") + 6);
+      StringBuilder body = new StringBuilder();
+      for (String id : ids.split(",")) {
+        body.append(id).append(';').append(id.endsWith("0") ? "DELIVERED" : "4").append('\n');
+      }
+      byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.createContext("/slow", exchange -> {
+      try {
+        Thread.sleep(2000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.start();
+    try {
+      DeliveryStatusStore store = new DeliveryStatusStore();
+      for (int i = 0; i < 25; i++) {
+        store.register("request-" + i, String.valueOf(i), DeliveryStatus.ACCEPTED);
+      }
+      String url = "http://localhost:" + server.getAddress().getPort() + "/status";
+      DeliveryStatusPoller poller = new DeliveryStatusPoller(
+          store, new HttpDeliveryStatusSource(url, "user", "secret"));
+      poller.setBatchSize(10);
+
+      TestCase.assertEquals(25, poller.pollOnce());
+      TestCase.assertEquals(3, queries.size());
+      TestCase.assertEquals(DeliveryStatus.DELIVERED, store.getStatusByRequestId("request-20"));
+      TestCase.assertEquals(DeliveryStatus.NOT_DELIVERED, store.getStatusByRequestId("request-7"));
+      TestCase.assertEquals(0, poller.pollOnce());
+      TestCase.assertEquals(3, queries.size());
+
+      // a slow endpoint is given up after the read timeout of the configuration
+      HttpDeliveryStatusSource slow = new HttpDeliveryStatusSource(
+          "http://localhost:" + server.getAddress().getPort() + "/slow",
+          new GoyyaSmsServiceConfiguration()
+              .withMinTimeoutMillis(100L)
+              .withReadTimeoutMillis(200L));
+      long start = System.nanoTime();
+      try {
+        slow.fetchDeliveryStatus(Collections.singletonList("4711"));
+        TestCase.fail("SmsTimeoutException expected.");
+      } catch (SmsTimeoutException e) {
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500L));
+      }
+
+    } finally {
+      server.stop(0);
+    }
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.bind.JAXBContext;
+import javax.xml.transform.dom.DOMResult;
+import junit.framework.TestCase;
+import org.bremersee.sms.ExtensionUtils;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * The extension utils tests.
+ *
+ * @author Christian Bremer
+ */
+public class ExtensionUtilsTests {
+
+  /**
+   * Test that contexts and converters are created only once.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCaching() throws Exception {
+
+    System.out.println("Testing caching of extension utils ...");
+
+    JAXBContext context = ExtensionUtils.getJaxbContext(GoyyaSmsSendResponseDto.class);
+    TestCase.assertSame(context, ExtensionUtils.getJaxbContext(GoyyaSmsSendResponseDto.class));
+    TestCase.assertSame(
+        ExtensionUtils.converter(GoyyaSmsSendResponseDto.class),
+        ExtensionUtils.converter(GoyyaSmsSendResponseDto.class));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test transformation of a XML node by many threads.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testXmlNodeToObject() throws Exception {
+
+    System.out.println("Testing transformation of XML nodes ...");
+
+    final GoyyaSmsSendResponseDto expected = new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)");
+    DOMResult result = new DOMResult();
+    ExtensionUtils.getJaxbContext(GoyyaSmsSendResponseDto.class).createMarshaller()
+        .marshal(expected, result);
+    final Node node = ((Document) result.getNode()).getDocumentElement();
+
+    final int iterations = 10000;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      TestCase.assertEquals(expected,
+          ExtensionUtils.transform(node, GoyyaSmsSendResponseDto.class, null, null));
+    }
+    System.out.println("Average time of transformation: "
+        + (System.nanoTime() - start) / iterations / 1000L + " us");
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<GoyyaSmsSendResponseDto>> futures = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        final Node copy = node.cloneNode(true);
+        futures.add(executor.submit(() -> ExtensionUtils
+            .xmlNodeToObject(copy, GoyyaSmsSendResponseDto.class, null)));
+      }
+      for (Future<GoyyaSmsSendResponseDto> future : futures) {
+        TestCase.assertEquals(expected, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test transformation of a JSON map.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testJsonMapToObject() throws Exception {
+
+    System.out.println("Testing transformation of JSON maps ...");
+
+    ObjectMapper om = new ObjectMapper();
+    GoyyaSmsSendResponseDto expected = new GoyyaSmsSendResponseDto(
+        "OK (4711, 2 SMS, 98 SMS, 12.75 EUR)");
+    Map<String, Object> map = om.readValue(om.writeValueAsBytes(expected),
+        new TypeReference<Map<String, Object>>() {
+        });
+    TestCase.assertEquals(expected,
+        ExtensionUtils.jsonMapToObject(map, GoyyaSmsSendResponseDto.class, om));
+    TestCase.assertEquals(expected,
+        ExtensionUtils.transform(map, GoyyaSmsSendResponseDto.class, null, null));
+
+    Payload payload = Payload.create(10);
+    map = om.readValue(om.writeValueAsBytes(payload), new TypeReference<Map<String, Object>>() {
+    });
+    Payload readPayload = ExtensionUtils.jsonMapToObject(map, Payload.class, om);
+    TestCase.assertEquals(om.writeValueAsString(payload), om.writeValueAsString(readPayload));
+    TestCase.assertEquals(new BigDecimal("1.5"), readPayload.items.get(1).price);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Compares the allocation of the direct transformation of a large JSON map with the
+   * transformation that writes the map into bytes and reads them again.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void benchmarkJsonMapToObject() throws Exception {
+
+    System.out.println("Benchmarking transformation of large JSON maps ...");
+
+    ObjectMapper om = new ObjectMapper();
+    Map<String, Object> map = om.readValue(om.writeValueAsBytes(Payload.create(2000)),
+        new TypeReference<Map<String, Object>>() {
+        });
+    final int iterations = 50;
+    for (int i = 0; i < iterations; i++) {
+      om.readValue(om.writeValueAsBytes(map), Payload.class);
+      ExtensionUtils.jsonMapToObject(map, Payload.class, om);
+    }
+
+    long bytes = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      om.readValue(om.writeValueAsBytes(map), Payload.class);
+    }
+    long roundTripNanos = System.nanoTime() - start;
+    long roundTripBytes = allocatedBytes() - bytes;
+
+    bytes = allocatedBytes();
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      ExtensionUtils.jsonMapToObject(map, Payload.class, om);
+    }
+    long directNanos = System.nanoTime() - start;
+    long directBytes = allocatedBytes() - bytes;
+
+    System.out.println("Byte round trip: " + roundTripBytes / iterations + " bytes, "
+        + roundTripNanos / iterations / 1000L + " us per transformation");
+    System.out.println("Direct:          " + directBytes / iterations + " bytes, "
+        + directNanos / iterations / 1000L + " us per transformation");
+    if (roundTripBytes > 0L && directBytes > 0L) {
+      TestCase.assertTrue(directBytes < roundTripBytes);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0L;
+  }
+
+  /**
+   * A large extension.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Payload {
+
+    public String name;
+
+    public List<Item> items = new ArrayList<>();
+
+    static Payload create(int size) {
+      Payload payload = new Payload();
+      payload.name = "payload";
+      for (int i = 0; i < size; i++) {
+        Item item = new Item();
+        item.id = "item-" + i;
+        item.count = i;
+        item.price = BigDecimal.valueOf(i * 15L, 1);
+        item.active = i % 2 == 0;
+        item.tags = Arrays.asList("a" + i, "b" + i);
+        payload.items.add(item);
+      }
+      return payload;
+    }
+  }
+
+  /**
+   * An item of the large extension.
+   */
+  @SuppressWarnings("WeakerAccess")
+  public static class Item {
+
+    public String id;
+
+    public long count;
+
+    public BigDecimal price;
+
+    public boolean active;
+
+    public List<String> tags;
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.GoyyaSmsService;
+import org.bremersee.sms.InsufficientCreditException;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.junit.Test;
+
+/**
+ * The flight recorder tests.
+ *
+ * @author Christian Bremer
+ */
+public class FlightRecorderTests {
+
+  /**
+   * Test that the events of the send lifecycle are recorded with the shipped configuration.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testEvents() throws Exception {
+
+    System.out.println("Testing flight recorder events ...");
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/sms", exchange -> {
+      byte[] bytes = "OK (4711, 1 SMS)".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+
+    Configuration configuration;
+    try (InputStream in = getClass().getResourceAsStream("/org/bremersee/sms/bremersee-sms.jfc")) {
+      TestCase.assertNotNull(in);
+      configuration = Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    Path file = Files.createTempFile("sms", ".jfr");
+    SmsSendRequestDto goyyaRequest = new SmsSendRequestDto("0123456789", "Hello");
+    SmsSendRequestDto dummyRequest = new SmsSendRequestDto("0123456789", "Hello");
+    try (Recording recording = new Recording(configuration)) {
+      recording.start();
+
+      GoyyaSmsService goyya = new GoyyaSmsService("user", "secret",
+          "http://localhost:" + server.getAddress().getPort() + "/sms");
+      goyya.setDefaultSender("bremersee");
+      TestCase.assertTrue(goyya.sendSms(goyyaRequest).isSuccessfullySent());
+
+      DummySmsService dummy = new DummySmsService();
+      dummy.setDefaultSender("bremersee");
+      dummy.setCreditLedger(new CreditLedger(0L));
+      try {
+        dummy.sendSms(dummyRequest);
+        TestCase.fail("InsufficientCreditException expected.");
+      } catch (InsufficientCreditException e) {
+        // expected
+      }
+
+      recording.stop();
+      recording.dump(file);
+    } finally {
+      server.stop(0);
+    }
+
+    List<RecordedEvent> sends = new ArrayList<>();
+    List<RecordedEvent> phases = new ArrayList<>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if ("org.bremersee.sms.Send".equals(event.getEventType().getName())) {
+        sends.add(event);
+      } else if ("org.bremersee.sms.SendPhase".equals(event.getEventType().getName())) {
+        phases.add(event);
+      }
+    }
+    Files.delete(file);
+
+    TestCase.assertEquals(2, sends.size());
+    RecordedEvent sent = find(sends, goyyaRequest.getRequestId());
+    TestCase.assertEquals("SENT", sent.getString("outcome"));
+    TestCase.assertEquals("localhost", sent.getString("gateway"));
+    TestCase.assertEquals(1, sent.getInt("parts"));
+    RecordedEvent rejected = find(sends, dummyRequest.getRequestId());
+    TestCase.assertEquals("REJECTED", rejected.getString("outcome"));
+    TestCase.assertEquals("DummySmsService", rejected.getString("gateway"));
+
+    List<String> goyyaPhases = phases.stream()
+        .filter(e -> goyyaRequest.getRequestId().equals(e.getString("requestId")))
+        .map(e -> e.getString("phase"))
+        .collect(Collectors.toList());
+    TestCase.assertEquals(5, goyyaPhases.size());
+    for (String phase : new String[]{"ADMISSION", "URL_BUILD", "CONNECT", "READ", "PARSE"}) {
+      TestCase.assertTrue(phase, goyyaPhases.contains(phase));
+    }
+    for (RecordedEvent event : phases) {
+      if ("CONNECT".equals(event.getString("phase"))) {
+        TestCase.assertEquals("PLAIN", event.getString("detail"));
+      }
+    }
+    System.out.println("Send event: " + sent);
+
+    System.out.println("OK\n");
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String requestId) {
+    for (RecordedEvent event : events) {
+      if (requestId.equals(event.getString("requestId"))) {
+        return event;
+      }
+    }
+    TestCase.fail("No event of request " + requestId);
+    return null;
+  }
+
+}
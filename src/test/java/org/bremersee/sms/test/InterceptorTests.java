@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.TestCase;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.SmsException;
+import org.bremersee.sms.SmsInterceptor;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The interceptor tests.
+ *
+ * @author Christian Bremer
+ */
+public class InterceptorTests {
+
+  /**
+   * Test the order of the interceptors and changing the request.
+   */
+  @Test
+  public void testChain() {
+
+    System.out.println("Testing chain of interceptors ...");
+
+    final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService smsService = createSmsService();
+    smsService.addInterceptor(new Recorder("a", calls));
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+        smsSendRequest.setMessage(smsSendRequest.getMessage().toUpperCase());
+        return null;
+      }
+    });
+    smsService.addInterceptor(new Recorder("b", calls));
+    TestCase.assertEquals(3, smsService.getInterceptors().size());
+
+    SmsSendResponseDto response = smsService.sendSms("0123456789", "Hello");
+    TestCase.assertTrue(response.isSuccessfullySent());
+    TestCase.assertEquals("HELLO", response.getRequest().getMessage());
+    TestCase.assertEquals(
+        Arrays.asList("before a", "before b", "after b true", "after a true"), calls);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that an interceptor can answer or reject a request.
+   */
+  @Test
+  public void testShortCircuit() {
+
+    System.out.println("Testing short circuit of interceptors ...");
+
+    final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService smsService = createSmsService();
+    smsService.setInterceptors(Arrays.asList(
+        new Recorder("a", calls),
+        new SmsInterceptor() {
+          @Override
+          public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+            if ("blocked".equals(smsSendRequest.getReceiver())) {
+              throw new SmsException("Receiver is blocked.");
+            }
+            if ("cached".equals(smsSendRequest.getReceiver())) {
+              return new SmsSendResponseDto(smsSendRequest, false);
+            }
+            return null;
+          }
+        },
+        new Recorder("b", calls)));
+
+    SmsSendResponseDto response = smsService.sendSms("cached", "Hello");
+    TestCase.assertFalse(response.isSuccessfullySent());
+    TestCase.assertEquals(Arrays.asList("before a", "after a false"), calls);
+
+    calls.clear();
+    try {
+      smsService.sendSms("blocked", "Hello");
+      TestCase.fail("SmsException expected.");
+    } catch (SmsException e) {
+      TestCase.assertEquals(Arrays.asList("before a", "after a SmsException"), calls);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a failing interceptor after sending does not fail the send.
+   */
+  @Test
+  public void testFailureAfterSend() {
+
+    System.out.println("Testing failure of interceptor after sending ...");
+
+    final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService smsService = createSmsService();
+    smsService.addInterceptor(new Recorder("a", calls));
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public void afterSend(SmsSendRequestDto smsSendRequest,
+          SmsSendResponseDto smsSendResponse, RuntimeException exception) {
+        throw new IllegalStateException("Audit is not available.");
+      }
+    });
+
+    TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+    TestCase.assertEquals(Arrays.asList("before a", "after a true"), calls);
+
+    smsService.setInterceptors(Collections.emptyList());
+    TestCase.assertTrue(smsService.getInterceptors().isEmpty());
+    TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+    TestCase.assertEquals(2, calls.size());
+
+    System.out.println("OK\n");
+  }
+
+  private static DummySmsService createSmsService() {
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setWarnEnabled(false);
+    return smsService;
+  }
+
+  private static class Recorder implements SmsInterceptor {
+
+    private final String name;
+
+    private final List<String> calls;
+
+    private Recorder(String name, List<String> calls) {
+      this.name = name;
+      this.calls = calls;
+    }
+
+    @Override
+    public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+      calls.add("before " + name);
+      return null;
+    }
+
+    @Override
+    public void afterSend(SmsSendRequestDto smsSendRequest, SmsSendResponseDto smsSendResponse,
+        RuntimeException exception) {
+      calls.add("after " + name + " " + (exception != null
+          ? exception.getClass().getSimpleName()
+          : String.valueOf(smsSendResponse.isSuccessfullySent())));
+    }
+  }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.MappedSmsRingBuffer;
+import org.bremersee.sms.MappedSmsSender;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.junit.Test;
+
+/**
+ * The memory mapped ring buffer tests.
+ *
+ * @author Christian Bremer
+ */
+public class MappedRingBufferTests {
+
+  /**
+   * Test writing and draining with wrap around.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testOfferAndDrain() throws Exception {
+
+    System.out.println("Testing offer and drain of mapped ring buffer ...");
+
+    Path file = createFile();
+    try (MappedSmsRingBuffer ringBuffer = MappedSmsRingBuffer.open(file, 4096, null)) {
+      ringBuffer.acquireConsumer();
+      int offered = 0;
+      while (ringBuffer.offer(createRequest(offered))) {
+        offered++;
+      }
+      TestCase.assertTrue(offered > 10);
+      List<SmsSendRequestDto> drained = new ArrayList<>();
+      TestCase.assertEquals(offered, ringBuffer.drain(drained::add, Integer.MAX_VALUE));
+      TestCase.assertEquals("0", drained.get(0).getRequestId());
+      TestCase.assertEquals(String.valueOf(offered - 1),
+          drained.get(offered - 1).getRequestId());
+      TestCase.assertEquals("Message 0", drained.get(0).getMessage());
+      TestCase.assertEquals(0L, ringBuffer.getUsedBytes());
+
+      // many rounds with wrap around and padding
+      final AtomicInteger expected = new AtomicInteger();
+      for (int i = 0; i < 10000; i++) {
+        TestCase.assertTrue(ringBuffer.offer(createRequest(i)));
+        if (i % 7 == 6) {
+          ringBuffer.drain(request -> TestCase.assertEquals(
+              String.valueOf(expected.getAndIncrement()), request.getRequestId()), 100);
+        }
+      }
+      ringBuffer.drain(request -> TestCase.assertEquals(
+          String.valueOf(expected.getAndIncrement()), request.getRequestId()), 100);
+      TestCase.assertEquals(10000, expected.get());
+
+      try (MappedSmsRingBuffer other = MappedSmsRingBuffer.open(file)) {
+        TestCase.assertEquals(4096, other.getCapacity());
+        other.acquireConsumer();
+        TestCase.fail("IllegalStateException expected.");
+      } catch (IllegalStateException e) {
+        // expected, there is only one consumer
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test many producers of two mappings of the same file.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testConcurrentProducers() throws Exception {
+
+    System.out.println("Testing concurrent producers of mapped ring buffer ...");
+
+    Path file = createFile();
+    try (MappedSmsRingBuffer consumer = MappedSmsRingBuffer.open(file, 1 << 16, null);
+        MappedSmsRingBuffer producer = MappedSmsRingBuffer.open(file)) {
+
+      final int threads = 4;
+      final int perThread = 50000;
+      final AtomicLong offerNanos = new AtomicLong();
+      List<Thread> producers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        producers.add(new Thread(() -> {
+          SmsSendRequestDto request = createRequest(0);
+          long nanos = 0L;
+          for (int i = 0; i < perThread; i++) {
+            request.setRequestId(thread + ":" + i);
+            long start = System.nanoTime();
+            while (!producer.offer(request)) {
+              Thread.yield();
+            }
+            nanos += System.nanoTime() - start;
+          }
+          offerNanos.addAndGet(nanos);
+        }));
+      }
+      producers.forEach(Thread::start);
+
+      final int[] next = new int[threads];
+      final AtomicInteger drained = new AtomicInteger();
+      long deadline = System.currentTimeMillis() + 30000L;
+      while (drained.get() < threads * perThread && System.currentTimeMillis() < deadline) {
+        consumer.drain(request -> {
+          String[] id = request.getRequestId().split(":");
+          int thread = Integer.parseInt(id[0]);
+          // the requests of one producer keep their order
+          TestCase.assertEquals(next[thread]++, Integer.parseInt(id[1]));
+          drained.incrementAndGet();
+        }, 1000);
+      }
+      for (Thread thread : producers) {
+        thread.join();
+      }
+      TestCase.assertEquals(threads * perThread, drained.get());
+      System.out.println("Average time of offer (including waits on a full buffer): "
+          + offerNanos.get() / (threads * perThread) + " ns");
+
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the sender daemon with a producer in another process.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSenderWithOtherProcess() throws Exception {
+
+    System.out.println("Testing sender daemon with producer process ...");
+
+    Path file = createFile();
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setWarnEnabled(false);
+    try (MappedSmsRingBuffer ringBuffer = MappedSmsRingBuffer.open(file, 1 << 16, null)) {
+      MappedSmsSender sender = new MappedSmsSender(ringBuffer, smsService);
+      sender.start();
+      try {
+        Process process = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path") + File.pathSeparator
+                + System.getProperty("surefire.test.class.path", ""),
+            Producer.class.getName(), file.toString(), "100")
+            .inheritIO()
+            .start();
+        TestCase.assertEquals(0, process.waitFor());
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (sender.getSent() < 100L && System.currentTimeMillis() < deadline) {
+          Thread.sleep(10L);
+        }
+        TestCase.assertEquals(100L, sender.getSent());
+        TestCase.assertEquals(100L, smsService.getSent());
+      } finally {
+        sender.close();
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  private static Path createFile() throws Exception {
+    Path file = Files.createTempFile("sms", ".ring");
+    Files.delete(file);
+    return file;
+  }
+
+  private static SmsSendRequestDto createRequest(int i) {
+    SmsSendRequestDto request = new SmsSendRequestDto("0123456789", "Message " + i);
+    request.setRequestId(String.valueOf(i));
+    return request;
+  }
+
+  /**
+   * A producer process.
+   */
+  public static class Producer {
+
+    /**
+     * Writes requests into the ring buffer.
+     *
+     * @param args the file and the number of requests
+     * @throws Exception the exception
+     */
+    public static void main(String[] args) throws Exception {
+      try (MappedSmsRingBuffer ringBuffer = MappedSmsRingBuffer.open(Paths.get(args[0]))) {
+        int count = Integer.parseInt(args[1]);
+        for (int i = 0; i < count; i++) {
+          while (!ringBuffer.offer(createRequest(i))) {
+            Thread.yield();
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import junit.framework.TestCase;
+import org.bremersee.sms.AbstractSmsService;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.ExtensionTenantResolver;
+import org.bremersee.sms.MultiTenantSmsService;
+import org.bremersee.sms.SmsRejectedException;
+import org.bremersee.sms.TokenBucketRateLimiter;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The multi tenant tests.
+ *
+ * @author Christian Bremer
+ */
+public class MultiTenantTests {
+
+  private static SmsSendRequestDto request(String tenant) {
+    return new SmsSendRequestDto(null, "0123456789", "Hello", null,
+        tenant != null ? Collections.singletonMap("tenant", tenant) : null);
+  }
+
+  /**
+   * Test that a busy tenant does not block other tenants.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testBulkhead() throws Exception {
+
+    System.out.println("Testing bulkheads of tenants ...");
+
+    final CountDownLatch entered = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    AbstractSmsService slow = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        entered.countDown();
+        try {
+          release.await(10L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.doSendSms(smsSendRequest);
+      }
+    };
+    slow.setDefaultSender("a");
+    DummySmsService fast = new DummySmsService();
+    fast.setDefaultSender("b");
+
+    final MultiTenantSmsService service = new MultiTenantSmsService();
+    service.register("a", slow, 2, 0L, new TokenBucketRateLimiter(0.001, 3));
+    service.register("b", fast, 2, 0L, null);
+    service.register("c", fast, 1, 1000L, null);
+    service.setDefaultTenant("b");
+
+    Thread[] threads = new Thread[2];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> service.sendSms(request("a")));
+      threads[i].start();
+    }
+    TestCase.assertTrue(entered.await(10L, TimeUnit.SECONDS));
+    TestCase.assertEquals(2, service.getTenant("a").getActiveRequests());
+    try {
+      service.sendSms(request("a"));
+      TestCase.fail("SmsRejectedException expected.");
+    } catch (SmsRejectedException e) {
+      TestCase.assertEquals(1L, service.getTenant("a").getRejectedByBulkhead());
+    }
+
+    TestCase.assertTrue(service.sendSms(request("b")).isSuccessfullySent());
+    TestCase.assertTrue(service.sendSms(request(null)).isSuccessfullySent());
+    TestCase.assertEquals(2L, service.getTenant("b").getSent());
+
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join(10000L);
+    }
+    TestCase.assertEquals(0, service.getTenant("a").getActiveRequests());
+    TestCase.assertEquals(2L, service.getTenant("a").getSent());
+
+    // the request that was rejected by the bulkhead has not used up a token
+    TestCase.assertTrue(service.sendSms(request("a")).isSuccessfullySent());
+    TestCase.assertEquals(0L, service.getTenant("a").getRejectedByRateLimiter());
+
+    // an interrupted wait is not counted as full bulkhead
+    Thread.currentThread().interrupt();
+    try {
+      service.sendSms(request("c"));
+      TestCase.fail("SmsRejectedException expected.");
+    } catch (SmsRejectedException e) {
+      TestCase.assertTrue(e.getCause() instanceof InterruptedException);
+    }
+    TestCase.assertTrue(Thread.interrupted());
+    TestCase.assertEquals(0L, service.getTenant("c").getRejectedByBulkhead());
+    TestCase.assertEquals(0, service.getTenant("c").getActiveRequests());
+
+    try {
+      service.sendSms(request("d"));
+      TestCase.fail("SmsRejectedException expected.");
+    } catch (SmsRejectedException e) {
+      System.out.println(e.getMessage());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test rate limiters of tenants.
+   */
+  @Test
+  public void testRateLimiter() {
+
+    System.out.println("Testing rate limiters of tenants ...");
+
+    DummySmsService dummy = new DummySmsService();
+    dummy.setDefaultSender("bremersee");
+    MultiTenantSmsService service = new MultiTenantSmsService();
+    service.register("a", dummy, 10, 0L, new TokenBucketRateLimiter(0.5, 3));
+    service.register("b", dummy);
+
+    for (int i = 0; i < 3; i++) {
+      service.sendSms(request("a"));
+    }
+    try {
+      service.sendSms(request("a"));
+      TestCase.fail("SmsRejectedException expected.");
+    } catch (SmsRejectedException e) {
+      TestCase.assertEquals(1L, service.getTenant("a").getRejectedByRateLimiter());
+    }
+    TestCase.assertTrue(service.getTenant("a").getRateLimiter().getWaitNanos() > 0L);
+    for (int i = 0; i < 10; i++) {
+      service.sendSms(request("b"));
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test resolving the tenant from a XML extension.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testXmlExtension() throws Exception {
+
+    System.out.println("Testing tenant of XML extension ...");
+
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Document document = factory.newDocumentBuilder().newDocument();
+    Element extension = document.createElementNS("http://example.org", "ext");
+    Element tenant = document.createElementNS("http://example.org", "tenant");
+    tenant.setTextContent(" a ");
+    extension.appendChild(tenant);
+
+    SmsSendRequestDto request = request(null);
+    request.setExtension(extension);
+    TestCase.assertEquals("a", new ExtensionTenantResolver().resolveTenant(request));
+
+    extension.setAttribute("tenant", "b");
+    TestCase.assertEquals("b", new ExtensionTenantResolver().resolveTenant(request));
+
+    System.out.println("OK\n");
+  }
+
+}
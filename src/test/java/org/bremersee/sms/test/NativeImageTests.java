@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import javax.xml.transform.dom.DOMResult;
+import junit.framework.TestCase;
+import org.bremersee.sms.ExtensionUtils;
+import org.bremersee.sms.GoyyaExtensionReader;
+import org.bremersee.sms.SmsSendCommand;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * The native image support tests.
+ *
+ * @author Christian Bremer
+ */
+public class NativeImageTests {
+
+  private static final String METADATA
+      = "META-INF/native-image/org.bremersee/bremersee-sms/";
+
+  /**
+   * Test that the registered reader creates the same objects as JAXB and Jackson.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testExtensionReader() throws Exception {
+
+    System.out.println("Testing reflection free extension reader ...");
+
+    ExtensionUtils.registerReader(GoyyaSmsSendResponseDto.class, new GoyyaExtensionReader());
+    try {
+      assertReaderTransforms();
+    } finally {
+      ExtensionUtils.unregisterReader(GoyyaSmsSendResponseDto.class);
+    }
+    TestCase.assertNull(ExtensionUtils.converter(GoyyaSmsSendResponseDto.class).getReader());
+
+    System.out.println("OK\n");
+  }
+
+  private void assertReaderTransforms() throws Exception {
+    TestCase.assertTrue(ExtensionUtils.converter(GoyyaSmsSendResponseDto.class)
+        .getReader() instanceof GoyyaExtensionReader);
+
+    GoyyaSmsSendResponseDto expected = new GoyyaSmsSendResponseDto(
+        "OK (4711, 2 SMS, 98 SMS, 12.50 EUR)");
+    DOMResult result = new DOMResult();
+    ExtensionUtils.getJaxbContext(GoyyaSmsSendResponseDto.class).createMarshaller()
+        .marshal(expected, result);
+    Node node = ((Document) result.getNode()).getDocumentElement();
+    TestCase.assertEquals(expected,
+        ExtensionUtils.xmlNodeToObject(node, GoyyaSmsSendResponseDto.class, null));
+
+    ObjectMapper om = new ObjectMapper();
+    Map<String, Object> map = om.readValue(om.writeValueAsBytes(expected),
+        new TypeReference<Map<String, Object>>() {
+        });
+    GoyyaSmsSendResponseDto actual = ExtensionUtils
+        .transform(map, GoyyaSmsSendResponseDto.class, null, null);
+    TestCase.assertEquals(expected, actual);
+    TestCase.assertEquals(expected.getCredit(), actual.getCredit());
+  }
+
+  /**
+   * Test that the metadata refers to existing classes and resources.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testMetadata() throws Exception {
+
+    System.out.println("Testing native image metadata ...");
+
+    ObjectMapper om = new ObjectMapper();
+    ClassLoader classLoader = getClass().getClassLoader();
+    try (InputStream in = classLoader.getResourceAsStream(METADATA + "reflect-config.json")) {
+      TestCase.assertNotNull(in);
+      for (JsonNode entry : om.readTree(in)) {
+        Class.forName(entry.get("name").asText(), false, classLoader);
+      }
+    }
+    try (InputStream in = classLoader.getResourceAsStream(METADATA + "resource-config.json")) {
+      TestCase.assertNotNull(in);
+      for (JsonNode entry : om.readTree(in).get("resources").get("includes")) {
+        String pattern = entry.get("pattern").asText();
+        TestCase.assertTrue(pattern.startsWith("\\Q") && pattern.endsWith("\\E"));
+        String name = pattern.substring(2, pattern.length() - 2);
+        if (!name.startsWith("META-INF/services/")) {
+          TestCase.assertNotNull(name, classLoader.getResource(name));
+        }
+      }
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the sample sender.
+   */
+  @Test
+  public void testSendCommand() {
+
+    System.out.println("Testing send command ...");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    PrintStream outStream = new PrintStream(out, true);
+    PrintStream errStream = new PrintStream(err, true);
+
+    TestCase.assertEquals(0, SmsSendCommand.run(
+        new String[]{"--dry-run", "-s", "bremersee", "0123456789", "Hello"},
+        outStream, errStream));
+    TestCase.assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8)
+        .contains("Successfully sent: true"));
+
+    TestCase.assertEquals(2, SmsSendCommand.run(new String[]{"0123456789"},
+        outStream, errStream));
+    TestCase.assertTrue(new String(err.toByteArray(), StandardCharsets.UTF_8)
+        .startsWith("Usage:"));
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.bremersee.sms.ClusteredSmsSender;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.JdbcSmsOutbox;
+import org.bremersee.sms.JdbcSmsOutbox.Status;
+import org.bremersee.sms.SmsInterceptor;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+/**
+ * The outbox tests.
+ *
+ * @author Christian Bremer
+ */
+public class OutboxTests {
+
+  private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+
+  /**
+   * Test writing and sending requests with one node.
+   */
+  @Test
+  public void testEnqueueAndSend() {
+
+    System.out.println("Testing enqueueing and sending with one node ...");
+
+    JdbcSmsOutbox outbox = createOutbox();
+    TestCase.assertEquals(250, outbox.enqueueAll(createRequests(250)).size());
+    TestCase.assertEquals("4711", outbox.enqueue(createRequest("4711", "0123456789")));
+    TestCase.assertEquals(251L, outbox.count(Status.PENDING));
+
+    DummySmsService smsService = createSmsService();
+    ClusteredSmsSender sender = new ClusteredSmsSender(outbox, smsService, "node-a");
+    try {
+      TestCase.assertEquals(251, sender.pollOnce());
+      TestCase.assertEquals(outbox.getPartitions(), sender.getOwnedPartitions().size());
+      TestCase.assertEquals(0, sender.pollOnce());
+      TestCase.assertEquals(251L, outbox.count(Status.SENT));
+      TestCase.assertEquals(251L, smsService.getSent());
+    } finally {
+      sender.close();
+    }
+    TestCase.assertTrue(sender.getOwnedPartitions().isEmpty());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test balancing of the partitions between nodes and failover.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testBalancingAndFailover() throws Exception {
+
+    System.out.println("Testing balancing of partitions and failover ...");
+
+    JdbcSmsOutbox outbox = createOutbox();
+    Set<String> receiversOfA = Collections.synchronizedSet(new HashSet<>());
+    Set<String> receiversOfB = Collections.synchronizedSet(new HashSet<>());
+    ClusteredSmsSender a = createSender(outbox, "node-a", receiversOfA);
+    ClusteredSmsSender b = createSender(outbox, "node-b", receiversOfB);
+    try {
+      a.pollOnce();
+      TestCase.assertEquals(16, a.getOwnedPartitions().size());
+      b.pollOnce();
+      TestCase.assertTrue(b.getOwnedPartitions().isEmpty());
+      a.pollOnce();
+      TestCase.assertEquals(8, a.getOwnedPartitions().size());
+      b.pollOnce();
+      TestCase.assertEquals(8, b.getOwnedPartitions().size());
+      Set<Integer> all = new HashSet<>(a.getOwnedPartitions());
+      all.addAll(b.getOwnedPartitions());
+      TestCase.assertEquals(16, all.size());
+
+      outbox.enqueueAll(createRequests(200));
+      TestCase.assertEquals(200, a.pollOnce() + b.pollOnce());
+      TestCase.assertTrue(a.getSent() > 0L && b.getSent() > 0L);
+      Set<String> common = new HashSet<>(receiversOfA);
+      common.retainAll(receiversOfB);
+      TestCase.assertTrue(common.isEmpty());
+
+      // node b dies without releasing its leases
+      Thread.sleep(a.getLeaseMillis() + 100L);
+      outbox.enqueueAll(createRequests(100));
+      TestCase.assertEquals(100, a.pollOnce());
+      TestCase.assertEquals(16, a.getOwnedPartitions().size());
+      TestCase.assertEquals(300L, outbox.count(Status.SENT));
+
+    } finally {
+      a.close();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test retries of failed sends.
+   */
+  @Test
+  public void testRetry() {
+
+    System.out.println("Testing retries of outbox ...");
+
+    JdbcSmsOutbox outbox = createOutbox();
+    outbox.enqueue(createRequest(null, "0123456789"));
+    DummySmsService smsService = createSmsService();
+    smsService.setErrorRate(1.0);
+    ClusteredSmsSender sender = new ClusteredSmsSender(outbox, smsService);
+    sender.setMaxAttempts(2);
+    sender.setRetryDelayMillis(0L);
+    try {
+      TestCase.assertEquals(0, sender.pollOnce());
+      TestCase.assertEquals(1L, sender.getRetried());
+      TestCase.assertEquals(1L, outbox.count(Status.PENDING));
+      TestCase.assertEquals(0, sender.pollOnce());
+      TestCase.assertEquals(1L, sender.getFailed());
+      TestCase.assertEquals(1L, outbox.count(Status.FAILED));
+    } finally {
+      sender.close();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a batch that takes longer than half of the lease releases the unsent requests.
+   */
+  @Test
+  public void testSlowBatch() {
+
+    System.out.println("Testing slow batch of outbox ...");
+
+    JdbcSmsOutbox outbox = createOutbox();
+    outbox.enqueueAll(createRequests(10));
+    DummySmsService smsService = createSmsService();
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+        try {
+          Thread.sleep(50L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return null;
+      }
+    });
+    ClusteredSmsSender sender = new ClusteredSmsSender(outbox, smsService, "node-a");
+    sender.setLeaseMillis(200L);
+    try {
+      int sent = sender.pollOnce();
+      TestCase.assertTrue(sent > 0 && sent < 10);
+      TestCase.assertEquals(0L, outbox.count(Status.SENDING));
+      TestCase.assertEquals(10L - sent, outbox.count(Status.PENDING));
+      while (sent < 10) {
+        sent += sender.pollOnce();
+      }
+      TestCase.assertEquals(10L, outbox.count(Status.SENT));
+      TestCase.assertEquals(10L, smsService.getSent());
+    } finally {
+      sender.close();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that the outcomes are written while a batch is sent.
+   */
+  @Test
+  public void testCompletionBatch() {
+
+    System.out.println("Testing completion batches of outbox ...");
+
+    final JdbcSmsOutbox outbox = createOutbox();
+    outbox.enqueueAll(createRequests(10));
+    final List<Long> sentBefore = new ArrayList<>();
+    DummySmsService smsService = createSmsService();
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+        sentBefore.add(outbox.count(Status.SENT));
+        return null;
+      }
+    });
+    ClusteredSmsSender sender = new ClusteredSmsSender(outbox, smsService, "node-a");
+    sender.setCompletionBatchSize(3);
+    try {
+      TestCase.assertEquals(10, sender.pollOnce());
+      TestCase.assertEquals(Arrays.asList(0L, 0L, 0L, 3L, 3L, 3L, 6L, 6L, 6L, 9L), sentBefore);
+      TestCase.assertEquals(10L, outbox.count(Status.SENT));
+      TestCase.assertEquals(0L, outbox.count(Status.SENDING));
+    } finally {
+      sender.close();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test sending with running nodes.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRunningNodes() throws Exception {
+
+    System.out.println("Testing sending with running nodes ...");
+
+    JdbcSmsOutbox outbox = createOutbox();
+    List<ClusteredSmsSender> senders = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      ClusteredSmsSender sender = new ClusteredSmsSender(outbox, createSmsService());
+      sender.setIntervalMillis(20L);
+      sender.setBatchSize(25);
+      senders.add(sender);
+      sender.start();
+    }
+    try {
+      for (int i = 0; i < 10; i++) {
+        outbox.enqueueAll(createRequests(100));
+        Thread.sleep(10L);
+      }
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (outbox.count(Status.SENT) < 1000L && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20L);
+      }
+      long sent = 0L;
+      for (ClusteredSmsSender sender : senders) {
+        System.out.println("Node " + sender.getNodeId() + " has sent " + sender.getSent()
+            + " SMS of partitions " + sender.getOwnedPartitions());
+        sent += sender.getSent();
+      }
+      TestCase.assertEquals(1000L, outbox.count(Status.SENT));
+      TestCase.assertEquals(1000L, sent);
+
+    } finally {
+      for (ClusteredSmsSender sender : senders) {
+        sender.close();
+      }
+    }
+
+    System.out.println("OK\n");
+  }
+
+  private static JdbcSmsOutbox createOutbox() {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:outbox-" + DATABASE_COUNTER.incrementAndGet()
+        + ";DB_CLOSE_DELAY=-1");
+    JdbcSmsOutbox outbox = new JdbcSmsOutbox(dataSource);
+    outbox.createSchema();
+    return outbox;
+  }
+
+  private static DummySmsService createSmsService() {
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setWarnEnabled(false);
+    return smsService;
+  }
+
+  private static ClusteredSmsSender createSender(JdbcSmsOutbox outbox, String nodeId,
+      Set<String> receivers) {
+
+    DummySmsService smsService = createSmsService();
+    smsService.addInterceptor(new SmsInterceptor() {
+      @Override
+      public SmsSendResponseDto beforeSend(SmsSendRequestDto smsSendRequest) {
+        receivers.add(smsSendRequest.getReceiver());
+        return null;
+      }
+    });
+    ClusteredSmsSender sender = new ClusteredSmsSender(outbox, smsService, nodeId);
+    sender.setLeaseMillis(500L);
+    return sender;
+  }
+
+  private static List<SmsSendRequestDto> createRequests(int size) {
+    List<SmsSendRequestDto> requests = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      requests.add(createRequest(null, "01234" + (i % 50)));
+    }
+    return requests;
+  }
+
+  private static SmsSendRequestDto createRequest(String requestId, String receiver) {
+    SmsSendRequestDto request = new SmsSendRequestDto(receiver, "Hello outbox");
+    request.setRequestId(requestId);
+    return request;
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.LatencyHistogram;
+import org.bremersee.sms.PrioritySmsService;
+import org.bremersee.sms.SmsBinaryCodec;
+import org.bremersee.sms.SmsException;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsRequest;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The priority scheduling tests.
+ *
+ * @author Christian Bremer
+ */
+public class PrioritySchedulingTests {
+
+  /**
+   * Test that high priority requests overtake the others and that normal and low priority
+   * requests are sent by their weights.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testScheduling() throws Exception {
+
+    System.out.println("Testing priority scheduling ...");
+
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        if ("block".equals(smsSendRequest.getMessage())) {
+          blocked.countDown();
+          try {
+            release.await(10L, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        } else {
+          sent.add(smsSendRequest.getMessage());
+        }
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    delegate.setDefaultSender("bremersee");
+
+    try (PrioritySmsService smsService = new PrioritySmsService(delegate)) {
+      CompletableFuture<SmsSendResponseDto> first = smsService
+          .submit(new SmsSendRequestDto("0123456789", "block"), null);
+      TestCase.assertTrue(blocked.await(10L, TimeUnit.SECONDS));
+
+      List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(smsService.submit(new SmsSendRequestDto("0123456789", "low"),
+            SmsPriority.LOW));
+      }
+      for (int i = 0; i < 10; i++) {
+        futures.add(smsService.submit(new SmsSendRequestDto("0123456789", "normal"), null));
+      }
+      SmsSendRequestDto otp = new SmsSendRequestDto("0123456789", "otp");
+      otp.setPriority(SmsPriority.HIGH);
+      futures.add(smsService.submit(otp, null));
+      TestCase.assertEquals(10, smsService.getQueueSize(SmsPriority.LOW));
+      TestCase.assertEquals(1, smsService.getQueueSize(SmsPriority.HIGH));
+
+      release.countDown();
+      TestCase.assertTrue(first.get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+      for (CompletableFuture<SmsSendResponseDto> future : futures) {
+        TestCase.assertTrue(future.get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+      }
+
+      TestCase.assertEquals("otp", sent.get(0));
+      TestCase.assertEquals(8, Collections.frequency(sent.subList(1, 11), "normal"));
+      TestCase.assertEquals(2, Collections.frequency(sent.subList(1, 11), "low"));
+      TestCase.assertEquals(1L, smsService.getLatency(SmsPriority.HIGH).getCount());
+      TestCase.assertEquals(11L, smsService.getLatency(SmsPriority.NORMAL).getCount());
+      System.out.println("HIGH:   " + smsService.getLatency(SmsPriority.HIGH));
+      System.out.println("NORMAL: " + smsService.getLatency(SmsPriority.NORMAL));
+      System.out.println("LOW:    " + smsService.getLatency(SmsPriority.LOW));
+
+      TestCase.assertTrue(smsService.sendSms("0123456789", "sync").isSuccessfullySent());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that an error of the delegate completes the request and keeps the worker running.
+   */
+  @Test
+  public void testError() {
+
+    System.out.println("Testing priority scheduling with an error ...");
+
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        if ("error".equals(smsSendRequest.getMessage())) {
+          throw new AssertionError("Delegate failed.");
+        }
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    delegate.setDefaultSender("bremersee");
+
+    try (PrioritySmsService smsService = new PrioritySmsService(delegate)) {
+      try {
+        smsService.sendSms("0123456789", "error");
+        TestCase.fail("SmsException expected.");
+      } catch (SmsException e) {
+        TestCase.assertTrue(e.getCause() instanceof AssertionError);
+      }
+      TestCase.assertTrue(smsService.sendSms("0123456789", "next").isSuccessfullySent());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the percentiles of the latency histogram.
+   */
+  @Test
+  public void testLatencyHistogram() {
+
+    System.out.println("Testing latency histogram ...");
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    TestCase.assertEquals(0L, histogram.getPercentile(99.0));
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    TestCase.assertEquals(1000L, histogram.getCount());
+    TestCase.assertEquals(TimeUnit.MILLISECONDS.toNanos(1000L), histogram.getMax());
+    assertAbout(TimeUnit.MILLISECONDS.toNanos(500L), histogram.getPercentile(50.0));
+    assertAbout(TimeUnit.MILLISECONDS.toNanos(990L), histogram.getPercentile(99.0));
+    TestCase.assertEquals(histogram.getMax(), histogram.getPercentile(100.0));
+    histogram.record(7L);
+    TestCase.assertEquals(7L, histogram.getPercentile(0.0));
+
+    histogram.reset();
+    TestCase.assertEquals(0L, histogram.getCount());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that the priority is kept by the model and the codecs.
+   */
+  @Test
+  public void testPriorityOfRequest() {
+
+    System.out.println("Testing priority of requests ...");
+
+    SmsRequest request = SmsRequest.builder()
+        .receiver("0123456789")
+        .message("Your code is 4711")
+        .priority(SmsPriority.HIGH)
+        .build();
+    SmsSendRequestDto dto = request.toDto();
+    TestCase.assertEquals(SmsPriority.HIGH, dto.getPriority());
+    TestCase.assertEquals(request, SmsRequest.fromDto(dto));
+
+    SmsBinaryCodec codec = new SmsBinaryCodec();
+    ByteBuffer buffer = codec.encode(dto, false);
+    TestCase.assertEquals(dto, codec.decode(buffer, SmsSendRequestDto.class));
+
+    dto.setPriority(null);
+    TestCase.assertEquals(dto, codec.decode(codec.encode(dto, false), SmsSendRequestDto.class));
+
+    System.out.println("OK\n");
+  }
+
+  private static void assertAbout(long expected, long actual) {
+    TestCase.assertTrue(expected + " ~ " + actual,
+        actual >= expected && actual <= expected + expected / 8L);
+  }
+
+}
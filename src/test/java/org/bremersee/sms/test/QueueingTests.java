@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.QueueingSmsService;
+import org.bremersee.sms.QueueingSmsService.RejectionPolicy;
+import org.bremersee.sms.SmsQueueFullException;
+import org.bremersee.sms.SmsRejectedException;
+import org.bremersee.sms.model.SmsPriority;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The queueing sms service tests.
+ *
+ * @author Christian Bremer
+ */
+public class QueueingTests {
+
+  /**
+   * Test that all requests of many producers are sent exactly once.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testManyProducers() throws Exception {
+
+    System.out.println("Testing queueing sms service with many producers ...");
+
+    final Set<String> sent = ConcurrentHashMap.newKeySet();
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        TestCase.assertTrue(sent.add(smsSendRequest.getMessage()));
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    delegate.setDefaultSender("bremersee");
+
+    final int producers = 8;
+    final int perProducer = 500;
+    try (QueueingSmsService smsService = new QueueingSmsService(
+        delegate, 64, RejectionPolicy.BLOCK, 2)) {
+      final CountDownLatch latch = new CountDownLatch(producers);
+      final List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        final int producer = p;
+        new Thread(() -> {
+          List<CompletableFuture<SmsSendResponseDto>> own = new ArrayList<>();
+          for (int i = 0; i < perProducer; i++) {
+            own.add(smsService.submit(
+                new SmsSendRequestDto("0123456789", producer + "-" + i)));
+          }
+          synchronized (futures) {
+            futures.addAll(own);
+          }
+          latch.countDown();
+        }).start();
+      }
+      TestCase.assertTrue(latch.await(30L, TimeUnit.SECONDS));
+      for (CompletableFuture<SmsSendResponseDto> future : futures) {
+        TestCase.assertTrue(future.get(10L, TimeUnit.SECONDS).isSuccessfullySent());
+      }
+      TestCase.assertEquals(producers * perProducer, sent.size());
+      TestCase.assertEquals(producers * perProducer, smsService.getSent());
+      TestCase.assertEquals(0L, smsService.getRejected());
+      TestCase.assertEquals(0, smsService.getQueueDepth());
+      TestCase.assertEquals(producers * perProducer, smsService.getWaitTimes().getCount());
+      System.out.println(smsService);
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the rejection policies.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRejectionPolicies() throws Exception {
+
+    System.out.println("Testing rejection policies ...");
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    DummySmsService delegate = blockingService(started, release);
+
+    try (QueueingSmsService smsService = new QueueingSmsService(
+        delegate, 2, RejectionPolicy.FAIL, 1)) {
+      smsService.submit(new SmsSendRequestDto("0123456789", "in flight"));
+      TestCase.assertTrue(started.await(5L, TimeUnit.SECONDS));
+      smsService.submit(new SmsSendRequestDto("0123456789", "queued 1"));
+      smsService.submit(new SmsSendRequestDto("0123456789", "queued 2"));
+      try {
+        smsService.submit(new SmsSendRequestDto("0123456789", "too much"));
+        TestCase.fail("SmsQueueFullException expected.");
+      } catch (SmsQueueFullException e) {
+        TestCase.assertEquals(1L, smsService.getRejected());
+      }
+      release.countDown();
+    }
+
+    final CountDownLatch release2 = new CountDownLatch(1);
+    final CountDownLatch started2 = new CountDownLatch(1);
+    delegate = blockingService(started2, release2);
+    try (QueueingSmsService smsService = new QueueingSmsService(
+        delegate, 2, RejectionPolicy.DROP_OLDEST_LOW_PRIORITY, 1)) {
+      smsService.submit(new SmsSendRequestDto("0123456789", "in flight"));
+      TestCase.assertTrue(started2.await(5L, TimeUnit.SECONDS));
+      SmsSendRequestDto low = new SmsSendRequestDto("0123456789", "low");
+      low.setPriority(SmsPriority.LOW);
+      CompletableFuture<SmsSendResponseDto> lowFuture = smsService.submit(low);
+      CompletableFuture<SmsSendResponseDto> normal = smsService.submit(
+          new SmsSendRequestDto("0123456789", "normal"));
+      CompletableFuture<SmsSendResponseDto> high = smsService.submit(
+          new SmsSendRequestDto("0123456789", "high"));
+      try {
+        lowFuture.get(5L, TimeUnit.SECONDS);
+        TestCase.fail("SmsQueueFullException expected.");
+      } catch (ExecutionException e) {
+        TestCase.assertTrue(e.getCause() instanceof SmsQueueFullException);
+      }
+      TestCase.assertEquals(1L, smsService.getDropped());
+      try {
+        smsService.submit(new SmsSendRequestDto("0123456789", "nothing to drop"));
+        TestCase.fail("SmsQueueFullException expected.");
+      } catch (SmsQueueFullException e) {
+        TestCase.assertEquals(1L, smsService.getRejected());
+      }
+      release2.countDown();
+      TestCase.assertTrue(normal.get(5L, TimeUnit.SECONDS).isSuccessfullySent());
+      TestCase.assertTrue(high.get(5L, TimeUnit.SECONDS).isSuccessfullySent());
+    }
+
+    final CountDownLatch release3 = new CountDownLatch(1);
+    final CountDownLatch started3 = new CountDownLatch(1);
+    delegate = blockingService(started3, release3);
+    try (QueueingSmsService smsService = new QueueingSmsService(
+        delegate, 1, RejectionPolicy.BLOCK, 1)) {
+      smsService.setBlockMillis(100L);
+      smsService.submit(new SmsSendRequestDto("0123456789", "in flight"));
+      TestCase.assertTrue(started3.await(5L, TimeUnit.SECONDS));
+      smsService.submit(new SmsSendRequestDto("0123456789", "queued"));
+      long start = System.nanoTime();
+      try {
+        smsService.submit(new SmsSendRequestDto("0123456789", "waits"));
+        TestCase.fail("SmsQueueFullException expected.");
+      } catch (SmsQueueFullException e) {
+        TestCase.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90L));
+      }
+
+      smsService.setBlockMillis(5000L);
+      new Thread(() -> {
+        sleep(100L);
+        release3.countDown();
+      }).start();
+      TestCase.assertTrue(smsService.submit(new SmsSendRequestDto("0123456789", "waits"))
+          .get(5L, TimeUnit.SECONDS).isSuccessfullySent());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that shutdown sends queued requests until the deadline.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testShutdown() throws Exception {
+
+    System.out.println("Testing shutdown of queueing sms service ...");
+
+    DummySmsService delegate = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        sleep(50L);
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    delegate.setDefaultSender("bremersee");
+
+    QueueingSmsService smsService = new QueueingSmsService(
+        delegate, 100, RejectionPolicy.FAIL, 1);
+    List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      futures.add(smsService.submit(new SmsSendRequestDto("0123456789", "message " + i)));
+    }
+    int unsent = smsService.shutdown(300L, TimeUnit.MILLISECONDS);
+    TestCase.assertTrue(unsent > 0 && unsent < 20);
+    try {
+      smsService.submit(new SmsSendRequestDto("0123456789", "too late"));
+      TestCase.fail("SmsRejectedException expected.");
+    } catch (SmsRejectedException e) {
+      TestCase.assertFalse(e instanceof SmsQueueFullException);
+    }
+    int rejected = 0;
+    for (CompletableFuture<SmsSendResponseDto> future : futures) {
+      try {
+        future.get(5L, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        TestCase.assertTrue(e.getCause() instanceof SmsRejectedException);
+        rejected++;
+      }
+    }
+    TestCase.assertEquals(unsent, rejected);
+    TestCase.assertEquals(20L - unsent, smsService.getSent());
+    System.out.println("Sent before deadline: " + smsService.getSent() + ", unsent: " + unsent);
+
+    System.out.println("OK\n");
+  }
+
+  private static DummySmsService blockingService(
+      final CountDownLatch started, final CountDownLatch release) {
+    DummySmsService smsService = new DummySmsService() {
+      @Override
+      public SmsSendResponseDto doSendSms(SmsSendRequestDto smsSendRequest) {
+        started.countDown();
+        try {
+          release.await(10L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return new SmsSendResponseDto(smsSendRequest, true);
+      }
+    };
+    smsService.setDefaultSender("bremersee");
+    return smsService;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Test that every accepted request completes, if the service is shut down while producers
+   * are submitting.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testShutdownWhileSubmitting() throws Exception {
+
+    System.out.println("Testing shutdown of queueing sms service while submitting ...");
+
+    DummySmsService delegate = new DummySmsService();
+    delegate.setDefaultSender("bremersee");
+
+    for (int round = 0; round < 20; round++) {
+      QueueingSmsService smsService = new QueueingSmsService(
+          delegate, 1000, RejectionPolicy.FAIL, 2);
+      int producers = 4;
+      CountDownLatch started = new CountDownLatch(producers);
+      List<CompletableFuture<SmsSendResponseDto>> futures = new ArrayList<>();
+      List<Thread> threads = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        Thread thread = new Thread(() -> {
+          started.countDown();
+          try {
+            while (true) {
+              CompletableFuture<SmsSendResponseDto> future = smsService
+                  .submit(new SmsSendRequestDto("0123456789", "message"));
+              synchronized (futures) {
+                futures.add(future);
+              }
+            }
+          } catch (SmsRejectedException e) {
+            // shut down or full
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      started.await();
+      smsService.shutdown(10L, TimeUnit.MILLISECONDS);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      for (CompletableFuture<SmsSendResponseDto> future : futures) {
+        try {
+          future.get(5L, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          TestCase.assertTrue(e.getCause() instanceof SmsRejectedException);
+        }
+      }
+    }
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.InsufficientCreditException;
+import org.bremersee.sms.ReceiverThrottle;
+import org.bremersee.sms.ReceiverThrottle.Limit;
+import org.bremersee.sms.ReceiverThrottledException;
+import org.bremersee.sms.SmsException;
+import org.bremersee.sms.SmsTimeoutException;
+import org.junit.Test;
+
+/**
+ * The receiver throttle tests.
+ *
+ * @author Christian Bremer
+ */
+public class ReceiverThrottleTests {
+
+  /**
+   * Test normalization of receivers.
+   */
+  @Test
+  public void testNormalization() {
+
+    System.out.println("Testing normalization of receivers ...");
+
+    long key = ReceiverThrottle.key("+49 171 1234567", "49");
+    TestCase.assertEquals(491711234567L + 1L, key);
+    TestCase.assertEquals(key, ReceiverThrottle.key("0049171/1234567", "49"));
+    TestCase.assertEquals(key, ReceiverThrottle.key("0171-1234567", "49"));
+    TestCase.assertFalse(key == ReceiverThrottle.key("0171-1234567", "43"));
+    TestCase.assertTrue(ReceiverThrottle.key("bremersee", "49") < 0L);
+    TestCase.assertEquals(ReceiverThrottle.key("bremersee", "49"),
+        ReceiverThrottle.key("Bremersee", "49"));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the sliding windows.
+   */
+  @Test
+  public void testSlidingWindow() {
+
+    System.out.println("Testing sliding windows ...");
+
+    final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(20000L));
+    ReceiverThrottle throttle = new ReceiverThrottle(
+        new Limit(4, 1L, TimeUnit.MINUTES),
+        new Limit(6, 1L, TimeUnit.HOURS)) {
+      @Override
+      protected long currentTimeMillis() {
+        return clock.get();
+      }
+    };
+
+    for (int i = 0; i < 4; i++) {
+      TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+    }
+    TestCase.assertFalse(throttle.tryAcquire("+491711234567"));
+    TestCase.assertTrue(throttle.tryAcquire("0171 7654321"));
+
+    // half of the previous window still overlaps: 4 * 0.5 + 1 <= 4
+    clock.addAndGet(TimeUnit.SECONDS.toMillis(90L));
+    TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+    TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+    TestCase.assertFalse(throttle.tryAcquire("0171 1234567"));
+
+    // the hourly limit is reached now
+    clock.addAndGet(TimeUnit.MINUTES.toMillis(5L));
+    TestCase.assertFalse(throttle.tryAcquire("0171 1234567"));
+    clock.addAndGet(TimeUnit.HOURS.toMillis(2L));
+    TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that memory is bounded by the active receivers.
+   */
+  @Test
+  public void testExpiry() {
+
+    System.out.println("Testing expiry of receivers ...");
+
+    final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(20000L));
+    ReceiverThrottle throttle = new ReceiverThrottle(3, 1L, TimeUnit.MINUTES) {
+      @Override
+      protected long currentTimeMillis() {
+        return clock.get();
+      }
+    };
+    final int perWindow = 50000;
+    int maxCapacity = 0;
+    long start = System.nanoTime();
+    for (int w = 0; w < 20; w++) {
+      for (int i = 0; i < perWindow; i++) {
+        TestCase.assertTrue(throttle.tryAcquire("+49170" + (w * perWindow + i)));
+      }
+      maxCapacity = Math.max(maxCapacity, throttle.getCapacity());
+      clock.addAndGet(TimeUnit.MINUTES.toMillis(3L));
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println("Distinct receivers: " + 20 * perWindow + ", max capacity: "
+        + maxCapacity + ", " + nanos / (20L * perWindow) + " ns per call");
+    TestCase.assertTrue(maxCapacity < 8 * perWindow);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the throttle of a sms service.
+   */
+  @Test
+  public void testSmsServiceWithThrottle() {
+
+    System.out.println("Testing sms service with receiver throttle ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setReceiverThrottle(new ReceiverThrottle(2, 1L, TimeUnit.MINUTES));
+    smsService.sendSms("0171 1234567", "One");
+    smsService.sendSms("+49 171 1234567", "Two");
+    try {
+      smsService.sendSms("0049 171 1234567", "Three");
+      TestCase.fail("ReceiverThrottledException expected.");
+    } catch (ReceiverThrottledException e) {
+      TestCase.assertTrue(e.getMessage().contains("0049 171 1234567"));
+    }
+    TestCase.assertTrue(smsService.sendSms("0171 7654321", "Other").isSuccessfullySent());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a message, that is rejected for credit or fails, does not use up a permit.
+   */
+  @Test
+  public void testPermitOfFailedSend() {
+
+    System.out.println("Testing permit of failed send ...");
+
+    ReceiverThrottle throttle = new ReceiverThrottle(1, 1L, TimeUnit.MINUTES);
+    TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+    TestCase.assertFalse(throttle.tryAcquire("0171 1234567"));
+    throttle.release("+49 171 1234567");
+    TestCase.assertTrue(throttle.tryAcquire("0171 1234567"));
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setReceiverThrottle(new ReceiverThrottle(1, 1L, TimeUnit.MINUTES));
+    smsService.setCreditWaitMillis(0L);
+    smsService.setCreditLedger(new CreditLedger(0L));
+    try {
+      smsService.sendSms("0171 1234567", "No credit");
+      TestCase.fail("InsufficientCreditException expected.");
+    } catch (InsufficientCreditException e) {
+      // expected
+    }
+    smsService.setCreditLedger(null);
+    smsService.setErrorRate(1.0);
+    try {
+      smsService.sendSms("0171 1234567", "Error");
+      TestCase.fail("SmsException expected.");
+    } catch (SmsException e) {
+      // expected
+    }
+    smsService.setErrorRate(0.0);
+    TestCase.assertTrue(smsService.sendSms("0171 1234567", "Sent").isSuccessfullySent());
+    try {
+      smsService.sendSms("0171 1234567", "Too many");
+      TestCase.fail("ReceiverThrottledException expected.");
+    } catch (ReceiverThrottledException e) {
+      // expected
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a message, whose response times out, keeps its permit and its credit, because the
+   * gateway may have sent it.
+   */
+  @Test
+  public void testPermitOfTimedOutSend() {
+
+    System.out.println("Testing permit of timed out send ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setReceiverThrottle(new ReceiverThrottle(1, 1L, TimeUnit.MINUTES));
+    smsService.setCreditLedger(new CreditLedger(5L));
+    smsService.setTimeoutRate(1.0);
+    smsService.setTimeoutMillis(10L);
+    try {
+      smsService.sendSms("0171 1234567", "Timeout");
+      TestCase.fail("SmsTimeoutException expected.");
+    } catch (SmsTimeoutException e) {
+      TestCase.assertTrue(e.isRequestSent());
+    }
+    TestCase.assertEquals(4L, smsService.getCreditLedger().getAvailable());
+    TestCase.assertEquals(0L, smsService.getCreditLedger().getReserved());
+    smsService.setTimeoutRate(0.0);
+    try {
+      smsService.sendSms("0171 1234567", "Too many");
+      TestCase.fail("ReceiverThrottledException expected.");
+    } catch (ReceiverThrottledException e) {
+      // expected
+    }
+
+    System.out.println("OK\n");
+  }
+
+}
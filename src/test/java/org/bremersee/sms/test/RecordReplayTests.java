@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import org.bremersee.sms.GoyyaSmsService;
+import org.bremersee.sms.GoyyaSmsServiceConfiguration;
+import org.bremersee.sms.RecordingSmsTransport;
+import org.bremersee.sms.ReplaySmsTransport;
+import org.bremersee.sms.SmsTimeoutException;
+import org.bremersee.sms.SmsTransport;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The record and replay tests.
+ *
+ * @author Christian Bremer
+ */
+public class RecordReplayTests {
+
+  /**
+   * Test that exchanges with a gateway are recorded and replayed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRecordAndReplay() throws Exception {
+
+    System.out.println("Testing record and replay of gateway traffic ...");
+
+    final AtomicInteger counter = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/sms", exchange -> {
+      int n = counter.incrementAndGet();
+      try {
+        Thread.sleep(n == 2 ? 300L : 50L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] bytes = ("OK (" + n + ", 1 SMS, " + (100 - n) + " SMS)")
+          .getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+
+    Path file = Files.createTempFile("sms-transport", ".rec");
+    List<SmsSendResponseDto> recorded = new ArrayList<>();
+    try {
+      GoyyaSmsService smsService = new GoyyaSmsService("user", "secret",
+          "http://localhost:" + server.getAddress().getPort() + "/sms");
+      smsService.setDefaultSender("bremersee");
+      try (RecordingSmsTransport recorder = new RecordingSmsTransport(
+          smsService.getTransport(), file)) {
+        smsService.setTransport(recorder);
+        for (int i = 0; i < 4; i++) {
+          recorded.add(smsService.sendSms("0123456789", "Hello " + i));
+        }
+        TestCase.assertEquals(4L, recorder.getRecorded());
+      }
+    } finally {
+      server.stop(0);
+    }
+
+    List<RecordingSmsTransport.Entry> entries = RecordingSmsTransport.read(file);
+    TestCase.assertEquals(4, entries.size());
+    for (RecordingSmsTransport.Entry entry : entries) {
+      TestCase.assertTrue(entry.getUrl().contains("id=****&pw=****"));
+      TestCase.assertFalse(entry.getUrl().contains("secret"));
+      TestCase.assertEquals(200, entry.getStatusCode());
+    }
+    TestCase.assertTrue(entries.get(1).getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(300L));
+    System.out.println("Recorded " + entries.size() + " exchanges in " + Files.size(file)
+        + " bytes: " + entries.get(0));
+
+    // the gateway doesn't exist, the responses come from the recording
+    GoyyaSmsService smsService = new GoyyaSmsService("other", "password",
+        "http://localhost:1/sms");
+    smsService.setDefaultSender("bremersee");
+    ReplaySmsTransport replay = ReplaySmsTransport.load(file);
+    smsService.setTransport(replay);
+    long start = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      SmsSendResponseDto response = smsService.sendSms("0123456789", "Hello " + i);
+      TestCase.assertTrue(response.isSuccessfullySent());
+      TestCase.assertEquals(recorded.get(i).getExtension(), response.getExtension());
+    }
+    TestCase.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400L));
+    TestCase.assertEquals(4L, replay.getReplayed());
+
+    // replay in a loop and without delay
+    replay.setSpeedFactor(Double.POSITIVE_INFINITY);
+    start = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      GoyyaSmsSendResponseDto goyya = (GoyyaSmsSendResponseDto) smsService
+          .sendSms("0123456789", "Hello").getExtension();
+      TestCase.assertEquals(String.valueOf(i % 4 + 1), goyya.getID());
+    }
+    TestCase.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5L));
+
+    // the slow response exceeds a short read timeout
+    replay = ReplaySmsTransport.load(file);
+    smsService.setTransport(replay);
+    smsService.updateGoyyaConfiguration(c -> c
+        .withMinTimeoutMillis(100L)
+        .withReadTimeoutMillis(200L)
+        .withAdaptiveTimeouts(false));
+    TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+    try {
+      smsService.sendSms("0123456789", "Hello");
+      TestCase.fail("SmsTimeoutException expected.");
+    } catch (SmsTimeoutException e) {
+      TestCase.assertEquals(2L, replay.getReplayed());
+    }
+
+    Files.delete(file);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that the wrapped HTTP transport uses the configuration and the request id of the send.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testWrappedHttpTransport() throws Exception {
+
+    System.out.println("Testing wrapped HTTP transport ...");
+
+    final AtomicReference<GoyyaSmsServiceConfiguration> config = new AtomicReference<>();
+    final AtomicReference<String> requestId = new AtomicReference<>();
+    final GoyyaSmsService smsService = new GoyyaSmsService("user", "secret",
+        "http://localhost:1/sms") {
+      @Override
+      protected SmsTransport.Response exchange(String url, GoyyaSmsServiceConfiguration c,
+          int connectTimeoutMillis, int readTimeoutMillis, long deadline, String id) {
+        config.set(c);
+        requestId.set(id);
+        return new SmsTransport.Response(200, "OK (4711, 1 SMS, 99 SMS)", 0L, 0L);
+      }
+    };
+    smsService.setDefaultSender("bremersee");
+    final SmsTransport http = smsService.getTransport();
+    smsService.setTransport((url, connectTimeoutMillis, readTimeoutMillis) -> {
+      // a reload while the request is sent must not change the running send
+      smsService.setDefaultSender("other");
+      return http.send(url, connectTimeoutMillis, readTimeoutMillis);
+    });
+
+    SmsSendResponseDto response = smsService.sendSms("0123456789", "Hello");
+    TestCase.assertTrue(response.isSuccessfullySent());
+    TestCase.assertEquals(response.getRequest().getRequestId(), requestId.get());
+    TestCase.assertEquals("bremersee", config.get().getDefaultSender());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that the credentials in the message of a failed exchange are redacted.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRedactedError() throws Exception {
+
+    System.out.println("Testing redacted error of recorded exchange ...");
+
+    Path file = Files.createTempFile("sms-transport", ".rec");
+    try (RecordingSmsTransport recorder = new RecordingSmsTransport(
+        (url, connectTimeoutMillis, readTimeoutMillis) -> {
+          throw new IOException("Server returned HTTP response code: 500 for URL: " + url);
+        }, file)) {
+      try {
+        recorder.send("http://localhost/sms?id=user&pw=secret&receiver=0123456789", 1000, 1000);
+        TestCase.fail("IOException expected.");
+      } catch (IOException e) {
+        TestCase.assertTrue(e.getMessage().contains("secret"));
+      }
+    }
+
+    List<RecordingSmsTransport.Entry> entries = RecordingSmsTransport.read(file);
+    TestCase.assertEquals(1, entries.size());
+    TestCase.assertEquals(RecordingSmsTransport.STATUS_ERROR, entries.get(0).getStatusCode());
+    TestCase.assertEquals("Server returned HTTP response code: 500 for URL: "
+            + "http://localhost/sms?id=****&pw=****&receiver=0123456789",
+        entries.get(0).getBody());
+    Files.delete(file);
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+import org.bremersee.sms.model.RandomRequestIdGenerator;
+import org.bremersee.sms.model.RequestIdGenerator;
+import org.bremersee.sms.model.RequestIdGenerators;
+import org.bremersee.sms.model.SecureRandomRequestIdGenerator;
+import org.bremersee.sms.model.TimeOrderedRequestIdGenerator;
+import org.junit.Test;
+
+/**
+ * The request id generator tests.
+ *
+ * @author Christian Bremer
+ */
+public class RequestIdGeneratorTests {
+
+  /**
+   * Test format, order and uniqueness of the generated ids.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testGenerators() throws Exception {
+
+    System.out.println("Testing request id generators ...");
+
+    TestCase.assertTrue(
+        RequestIdGenerators.getDefault() instanceof SecureRandomRequestIdGenerator);
+    String id = RequestIdGenerators.nextRequestId();
+    UUID uuid = UUID.fromString(id);
+    TestCase.assertEquals(id, uuid.toString());
+    TestCase.assertEquals(4, uuid.version());
+
+    RequestIdGenerator random = new RandomRequestIdGenerator();
+    id = random.generateRequestId();
+    uuid = UUID.fromString(id);
+    TestCase.assertEquals(id, uuid.toString());
+    TestCase.assertEquals(4, uuid.version());
+    TestCase.assertEquals(2, uuid.variant());
+
+    final TimeOrderedRequestIdGenerator timeOrdered = new TimeOrderedRequestIdGenerator(42);
+    long before = System.currentTimeMillis();
+    id = timeOrdered.generateRequestId();
+    uuid = UUID.fromString(id);
+    TestCase.assertEquals(id, uuid.toString());
+    TestCase.assertEquals(7, uuid.version());
+    TestCase.assertEquals(2, uuid.variant());
+    TestCase.assertTrue(TimeOrderedRequestIdGenerator.getTimestamp(id) >= before);
+    TestCase.assertTrue(TimeOrderedRequestIdGenerator.getTimestamp(id)
+        <= System.currentTimeMillis());
+
+    final Set<String> ids = ConcurrentHashMap.newKeySet();
+    final int threads = 4;
+    final int size = 50000;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    final List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        try {
+          String last = "";
+          for (int i = 0; i < size; i++) {
+            String next = timeOrdered.generateRequestId();
+            TestCase.assertTrue(next.compareTo(last) > 0);
+            ids.add(next);
+            last = next;
+          }
+        } catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        } finally {
+          latch.countDown();
+        }
+      }).start();
+    }
+    latch.await();
+    TestCase.assertTrue(errors.isEmpty());
+    TestCase.assertEquals(threads * size, ids.size());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Measures the throughput of the generators with an increasing number of threads.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void benchmarkScaling() throws Exception {
+
+    System.out.println("Benchmarking request id generators ...");
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    RequestIdGenerator uuid = new SecureRandomRequestIdGenerator();
+    RequestIdGenerator random = new RandomRequestIdGenerator();
+    RequestIdGenerator timeOrdered = new TimeOrderedRequestIdGenerator();
+    measure(uuid, 1);
+    measure(random, 1);
+    measure(timeOrdered, 1);
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      System.out.println(threads + " thread(s): "
+          + "UUID.randomUUID " + measure(uuid, threads) + " ids/ms, "
+          + "random " + measure(random, threads) + " ids/ms, "
+          + "time ordered " + measure(timeOrdered, threads) + " ids/ms");
+    }
+
+    System.out.println("OK\n");
+  }
+
+  private static long measure(final RequestIdGenerator generator, final int threads)
+      throws InterruptedException {
+    final int size = 200000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch end = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        try {
+          start.await();
+          int hash = 0;
+          for (int i = 0; i < size; i++) {
+            hash += generator.generateRequestId().hashCode();
+          }
+          if (hash == 42) {
+            System.out.print("");
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          end.countDown();
+        }
+      }).start();
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    end.await();
+    long millis = Math.max(1L, (System.nanoTime() - startNanos) / 1000000L);
+    return (long) threads * size / millis;
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.AbstractSmsService;
+import org.bremersee.sms.SmsRejectedException;
+import org.bremersee.sms.SmsSendPipeline;
+import org.bremersee.sms.SmsTimeoutException;
+import org.bremersee.sms.TokenBucketRateLimiter;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The send pipeline tests.
+ *
+ * @author Christian Bremer
+ */
+public class SendPipelineTests {
+
+  /**
+   * Test validation, deduplication and dispatching.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testStages() throws Exception {
+
+    System.out.println("Testing stages of the send pipeline ...");
+
+    NullSmsService smsService = new NullSmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setMaxLengthOfOneSms(10);
+    SmsSendPipeline pipeline = new SmsSendPipeline(smsService, null, 8, 64);
+    try {
+      SmsSendRequestDto request = new SmsSendRequestDto("0123456789", "Nineteen characters");
+      request.setRequestId("r1");
+      SmsSendResponseDto response = pipeline.submit(request).get(5L, TimeUnit.SECONDS);
+      TestCase.assertTrue(response.isSuccessfullySent());
+
+      SmsSendRequestDto duplicate = new SmsSendRequestDto("0123456789", "Again");
+      duplicate.setRequestId("r1");
+      assertCause(pipeline.submit(duplicate), SmsRejectedException.class);
+      assertCause(pipeline.submit(new SmsSendRequestDto(null, "No receiver")),
+          SmsRejectedException.class);
+      SmsSendRequestDto expired = new SmsSendRequestDto("0123456789", "Too late");
+      expired.setDeadline(new Date(System.currentTimeMillis() - 1000L));
+      assertCause(pipeline.submit(expired), SmsTimeoutException.class);
+
+      final List<SmsSendResponseDto> responses = new CopyOnWriteArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        pipeline.publish(new SmsSendRequestDto("0123456789", "Message " + i),
+            (req, resp, e) -> responses.add(resp));
+      }
+      pipeline.close();
+      TestCase.assertEquals(100, responses.size());
+      TestCase.assertEquals(104L, pipeline.getPublished());
+      TestCase.assertEquals(104L, pipeline.getCompleted());
+      TestCase.assertEquals(101L, pipeline.getSent());
+      TestCase.assertEquals(102L, pipeline.getSentParts());
+      TestCase.assertEquals(3L, pipeline.getRejected());
+      TestCase.assertEquals(101L, smsService.count);
+    } finally {
+      pipeline.close();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the rate limit stage.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testRateLimit() throws Exception {
+
+    System.out.println("Testing rate limit of the send pipeline ...");
+
+    NullSmsService smsService = new NullSmsService();
+    smsService.setDefaultSender("bremersee");
+    long start = System.nanoTime();
+    try (SmsSendPipeline pipeline = new SmsSendPipeline(smsService,
+        new TokenBucketRateLimiter(100., 1), 16, 16)) {
+      CompletableFuture<SmsSendResponseDto> last = null;
+      for (int i = 0; i < 21; i++) {
+        last = pipeline.submit(new SmsSendRequestDto("0123456789", "Message " + i));
+      }
+      TestCase.assertTrue(last.get(5L, TimeUnit.SECONDS).isSuccessfullySent());
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    System.out.println("21 SMS with 100 permits per second took " + millis + " ms");
+    TestCase.assertTrue(millis >= 150L);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that every published request completes, if the pipeline is closed while producers are
+   * publishing.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCloseWhilePublishing() throws Exception {
+
+    System.out.println("Testing close of the send pipeline while publishing ...");
+
+    NullSmsService smsService = new NullSmsService();
+    smsService.setDefaultSender("bremersee");
+    for (int round = 0; round < 20; round++) {
+      SmsSendPipeline pipeline = new SmsSendPipeline(smsService, null, 64, 64);
+      List<CompletableFuture<SmsSendResponseDto>> futures = new CopyOnWriteArrayList<>();
+      CountDownLatch started = new CountDownLatch(4);
+      List<Thread> threads = new ArrayList<>();
+      for (int p = 0; p < 4; p++) {
+        Thread thread = new Thread(() -> {
+          started.countDown();
+          try {
+            while (true) {
+              futures.add(pipeline.submit(new SmsSendRequestDto("0123456789", "Message")));
+            }
+          } catch (IllegalStateException e) {
+            // closed
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      started.await();
+      pipeline.close();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      for (CompletableFuture<SmsSendResponseDto> future : futures) {
+        try {
+          future.get(5L, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          TestCase.assertTrue(e.getCause() instanceof SmsRejectedException);
+        }
+      }
+      TestCase.assertEquals(futures.size(), pipeline.getPublished());
+      TestCase.assertEquals(pipeline.getPublished(), pipeline.getCompleted());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Measures the throughput of the pipeline without gateway I/O.
+   */
+  @Test
+  public void benchmarkThroughput() {
+
+    System.out.println("Benchmarking throughput of the send pipeline ...");
+
+    NullSmsService smsService = new NullSmsService();
+    smsService.setDefaultSender("bremersee");
+    final int warmUp = 200000;
+    final int count = 1000000;
+    final SmsSendRequestDto[] requests = new SmsSendRequestDto[warmUp + count];
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = new SmsSendRequestDto("0123456789", "Message number " + (i & 1023));
+      requests[i].setRequestId(Integer.toString(i));
+    }
+    SmsSendPipeline pipeline = new SmsSendPipeline(smsService);
+    for (int i = 0; i < warmUp; i++) {
+      pipeline.publish(requests[i], null);
+    }
+    long start = System.nanoTime();
+    for (int i = warmUp; i < requests.length; i++) {
+      pipeline.publish(requests[i], null);
+    }
+    pipeline.close();
+    long nanos = System.nanoTime() - start;
+    TestCase.assertEquals(requests.length, pipeline.getSent());
+
+    double perSecond = count * 1000000000. / nanos;
+    System.out.printf("%d events in %d ms: %.2f million events per second%n",
+        count, TimeUnit.NANOSECONDS.toMillis(nanos), perSecond / 1000000.);
+
+    System.out.println("OK\n");
+  }
+
+  private static void assertCause(final CompletableFuture<SmsSendResponseDto> future,
+      final Class<? extends Exception> expected) throws Exception {
+    try {
+      future.get(5L, TimeUnit.SECONDS);
+      TestCase.fail(expected.getSimpleName() + " expected.");
+    } catch (ExecutionException e) {
+      TestCase.assertTrue(expected.isInstance(e.getCause()));
+    }
+  }
+
+  private static class NullSmsService extends AbstractSmsService {
+
+    private long count;
+
+    @Override
+    protected SmsSendResponseDto doSendSms(final SmsSendRequestDto smsSendRequest) {
+      count++;
+      return new SmsSendResponseDto(smsSendRequest, true);
+    }
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.bremersee.sms.CreditLedger;
+import org.bremersee.sms.DummySmsService;
+import org.bremersee.sms.LatencyDistribution;
+import org.bremersee.sms.LatencyHistogram;
+import org.bremersee.sms.SmsException;
+import org.bremersee.sms.SmsTimeoutException;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The simulation tests of the dummy sms service.
+ *
+ * @author Christian Bremer
+ */
+public class SimulationTests {
+
+  /**
+   * Test the latency distributions.
+   */
+  @Test
+  public void testLatencyDistributions() {
+
+    System.out.println("Testing latency distributions ...");
+
+    Random random = new Random(4711L);
+    TestCase.assertEquals(0L, LatencyDistribution.none().nextNanos(random));
+    TestCase.assertEquals(TimeUnit.MILLISECONDS.toNanos(20L),
+        LatencyDistribution.fixed(20L).nextNanos(random));
+
+    long[] normal = sample(LatencyDistribution.normal(100.0, 10.0), random);
+    TestCase.assertEquals(100.0, mean(normal), 1.0);
+
+    long[] logNormal = sample(LatencyDistribution.logNormal(100.0, 0.5), random);
+    TestCase.assertEquals(100.0, median(logNormal), 3.0);
+    TestCase.assertTrue(mean(logNormal) > median(logNormal));
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long nanos : logNormal) {
+      histogram.record(nanos);
+    }
+    long[] replayed = sample(LatencyDistribution.replay(histogram), random);
+    // the histogram reports the upper bounds of its buckets (at most 12.5 percent more)
+    TestCase.assertTrue(median(replayed) >= 95.0 && median(replayed) <= 115.0);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test latency, errors and timeouts of the simulation.
+   */
+  @Test
+  public void testSimulation() {
+
+    System.out.println("Testing simulation of latency, errors and timeouts ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setWarnEnabled(false);
+    smsService.setSeed(4711L);
+
+    smsService.setLatency(LatencyDistribution.fixed(30L));
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+    }
+    TestCase.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150L));
+
+    smsService.setLatency(null);
+    smsService.setErrorRate(0.3);
+    for (int i = 0; i < 1000; i++) {
+      try {
+        smsService.sendSms("0123456789", "Hello");
+      } catch (SmsException e) {
+        TestCase.assertFalse(e instanceof SmsTimeoutException);
+      }
+    }
+    TestCase.assertEquals(300.0, smsService.getErrors(), 60.0);
+    TestCase.assertEquals(1005L, smsService.getSent() + smsService.getErrors());
+
+    smsService.setErrorRate(0.0);
+    smsService.setTimeoutRate(1.0);
+    smsService.setTimeoutMillis(50L);
+    start = System.nanoTime();
+    try {
+      smsService.sendSms("0123456789", "Hello");
+      TestCase.fail("SmsTimeoutException expected.");
+    } catch (SmsTimeoutException e) {
+      TestCase.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50L));
+      TestCase.assertEquals(1L, smsService.getTimeouts());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test rate limit and goyya responses of the simulation.
+   */
+  @Test
+  public void testRateLimitAndGoyyaResponses() {
+
+    System.out.println("Testing simulation of rate limit and goyya responses ...");
+
+    DummySmsService smsService = new DummySmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setWarnEnabled(false);
+    smsService.setMaxLengthOfOneSms(10);
+    smsService.setGoyyaResponses(true);
+    smsService.setCreditLedger(new CreditLedger(100L));
+    smsService.setMaxMessagesPerSecond(5);
+
+    int ok = 0;
+    for (int i = 0; i < 10; i++) {
+      SmsSendResponseDto response = smsService.sendSms("0123456789", "Nineteen characters");
+      GoyyaSmsSendResponseDto goyya = (GoyyaSmsSendResponseDto) response.getExtension();
+      if (response.isSuccessfullySent()) {
+        TestCase.assertTrue(goyya.isOk());
+        TestCase.assertNotNull(goyya.getID());
+        TestCase.assertEquals(Integer.valueOf(2), goyya.getCount());
+        TestCase.assertEquals(Integer.valueOf(100 - 2 * (ok + 1)), goyya.getLimit());
+        ok++;
+      } else {
+        TestCase.assertFalse(goyya.isOk());
+        TestCase.assertEquals(DummySmsService.RATE_LIMIT_RESPONSE, goyya.getResponse());
+      }
+    }
+    TestCase.assertEquals(5, ok);
+    TestCase.assertEquals(5L, smsService.getRateLimited());
+
+    System.out.println("OK\n");
+  }
+
+  private static long[] sample(LatencyDistribution distribution, Random random) {
+    long[] values = new long[20000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = distribution.nextNanos(random);
+    }
+    return values;
+  }
+
+  private static double mean(long[] nanos) {
+    return Arrays.stream(nanos).average().orElse(0.0) / 1000000.0;
+  }
+
+  private static double median(long[] nanos) {
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2] / 1000000.0;
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsRequest;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.junit.Test;
+
+/**
+ * The sms request tests.
+ *
+ * @author Christian Bremer
+ */
+public class SmsRequestTests {
+
+  /**
+   * Test builder and conversion from and to the dto.
+   */
+  @Test
+  public void testBuilderAndDto() {
+
+    System.out.println("Testing sms request builder ...");
+
+    final AtomicInteger calls = new AtomicInteger();
+    SmsRequest request = SmsRequest.builder()
+        .sender(new String("bremersee"))
+        .receiver("0123456789")
+        .message("Hello")
+        .sendTimeMillis(1500000000000L)
+        .lazyExtension(() -> {
+          calls.incrementAndGet();
+          return new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)");
+        })
+        .build();
+    SmsRequest other = SmsRequest.builder().sender(new String("bremersee")).build();
+    TestCase.assertSame(request.getSender(), other.getSender());
+    TestCase.assertNotNull(request.getRequestId());
+    TestCase.assertNotSame(request.getRequestId(), other.getRequestId());
+
+    TestCase.assertEquals(0, calls.get());
+    TestCase.assertEquals(new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)"),
+        request.getExtension());
+    TestCase.assertSame(request.getExtension(), request.getExtension());
+    TestCase.assertEquals(1, calls.get());
+
+    SmsSendRequestDto dto = request.toDto();
+    TestCase.assertEquals(request.getRequestId(), dto.getRequestId());
+    TestCase.assertEquals(new Date(1500000000000L), dto.getSendTime());
+    TestCase.assertEquals(request, SmsRequest.fromDto(dto));
+    TestCase.assertEquals(request, request.toBuilder().build());
+    TestCase.assertFalse(other.hasSendTime());
+    TestCase.assertNull(other.toDto().getSendTime());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that the request id of the dto is generated lazily.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testLazyRequestIdOfDto() throws Exception {
+
+    System.out.println("Testing lazy request id of the dto ...");
+
+    SmsSendRequestDto dto = new SmsSendRequestDto("0123456789", "Hello");
+    String requestId = dto.getRequestId();
+    TestCase.assertNotNull(requestId);
+    TestCase.assertEquals(requestId, dto.getRequestId());
+
+    dto.setRequestId(null);
+    TestCase.assertNull(dto.getRequestId());
+
+    ObjectMapper om = new ObjectMapper();
+    SmsSendRequestDto read = om.readValue(
+        "{\"requestId\":\"4711\",\"receiver\":\"0123456789\"}", SmsSendRequestDto.class);
+    TestCase.assertEquals("4711", read.getRequestId());
+
+    System.out.println("OK\n");
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import junit.framework.TestCase;
+import org.bremersee.sms.SmsNdjsonReader;
+import org.bremersee.sms.SmsNdjsonWriter;
+import org.bremersee.sms.SmsXmlListReader;
+import org.bremersee.sms.SmsXmlListWriter;
+import org.bremersee.sms.model.GoyyaSmsSendResponseDto;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.bremersee.sms.model.SmsSendResponseDto;
+import org.junit.Test;
+
+/**
+ * The streaming codec tests.
+ *
+ * @author Christian Bremer
+ */
+public class StreamingCodecTests {
+
+  private static final int SIZE = 100000;
+
+  private static SmsSendRequestDto createRequest(int i) {
+    SmsSendRequestDto request = new SmsSendRequestDto(
+        "bremersee", "0123456" + i, "Hello " + i, new Date(1500000000000L + i));
+    request.setRequestId("request-" + i);
+    return request;
+  }
+
+  /**
+   * Test NDJSON.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testNdjson() throws Exception {
+
+    System.out.println("Testing NDJSON codec ...");
+
+    File file = File.createTempFile("sms-", ".ndjson");
+    file.deleteOnExit();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        SmsNdjsonWriter writer = new SmsNdjsonWriter(out)) {
+      for (int i = 0; i < SIZE; i++) {
+        writer.write(createRequest(i));
+      }
+    }
+
+    int count = 0;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+        SmsNdjsonReader<SmsSendRequestDto> reader = new SmsNdjsonReader<>(
+            in, SmsSendRequestDto.class)) {
+      while (reader.hasNext()) {
+        SmsSendRequestDto request = reader.next();
+        if (count % 10000 == 0) {
+          TestCase.assertEquals(createRequest(count), request);
+        }
+        count++;
+      }
+    }
+    TestCase.assertEquals(SIZE, count);
+    System.out.println("Read " + count + " requests from " + file.length() + " bytes.");
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test XML list.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testXmlList() throws Exception {
+
+    System.out.println("Testing XML list codec ...");
+
+    File file = File.createTempFile("sms-", ".xml");
+    file.deleteOnExit();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        SmsXmlListWriter writer = new SmsXmlListWriter(out)) {
+      for (int i = 0; i < SIZE; i++) {
+        writer.write(new SmsSendResponseDto(createRequest(i), i % 2 == 0));
+      }
+    }
+
+    int count = 0;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+        SmsXmlListReader<SmsSendResponseDto> reader = new SmsXmlListReader<>(
+            in, SmsSendResponseDto.class)) {
+      while (reader.hasNext()) {
+        SmsSendResponseDto response = reader.next();
+        if (count % 10000 == 0) {
+          TestCase.assertEquals(createRequest(count), response.getRequest());
+          TestCase.assertEquals(count % 2 == 0, response.isSuccessfullySent());
+        }
+        count++;
+      }
+    }
+    TestCase.assertEquals(SIZE, count);
+    System.out.println("Read " + count + " responses from " + file.length() + " bytes.");
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test XML list with different types against the xml schema.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testXmlListSchema() throws Exception {
+
+    System.out.println("Testing XML list against the xml schema ...");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (SmsXmlListWriter writer = new SmsXmlListWriter(out)) {
+      writer.write(new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)"));
+      writer.write(new GoyyaSmsSendResponseDto("OK (4712, 2 SMS)"));
+    }
+    System.out.println(out.toString("UTF-8"));
+
+    Schema schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+        .newSchema(getClass().getResource("/bremersee-sms-v1.xsd"));
+    schema.newValidator().validate(new StreamSource(new ByteArrayInputStream(out.toByteArray())));
+
+    try (SmsXmlListReader<Object> reader = new SmsXmlListReader<>(
+        new ByteArrayInputStream(out.toByteArray()), Object.class)) {
+      TestCase.assertEquals(new GoyyaSmsSendResponseDto("OK (4711, 1 SMS)"), reader.next());
+      TestCase.assertEquals(new GoyyaSmsSendResponseDto("OK (4712, 2 SMS)"), reader.next());
+      TestCase.assertFalse(reader.hasNext());
+    }
+
+    System.out.println("OK\n");
+  }
+
+}
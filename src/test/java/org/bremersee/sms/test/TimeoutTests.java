@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bremersee.sms.test;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.bremersee.sms.AdaptiveTimeout;
+import org.bremersee.sms.GoyyaSmsService;
+import org.bremersee.sms.GoyyaSmsServiceConfiguration;
+import org.bremersee.sms.SmsTimeoutException;
+import org.bremersee.sms.SmsTransport;
+import org.bremersee.sms.model.SmsSendRequestDto;
+import org.junit.Test;
+
+/**
+ * The timeout tests.
+ *
+ * @author Christian Bremer
+ */
+public class TimeoutTests {
+
+  /**
+   * Test the adaptive timeout.
+   */
+  @Test
+  public void testAdaptiveTimeout() {
+
+    System.out.println("Testing adaptive timeout ...");
+
+    AdaptiveTimeout timeout = new AdaptiveTimeout(99.0, 2.0, 100, 10);
+    TestCase.assertEquals(5000L, timeout.getTimeoutMillis(100L, 5000L));
+    for (int i = 0; i < 50; i++) {
+      timeout.record(TimeUnit.MILLISECONDS.toNanos(200L));
+    }
+    long millis = timeout.getTimeoutMillis(100L, 5000L);
+    TestCase.assertTrue(millis >= 400L && millis <= 460L);
+    TestCase.assertEquals(1000L, timeout.getTimeoutMillis(1000L, 5000L));
+    TestCase.assertEquals(300L, timeout.getTimeoutMillis(100L, 300L));
+
+    // after two windows of fast calls the slow ones are forgotten
+    for (int i = 0; i < 200; i++) {
+      timeout.record(TimeUnit.MILLISECONDS.toNanos(10L));
+    }
+    TestCase.assertEquals(100L, timeout.getTimeoutMillis(100L, 5000L));
+    System.out.println(timeout);
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test the timeouts of the goyya sms service.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testGoyyaTimeouts() throws Exception {
+
+    System.out.println("Testing timeouts of goyya sms service ...");
+
+    final AtomicLong delay = new AtomicLong();
+    final AtomicInteger calls = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/sms", exchange -> {
+      calls.incrementAndGet();
+      try {
+        Thread.sleep(delay.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] bytes = "OK (4711, 1 SMS)".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    try {
+      GoyyaSmsService smsService = new GoyyaSmsService("user", "secret",
+          "http://localhost:" + server.getAddress().getPort() + "/sms");
+      smsService.setDefaultSender("bremersee");
+      smsService.updateGoyyaConfiguration(c -> c
+          .withMinTimeoutMillis(200L)
+          .withReadTimeoutMillis(5000L));
+
+      for (int i = 0; i < 30; i++) {
+        TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+      }
+      TestCase.assertEquals(30L, smsService.getAdaptiveReadTimeout().getSampleCount());
+      System.out.println("Read timeout after fast responses: "
+          + smsService.getAdaptiveReadTimeout());
+
+      // the adapted read timeout is the floor, so a slow response fails early
+      delay.set(1500L);
+      long start = System.nanoTime();
+      try {
+        smsService.sendSms("0123456789", "Hello");
+        TestCase.fail("SmsTimeoutException expected.");
+      } catch (SmsTimeoutException e) {
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1200L));
+      }
+      TestCase.assertEquals(1, smsService.getAdaptiveReadTimeout().getConsecutiveTimeouts());
+
+      // the gateway stays slow: after three consecutive timeouts the ceiling is used again
+      for (int i = 0; i < 2; i++) {
+        try {
+          smsService.sendSms("0123456789", "Hello");
+          TestCase.fail("SmsTimeoutException expected.");
+        } catch (SmsTimeoutException e) {
+          // expected
+        }
+      }
+      TestCase.assertEquals(0L, smsService.getAdaptiveReadTimeout().getSampleCount());
+      TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+      TestCase.assertEquals(1L, smsService.getAdaptiveReadTimeout().getSampleCount());
+
+      // without adaptive timeouts the configured read timeout is used
+      smsService.updateGoyyaConfiguration(c -> c.withAdaptiveTimeouts(false));
+      TestCase.assertTrue(smsService.sendSms("0123456789", "Hello").isSuccessfullySent());
+
+      // the deadline of the request is shorter than the read timeout
+      SmsSendRequestDto request = new SmsSendRequestDto("0123456789", "Hello");
+      request.setDeadline(new Date(System.currentTimeMillis() + 300L));
+      start = System.nanoTime();
+      try {
+        smsService.sendSms(request);
+        TestCase.fail("SmsTimeoutException expected.");
+      } catch (SmsTimeoutException e) {
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1200L));
+      }
+
+      // a request whose deadline has passed is not sent at all
+      int before = calls.get();
+      request = new SmsSendRequestDto("0123456789", "Hello");
+      request.setDeadline(new Date(System.currentTimeMillis() - 1L));
+      try {
+        smsService.sendSms(request);
+        TestCase.fail("SmsTimeoutException expected.");
+      } catch (SmsTimeoutException e) {
+        TestCase.assertEquals(before, calls.get());
+      }
+
+    } finally {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that a response that arrives after the deadline is not thrown away.
+   */
+  @Test
+  public void testResponseAfterDeadline() {
+
+    System.out.println("Testing response after deadline ...");
+
+    GoyyaSmsService smsService = new GoyyaSmsService();
+    smsService.setDefaultSender("bremersee");
+    smsService.setTransport((url, connectTimeoutMillis, readTimeoutMillis) -> {
+      try {
+        Thread.sleep(300L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new SmsTransport.Response(200, "OK (4711, 1 SMS)",
+          TimeUnit.MILLISECONDS.toNanos(1L), TimeUnit.MILLISECONDS.toNanos(300L));
+    });
+    SmsSendRequestDto request = new SmsSendRequestDto("0123456789", "Hello");
+    request.setDeadline(new Date(System.currentTimeMillis() + 100L));
+    TestCase.assertTrue(smsService.sendSms(request).isSuccessfullySent());
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that invalid timeouts are rejected.
+   */
+  @Test
+  public void testTimeoutConfiguration() {
+
+    System.out.println("Testing timeout configuration ...");
+
+    GoyyaSmsService smsService = new GoyyaSmsService();
+    try {
+      smsService.updateGoyyaConfiguration(c -> c.withConnectTimeoutMillis(10L));
+      TestCase.fail("IllegalArgumentException expected.");
+    } catch (IllegalArgumentException e) {
+      TestCase.assertEquals(GoyyaSmsService.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+          smsService.getConfiguration().getConnectTimeoutMillis());
+    }
+
+    System.out.println("OK\n");
+  }
+
+  /**
+   * Test that reading ends at the deadline, although the read timeout is longer.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testReadTimeoutAfterConnect() throws Exception {
+
+    System.out.println("Testing read timeout after connect ...");
+
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    ExecutorService executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/sms", exchange -> {
+      try {
+        Thread.sleep(2000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] bytes = "OK (4711, 1 SMS)".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    try {
+      final String url = "http://localhost:" + server.getAddress().getPort() + "/sms";
+      GoyyaSmsService smsService = new GoyyaSmsService("user", "secret", url) {
+        @Override
+        protected SmsTransport.Response exchange(String url,
+            GoyyaSmsServiceConfiguration config, int connectTimeoutMillis,
+            int readTimeoutMillis, long deadline, String requestId) throws IOException {
+          // the connect timeout has used up most of the time before the deadline
+          return super.exchange(url, config, connectTimeoutMillis, readTimeoutMillis,
+              System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300L), requestId);
+        }
+      };
+      smsService.setDefaultSender("bremersee");
+      smsService.updateGoyyaConfiguration(c -> c
+          .withAdaptiveTimeouts(false)
+          .withReadTimeoutMillis(5000L));
+      long start = System.nanoTime();
+      try {
+        smsService.sendSms("0123456789", "Hello");
+        TestCase.fail("SmsTimeoutException expected.");
+      } catch (SmsTimeoutException e) {
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500L));
+      }
+
+    } finally {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+
+    System.out.println("OK\n");
+  }
+
+}